@@ -1,6 +1,10 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.apidb.common;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -14,6 +18,8 @@ import java.util.logging.Logger;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabaseType;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
 
 
 /**
@@ -334,6 +340,48 @@ public class DatabaseContext implements AutoCloseable {
         }
     }
 
+
+    /**
+     * Loads a table from a COPY file. This is only supported on PostgreSQL. The load occurs within
+     * the current transaction.
+     * 
+     * @param copyFile The file to be loaded.
+     * @param tableName The table to load the data into.
+     * @param columns The columns to be loaded (optional).
+     */
+    public void loadCopyFile(File copyFile, String tableName, String... columns) {
+        StringBuilder copyStatement;
+
+        if (loginCredentials.getDbType() != DatabaseType.POSTGRESQL) {
+            throw new OsmosisRuntimeException("COPY loading is only supported on PostgreSQL databases.");
+        }
+
+        copyStatement = new StringBuilder();
+        copyStatement.append("COPY ");
+        copyStatement.append(tableName);
+        if (columns.length > 0) {
+            copyStatement.append('(');
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    copyStatement.append(',');
+                }
+                copyStatement.append(columns[i]);
+            }
+            copyStatement.append(')');
+        }
+        copyStatement.append(" FROM STDIN");
+
+        try (InputStream inStream = new FileInputStream(copyFile)) {
+            CopyManager copyManager;
+
+            copyManager = new CopyManager(getConnection().unwrap(BaseConnection.class));
+
+            copyManager.copyIn(copyStatement.toString(), inStream);
+
+        } catch (SQLException | IOException e) {
+            throw new OsmosisRuntimeException("Unable to load COPY data into table " + tableName + ".", e);
+        }
+    }
     
     /**
 	 * Creates a new database prepared statement.
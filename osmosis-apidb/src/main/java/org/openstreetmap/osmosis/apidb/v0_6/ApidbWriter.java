@@ -11,6 +11,7 @@ import java.util.Map;
 
 import org.openstreetmap.osmosis.apidb.common.DatabaseContext;
 import org.openstreetmap.osmosis.apidb.v0_6.impl.ChangesetManager;
+import org.openstreetmap.osmosis.apidb.v0_6.impl.HistoryCopyLoader;
 import org.openstreetmap.osmosis.apidb.v0_6.impl.MemberTypeRenderer;
 import org.openstreetmap.osmosis.apidb.v0_6.impl.SchemaVersionValidator;
 import org.openstreetmap.osmosis.apidb.v0_6.impl.UserManager;
@@ -23,6 +24,7 @@ import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
+import org.openstreetmap.osmosis.core.database.DatabaseType;
 import org.openstreetmap.osmosis.core.database.DbFeature;
 import org.openstreetmap.osmosis.core.database.DbFeatureHistory;
 import org.openstreetmap.osmosis.core.database.DbOrderedFeature;
@@ -90,6 +92,16 @@ public class ApidbWriter implements Sink, EntityProcessor {
     	"?, ?::nwr_enum, ?, ?, ?, ?";
 	private static final int INSERT_PRM_COUNT_RELATION_MEMBER = 6;
 
+    // The PostgreSQL driver supports at most 32767 bind parameters in a single
+    // statement. Node inserts have the most parameters per row and therefore
+    // limit the number of rows in each multi-row insert.
+    private static final int MAX_BIND_PARAMETER_COUNT = 32767;
+
+    /**
+     * The largest number of rows which can be inserted by a single multi-row insert statement.
+     */
+    public static final int MAX_BULK_ROW_COUNT = MAX_BIND_PARAMETER_COUNT / INSERT_PRM_COUNT_NODE;
+
     // These tables will have indexes disabled during loading data.
     private static final List<String> DISABLE_KEY_TABLES = Arrays.asList(new String[] {"nodes",
             "node_tags", "ways", "way_tags",
@@ -144,19 +156,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
 			"current_node_tags", "current_ways", "current_way_tags", "current_way_nodes", "current_relations",
 			"current_relation_tags", "current_relation_members", "users", "changesets", "changeset_tags" });
 
-    // These constants define how many rows of each data type will be inserted
-    // with single insert statements.
-    private static final int INSERT_BULK_ROW_COUNT_NODE = 100;
-    private static final int INSERT_BULK_ROW_COUNT_NODE_TAG = 100;
-    private static final int INSERT_BULK_ROW_COUNT_WAY = 100;
-    private static final int INSERT_BULK_ROW_COUNT_WAY_TAG = 100;
-    private static final int INSERT_BULK_ROW_COUNT_WAY_NODE = 100;
-    private static final int INSERT_BULK_ROW_COUNT_RELATION = 100;
-    private static final int INSERT_BULK_ROW_COUNT_RELATION_TAG = 100;
-    private static final int INSERT_BULK_ROW_COUNT_RELATION_MEMBER = 100;
-    
-    private static final int TRANSACTION_SIZE = 100000;
-    
     private String insertSqlSingleNode;
     private String insertSqlBulkNode;
     private String insertSqlSingleNodeTag;
@@ -179,6 +178,9 @@ public class ApidbWriter implements Sink, EntityProcessor {
     private final SchemaVersionValidator schemaVersionValidator;
     private final boolean lockTables;
     private final boolean populateCurrentTables;
+    private final int bulkRowCount;
+    private final int transactionSize;
+    private final HistoryCopyLoader copyLoader;
     private final List<Node> nodeBuffer;
     private final List<DbFeatureHistory<DbFeature<Tag>>> nodeTagBuffer;
     private final List<Way> wayBuffer;
@@ -230,9 +232,26 @@ public class ApidbWriter implements Sink, EntityProcessor {
      * @param lockTables If true, all tables will be locked during loading.
      * @param populateCurrentTables If true, the current tables will be populated as well as history
      *        tables.
+     * @param bulkRowCount The number of rows to insert with each multi-row insert statement, at most
+     *        {@link #MAX_BULK_ROW_COUNT}.
+     * @param transactionSize The approximate number of rows to insert before committing.
+     * @param useCopy If true, the history tables are loaded using the COPY command instead of
+     *        INSERT statements. This is only supported on PostgreSQL.
      */
     public ApidbWriter(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences, boolean lockTables,
-            boolean populateCurrentTables) {
+            boolean populateCurrentTables, int bulkRowCount, int transactionSize, boolean useCopy) {
+        if (bulkRowCount < 1 || bulkRowCount > MAX_BULK_ROW_COUNT) {
+            throw new OsmosisRuntimeException("The bulk row count must be between 1 and " + MAX_BULK_ROW_COUNT
+                    + ", " + bulkRowCount + " was specified.");
+        }
+        if (transactionSize < 1) {
+            throw new OsmosisRuntimeException("The transaction size must be at least 1, " + transactionSize
+                    + " was specified.");
+        }
+        if (useCopy && loginCredentials.getDbType() != DatabaseType.POSTGRESQL) {
+            throw new OsmosisRuntimeException("COPY loading is only supported on PostgreSQL databases.");
+        }
+
         dbCtx = new DatabaseContext(loginCredentials);
 
         userManager = new UserManager(dbCtx);
@@ -242,6 +261,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
 
         this.lockTables = lockTables;
         this.populateCurrentTables = populateCurrentTables;
+        this.bulkRowCount = bulkRowCount;
+        this.transactionSize = transactionSize;
+
+        if (useCopy) {
+            copyLoader = new HistoryCopyLoader(dbCtx);
+        } else {
+            copyLoader = null;
+        }
 
         nodeBuffer = new ArrayList<Node>();
         nodeTagBuffer = new ArrayList<DbFeatureHistory<DbFeature<Tag>>>();
@@ -300,29 +327,29 @@ public class ApidbWriter implements Sink, EntityProcessor {
     private void buildSqlStatements() {
     	insertSqlSingleNode = buildSqlInsertStatement(INSERT_SQL_NODE_COLUMNS, INSERT_SQL_NODE_PARAMS, 1);
 		insertSqlBulkNode = buildSqlInsertStatement(INSERT_SQL_NODE_COLUMNS, INSERT_SQL_NODE_PARAMS,
-				INSERT_BULK_ROW_COUNT_NODE);
+				bulkRowCount);
 		insertSqlSingleNodeTag = buildSqlInsertStatement(
 				INSERT_SQL_NODE_TAG_COLUMNS, INSERT_SQL_NODE_TAG_PARAMS, 1);
 		insertSqlBulkNodeTag = buildSqlInsertStatement(INSERT_SQL_NODE_TAG_COLUMNS, INSERT_SQL_NODE_TAG_PARAMS,
-				INSERT_BULK_ROW_COUNT_NODE_TAG);
+				bulkRowCount);
 		insertSqlSingleWay = buildSqlInsertStatement(INSERT_SQL_WAY_COLUMNS, INSERT_SQL_WAY_PARAMS, 1);
 		insertSqlBulkWay = buildSqlInsertStatement(INSERT_SQL_WAY_COLUMNS, INSERT_SQL_WAY_PARAMS,
-				INSERT_BULK_ROW_COUNT_WAY);
+				bulkRowCount);
 		insertSqlSingleWayTag = buildSqlInsertStatement(INSERT_SQL_WAY_TAG_COLUMNS, INSERT_SQL_WAY_TAG_PARAMS, 1);
 		insertSqlBulkWayTag = buildSqlInsertStatement(INSERT_SQL_WAY_TAG_COLUMNS, INSERT_SQL_WAY_TAG_PARAMS,
-				INSERT_BULK_ROW_COUNT_WAY_TAG);
+				bulkRowCount);
 		insertSqlSingleWayNode = buildSqlInsertStatement(
 				INSERT_SQL_WAY_NODE_COLUMNS, INSERT_SQL_WAY_NODE_PARAMS, 1);
 		insertSqlBulkWayNode = buildSqlInsertStatement(INSERT_SQL_WAY_NODE_COLUMNS, INSERT_SQL_WAY_NODE_PARAMS,
-				INSERT_BULK_ROW_COUNT_WAY_NODE);
+				bulkRowCount);
 		insertSqlSingleRelation = buildSqlInsertStatement(INSERT_SQL_RELATION_COLUMNS, INSERT_SQL_RELATION_PARAMS,
 				1);
 		insertSqlBulkRelation = buildSqlInsertStatement(INSERT_SQL_RELATION_COLUMNS, INSERT_SQL_RELATION_PARAMS,
-				INSERT_BULK_ROW_COUNT_RELATION);
+				bulkRowCount);
     	insertSqlSingleRelationTag = buildSqlInsertStatement(INSERT_SQL_RELATION_TAG_COLUMNS,
 				INSERT_SQL_RELATION_TAG_PARAMS, 1);
 		insertSqlBulkRelationTag = buildSqlInsertStatement(INSERT_SQL_RELATION_TAG_COLUMNS,
-				INSERT_SQL_RELATION_TAG_PARAMS, INSERT_BULK_ROW_COUNT_RELATION_TAG);
+				INSERT_SQL_RELATION_TAG_PARAMS, bulkRowCount);
     }
 
 
@@ -345,13 +372,13 @@ public class ApidbWriter implements Sink, EntityProcessor {
     			insertSqlSingleRelationMember = buildSqlInsertStatement(INSERT_SQL_RELATION_MEMBER_COLUMNS,
     					INSERT_SQL_RELATION_MEMBER_PARAMS_PGSQL, 1);
     			insertSqlBulkRelationMember = buildSqlInsertStatement(INSERT_SQL_RELATION_MEMBER_COLUMNS,
-    					INSERT_SQL_RELATION_MEMBER_PARAMS_PGSQL, INSERT_BULK_ROW_COUNT_RELATION_MEMBER);
+    					INSERT_SQL_RELATION_MEMBER_PARAMS_PGSQL, bulkRowCount);
                 break;
             case MYSQL:
     			insertSqlSingleRelationMember = buildSqlInsertStatement(INSERT_SQL_RELATION_MEMBER_COLUMNS,
     					INSERT_SQL_RELATION_MEMBER_PARAMS_MYSQL, 1);
     			insertSqlBulkRelationMember = buildSqlInsertStatement(INSERT_SQL_RELATION_MEMBER_COLUMNS,
-    					INSERT_SQL_RELATION_MEMBER_PARAMS_MYSQL, INSERT_BULK_ROW_COUNT_RELATION_MEMBER);
+    					INSERT_SQL_RELATION_MEMBER_PARAMS_MYSQL, bulkRowCount);
                 break;
             default:
                 throw createUnknownDbTypeException();
@@ -395,6 +422,17 @@ public class ApidbWriter implements Sink, EntityProcessor {
         }
     }
 
+    /**
+     * Commits the current transaction if the number of rows inserted within it has reached the
+     * transaction size.
+     */
+    private void commitIfRequired() {
+        if (transactionSizeCount >= transactionSize) {
+            dbCtx.commit();
+            transactionSizeCount = 0;
+        }
+    }
+
     private void assertEntityHasTimestamp(Entity entity) {
         if (entity.getTimestamp() == null) {
             throw new OsmosisRuntimeException(
@@ -583,14 +621,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushNodes(boolean complete) {
-        while (nodeBuffer.size() >= INSERT_BULK_ROW_COUNT_NODE) {
+        while (nodeBuffer.size() >= bulkRowCount) {
             int prmIndex;
             List<Node> processedNodes;
 
-            processedNodes = new ArrayList<Node>(INSERT_BULK_ROW_COUNT_NODE);
+            processedNodes = new ArrayList<Node>(bulkRowCount);
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_NODE; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 Node node;
 
                 node = nodeBuffer.remove(0);
@@ -604,9 +642,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
             try {
                 bulkNodeStatement.executeUpdate();
                 
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
                 
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert nodes into the database.", e);
@@ -634,8 +670,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 addNodeTags(node);
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -647,11 +681,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushNodeTags(boolean complete) {
-        while (nodeTagBuffer.size() >= INSERT_BULK_ROW_COUNT_NODE_TAG) {
+        while (nodeTagBuffer.size() >= bulkRowCount) {
             int prmIndex;
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_NODE_TAG; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 populateEntityTagParameters(bulkNodeTagStatement, prmIndex, nodeTagBuffer.remove(0));
                 prmIndex += INSERT_PRM_COUNT_NODE_TAG;
                 transactionSizeCount++;
@@ -660,9 +694,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
             try {
                 bulkNodeTagStatement.executeUpdate();
                 
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert node tags into the database.", e);
             }
@@ -679,8 +711,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 }
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -692,14 +722,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushWays(boolean complete) {
-        while (wayBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY) {
+        while (wayBuffer.size() >= bulkRowCount) {
             List<Way> processedWays;
             int prmIndex;
 
-            processedWays = new ArrayList<Way>(INSERT_BULK_ROW_COUNT_WAY);
+            processedWays = new ArrayList<Way>(bulkRowCount);
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 Way way;
 
                 way = wayBuffer.remove(0);
@@ -713,9 +743,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
             try {
                 bulkWayStatement.executeUpdate();
                 
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert ways into the database.", e);
             }
@@ -744,8 +772,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 addWayNodes(way);
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -757,11 +783,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushWayTags(boolean complete) {
-        while (wayTagBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY_TAG) {
+        while (wayTagBuffer.size() >= bulkRowCount) {
             int prmIndex;
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY_TAG; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 populateEntityTagParameters(bulkWayTagStatement, prmIndex, wayTagBuffer.remove(0));
                 prmIndex += INSERT_PRM_COUNT_WAY_TAG;
                 transactionSizeCount++;
@@ -770,9 +796,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
             try {
                 bulkWayTagStatement.executeUpdate();
                 
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert way tags into the database.", e);
             }
@@ -789,8 +813,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 }
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -802,11 +824,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushWayNodes(boolean complete) {
-        while (wayNodeBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY_NODE) {
+        while (wayNodeBuffer.size() >= bulkRowCount) {
             int prmIndex;
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY_NODE; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 populateWayNodeParameters(bulkWayNodeStatement, prmIndex, wayNodeBuffer.remove(0));
                 prmIndex += INSERT_PRM_COUNT_WAY_NODE;
                 transactionSizeCount++;
@@ -814,9 +836,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
 
             try {
                 bulkWayNodeStatement.executeUpdate();
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert way nodes into the database.", e);
             }
@@ -833,8 +853,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 }
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -846,14 +864,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushRelations(boolean complete) {
-        while (relationBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION) {
+        while (relationBuffer.size() >= bulkRowCount) {
             List<Relation> processedRelations;
             int prmIndex;
 
-            processedRelations = new ArrayList<Relation>(INSERT_BULK_ROW_COUNT_RELATION);
+            processedRelations = new ArrayList<Relation>(bulkRowCount);
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 Relation relation;
 
                 relation = relationBuffer.remove(0);
@@ -866,9 +884,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
 
             try {
                 bulkRelationStatement.executeUpdate();
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert relations into the database.", e);
             }
@@ -897,8 +913,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 addRelationMembers(relation);
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -911,11 +925,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushRelationTags(boolean complete) {
-        while (relationTagBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION_TAG) {
+        while (relationTagBuffer.size() >= bulkRowCount) {
             int prmIndex;
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION_TAG; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 populateEntityTagParameters(bulkRelationTagStatement, prmIndex, relationTagBuffer.remove(0));
                 prmIndex += INSERT_PRM_COUNT_RELATION_TAG;
                 transactionSizeCount++;
@@ -923,9 +937,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
 
             try {
                 bulkRelationTagStatement.executeUpdate();
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert relation tags into the database.", e);
             }
@@ -942,8 +954,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 }
             }
         }
-        
-        dbCtx.commit();
     }
 
     /**
@@ -956,11 +966,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
      *        left until more data is available.
      */
     private void flushRelationMembers(boolean complete) {
-        while (relationMemberBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION_MEMBER) {
+        while (relationMemberBuffer.size() >= bulkRowCount) {
             int prmIndex;
 
             prmIndex = 1;
-            for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION_MEMBER; i++) {
+            for (int i = 0; i < bulkRowCount; i++) {
                 populateRelationMemberParameters(bulkRelationMemberStatement, prmIndex, relationMemberBuffer.remove(0));
                 prmIndex += INSERT_PRM_COUNT_RELATION_MEMBER;
                 transactionSizeCount++;
@@ -968,9 +978,7 @@ public class ApidbWriter implements Sink, EntityProcessor {
 
             try {
                 bulkRelationMemberStatement.executeUpdate();
-                if (transactionSizeCount % TRANSACTION_SIZE == 0) {
-                	dbCtx.commit();
-                }
+                commitIfRequired();
             } catch (SQLException e) {
                 throw new OsmosisRuntimeException("Unable to bulk insert relation members into the database.", e);
             }
@@ -987,8 +995,6 @@ public class ApidbWriter implements Sink, EntityProcessor {
                 }
             }
         }
-        
-        dbCtx.commit();
     }
     
     
@@ -1135,6 +1141,11 @@ public class ApidbWriter implements Sink, EntityProcessor {
         flushRelationTags(true);
         flushRelationMembers(true);
 
+        // Load the history tables if they have been written to COPY files.
+        if (copyLoader != null) {
+            copyLoader.load();
+        }
+
         // Re-enable indexes now that the load has completed.
         dbCtx.enableIndexes(DISABLE_KEY_TABLES);
 
@@ -1152,6 +1163,10 @@ public class ApidbWriter implements Sink, EntityProcessor {
      * Releases all database resources.
      */
     public void close() {
+        if (copyLoader != null) {
+            copyLoader.close();
+        }
+
         userManager.close();
 
         dbCtx.close();
@@ -1196,9 +1211,13 @@ public class ApidbWriter implements Sink, EntityProcessor {
           minNodeId = nodeId;
         }
 
-        nodeBuffer.add(node);
+        if (copyLoader != null) {
+            copyLoader.addNode(node);
+        } else {
+            nodeBuffer.add(node);
 
-        flushNodes(false);
+            flushNodes(false);
+        }
     }
 
     /**
@@ -1233,9 +1252,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
         if (wayId < minWayId) {
           minWayId = wayId;
         }
-        wayBuffer.add(way);
 
-        flushWays(false);
+        if (copyLoader != null) {
+            copyLoader.addWay(way);
+        } else {
+            wayBuffer.add(way);
+
+            flushWays(false);
+        }
     }
 
     /**
@@ -1288,9 +1312,14 @@ public class ApidbWriter implements Sink, EntityProcessor {
         if (relationId < minRelationId) {
           minRelationId = relationId;
         }
-        relationBuffer.add(relation);
 
-        flushRelations(false);
+        if (copyLoader != null) {
+            copyLoader.addRelation(relation);
+        } else {
+            relationBuffer.add(relation);
+
+            flushRelations(false);
+        }
     }
 
     /**
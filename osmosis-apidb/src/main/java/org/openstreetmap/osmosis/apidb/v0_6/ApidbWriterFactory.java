@@ -1,12 +1,15 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.apidb.v0_6;
 
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.buffer.v0_6.BackgroundSink;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
 import org.openstreetmap.osmosis.core.database.DatabaseTaskManagerFactory;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
 import org.openstreetmap.osmosis.core.pipeline.v0_6.SinkManager;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 
 
 /**
@@ -17,8 +20,17 @@ import org.openstreetmap.osmosis.core.pipeline.v0_6.SinkManager;
 public class ApidbWriterFactory extends DatabaseTaskManagerFactory {
 	private static final String ARG_LOCK_TABLES = "lockTables";
 	private static final String ARG_POPULATE_CURRENT_TABLES = "populateCurrentTables";
+	private static final String ARG_BULK_ROW_COUNT = "bulkRowCount";
+	private static final String ARG_TRANSACTION_SIZE = "transactionSize";
+	private static final String ARG_ASYNC_WRITE = "asyncWrite";
+	private static final String ARG_USE_COPY = "useCopy";
 	private static final boolean DEFAULT_LOCK_TABLES = true;
 	private static final boolean DEFAULT_POPULATE_CURRENT_TABLES = true;
+	private static final int DEFAULT_BULK_ROW_COUNT = 100;
+	private static final int DEFAULT_TRANSACTION_SIZE = 100000;
+	private static final boolean DEFAULT_ASYNC_WRITE = false;
+	private static final boolean DEFAULT_USE_COPY = false;
+	private static final int ASYNC_WRITE_BUFFER_CAPACITY = 10000;
 	
 	
 	/**
@@ -30,6 +42,11 @@ public class ApidbWriterFactory extends DatabaseTaskManagerFactory {
 		DatabasePreferences preferences;
 		boolean lockTables;
 		boolean populateCurrentTables;
+		int bulkRowCount;
+		int transactionSize;
+		boolean asyncWrite;
+		boolean useCopy;
+		Sink sink;
 		
 		// Get the task arguments.
 		loginCredentials = getDatabaseLoginCredentials(taskConfig);
@@ -37,10 +54,29 @@ public class ApidbWriterFactory extends DatabaseTaskManagerFactory {
 		lockTables = getBooleanArgument(taskConfig, ARG_LOCK_TABLES, DEFAULT_LOCK_TABLES);
 		populateCurrentTables = getBooleanArgument(
 				taskConfig, ARG_POPULATE_CURRENT_TABLES, DEFAULT_POPULATE_CURRENT_TABLES);
+		bulkRowCount = getIntegerArgument(taskConfig, ARG_BULK_ROW_COUNT, DEFAULT_BULK_ROW_COUNT);
+		if (bulkRowCount < 1 || bulkRowCount > ApidbWriter.MAX_BULK_ROW_COUNT) {
+			throw new OsmosisRuntimeException(
+					"Argument " + ARG_BULK_ROW_COUNT + " for task " + taskConfig.getId()
+					+ " must be between 1 and " + ApidbWriter.MAX_BULK_ROW_COUNT
+					+ " to stay within the database bind parameter limit.");
+		}
+		transactionSize = getIntegerArgument(taskConfig, ARG_TRANSACTION_SIZE, DEFAULT_TRANSACTION_SIZE);
+		asyncWrite = getBooleanArgument(taskConfig, ARG_ASYNC_WRITE, DEFAULT_ASYNC_WRITE);
+		useCopy = getBooleanArgument(taskConfig, ARG_USE_COPY, DEFAULT_USE_COPY);
+		
+		sink = new ApidbWriter(loginCredentials, preferences, lockTables, populateCurrentTables, bulkRowCount,
+				transactionSize, useCopy);
+		
+		// Move all database access onto a dedicated thread so that the
+		// pipeline can continue producing data while statements execute.
+		if (asyncWrite) {
+			sink = new BackgroundSink(sink, ASYNC_WRITE_BUFFER_CAPACITY, taskConfig.getId() + "-writer");
+		}
 		
 		return new SinkManager(
 			taskConfig.getId(),
-			new ApidbWriter(loginCredentials, preferences, lockTables, populateCurrentTables),
+			sink,
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -0,0 +1,285 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.apidb.v0_6.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.apidb.common.CopyFileWriter;
+import org.openstreetmap.osmosis.apidb.common.DatabaseContext;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
+import org.openstreetmap.osmosis.core.util.TileCalculator;
+
+
+/**
+ * Loads the entity history tables of a PostgreSQL API database using the COPY
+ * command instead of INSERT statements. Rows are written to temporary COPY
+ * files as entities are received, and all files are loaded in a single pass
+ * once input is complete.
+ * <p>
+ * The COPY files are loaded over the same connection and within the same
+ * transaction as the users and changesets written during processing, which
+ * allows the foreign key checks against those tables to succeed.
+ *
+ * @author Brett Henderson
+ */
+public class HistoryCopyLoader implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(HistoryCopyLoader.class.getName());
+
+
+	private DatabaseContext dbCtx;
+	private TileCalculator tileCalculator;
+	private MemberTypeRenderer memberTypeRenderer;
+	private List<File> tmpFiles;
+	private List<CopyFileWriter> writers;
+	private CopyFileWriter nodeWriter;
+	private CopyFileWriter nodeTagWriter;
+	private CopyFileWriter wayWriter;
+	private CopyFileWriter wayTagWriter;
+	private CopyFileWriter wayNodeWriter;
+	private CopyFileWriter relationWriter;
+	private CopyFileWriter relationTagWriter;
+	private CopyFileWriter relationMemberWriter;
+	private File nodeFile;
+	private File nodeTagFile;
+	private File wayFile;
+	private File wayTagFile;
+	private File wayNodeFile;
+	private File relationFile;
+	private File relationTagFile;
+	private File relationMemberFile;
+	private boolean initialized;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param dbCtx
+	 *            The database context to load the data with.
+	 */
+	public HistoryCopyLoader(DatabaseContext dbCtx) {
+		this.dbCtx = dbCtx;
+
+		tileCalculator = new TileCalculator();
+		memberTypeRenderer = new MemberTypeRenderer();
+
+		tmpFiles = new ArrayList<File>();
+		writers = new ArrayList<CopyFileWriter>();
+	}
+
+
+	private File createTempFile(String suffix) {
+		try {
+			File tmpFile;
+
+			tmpFile = TempFileManager.getInstance().createTempFile("copy", suffix);
+			tmpFiles.add(tmpFile);
+
+			return tmpFile;
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to create COPY temp file.", e);
+		}
+	}
+
+
+	private CopyFileWriter createWriter(File file) {
+		CopyFileWriter writer;
+
+		writer = new CopyFileWriter(file);
+		writers.add(writer);
+
+		return writer;
+	}
+
+
+	private void initialize() {
+		if (!initialized) {
+			nodeFile = createTempFile("n");
+			nodeTagFile = createTempFile("nt");
+			wayFile = createTempFile("w");
+			wayTagFile = createTempFile("wt");
+			wayNodeFile = createTempFile("wn");
+			relationFile = createTempFile("r");
+			relationTagFile = createTempFile("rt");
+			relationMemberFile = createTempFile("rm");
+
+			nodeWriter = createWriter(nodeFile);
+			nodeTagWriter = createWriter(nodeTagFile);
+			wayWriter = createWriter(wayFile);
+			wayTagWriter = createWriter(wayTagFile);
+			wayNodeWriter = createWriter(wayNodeFile);
+			relationWriter = createWriter(relationFile);
+			relationTagWriter = createWriter(relationTagFile);
+			relationMemberWriter = createWriter(relationMemberFile);
+
+			initialized = true;
+		}
+	}
+
+
+	private void writeEntityFields(CopyFileWriter writer, Entity entity) {
+		if (entity.getTimestamp() == null) {
+			throw new OsmosisRuntimeException(
+					entity.getType().toString() + " " + entity.getId() + " does not have a timestamp set.");
+		}
+
+		writer.writeField(entity.getId());
+		writer.writeField(entity.getTimestamp());
+		writer.writeField(entity.getVersion());
+		writer.writeField(true);
+		writer.writeField(entity.getChangesetId());
+	}
+
+
+	private void writeTags(CopyFileWriter writer, Entity entity) {
+		for (Tag tag : entity.getTags()) {
+			writer.writeField(entity.getId());
+			writer.writeField(tag.getKey());
+			writer.writeField(tag.getValue());
+			writer.writeField(entity.getVersion());
+			writer.endRecord();
+		}
+	}
+
+
+	/**
+	 * Adds the history rows of a node.
+	 *
+	 * @param node
+	 *            The node to be added.
+	 */
+	public void addNode(Node node) {
+		initialize();
+
+		writeEntityFields(nodeWriter, node);
+		nodeWriter.writeField(FixedPrecisionCoordinateConvertor.convertToFixed(node.getLatitude()));
+		nodeWriter.writeField(FixedPrecisionCoordinateConvertor.convertToFixed(node.getLongitude()));
+		nodeWriter.writeField(tileCalculator.calculateTile(node.getLatitude(), node.getLongitude()));
+		nodeWriter.endRecord();
+
+		writeTags(nodeTagWriter, node);
+	}
+
+
+	/**
+	 * Adds the history rows of a way.
+	 *
+	 * @param way
+	 *            The way to be added.
+	 */
+	public void addWay(Way way) {
+		List<WayNode> wayNodes;
+
+		initialize();
+
+		writeEntityFields(wayWriter, way);
+		wayWriter.endRecord();
+
+		writeTags(wayTagWriter, way);
+
+		wayNodes = way.getWayNodes();
+		for (int i = 0; i < wayNodes.size(); i++) {
+			wayNodeWriter.writeField(way.getId());
+			wayNodeWriter.writeField(wayNodes.get(i).getNodeId());
+			wayNodeWriter.writeField(i + 1);
+			wayNodeWriter.writeField(way.getVersion());
+			wayNodeWriter.endRecord();
+		}
+	}
+
+
+	/**
+	 * Adds the history rows of a relation.
+	 *
+	 * @param relation
+	 *            The relation to be added.
+	 */
+	public void addRelation(Relation relation) {
+		List<RelationMember> members;
+
+		initialize();
+
+		writeEntityFields(relationWriter, relation);
+		relationWriter.endRecord();
+
+		writeTags(relationTagWriter, relation);
+
+		members = relation.getMembers();
+		for (int i = 0; i < members.size(); i++) {
+			RelationMember member;
+
+			member = members.get(i);
+
+			relationMemberWriter.writeField(relation.getId());
+			relationMemberWriter.writeField(memberTypeRenderer.render(member.getMemberType()));
+			relationMemberWriter.writeField(member.getMemberId());
+			relationMemberWriter.writeField(i + 1);
+			relationMemberWriter.writeField(member.getMemberRole());
+			relationMemberWriter.writeField(relation.getVersion());
+			relationMemberWriter.endRecord();
+		}
+	}
+
+
+	/**
+	 * Loads all rows added so far into the database. The load is not committed.
+	 */
+	public void load() {
+		initialize();
+
+		for (CopyFileWriter writer : writers) {
+			writer.complete();
+		}
+
+		// Defer any deferrable constraints until the transaction commits so
+		// that tables can be loaded without regard to row order.
+		dbCtx.executeStatement("SET CONSTRAINTS ALL DEFERRED");
+
+		LOG.fine("Loading history tables using COPY.");
+		dbCtx.loadCopyFile(nodeFile, "nodes",
+				"node_id", "timestamp", "version", "visible", "changeset_id", "latitude", "longitude", "tile");
+		dbCtx.loadCopyFile(nodeTagFile, "node_tags", "node_id", "k", "v", "version");
+		dbCtx.loadCopyFile(wayFile, "ways", "way_id", "timestamp", "version", "visible", "changeset_id");
+		dbCtx.loadCopyFile(wayTagFile, "way_tags", "way_id", "k", "v", "version");
+		dbCtx.loadCopyFile(wayNodeFile, "way_nodes", "way_id", "node_id", "sequence_id", "version");
+		dbCtx.loadCopyFile(relationFile, "relations",
+				"relation_id", "timestamp", "version", "visible", "changeset_id");
+		dbCtx.loadCopyFile(relationTagFile, "relation_tags", "relation_id", "k", "v", "version");
+		dbCtx.loadCopyFile(relationMemberFile, "relation_members",
+				"relation_id", "member_type", "member_id", "sequence_id", "member_role", "version");
+		LOG.fine("History tables loaded.");
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		for (CopyFileWriter writer : writers) {
+			writer.close();
+		}
+		writers.clear();
+
+		for (File tmpFile : tmpFiles) {
+			TempFileManager.getInstance().release(tmpFile);
+		}
+		tmpFiles.clear();
+
+		initialized = false;
+	}
+}
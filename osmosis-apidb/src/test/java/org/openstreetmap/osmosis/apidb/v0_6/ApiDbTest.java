@@ -87,6 +87,53 @@ public class ApiDbTest extends AbstractDataTest {
         dataUtils.compareFiles(inputFile, outputFile);
     }
 
+    /**
+     * Tests loading an osm file into the database using COPY from a background writer thread, then
+     * dumping it again and verifying that it is identical.
+     * 
+     * @throws IOException if any file operations fail.
+     */
+    @Test
+    public void testLoadAndDumpCopy() throws IOException {
+        File authFile;
+        File inputFile;
+        File outputFile;
+
+        // Generate input files.
+        authFile = dbUtils.getAuthorizationFile();
+        inputFile = dataUtils.createDataFile("v0_6/db-snapshot.osm");
+        outputFile = dataUtils.newFile();
+
+        // Remove all existing data from the database.
+        dbUtils.truncateDatabase();
+
+        // Load the database with a dataset.
+        Osmosis.run(new String[] {
+        		"-q",
+        		"--read-xml-0.6",
+        		inputFile.getPath(),
+        		"--write-apidb-0.6",
+                "authFile=" + authFile.getPath(),
+        		"allowIncorrectSchemaVersion=true",
+        		"useCopy=true",
+        		"asyncWrite=true"
+                });
+
+        // Dump the database to an osm file.
+        Osmosis.run(new String[] {
+        		"-q",
+        		"--read-apidb-0.6",
+        		"authFile=" + authFile.getPath(),
+        		"allowIncorrectSchemaVersion=true",
+        		"--tag-sort-0.6",
+                "--write-xml-0.6",
+                outputFile.getPath()
+                });
+
+        // Validate that the output file matches the input file.
+        dataUtils.compareFiles(inputFile, outputFile);
+    }
+
     /**
      * A basic test loading an osm file into a apidb database, then dumping it from current tables
      * and verifying that it is identical.
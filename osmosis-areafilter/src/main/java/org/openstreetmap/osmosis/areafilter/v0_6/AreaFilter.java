@@ -100,6 +100,8 @@ public abstract class AreaFilter implements SinkSource, EntityProcessor {
 			allRelations =
 				new SimpleObjectStore<RelationContainer>(
 						new SingleClassObjectSerializationFactory(RelationContainer.class), "afr", true);
+			
+			SimpleObjectStore.enablePrefetch(allNodes, allWays, allRelations);
 		} else if (cascadingRelations) {
             allRelations = 
 				new SimpleObjectStore<RelationContainer>(
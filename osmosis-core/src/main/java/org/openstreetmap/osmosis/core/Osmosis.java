@@ -8,6 +8,11 @@ import java.util.logging.Logger;
 
 import org.openstreetmap.osmosis.core.cli.CommandLineParser;
 import org.openstreetmap.osmosis.core.pipeline.common.Pipeline;
+import org.openstreetmap.osmosis.core.store.BlockCache;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
+import org.openstreetmap.osmosis.core.store.PrefetchingInputStream;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 
 
 /**
@@ -61,6 +66,7 @@ public final class Osmosis {
 		CommandLineParser commandLineParser;
 		TaskRegistrar taskRegistrar;
 		Pipeline pipeline;
+		MemoryGrant blockCacheGrant;
 		long startTime;
 		long finishTime;
 		
@@ -77,6 +83,16 @@ public final class Osmosis {
 		configureLoggingLevel(commandLineParser.getLogLevelIndex());
 		
 		LOG.info("Osmosis Version " + OsmosisConstants.VERSION);
+		
+		TempFileManager.getInstance().configure(
+				commandLineParser.getTempDirectories(), commandLineParser.getTempSpace());
+		
+		PrefetchingInputStream.setConfiguredPrefetchDepth(commandLineParser.getPrefetchDepth());
+		
+		MemoryManager.getInstance().setBudget(commandLineParser.getMemory());
+		blockCacheGrant = MemoryManager.getInstance().request(
+				"block cache", BlockCache.DEFAULT_MAXIMUM_SIZE, BlockCache.MINIMUM_SIZE, BlockCache.BUDGET_WEIGHT);
+		
 		taskRegistrar = new TaskRegistrar();
 		taskRegistrar.initialize(commandLineParser.getPlugins());
 		
@@ -85,6 +101,10 @@ public final class Osmosis {
 		LOG.info("Preparing pipeline.");
 		pipeline.prepare(commandLineParser.getTaskInfoList());
 		
+		// All tasks have now requested memory so the budget can be divided.
+		MemoryManager.getInstance().allocate();
+		BlockCache.getInstance().setMaximumSize(blockCacheGrant.getBytes());
+		
 		LOG.info("Launching pipeline execution.");
 		pipeline.execute();
 		
@@ -93,6 +113,8 @@ public final class Osmosis {
 		
 		LOG.info("Pipeline complete.");
 		
+		TempFileManager.getInstance().logUsage();
+		
 		finishTime = System.currentTimeMillis();
 		
 		LOG.info("Total execution time: " + (finishTime - startTime) + " milliseconds.");
@@ -0,0 +1,182 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.buffer.v0_6;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.store.DataPostbox;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+
+/**
+ * Runs a sink on a dedicated thread owned by this class. Entities passed to
+ * this sink are handed to the wrapped sink in chunks through a bounded buffer,
+ * allowing the calling thread to continue producing data while the wrapped sink
+ * is busy. This is intended for sinks such as database writers which spend much
+ * of their time waiting on external resources.
+ * <p>
+ * Unlike the {@link EntityBuffer} task this is not visible within the pipeline,
+ * tasks use it internally. All methods of the wrapped sink including close are
+ * invoked on the background thread. Failures of the wrapped sink are re-thrown
+ * on the calling thread.
+ *
+ * @author Brett Henderson
+ */
+public class BackgroundSink implements Sink {
+
+	private static final Logger LOG = Logger.getLogger(BackgroundSink.class.getName());
+
+
+	private Sink sink;
+	private String threadName;
+	private DataPostbox<EntityContainer> buffer;
+	private Thread sinkThread;
+	private volatile Throwable sinkException;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param sink
+	 *            The sink to be run on the background thread.
+	 * @param bufferCapacity
+	 *            The maximum number of entities to hold before blocking the
+	 *            calling thread.
+	 * @param threadName
+	 *            The name of the background thread.
+	 */
+	public BackgroundSink(Sink sink, int bufferCapacity, String threadName) {
+		this.sink = sink;
+		this.threadName = threadName;
+
+		buffer = new DataPostbox<EntityContainer>(bufferCapacity);
+	}
+
+
+	/**
+	 * Passes all buffered data to the wrapped sink. This runs on the
+	 * background thread.
+	 */
+	private void runSink() {
+		try {
+			sink.initialize(buffer.outputInitialize());
+
+			while (buffer.hasNext()) {
+				sink.process(buffer.getNext());
+			}
+
+			sink.complete();
+			buffer.outputComplete();
+
+		} catch (Throwable t) {
+			// Record the failure before the buffer is released so that it is
+			// visible to the calling thread when the buffer reports the error.
+			sinkException = t;
+
+		} finally {
+			try {
+				sink.close();
+			} catch (Throwable t) {
+				LOG.log(Level.WARNING, "Unable to close the sink on thread " + threadName + ".", t);
+			}
+			buffer.outputRelease();
+		}
+	}
+
+
+	/**
+	 * Creates the exception to throw on the calling thread when the buffer
+	 * reports a failure, using the background thread failure as the cause if
+	 * one has occurred.
+	 *
+	 * @param e
+	 *            The exception raised by the buffer.
+	 * @return The exception to be thrown.
+	 */
+	private OsmosisRuntimeException createFailureException(OsmosisRuntimeException e) {
+		if (sinkException != null) {
+			return new OsmosisRuntimeException("Processing failed on thread " + threadName + ".", sinkException);
+		} else {
+			return e;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize(Map<String, Object> metaData) {
+		if (sinkThread == null) {
+			sinkThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					runSink();
+				}
+			}, threadName);
+			sinkThread.setDaemon(true);
+			sinkThread.start();
+		}
+
+		try {
+			buffer.initialize(metaData);
+		} catch (OsmosisRuntimeException e) {
+			throw createFailureException(e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(EntityContainer entityContainer) {
+		try {
+			buffer.put(entityContainer);
+		} catch (OsmosisRuntimeException e) {
+			throw createFailureException(e);
+		}
+	}
+
+
+	/**
+	 * Passes all remaining data to the wrapped sink and waits for it to
+	 * complete.
+	 */
+	@Override
+	public void complete() {
+		try {
+			buffer.complete();
+		} catch (OsmosisRuntimeException e) {
+			throw createFailureException(e);
+		}
+	}
+
+
+	/**
+	 * Releases the wrapped sink and waits for the background thread to exit.
+	 */
+	@Override
+	public void close() {
+		if (sinkThread != null) {
+			buffer.close();
+
+			try {
+				sinkThread.join();
+			} catch (InterruptedException e) {
+				LOG.log(Level.WARNING, "Interrupted while waiting for thread " + threadName + " to exit.", e);
+				Thread.currentThread().interrupt();
+			}
+
+			sinkThread = null;
+
+		} else {
+			// The background thread was never started so the sink must be
+			// released directly.
+			sink.close();
+		}
+	}
+}
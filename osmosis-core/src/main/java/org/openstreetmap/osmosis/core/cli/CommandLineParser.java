@@ -1,6 +1,7 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.core.cli;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.Map;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.pipeline.common.PipelineConstants;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.store.PrefetchingInputStream;
 
 
 /**
@@ -27,6 +29,14 @@ public class CommandLineParser {
 	private static final String OPTION_VERBOSE_LONG = "verbose";
 	private static final String OPTION_PLUGIN_SHORT = "p";
 	private static final String OPTION_PLUGIN_LONG = "plugin";
+	private static final String OPTION_TEMP_DIR_SHORT = "t";
+	private static final String OPTION_TEMP_DIR_LONG = "tempdir";
+	private static final String OPTION_TEMP_SPACE_SHORT = "ts";
+	private static final String OPTION_TEMP_SPACE_LONG = "tempspace";
+	private static final String OPTION_MEMORY_SHORT = "m";
+	private static final String OPTION_MEMORY_LONG = "memory";
+	private static final String OPTION_PREFETCH_SHORT = "pf";
+	private static final String OPTION_PREFETCH_LONG = "prefetch";
 	
 	
 	/**
@@ -35,10 +45,17 @@ public class CommandLineParser {
 	private static final int DEFAULT_LOG_LEVEL_INDEX = 3;
 	
 	
+	private static final long BYTES_PER_KILOBYTE = 1024;
+	
+	
 	private List<TaskConfiguration> taskConfigList;
 	private int quietValue;
 	private int verboseValue;
 	private List<String> plugins;
+	private List<File> tempDirectories;
+	private long tempSpace;
+	private long memory;
+	private int prefetchDepth;
 	
 	
 	/**
@@ -50,6 +67,10 @@ public class CommandLineParser {
 		quietValue = 0;
 		verboseValue = 0;
 		plugins = new ArrayList<String>();
+		tempDirectories = new ArrayList<File>();
+		tempSpace = 0;
+		memory = 0;
+		prefetchDepth = PrefetchingInputStream.DEFAULT_PREFETCH_DEPTH;
 	}
 	
 	
@@ -88,6 +109,15 @@ public class CommandLineParser {
 				verboseValue = parseOptionIntegerWithDefault(globalOption, 0) + 1;
 			} else if (isArgumentForOption(OPTION_PLUGIN_SHORT, OPTION_PLUGIN_LONG, globalOption.name)) {
 				plugins.add(parseOptionString(globalOption));
+			} else if (isArgumentForOption(OPTION_TEMP_DIR_SHORT, OPTION_TEMP_DIR_LONG, globalOption.name)) {
+				tempDirectories.addAll(parseOptionFileList(globalOption));
+			} else if (isArgumentForOption(OPTION_TEMP_SPACE_SHORT, OPTION_TEMP_SPACE_LONG, globalOption.name)) {
+				tempSpace = parseOptionByteSize(globalOption);
+			} else if (isArgumentForOption(OPTION_MEMORY_SHORT, OPTION_MEMORY_LONG, globalOption.name)) {
+				memory = parseOptionByteSize(globalOption);
+			} else if (isArgumentForOption(OPTION_PREFETCH_SHORT, OPTION_PREFETCH_LONG, globalOption.name)) {
+				prefetchDepth = parseOptionIntegerWithDefault(
+						globalOption, PrefetchingInputStream.DEFAULT_PREFETCH_DEPTH);
 			} else {
 				throw new OsmosisRuntimeException("Argument " + (globalOption.offset + 1)
 						+ " specifies an unrecognised option \"" + GLOBAL_ARGUMENT_PREFIX + globalOption.name
@@ -190,6 +220,84 @@ public class CommandLineParser {
 	}
 	
 	
+	/**
+	 * Parses a command line option into a list of files. At least one file
+	 * must be specified.
+	 * 
+	 * @param globalOption
+	 *            The global option to be parsed.
+	 * @return The files.
+	 */
+	private List<File> parseOptionFileList(GlobalOptionConfiguration globalOption) {
+		List<File> files;
+		
+		if (globalOption.parameters.size() <= 0) {
+			throw new OsmosisRuntimeException(
+					"Expected argument " + (globalOption.offset + 1) + " to have at least one parameter.");
+		}
+		
+		files = new ArrayList<File>();
+		for (String parameter : globalOption.parameters) {
+			files.add(new File(parameter));
+		}
+		
+		return files;
+	}
+	
+	
+	/**
+	 * Parses a command line option into a number of bytes. The value may be
+	 * suffixed with K, M, G or T to specify kilobytes, megabytes, gigabytes or
+	 * terabytes respectively.
+	 * 
+	 * @param globalOption
+	 *            The global option to be parsed.
+	 * @return The number of bytes.
+	 */
+	private long parseOptionByteSize(GlobalOptionConfiguration globalOption) {
+		String value;
+		long multiplier;
+		char unit;
+		
+		value = parseOptionString(globalOption).trim();
+		multiplier = 1;
+		
+		if (value.length() > 0) {
+			unit = Character.toUpperCase(value.charAt(value.length() - 1));
+			
+			if (unit == 'K') {
+				multiplier = BYTES_PER_KILOBYTE;
+			} else if (unit == 'M') {
+				multiplier = BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE;
+			} else if (unit == 'G') {
+				multiplier = BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE;
+			} else if (unit == 'T') {
+				multiplier = BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE * BYTES_PER_KILOBYTE;
+			}
+			
+			if (multiplier > 1) {
+				value = value.substring(0, value.length() - 1);
+			}
+		}
+		
+		try {
+			long result;
+			
+			result = Long.parseLong(value) * multiplier;
+			if (result < 0) {
+				throw new NumberFormatException();
+			}
+			
+			return result;
+			
+		} catch (NumberFormatException e) {
+			throw new OsmosisRuntimeException(
+					"Expected argument " + (globalOption.offset + 2)
+					+ " to contain a positive size in bytes, optionally suffixed with K, M, G or T.");
+		}
+	}
+	
+	
 	/**
 	 * Parses the details of a single option.
 	 * 
@@ -355,6 +463,49 @@ public class CommandLineParser {
 	}
 	
 	
+	/**
+	 * Returns the directories to be used for temporary files.
+	 * 
+	 * @return The list of directories, empty if the system default should be
+	 *         used.
+	 */
+	public List<File> getTempDirectories() {
+		return tempDirectories;
+	}
+	
+	
+	/**
+	 * Returns the maximum number of bytes to be used by temporary files.
+	 * 
+	 * @return The temporary space budget in bytes, 0 if unlimited.
+	 */
+	public long getTempSpace() {
+		return tempSpace;
+	}
+	
+	
+	/**
+	 * Returns the memory budget to be shared between all tasks.
+	 * 
+	 * @return The memory budget in bytes, 0 if each task should use its
+	 *         defaults.
+	 */
+	public long getMemory() {
+		return memory;
+	}
+	
+	
+	/**
+	 * Returns the number of blocks to read ahead when tasks re-read their
+	 * temporary files.
+	 * 
+	 * @return The prefetch depth, 0 if read-ahead is disabled.
+	 */
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+	
+	
 	/**
 	 * A data storage class holding information relating to a global option
 	 * during parsing.
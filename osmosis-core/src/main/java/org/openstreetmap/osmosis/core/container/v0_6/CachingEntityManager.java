@@ -0,0 +1,284 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.container.v0_6;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
+
+
+/**
+ * Wraps an entity manager with a size bounded cache of retrieved entities.
+ * This avoids repeated database queries when dataset consumers look up the
+ * same entities many times, such as the nodes shared by adjacent ways. The
+ * least recently used entities are evicted once the cache is full, and entities
+ * are removed from the cache whenever they are written via this manager.
+ * <p>
+ * Cached entities are made read-only because they are shared between callers.
+ * Callers wishing to modify a retrieved entity must use
+ * {@link Entity#getWriteableInstance()}.
+ *
+ * @author Brett Henderson
+ * @param <T>
+ *            The entity type to be supported.
+ */
+public class CachingEntityManager<T extends Entity> implements EntityManager<T> {
+
+	/**
+	 * The smallest number of entities a cache will be sized for when the memory
+	 * budget is too small for its requested size.
+	 */
+	private static final int MIN_CACHE_SIZE = 1000;
+
+	private EntityManager<T> entityManager;
+	private int maximumSize;
+	private Map<Long, T> cache;
+	private long hitCount;
+	private long missCount;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param entityManager
+	 *            The underlying entity manager to load entities from.
+	 * @param maximumSize
+	 *            The maximum number of entities to hold in the cache.
+	 */
+	public CachingEntityManager(EntityManager<T> entityManager, int maximumSize) {
+		if (maximumSize < 1) {
+			throw new OsmosisRuntimeException("The cache size must be at least 1, " + maximumSize + " was specified.");
+		}
+
+		this.entityManager = entityManager;
+		this.maximumSize = maximumSize;
+
+		cache = new LinkedHashMap<Long, T>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+				return size() > CachingEntityManager.this.maximumSize;
+			}
+		};
+	}
+
+
+	/**
+	 * Requests a share of the memory budget for a group of caches. Caches are
+	 * typically created while the pipeline is running, so the owning task
+	 * should request their memory during construction and size the caches
+	 * from the grant using {@link #getMaximumSize(MemoryGrant, int)}.
+	 *
+	 * @param maximumSize
+	 *            The maximum number of entities each cache would hold without
+	 *            a budget.
+	 * @param cacheCount
+	 *            The number of caches sharing the grant.
+	 * @return The grant.
+	 */
+	public static MemoryGrant requestMemory(int maximumSize, int cacheCount) {
+		return MemoryManager.getInstance().request(
+				"entity cache",
+				(long) maximumSize * cacheCount * MemoryManager.ESTIMATED_ENTITY_SIZE,
+				(long) Math.min(maximumSize, MIN_CACHE_SIZE) * cacheCount * MemoryManager.ESTIMATED_ENTITY_SIZE);
+	}
+
+
+	/**
+	 * Calculates the maximum number of entities each cache may hold within a
+	 * grant.
+	 *
+	 * @param memoryGrant
+	 *            The grant returned by {@link #requestMemory(int, int)}.
+	 * @param cacheCount
+	 *            The number of caches sharing the grant.
+	 * @return The maximum cache size.
+	 */
+	public static int getMaximumSize(MemoryGrant memoryGrant, int cacheCount) {
+		long size;
+
+		size = memoryGrant.getBytes() / cacheCount / MemoryManager.ESTIMATED_ENTITY_SIZE;
+		if (size < 1) {
+			size = 1;
+		}
+		if (size > Integer.MAX_VALUE) {
+			size = Integer.MAX_VALUE;
+		}
+
+		return (int) size;
+	}
+
+
+	private T addToCache(T entity) {
+		entity.makeReadOnly();
+		cache.put(entity.getId(), entity);
+
+		return entity;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T getEntity(long id) {
+		T entity;
+
+		entity = cache.get(id);
+
+		if (entity != null) {
+			hitCount++;
+		} else {
+			missCount++;
+			entity = addToCache(entityManager.getEntity(id));
+		}
+
+		return entity;
+	}
+
+
+	/**
+	 * Retrieves a group of entities, only loading those not already cached.
+	 * All missing entities are loaded with a single call to the underlying
+	 * manager. If more entities are requested than fit in the cache, only the
+	 * most recently loaded remain cached.
+	 *
+	 * @param ids
+	 *            The ids of the entities.
+	 * @return The entities that exist.
+	 */
+	@Override
+	public List<T> getEntities(long[] ids) {
+		List<T> entities;
+		long[] missingIds;
+		int missingCount;
+
+		entities = new ArrayList<T>(ids.length);
+		missingIds = new long[ids.length];
+		missingCount = 0;
+
+		for (long id : ids) {
+			T entity;
+
+			entity = cache.get(id);
+			if (entity != null) {
+				hitCount++;
+				entities.add(entity);
+			} else {
+				missCount++;
+				missingIds[missingCount++] = id;
+			}
+		}
+
+		if (missingCount > 0) {
+			for (T entity : entityManager.getEntities(Arrays.copyOf(missingIds, missingCount))) {
+				entities.add(addToCache(entity));
+			}
+		}
+
+		return entities;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ReleasableIterator<T> iterate() {
+		return entityManager.iterate();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean exists(long id) {
+		return cache.containsKey(id) || entityManager.exists(id);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addEntity(T entity) {
+		cache.remove(entity.getId());
+		entityManager.addEntity(entity);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void modifyEntity(T entity) {
+		cache.remove(entity.getId());
+		entityManager.modifyEntity(entity);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeEntity(long entityId) {
+		cache.remove(entityId);
+		entityManager.removeEntity(entityId);
+	}
+
+
+	/**
+	 * Gets the number of entity requests satisfied by the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+
+	/**
+	 * Gets the number of entity requests that required the underlying manager.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+
+	/**
+	 * Gets the proportion of entity requests satisfied by the cache.
+	 *
+	 * @return The hit rate between 0 and 1, or 0 if no requests have been made.
+	 */
+	public double getHitRate() {
+		long requestCount;
+
+		requestCount = hitCount + missCount;
+		if (requestCount == 0) {
+			return 0;
+		}
+
+		return (double) hitCount / requestCount;
+	}
+
+
+	/**
+	 * Gets the number of entities currently held in the cache.
+	 *
+	 * @return The cached entity count.
+	 */
+	public int getSize() {
+		return cache.size();
+	}
+}
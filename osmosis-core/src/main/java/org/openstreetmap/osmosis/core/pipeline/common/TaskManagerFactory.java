@@ -11,6 +11,7 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
 
 
 /**
@@ -57,7 +58,13 @@ public abstract class TaskManagerFactory {
 		// Create a new accessed task options store.
 		accessedTaskOptions.set(new HashSet<String>());
 		
-		taskManager = createTaskManagerImpl(taskConfig);
+		// Attribute any memory requested during task creation to this task.
+		MemoryManager.getInstance().beginTask(taskConfig.getId());
+		try {
+			taskManager = createTaskManagerImpl(taskConfig);
+		} finally {
+			MemoryManager.getInstance().endTask();
+		}
 		
 		for (String argName : taskConfig.getConfigArgs().keySet()) {
 			if (!accessedTaskOptions.get().contains(argName)) {
@@ -9,8 +9,11 @@ import java.util.List;
 import org.openstreetmap.osmosis.core.lifecycle.Closeable;
 import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
 import org.openstreetmap.osmosis.core.store.ChunkedObjectStore;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
 import org.openstreetmap.osmosis.core.store.ObjectSerializationFactory;
 import org.openstreetmap.osmosis.core.store.PersistentIterator;
+import org.openstreetmap.osmosis.core.store.PrefetchingInputStream;
 import org.openstreetmap.osmosis.core.store.Storeable;
 
 
@@ -24,12 +27,24 @@ import org.openstreetmap.osmosis.core.store.Storeable;
  */
 public class FileBasedSort<T extends Storeable> implements Closeable {
 	/**
-	 * The maximum number of entities to perform memory-based sorting on,
-	 * amounts larger than this will be split into chunks of this size, the
+	 * The default maximum number of entities to perform memory-based sorting
+	 * on, amounts larger than this will be split into chunks of this size, the
 	 * chunks sorted in memory before writing to file, and all the results
-	 * merged using the merge sort algorithm.
+	 * merged using the merge sort algorithm. If a memory budget is configured
+	 * the actual chunk size is derived from the memory granted to the sort.
 	 */
-	private static final int MAX_MEMORY_SORT_COUNT = 16384;
+	private static final int DEFAULT_MEMORY_SORT_COUNT = 16384;
+	
+	/**
+	 * The smallest chunk size to use regardless of the memory granted.
+	 */
+	private static final int MIN_MEMORY_SORT_COUNT = 1024;
+	
+	/**
+	 * The estimated heap size of a single object held in the add buffer. This
+	 * is a deliberately generous figure for an entity with a few tags.
+	 */
+	private static final int ESTIMATED_OBJECT_SIZE = 1024;
 	
 	/**
 	 * The maximum number of sources to merge together at a single level of the
@@ -50,12 +65,22 @@ public class FileBasedSort<T extends Storeable> implements Closeable {
 	 */
 	private static final int MAX_MEMORY_SORT_DEPTH = 8;
 	
+	/**
+	 * The maximum number of chunks for which read-ahead is enabled during the
+	 * merge. Every chunk being merged is read on its own thread, and up to 2
+	 * raised to the power of MAX_MEMORY_SORT_DEPTH chunks may be open at once,
+	 * so larger sorts read their chunks on the merging thread.
+	 */
+	private static final int MAX_PREFETCH_CHUNK_COUNT = 16;
+	
 
 	private ObjectSerializationFactory serializationFactory;
 	private Comparator<T> comparator;
 	private ChunkedObjectStore<T> chunkedEntityStore;
 	private List<T> addBuffer;
 	private boolean useCompression;
+	private MemoryGrant memoryGrant;
+	private int maxMemorySortCount;
 	
 	
 	/**
@@ -75,7 +100,37 @@ public class FileBasedSort<T extends Storeable> implements Closeable {
 		this.useCompression = useCompression;
 		
 		chunkedEntityStore = new ChunkedObjectStore<T>(serializationFactory, "emta", "idx", useCompression);
-		addBuffer = new ArrayList<T>(MAX_MEMORY_SORT_COUNT);
+		addBuffer = new ArrayList<T>();
+		
+		// The chunk size can only be calculated once all tasks have requested
+		// memory, so it is calculated when the first object is added.
+		memoryGrant = MemoryManager.getInstance().request(
+				"sort buffer",
+				(long) DEFAULT_MEMORY_SORT_COUNT * ESTIMATED_OBJECT_SIZE,
+				(long) MIN_MEMORY_SORT_COUNT * ESTIMATED_OBJECT_SIZE);
+		maxMemorySortCount = 0;
+	}
+	
+	
+	/**
+	 * Calculates the number of objects to sort in memory based on the memory
+	 * granted to this sort.
+	 * 
+	 * @return The maximum number of objects in a single chunk.
+	 */
+	private int calculateMaxMemorySortCount() {
+		long count;
+		
+		count = memoryGrant.getBytes() / ESTIMATED_OBJECT_SIZE;
+		
+		if (count < MIN_MEMORY_SORT_COUNT) {
+			count = MIN_MEMORY_SORT_COUNT;
+		}
+		if (count > Integer.MAX_VALUE - 1) {
+			count = Integer.MAX_VALUE - 1;
+		}
+		
+		return (int) count;
 	}
 	
 	
@@ -109,12 +164,16 @@ public class FileBasedSort<T extends Storeable> implements Closeable {
 	 *            The data object.
 	 */
 	public void add(T value) {
+		if (maxMemorySortCount == 0) {
+			maxMemorySortCount = calculateMaxMemorySortCount();
+		}
+		
 		// Add the new data entity to the add buffer.
 		addBuffer.add(value);
 		
 		// If the add buffer is full, it must be sorted and written to entity
 		// storage.
-		if (addBuffer.size() >= MAX_MEMORY_SORT_COUNT) {
+		if (addBuffer.size() >= maxMemorySortCount) {
 			flushAddBuffer();
 		}
 	}
@@ -278,6 +337,14 @@ public class FileBasedSort<T extends Storeable> implements Closeable {
 	public ReleasableIterator<T> iterate() {
 		flushAddBuffer();
 		
+		// Overlap the reading and decompression of each chunk with the merge
+		// unless there are too many chunks to give each a thread.
+		if (chunkedEntityStore.getChunkCount() <= MAX_PREFETCH_CHUNK_COUNT) {
+			chunkedEntityStore.setPrefetchDepth(PrefetchingInputStream.getConfiguredPrefetchDepth());
+		} else {
+			chunkedEntityStore.setPrefetchDepth(0);
+		}
+		
 		return iterate(0, 0, chunkedEntityStore.getChunkCount());
 	}
 	
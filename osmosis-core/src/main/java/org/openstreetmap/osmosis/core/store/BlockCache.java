@@ -0,0 +1,349 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A process-wide cache of fixed size blocks read from store files. Blocks are
+ * keyed by file and block offset and evicted in least recently used order once
+ * the total size of cached blocks exceeds the configured maximum. All methods
+ * are thread safe allowing multiple readers (potentially on different threads)
+ * to share blocks loaded by each other.
+ * <p>
+ * Only files that are no longer being modified may be read through the cache.
+ * All stores in this package only allow reading once writing has completed.
+ *
+ * @author Brett Henderson
+ */
+public final class BlockCache {
+
+	/**
+	 * The size of each cached block in bytes.
+	 */
+	public static final int BLOCK_SIZE = 8192;
+
+	/**
+	 * The default maximum number of bytes held by the cache.
+	 */
+	public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * The weight of the cache when dividing a pipeline memory budget. This is
+	 * the default size of a single sort buffer rather than the cache's own
+	 * default size so that the cache receives an equal share with each sort
+	 * instead of most of the budget.
+	 */
+	public static final long BUDGET_WEIGHT = 16L * 1024 * 1024;
+
+	/**
+	 * The smallest size granted to the cache from a pipeline memory budget.
+	 */
+	public static final long MINIMUM_SIZE = 1024L * 1024;
+
+	private static final BlockCache INSTANCE = new BlockCache(DEFAULT_MAXIMUM_SIZE);
+
+	private final Map<BlockKey, byte[]> blocks;
+	private long maximumSize;
+	private long currentSize;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+
+
+	/**
+	 * Creates a new instance. Most callers should use the shared instance
+	 * returned by {@link #getInstance()}.
+	 *
+	 * @param maximumSize
+	 *            The maximum number of bytes to hold in the cache.
+	 */
+	public BlockCache(long maximumSize) {
+		this.maximumSize = maximumSize;
+
+		blocks = new LinkedHashMap<BlockKey, byte[]>(16, 0.75f, true);
+		currentSize = 0;
+		hitCount = new AtomicLong();
+		missCount = new AtomicLong();
+	}
+
+
+	/**
+	 * Returns the cache shared by all store readers in the process.
+	 *
+	 * @return The shared cache.
+	 */
+	public static BlockCache getInstance() {
+		return INSTANCE;
+	}
+
+
+	/**
+	 * Creates a key identifying the current contents of the specified file. The
+	 * key incorporates the file length and modification time so that blocks
+	 * belonging to a deleted file are never returned for a new file that
+	 * happens to re-use the same name.
+	 *
+	 * @param file
+	 *            The file to be identified.
+	 * @return The file key.
+	 */
+	public static FileKey createFileKey(File file) {
+		return new FileKey(file.getAbsolutePath(), file.length(), file.lastModified());
+	}
+
+
+	/**
+	 * Returns the block beginning at the specified offset, reading it from the
+	 * file if it is not already cached. The returned array must not be
+	 * modified.
+	 *
+	 * @param fileKey
+	 *            The key identifying the file.
+	 * @param randomFile
+	 *            The file to read from if the block is not cached.
+	 * @param blockOffset
+	 *            The file offset of the block, must be a multiple of
+	 *            {@link #BLOCK_SIZE}.
+	 * @return The block data. This will be shorter than {@link #BLOCK_SIZE}
+	 *         for the final block in the file, and empty if the offset is
+	 *         beyond the end of the file.
+	 * @throws IOException
+	 *             if the block cannot be read from the file.
+	 */
+	public byte[] getBlock(FileKey fileKey, RandomAccessFile randomFile, long blockOffset) throws IOException {
+		BlockKey key;
+		byte[] block;
+
+		key = new BlockKey(fileKey, blockOffset);
+
+		synchronized (this) {
+			block = blocks.get(key);
+		}
+		if (block != null) {
+			hitCount.incrementAndGet();
+			return block;
+		}
+
+		missCount.incrementAndGet();
+
+		// Read outside the lock so that readers of other blocks aren't blocked
+		// on disk i/o. Two threads may occasionally load the same block which
+		// is harmless.
+		block = readBlock(randomFile, blockOffset);
+
+		synchronized (this) {
+			if (blocks.put(key, block) == null) {
+				currentSize += block.length;
+			}
+			evict();
+		}
+
+		return block;
+	}
+
+
+	private byte[] readBlock(RandomAccessFile randomFile, long blockOffset) throws IOException {
+		byte[] buffer;
+		int byteCount;
+		byte[] block;
+
+		buffer = new byte[BLOCK_SIZE];
+		byteCount = 0;
+
+		synchronized (randomFile) {
+			randomFile.seek(blockOffset);
+			while (byteCount < BLOCK_SIZE) {
+				int readCount;
+
+				readCount = randomFile.read(buffer, byteCount, BLOCK_SIZE - byteCount);
+				if (readCount < 0) {
+					break;
+				}
+				byteCount += readCount;
+			}
+		}
+
+		if (byteCount == BLOCK_SIZE) {
+			block = buffer;
+		} else {
+			block = new byte[byteCount];
+			System.arraycopy(buffer, 0, block, 0, byteCount);
+		}
+
+		return block;
+	}
+
+
+	private void evict() {
+		Iterator<byte[]> blockIterator;
+
+		blockIterator = blocks.values().iterator();
+		while (currentSize > maximumSize && blockIterator.hasNext()) {
+			currentSize -= blockIterator.next().length;
+			blockIterator.remove();
+		}
+	}
+
+
+	/**
+	 * Removes all blocks belonging to the specified file from the cache. This
+	 * should be called when a store file is deleted to free memory early.
+	 *
+	 * @param file
+	 *            The file to be removed.
+	 */
+	public synchronized void invalidate(File file) {
+		String path;
+		Iterator<Map.Entry<BlockKey, byte[]>> entryIterator;
+
+		path = file.getAbsolutePath();
+
+		entryIterator = blocks.entrySet().iterator();
+		while (entryIterator.hasNext()) {
+			Map.Entry<BlockKey, byte[]> entry;
+
+			entry = entryIterator.next();
+			if (entry.getKey().fileKey.path.equals(path)) {
+				currentSize -= entry.getValue().length;
+				entryIterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all blocks from the cache.
+	 */
+	public synchronized void clear() {
+		blocks.clear();
+		currentSize = 0;
+	}
+
+
+	/**
+	 * Changes the maximum number of bytes held by the cache. Blocks are
+	 * evicted immediately if the cache is larger than the new maximum.
+	 *
+	 * @param maximumSize
+	 *            The new maximum size in bytes. A value of 0 disables caching.
+	 */
+	public synchronized void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+		evict();
+	}
+
+
+	/**
+	 * Returns the maximum number of bytes held by the cache.
+	 *
+	 * @return The maximum size in bytes.
+	 */
+	public synchronized long getMaximumSize() {
+		return maximumSize;
+	}
+
+
+	/**
+	 * Returns the number of bytes currently held by the cache.
+	 *
+	 * @return The current size in bytes.
+	 */
+	public synchronized long getCurrentSize() {
+		return currentSize;
+	}
+
+
+	/**
+	 * Returns the number of block requests satisfied from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+
+	/**
+	 * Returns the number of block requests that required a file read.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+
+	/**
+	 * Identifies a specific version of a file.
+	 */
+	public static final class FileKey {
+		private final String path;
+		private final long length;
+		private final long lastModified;
+
+
+		private FileKey(String path, long length, long lastModified) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FileKey)) {
+				return false;
+			}
+			FileKey other = (FileKey) o;
+
+			return path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + Long.hashCode(length ^ lastModified);
+		}
+	}
+
+
+	private static final class BlockKey {
+		private final FileKey fileKey;
+		private final long blockOffset;
+
+
+		private BlockKey(FileKey fileKey, long blockOffset) {
+			this.fileKey = fileKey;
+			this.blockOffset = blockOffset;
+		}
+
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BlockKey)) {
+				return false;
+			}
+			BlockKey other = (BlockKey) o;
+
+			return blockOffset == other.blockOffset && fileKey.equals(other.fileKey);
+		}
+
+
+		@Override
+		public int hashCode() {
+			return fileKey.hashCode() * 31 + Long.hashCode(blockOffset);
+		}
+	}
+}
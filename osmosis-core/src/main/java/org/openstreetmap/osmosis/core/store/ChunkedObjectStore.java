@@ -112,6 +112,20 @@ public class ChunkedObjectStore<T extends Storeable> implements Completable {
 	}
 	
 	
+	/**
+	 * Enables background read-ahead for iterators subsequently returned by
+	 * this store.
+	 * 
+	 * @param prefetchDepth
+	 *            The number of blocks to read ahead of the consumer, 0 to
+	 *            disable read-ahead.
+	 * @see SegmentedObjectStore#setPrefetchDepth(int)
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		objectStore.setPrefetchDepth(prefetchDepth);
+	}
+	
+	
 	/**
 	 * Returns the number of chunks managed by this store. This count will
 	 * include the in progress chunk if one exists.
@@ -79,6 +79,13 @@ import org.openstreetmap.osmosis.core.task.v0_6.Initializable;
  *            The type of data held in the postbox.
  */
 public class DataPostbox<T> implements Initializable {
+	/**
+	 * The smallest number of objects a postbox will be sized for when the
+	 * memory budget is too small for its requested capacity.
+	 */
+	private static final int MIN_BUFFER_CAPACITY = 100;
+
+	private MemoryGrant memoryGrant;
 	private int bufferCapacity;
 	private int chunkSize;
 	private Lock lock;
@@ -104,21 +111,21 @@ public class DataPostbox<T> implements Initializable {
 	 * 
 	 * @param capacity
 	 *            The maximum number of objects to hold in the postbox before
-	 *            blocking.
+	 *            blocking. If a memory budget is configured the capacity is
+	 *            scaled to the share of the budget granted to the postbox.
 	 */
 	public DataPostbox(int capacity) {
 		if (capacity <= 0) {
 			throw new OsmosisRuntimeException("A capacity of " + capacity + " is invalid, must be greater than 0.");
 		}
 
-		this.bufferCapacity = capacity;
-
-		// Use a chunk size one quarter of total buffer size. This is a magic
-		// number but performance isn't highly sensitive to this parameter.
-		chunkSize = bufferCapacity / 4;
-		if (chunkSize <= 0) {
-			chunkSize = 1;
-		}
+		// The capacity can only be calculated once all tasks have requested
+		// memory, so it is calculated when the input thread initializes.
+		memoryGrant = MemoryManager.getInstance().request(
+				"postbox buffer",
+				(long) capacity * MemoryManager.ESTIMATED_ENTITY_SIZE,
+				(long) Math.min(capacity, MIN_BUFFER_CAPACITY) * MemoryManager.ESTIMATED_ENTITY_SIZE);
+		bufferCapacity = 0;
 
 		// Create the thread synchronisation primitives.
 		lock = new ReentrantLock();
@@ -144,6 +151,31 @@ public class DataPostbox<T> implements Initializable {
 	}
 
 
+	/**
+	 * Sizes the buffer from the memory granted to this postbox. This is only
+	 * accessed by the input thread.
+	 */
+	private void calculateBufferCapacity() {
+		long capacity;
+
+		capacity = memoryGrant.getBytes() / MemoryManager.ESTIMATED_ENTITY_SIZE;
+		if (capacity < 1) {
+			capacity = 1;
+		}
+		if (capacity > Integer.MAX_VALUE) {
+			capacity = Integer.MAX_VALUE;
+		}
+		bufferCapacity = (int) capacity;
+
+		// Use a chunk size one quarter of total buffer size. This is a magic
+		// number but performance isn't highly sensitive to this parameter.
+		chunkSize = bufferCapacity / 4;
+		if (chunkSize <= 0) {
+			chunkSize = 1;
+		}
+	}
+
+
 	private void initializeQueues() {
 		// Create buffer objects.
 		centralQueue = new ArrayList<T>();
@@ -263,6 +295,9 @@ public class DataPostbox<T> implements Initializable {
 		if (inputInitialized) {
 			throw new OsmosisRuntimeException("initialize has already been called");
 		}
+		if (bufferCapacity == 0) {
+			calculateBufferCapacity();
+		}
 		
 		lock.lock();
 
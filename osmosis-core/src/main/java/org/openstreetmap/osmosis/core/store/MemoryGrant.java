@@ -0,0 +1,126 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+
+/**
+ * A share of the pipeline memory budget granted to a single consumer. The
+ * granted size is only known once the {@link MemoryManager} has allocated the
+ * budget, so consumers should call {@link #getBytes()} when they first need
+ * to size their in-memory structures rather than during construction.
+ *
+ * @author Brett Henderson
+ */
+public class MemoryGrant {
+	private MemoryManager manager;
+	private String owner;
+	private String purpose;
+	private long defaultBytes;
+	private long minimumBytes;
+	private long weight;
+	private long grantedBytes;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param manager
+	 *            The manager allocating the budget.
+	 * @param owner
+	 *            The task requesting memory.
+	 * @param purpose
+	 *            A description of what the memory will be used for.
+	 * @param defaultBytes
+	 *            The number of bytes the consumer would use without a budget.
+	 * @param minimumBytes
+	 *            The smallest number of bytes the consumer can operate with.
+	 * @param weight
+	 *            The relative size of the consumer's share of the budget.
+	 */
+	MemoryGrant(
+			MemoryManager manager, String owner, String purpose, long defaultBytes, long minimumBytes, long weight) {
+		this.manager = manager;
+		this.owner = owner;
+		this.purpose = purpose;
+		this.defaultBytes = defaultBytes;
+		this.minimumBytes = minimumBytes;
+		this.weight = weight;
+
+		grantedBytes = -1;
+	}
+
+
+	/**
+	 * Returns the task requesting memory.
+	 *
+	 * @return The owner.
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+
+	/**
+	 * Returns what the memory will be used for.
+	 *
+	 * @return The purpose.
+	 */
+	public String getPurpose() {
+		return purpose;
+	}
+
+
+	/**
+	 * Returns the number of bytes the consumer would use without a budget.
+	 *
+	 * @return The default size in bytes.
+	 */
+	public long getDefaultBytes() {
+		return defaultBytes;
+	}
+
+
+	/**
+	 * Returns the smallest number of bytes the consumer can operate with.
+	 *
+	 * @return The minimum size in bytes.
+	 */
+	public long getMinimumBytes() {
+		return minimumBytes;
+	}
+
+
+	/**
+	 * Returns the relative size of the consumer's share of the budget.
+	 *
+	 * @return The weight.
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+
+	/**
+	 * Sets the number of bytes granted.
+	 *
+	 * @param grantedBytes
+	 *            The granted size in bytes.
+	 */
+	void setGrantedBytes(long grantedBytes) {
+		this.grantedBytes = grantedBytes;
+	}
+
+
+	/**
+	 * Returns the number of bytes granted to the consumer. If the budget
+	 * hasn't been allocated yet, this triggers allocation.
+	 *
+	 * @return The granted size in bytes.
+	 */
+	public long getBytes() {
+		if (grantedBytes < 0) {
+			manager.allocate();
+		}
+
+		return grantedBytes;
+	}
+}
@@ -0,0 +1,275 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Divides a single pipeline-wide memory budget between all tasks. Tasks
+ * request a share during construction, stating the size they would use
+ * without a budget and the minimum they can operate with. Once all tasks have
+ * been created the budget is allocated in proportion to the weight of each
+ * request, which is its default size unless stated otherwise, and stores
+ * size their in-memory structures from their grant, spilling to disk beyond
+ * it.
+ * <p>
+ * Requests whose proportional share falls below their minimum are granted the
+ * minimum and the remainder of the budget is divided between the others. If
+ * the minimums alone exceed the budget they are scaled down to fit it; the
+ * budget is never exceeded.
+ * <p>
+ * If no budget is configured, every consumer is granted its default size
+ * which preserves the historical behaviour. Requests made after allocation
+ * (eg. by stores created while the pipeline is running) are granted their
+ * default size immediately.
+ *
+ * @author Brett Henderson
+ */
+public final class MemoryManager {
+
+	private static final Logger LOG = Logger.getLogger(MemoryManager.class.getName());
+
+	/**
+	 * The estimated heap size of a single entity held in memory. Consumers
+	 * whose sizes are configured as entity counts use this to convert them to
+	 * and from bytes.
+	 */
+	public static final int ESTIMATED_ENTITY_SIZE = 1024;
+
+	/**
+	 * The owner assigned to requests made outside of task creation.
+	 */
+	private static final String PIPELINE_OWNER = "pipeline";
+
+	private static final MemoryManager INSTANCE = new MemoryManager();
+
+	private long budget;
+	private boolean allocated;
+	private List<MemoryGrant> grants;
+	private ThreadLocal<String> currentOwner;
+
+
+	/**
+	 * Creates a new instance. Most callers should use the shared instance
+	 * returned by {@link #getInstance()}.
+	 */
+	public MemoryManager() {
+		budget = 0;
+		allocated = false;
+		grants = new ArrayList<MemoryGrant>();
+		currentOwner = new ThreadLocal<String>();
+	}
+
+
+	/**
+	 * Returns the manager shared by all tasks in the process.
+	 *
+	 * @return The shared manager.
+	 */
+	public static MemoryManager getInstance() {
+		return INSTANCE;
+	}
+
+
+	/**
+	 * Sets the total number of bytes to be shared between all requests. This
+	 * must be called prior to creating tasks.
+	 *
+	 * @param newBudget
+	 *            The budget in bytes, 0 to grant every request its default.
+	 */
+	public synchronized void setBudget(long newBudget) {
+		budget = newBudget;
+	}
+
+
+	/**
+	 * Marks the start of creation of a task on the current thread. All
+	 * requests made until {@link #endTask()} is called are attributed to the
+	 * task.
+	 *
+	 * @param taskId
+	 *            The identifier of the task being created.
+	 */
+	public void beginTask(String taskId) {
+		currentOwner.set(taskId);
+	}
+
+
+	/**
+	 * Marks the end of creation of a task on the current thread.
+	 */
+	public void endTask() {
+		currentOwner.set(null);
+	}
+
+
+	/**
+	 * Requests a share of the memory budget weighted by its default size.
+	 *
+	 * @param purpose
+	 *            A description of what the memory will be used for.
+	 * @param defaultBytes
+	 *            The number of bytes that would be used without a budget. This
+	 *            also acts as the weight when dividing the budget.
+	 * @param minimumBytes
+	 *            The smallest number of bytes the requester can operate with.
+	 * @return The grant which provides the allocated size once the budget has
+	 *         been allocated.
+	 */
+	public MemoryGrant request(String purpose, long defaultBytes, long minimumBytes) {
+		return request(purpose, defaultBytes, minimumBytes, defaultBytes);
+	}
+
+
+	/**
+	 * Requests a share of the memory budget.
+	 *
+	 * @param purpose
+	 *            A description of what the memory will be used for.
+	 * @param defaultBytes
+	 *            The number of bytes that would be used without a budget.
+	 * @param minimumBytes
+	 *            The smallest number of bytes the requester can operate with.
+	 * @param weight
+	 *            The relative size of the requester's share when dividing the
+	 *            budget.
+	 * @return The grant which provides the allocated size once the budget has
+	 *         been allocated.
+	 */
+	public synchronized MemoryGrant request(String purpose, long defaultBytes, long minimumBytes, long weight) {
+		MemoryGrant grant;
+		String owner;
+
+		owner = currentOwner.get();
+		if (owner == null) {
+			owner = PIPELINE_OWNER;
+		}
+
+		grant = new MemoryGrant(this, owner, purpose, defaultBytes, minimumBytes, weight);
+
+		if (allocated) {
+			grant.setGrantedBytes(defaultBytes);
+			LOG.fine("Granted " + defaultBytes + " bytes for " + purpose + " in " + owner
+					+ " after budget allocation.");
+		} else {
+			grants.add(grant);
+		}
+
+		return grant;
+	}
+
+
+	/**
+	 * Divides the budget between all outstanding requests and logs the result.
+	 * This is normally called once all tasks have been created, but will be
+	 * triggered automatically the first time a grant size is accessed.
+	 */
+	public synchronized void allocate() {
+		Level logLevel;
+
+		if (allocated) {
+			return;
+		}
+		allocated = true;
+
+		if (budget > 0) {
+			logLevel = Level.INFO;
+			LOG.info("Allocating memory budget of " + budget + " bytes between " + grants.size() + " requests.");
+			divideBudget();
+		} else {
+			logLevel = Level.FINE;
+			for (MemoryGrant grant : grants) {
+				grant.setGrantedBytes(grant.getDefaultBytes());
+			}
+		}
+
+		for (MemoryGrant grant : grants) {
+			LOG.log(logLevel, "Task " + grant.getOwner() + " granted " + grant.getBytes() + " bytes for "
+					+ grant.getPurpose() + ".");
+		}
+
+		grants.clear();
+	}
+
+
+	/**
+	 * Divides the budget between the outstanding requests in proportion to
+	 * their weights, raising shares to their minimums where necessary.
+	 */
+	private void divideBudget() {
+		List<MemoryGrant> remainingGrants;
+		long totalMinimum;
+		long remainingBudget;
+		long remainingWeight;
+		boolean minimumApplied;
+
+		totalMinimum = 0;
+		for (MemoryGrant grant : grants) {
+			totalMinimum += grant.getMinimumBytes();
+		}
+
+		// If the minimums can't all be met, scale them down to fit the budget.
+		if (totalMinimum >= budget) {
+			if (totalMinimum > budget) {
+				LOG.warning("Memory budget of " + budget + " bytes is smaller than the " + totalMinimum
+						+ " bytes required by all tasks, minimum sizes will be reduced to fit.");
+			}
+			for (MemoryGrant grant : grants) {
+				grant.setGrantedBytes((long) (budget * ((double) grant.getMinimumBytes() / totalMinimum)));
+			}
+			return;
+		}
+
+		// Grant minimums to requests whose share would be smaller, then divide
+		// what is left between the rest. Each grant at its minimum reduces the
+		// remaining shares so repeat until no more are found.
+		remainingGrants = new ArrayList<MemoryGrant>(grants);
+		remainingBudget = budget;
+		remainingWeight = 0;
+		for (MemoryGrant grant : remainingGrants) {
+			remainingWeight += grant.getWeight();
+		}
+		do {
+			minimumApplied = false;
+
+			for (Iterator<MemoryGrant> i = remainingGrants.iterator(); i.hasNext();) {
+				MemoryGrant grant;
+
+				grant = i.next();
+				if (remainingWeight <= 0
+						|| share(remainingBudget, grant.getWeight(), remainingWeight) < grant.getMinimumBytes()) {
+					grant.setGrantedBytes(grant.getMinimumBytes());
+					remainingBudget -= grant.getMinimumBytes();
+					remainingWeight -= grant.getWeight();
+					i.remove();
+					minimumApplied = true;
+				}
+			}
+		} while (minimumApplied && !remainingGrants.isEmpty());
+
+		for (MemoryGrant grant : remainingGrants) {
+			grant.setGrantedBytes(share(remainingBudget, grant.getWeight(), remainingWeight));
+		}
+	}
+
+
+	private long share(long total, long weight, long totalWeight) {
+		return (long) (total * ((double) weight / totalWeight));
+	}
+
+
+	/**
+	 * Discards all outstanding requests and allows a new budget to be
+	 * allocated. This is intended for applications running more than one
+	 * pipeline in a single process.
+	 */
+	public synchronized void reset() {
+		grants.clear();
+		allocated = false;
+	}
+}
@@ -0,0 +1,316 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+
+
+/**
+ * Reads an underlying input stream on a background thread, allowing i/o and
+ * decompression of upcoming data to overlap with processing of data already
+ * read. Data is passed to the consumer in blocks through a bounded queue so
+ * that the amount of read-ahead is limited.
+ *
+ * @author Brett Henderson
+ */
+public class PrefetchingInputStream extends InputStream {
+
+	private static final Logger LOG = Logger.getLogger(PrefetchingInputStream.class.getName());
+
+	/**
+	 * The number of bytes read from the underlying stream in each block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 16384;
+
+	/**
+	 * A prefetch depth suitable for most sequential readers.
+	 */
+	public static final int DEFAULT_PREFETCH_DEPTH = 4;
+
+	private static volatile int configuredPrefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private InputStream source;
+	private int blockSize;
+	private BlockingQueue<byte[]> queue;
+	private Thread readerThread;
+	private volatile boolean closed;
+	private volatile Throwable readerException;
+
+	private byte[] currentBlock;
+	private int currentBlockOffset;
+
+
+	/**
+	 * Sets the prefetch depth used by tasks which re-read their temporary
+	 * files in full. This is configured by the -prefetch command line option.
+	 *
+	 * @param prefetchDepth
+	 *            The number of blocks to read ahead of the consumer, 0 to
+	 *            disable read-ahead.
+	 */
+	public static void setConfiguredPrefetchDepth(int prefetchDepth) {
+		if (prefetchDepth < 0) {
+			throw new OsmosisRuntimeException(
+					"Prefetch depth cannot be negative, " + prefetchDepth + " was specified.");
+		}
+
+		configuredPrefetchDepth = prefetchDepth;
+	}
+
+
+	/**
+	 * Gets the prefetch depth used by tasks which re-read their temporary
+	 * files in full.
+	 *
+	 * @return The number of blocks to read ahead of the consumer, 0 if
+	 *         read-ahead is disabled.
+	 */
+	public static int getConfiguredPrefetchDepth() {
+		return configuredPrefetchDepth;
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param source
+	 *            The stream to read from. This will be closed when this stream
+	 *            is closed.
+	 * @param prefetchDepth
+	 *            The maximum number of blocks to read ahead of the consumer.
+	 */
+	public PrefetchingInputStream(InputStream source, int prefetchDepth) {
+		this(source, prefetchDepth, DEFAULT_BLOCK_SIZE);
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param source
+	 *            The stream to read from. This will be closed when this stream
+	 *            is closed.
+	 * @param prefetchDepth
+	 *            The maximum number of blocks to read ahead of the consumer.
+	 * @param blockSize
+	 *            The number of bytes to read from the source in each block.
+	 */
+	public PrefetchingInputStream(InputStream source, int prefetchDepth, int blockSize) {
+		if (prefetchDepth < 1) {
+			throw new OsmosisRuntimeException(
+					"Prefetch depth must be at least 1, " + prefetchDepth + " was specified.");
+		}
+
+		this.source = source;
+		this.blockSize = blockSize;
+
+		queue = new ArrayBlockingQueue<byte[]>(prefetchDepth);
+		closed = false;
+
+		readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readSource();
+			}
+		}, "store-prefetch");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+
+	/**
+	 * Reads blocks from the source stream until end of stream, an error, or
+	 * until the consumer closes this stream.
+	 */
+	private void readSource() {
+		try {
+			byte[] buffer;
+
+			buffer = new byte[blockSize];
+
+			while (!closed) {
+				int byteCount;
+
+				// Fill as much of the block as possible to avoid passing many
+				// small blocks to the consumer.
+				byteCount = 0;
+				while (byteCount < blockSize) {
+					int readCount;
+
+					readCount = source.read(buffer, byteCount, blockSize - byteCount);
+					if (readCount < 0) {
+						break;
+					}
+					byteCount += readCount;
+				}
+
+				if (byteCount > 0) {
+					byte[] block;
+
+					if (byteCount == blockSize) {
+						block = buffer;
+						buffer = new byte[blockSize];
+					} else {
+						block = new byte[byteCount];
+						System.arraycopy(buffer, 0, block, 0, byteCount);
+					}
+
+					if (!offer(block)) {
+						return;
+					}
+				}
+
+				if (byteCount < blockSize) {
+					offer(END_OF_STREAM);
+					return;
+				}
+			}
+
+		} catch (Throwable t) {
+			readerException = t;
+			offer(END_OF_STREAM);
+		}
+	}
+
+
+	/**
+	 * Adds a block to the queue, waiting for space to become available.
+	 *
+	 * @param block
+	 *            The block to add.
+	 * @return False if the consumer closed the stream while waiting.
+	 */
+	private boolean offer(byte[] block) {
+		try {
+			while (!closed) {
+				if (queue.offer(block, 1, TimeUnit.SECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			// We've been interrupted by close, fall through.
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Ensures data is available in the current block.
+	 *
+	 * @return True if data is available. False indicates that the end of stream
+	 *         has been reached.
+	 */
+	private boolean populateBlock() throws IOException {
+		if (currentBlock == END_OF_STREAM) {
+			return false;
+		}
+
+		if (currentBlock == null || currentBlockOffset >= currentBlock.length) {
+			try {
+				currentBlock = queue.take();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for prefetched data.", e);
+			}
+			currentBlockOffset = 0;
+
+			if (currentBlock == END_OF_STREAM) {
+				if (readerException != null) {
+					throw new IOException("Unable to read from the underlying stream.", readerException);
+				}
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read() throws IOException {
+		if (populateBlock()) {
+			return currentBlock[currentBlockOffset++] & 0xff;
+		} else {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (populateBlock()) {
+			int readLength;
+
+			readLength = currentBlock.length - currentBlockOffset;
+			if (readLength > len) {
+				readLength = len;
+			}
+
+			System.arraycopy(currentBlock, currentBlockOffset, b, off, readLength);
+			currentBlockOffset += readLength;
+
+			return readLength;
+
+		} else {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int available() throws IOException {
+		if (currentBlock == null || currentBlock == END_OF_STREAM) {
+			return 0;
+		}
+
+		return currentBlock.length - currentBlockOffset;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			// Stop the reader thread before closing the source so that it
+			// isn't reading from a closed stream.
+			readerThread.interrupt();
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				LOG.log(Level.WARNING, "Interrupted while waiting for the prefetch thread to stop.", e);
+				Thread.currentThread().interrupt();
+			}
+
+			queue.clear();
+			currentBlock = END_OF_STREAM;
+
+			source.close();
+		}
+	}
+}
@@ -6,8 +6,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -84,14 +84,14 @@ public class RandomAccessObjectStore<T extends Storeable> implements Completable
 		
 		// If we're not up to the add stage, initialise for adding.
 		if (stage.compareTo(StorageStage.Add) < 0) {
-			FileOutputStream fileStream = null;
+			OutputStream fileStream = null;
 			try {
 				if (storageFile == null) {
-					tempFile = File.createTempFile(tempFilePrefix, null);
+					tempFile = TempFileManager.getInstance().createTempFile(tempFilePrefix, null);
 					storageFile = tempFile;
 				} 
 				
-				fileStream = new FileOutputStream(storageFile);
+				fileStream = TempFileManager.getInstance().createOutputStream(storageFile);
 				offsetTrackingStream = new OffsetTrackingOutputStream(new BufferedOutputStream(fileStream, 65536));
 				
 				// Clear reference so that the stream doesn't get closed at the end of this method.
@@ -239,10 +239,7 @@ public class RandomAccessObjectStore<T extends Storeable> implements Completable
 		}
 		
 		if (tempFile != null) {
-			if (!tempFile.delete()) {
-				// We cannot throw an exception within a release statement.
-				LOG.warning("Unable to delete file " + tempFile);
-			}
+			TempFileManager.getInstance().release(tempFile);
 			tempFile = null;
 		}
 		
@@ -7,8 +7,9 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -34,11 +35,12 @@ public class SimpleObjectStore<T extends Storeable> implements Completable {
 	private StorageStage stage;
 	private String storageFilePrefix;
 	private File file;
-	private FileOutputStream fileOutStream;
+	private OutputStream fileOutStream;
 	private DataOutputStream dataOutStream;
 	private StoreClassRegister storeClassRegister;
 	private ObjectWriter objectWriter;
 	private boolean useCompression;
+	private int prefetchDepth;
 	
 	
 	/**
@@ -60,6 +62,37 @@ public class SimpleObjectStore<T extends Storeable> implements Completable {
 		storeClassRegister = new DynamicStoreClassRegister();
 		
 		stage = StorageStage.NotStarted;
+		prefetchDepth = 0;
+	}
+	
+	
+	/**
+	 * Enables background read-ahead for iterators subsequently returned by
+	 * this store. Reading and decompression of upcoming data will occur on a
+	 * separate thread, overlapping with processing of the returned objects.
+	 * 
+	 * @param prefetchDepth
+	 *            The number of blocks to read ahead of the consumer, 0 to
+	 *            disable read-ahead.
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		this.prefetchDepth = prefetchDepth;
+	}
+	
+	
+	/**
+	 * Enables background read-ahead at the configured prefetch depth for
+	 * stores whose contents are re-read in full, overlapping their
+	 * decompression with the processing of the returned objects.
+	 * 
+	 * @param stores
+	 *            The stores to enable read-ahead for.
+	 * @see PrefetchingInputStream#getConfiguredPrefetchDepth()
+	 */
+	public static void enablePrefetch(SimpleObjectStore<?>... stores) {
+		for (SimpleObjectStore<?> store : stores) {
+			store.setPrefetchDepth(PrefetchingInputStream.getConfiguredPrefetchDepth());
+		}
 	}
 	
 	
@@ -78,9 +111,9 @@ public class SimpleObjectStore<T extends Storeable> implements Completable {
 		// If we're not up to the add stage, initialise for adding.
 		if (stage.compareTo(StorageStage.Add) < 0) {
 			try {
-				file = File.createTempFile(storageFilePrefix, null);
+				file = TempFileManager.getInstance().createTempFile(storageFilePrefix, null);
 				
-				fileOutStream = new FileOutputStream(file);
+				fileOutStream = TempFileManager.getInstance().createOutputStream(file);
 				
 				if (useCompression) {
 					dataOutStream = new DataOutputStream(
@@ -170,12 +203,20 @@ public class SimpleObjectStore<T extends Storeable> implements Completable {
 			
 			// Create the object input stream.
 			try {
+				InputStream sourceStream;
+				
 				if (useCompression) {
-					dataInStream = new DataInputStream(
-							new BufferedInputStream(new GZIPInputStream(fileStream), 65536));
+					sourceStream = new GZIPInputStream(fileStream, 65536);
 				} else {
-					dataInStream = new DataInputStream(
-							new BufferedInputStream(fileStream, 65536));
+					sourceStream = fileStream;
+				}
+				
+				// Read-ahead is performed on a separate thread if requested,
+				// otherwise we read directly on the caller thread.
+				if (prefetchDepth > 0) {
+					dataInStream = new DataInputStream(new PrefetchingInputStream(sourceStream, prefetchDepth));
+				} else {
+					dataInStream = new DataInputStream(new BufferedInputStream(sourceStream, 65536));
 				}
 				
 			} catch (IOException e) {
@@ -228,9 +269,7 @@ public class SimpleObjectStore<T extends Storeable> implements Completable {
 		}
 		
 		if (file != null) {
-			if (!file.delete()) {
-				LOG.warning("Unable to delete file " + file);
-			}
+			TempFileManager.getInstance().release(file);
 			file = null;
 		}
 		
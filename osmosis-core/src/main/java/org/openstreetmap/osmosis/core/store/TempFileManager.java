@@ -0,0 +1,391 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+
+
+/**
+ * Allocates all temporary files used by stores. Files are striped round-robin
+ * across the configured directories, and bytes written to them are tracked
+ * against an optional budget so that a pipeline fails quickly with a clear
+ * error rather than filling a disk. Usage is tracked per owner where the owner
+ * is the thread creating the file, which for the command line application
+ * identifies the task (or chain of passive tasks) using the space.
+ * <p>
+ * The default configuration places all files in the java.io.tmpdir directory
+ * with no budget.
+ *
+ * @author Brett Henderson
+ */
+public final class TempFileManager {
+
+	private static final Logger LOG = Logger.getLogger(TempFileManager.class.getName());
+
+	/**
+	 * Directories with less usable space than this are skipped when allocating
+	 * new files, as long as another directory has more space available.
+	 */
+	private static final long MINIMUM_USABLE_SPACE = 64L * 1024 * 1024;
+
+	private static final TempFileManager INSTANCE = new TempFileManager();
+
+	private List<File> directories;
+	private int nextDirectoryIndex;
+	private long budget;
+	private long currentUsage;
+	private long peakUsage;
+	private Map<File, Allocation> allocations;
+	private Map<String, OwnerUsage> ownerUsage;
+
+
+	/**
+	 * Creates a new instance. Most callers should use the shared instance
+	 * returned by {@link #getInstance()}.
+	 */
+	public TempFileManager() {
+		directories = Collections.emptyList();
+		nextDirectoryIndex = 0;
+		budget = 0;
+		currentUsage = 0;
+		peakUsage = 0;
+		allocations = new HashMap<File, Allocation>();
+		ownerUsage = new TreeMap<String, OwnerUsage>();
+	}
+
+
+	/**
+	 * Returns the manager shared by all stores in the process.
+	 *
+	 * @return The shared manager.
+	 */
+	public static TempFileManager getInstance() {
+		return INSTANCE;
+	}
+
+
+	/**
+	 * Configures the directories and budget for subsequent allocations.
+	 *
+	 * @param newDirectories
+	 *            The directories to stripe temporary files across. If empty,
+	 *            the system temporary directory is used.
+	 * @param newBudget
+	 *            The maximum number of bytes to allow across all temporary
+	 *            files, 0 for unlimited.
+	 */
+	public synchronized void configure(List<File> newDirectories, long newBudget) {
+		for (File directory : newDirectories) {
+			if (!directory.isDirectory()) {
+				throw new OsmosisRuntimeException(
+						"Temporary directory " + directory + " does not exist or is not a directory.");
+			}
+		}
+
+		directories = new ArrayList<File>(newDirectories);
+		nextDirectoryIndex = 0;
+		budget = newBudget;
+	}
+
+
+	/**
+	 * Selects the directory for the next file. Directories are used in turn,
+	 * skipping those that are almost full.
+	 *
+	 * @return The directory, or null to use the system default.
+	 */
+	private File selectDirectory() {
+		int directoryCount;
+
+		directoryCount = directories.size();
+		if (directoryCount == 0) {
+			return null;
+		}
+
+		for (int i = 0; i < directoryCount; i++) {
+			File directory;
+
+			directory = directories.get(nextDirectoryIndex);
+			nextDirectoryIndex = (nextDirectoryIndex + 1) % directoryCount;
+
+			if (directory.getUsableSpace() >= MINIMUM_USABLE_SPACE) {
+				return directory;
+			}
+		}
+
+		// All directories are nearly full, just use the next one and let the
+		// write fail if it must.
+		return directories.get(nextDirectoryIndex);
+	}
+
+
+	/**
+	 * Creates a new temporary file.
+	 *
+	 * @param prefix
+	 *            The file name prefix, must be at least three characters.
+	 * @param suffix
+	 *            The file name suffix, null for the default.
+	 * @return The new file.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public File createTempFile(String prefix, String suffix) throws IOException {
+		File directory;
+		File file;
+		String owner;
+
+		synchronized (this) {
+			directory = selectDirectory();
+		}
+
+		file = File.createTempFile(prefix, suffix, directory);
+		owner = Thread.currentThread().getName();
+
+		synchronized (this) {
+			OwnerUsage usage;
+
+			usage = ownerUsage.get(owner);
+			if (usage == null) {
+				usage = new OwnerUsage(owner);
+				ownerUsage.put(owner, usage);
+			}
+
+			allocations.put(file, new Allocation(usage));
+		}
+
+		LOG.finer("Created temporary file " + file + " for " + owner + ".");
+
+		return file;
+	}
+
+
+	/**
+	 * Opens a stream for writing to a file. If the file was created by this
+	 * manager, all bytes written are counted against the budget. Other files
+	 * are opened without tracking which allows callers writing to either
+	 * temporary or user-specified files to use this method.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @return The output stream.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public OutputStream createOutputStream(File file) throws IOException {
+		Allocation allocation;
+		FileOutputStream fileStream;
+
+		fileStream = new FileOutputStream(file);
+
+		synchronized (this) {
+			allocation = allocations.get(file);
+		}
+
+		if (allocation == null) {
+			return fileStream;
+		} else {
+			return new TrackingOutputStream(fileStream, allocation);
+		}
+	}
+
+
+	/**
+	 * Charges space used by a file against the budget for files which aren't
+	 * written through {@link #createOutputStream(File)}, such as memory mapped
+	 * files. Files not created by this manager are ignored.
+	 *
+	 * @param file
+	 *            The file the space is used by.
+	 * @param byteCount
+	 *            The number of bytes of additional space used.
+	 * @throws IOException
+	 *             if the budget has been exceeded.
+	 */
+	public void reserve(File file, long byteCount) throws IOException {
+		Allocation allocation;
+
+		synchronized (this) {
+			allocation = allocations.get(file);
+		}
+
+		if (allocation != null) {
+			charge(allocation, byteCount);
+		}
+	}
+
+
+	/**
+	 * Charges bytes written to a file against the budget.
+	 *
+	 * @param allocation
+	 *            The file allocation being written to.
+	 * @param byteCount
+	 *            The number of bytes written.
+	 * @throws IOException
+	 *             if the budget has been exceeded.
+	 */
+	private synchronized void charge(Allocation allocation, long byteCount) throws IOException {
+		if (allocation.released) {
+			return;
+		}
+
+		if (budget > 0 && currentUsage + byteCount > budget) {
+			throw new IOException(
+					"The temporary space budget of " + budget + " bytes has been exceeded by "
+					+ allocation.owner.name + ", " + currentUsage + " bytes are already in use.");
+		}
+
+		allocation.byteCount += byteCount;
+		allocation.owner.charge(byteCount);
+
+		currentUsage += byteCount;
+		if (currentUsage > peakUsage) {
+			peakUsage = currentUsage;
+		}
+	}
+
+
+	/**
+	 * Deletes a temporary file and releases its space. Any blocks cached from
+	 * the file are discarded. This may be called for files not created by this
+	 * manager in which case they are only deleted.
+	 *
+	 * @param file
+	 *            The file to be released.
+	 */
+	public void release(File file) {
+		BlockCache.getInstance().invalidate(file);
+
+		if (!file.delete() && file.exists()) {
+			// We cannot throw an exception within a release method.
+			LOG.warning("Unable to delete file " + file);
+		}
+
+		synchronized (this) {
+			Allocation allocation;
+
+			allocation = allocations.remove(file);
+			if (allocation != null) {
+				allocation.released = true;
+				allocation.owner.charge(-allocation.byteCount);
+				currentUsage -= allocation.byteCount;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the number of bytes currently written to temporary files.
+	 *
+	 * @return The current usage in bytes.
+	 */
+	public synchronized long getCurrentUsage() {
+		return currentUsage;
+	}
+
+
+	/**
+	 * Returns the largest number of bytes in use at any point.
+	 *
+	 * @return The peak usage in bytes.
+	 */
+	public synchronized long getPeakUsage() {
+		return peakUsage;
+	}
+
+
+	/**
+	 * Logs the peak temporary space usage overall and for each owner.
+	 */
+	public synchronized void logUsage() {
+		if (ownerUsage.isEmpty()) {
+			return;
+		}
+
+		LOG.info("Peak temporary space usage: " + peakUsage + " bytes.");
+		for (Map.Entry<String, OwnerUsage> entry : ownerUsage.entrySet()) {
+			LOG.info("Peak temporary space usage for " + entry.getKey() + ": "
+					+ entry.getValue().peakUsage + " bytes.");
+		}
+	}
+
+
+	/**
+	 * Tracks usage for a single owner.
+	 */
+	private static class OwnerUsage {
+		private String name;
+		private long currentUsage;
+		private long peakUsage;
+
+
+		private OwnerUsage(String name) {
+			this.name = name;
+		}
+
+
+		private void charge(long byteCount) {
+			currentUsage += byteCount;
+			if (currentUsage > peakUsage) {
+				peakUsage = currentUsage;
+			}
+		}
+	}
+
+
+	/**
+	 * Tracks the bytes written to a single file.
+	 */
+	private static class Allocation {
+		private OwnerUsage owner;
+		private long byteCount;
+		private boolean released;
+
+
+		private Allocation(OwnerUsage owner) {
+			this.owner = owner;
+		}
+	}
+
+
+	/**
+	 * Counts bytes written to an underlying file stream.
+	 */
+	private class TrackingOutputStream extends FilterOutputStream {
+		private Allocation allocation;
+
+
+		private TrackingOutputStream(OutputStream out, Allocation allocation) {
+			super(out);
+
+			this.allocation = allocation;
+		}
+
+
+		@Override
+		public void write(int b) throws IOException {
+			charge(allocation, 1);
+			out.write(b);
+		}
+
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			charge(allocation, len);
+			out.write(b, off, len);
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.openstreetmap.osmosis.core.lifecycle.Closeable;
 public class FileBasedLock implements Closeable {
 	
 	private static final Logger LOG = Logger.getLogger(FileBasedLock.class.getName());
+	private static final long LOCK_RETRY_INTERVAL = 50;
 	
 	private File lockFile;
 	private FileOutputStream outputStream;
@@ -85,6 +86,45 @@ public class FileBasedLock implements Closeable {
 	}
 	
 	
+	/**
+	 * Obtain an exclusive lock, waiting for another process to release it if
+	 * necessary. As with {@link #lock()}, threads within the same process
+	 * must coordinate their use of the lock themselves.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait for the lock in milliseconds.
+	 */
+	public void lock(long timeout) {
+		long deadline;
+		
+		initialize();
+		
+		if (fileLock != null) {
+			throw new OsmosisRuntimeException("A lock has already been obtained on file " + lockFile + ".");
+		}
+		
+		deadline = System.currentTimeMillis() + timeout;
+		
+		try {
+			while ((fileLock = fileChannel.tryLock()) == null) {
+				if (System.currentTimeMillis() >= deadline) {
+					throw new OsmosisRuntimeException(
+							"Timed out waiting for an exclusive lock on file " + lockFile + ".");
+				}
+				
+				Thread.sleep(LOCK_RETRY_INTERVAL);
+			}
+			
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException(
+					"An error occurred while trying to obtain an exclusive lock on file " + lockFile + ".");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OsmosisRuntimeException("Interrupted while waiting for a lock on file " + lockFile + ".", e);
+		}
+	}
+	
+	
 	/**
 	 * Release the lock.
 	 */
@@ -0,0 +1,142 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.buffer.v0_6;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+
+/**
+ * Tests the {@link BackgroundSink} class.
+ */
+public class BackgroundSinkTest {
+
+	private static NodeContainer createNode(long id) {
+		return new NodeContainer(new Node(new CommonEntityData(id, 1, new Date(), OsmUser.NONE, 1), 1, 1));
+	}
+
+
+	/**
+	 * Verifies that all entities reach the wrapped sink in order on the
+	 * background thread, and that the sink is completed and closed.
+	 */
+	@Test
+	public void testProcessAll() {
+		RecordingSink recorder = new RecordingSink(-1);
+		BackgroundSink backgroundSink = new BackgroundSink(recorder, 10, "test-sink");
+
+		try {
+			backgroundSink.initialize(Collections.<String, Object>emptyMap());
+			for (int i = 0; i < 1003; i++) {
+				backgroundSink.process(createNode(i));
+			}
+			backgroundSink.complete();
+		} finally {
+			backgroundSink.close();
+		}
+
+		Assert.assertEquals("Incorrect entity count.", 1003, recorder.ids.size());
+		for (int i = 0; i < 1003; i++) {
+			Assert.assertEquals("Incorrect entity order.", i, recorder.ids.get(i).longValue());
+		}
+		Assert.assertTrue("Sink was not completed.", recorder.completed);
+		Assert.assertTrue("Sink was not closed.", recorder.closed);
+		Assert.assertEquals("Sink was run on the wrong thread.", "test-sink", recorder.threadName);
+	}
+
+
+	/**
+	 * Verifies that a failure of the wrapped sink is re-thrown on the calling
+	 * thread.
+	 */
+	@Test
+	public void testSinkFailure() {
+		RecordingSink recorder = new RecordingSink(50);
+		BackgroundSink backgroundSink = new BackgroundSink(recorder, 10, "test-sink");
+		OsmosisRuntimeException failure = null;
+
+		try {
+			backgroundSink.initialize(Collections.<String, Object>emptyMap());
+			for (int i = 0; i < 1000; i++) {
+				backgroundSink.process(createNode(i));
+			}
+			backgroundSink.complete();
+		} catch (OsmosisRuntimeException e) {
+			failure = e;
+		} finally {
+			backgroundSink.close();
+		}
+
+		Assert.assertNotNull("The sink failure was not reported.", failure);
+		Assert.assertEquals("Incorrect failure cause.", "Test failure.", failure.getCause().getMessage());
+		Assert.assertFalse("Sink should not have completed.", recorder.completed);
+		Assert.assertTrue("Sink was not closed.", recorder.closed);
+	}
+
+
+	/**
+	 * Verifies that the wrapped sink is closed if the background sink is
+	 * closed without being initialized.
+	 */
+	@Test
+	public void testCloseWithoutInitialize() {
+		RecordingSink recorder = new RecordingSink(-1);
+
+		new BackgroundSink(recorder, 10, "test-sink").close();
+
+		Assert.assertTrue("Sink was not closed.", recorder.closed);
+	}
+
+
+	private static class RecordingSink implements Sink {
+		private int failAfter;
+		private List<Long> ids = new ArrayList<Long>();
+		private boolean completed;
+		private boolean closed;
+		private String threadName;
+
+
+		RecordingSink(int failAfter) {
+			this.failAfter = failAfter;
+		}
+
+
+		@Override
+		public void initialize(Map<String, Object> metaData) {
+			threadName = Thread.currentThread().getName();
+		}
+
+
+		@Override
+		public void process(EntityContainer entityContainer) {
+			if (ids.size() == failAfter) {
+				throw new OsmosisRuntimeException("Test failure.");
+			}
+			ids.add(entityContainer.getEntity().getId());
+		}
+
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.core.cli;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.logging.Level;
 
@@ -9,6 +10,7 @@ import org.junit.Test;
 
 import org.openstreetmap.osmosis.core.LogLevels;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.store.PrefetchingInputStream;
 
 
 /**
@@ -127,6 +129,80 @@ public class CommandLineParserTest {
 	}
 	
 	
+	/**
+	 * Validates the temporary directory and temporary space options.
+	 */
+	@Test
+	public void testTempOptions() {
+		CommandLineParser commandLineParser;
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {});
+		Assert.assertTrue(
+				"Temp directories should default to empty.", commandLineParser.getTempDirectories().isEmpty());
+		Assert.assertEquals("Temp space should default to unlimited.", 0, commandLineParser.getTempSpace());
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {"-t", "dir1", "dir2", "-tempspace", "20G"});
+		Assert.assertEquals(
+				"Incorrect temp directory list.",
+				Arrays.asList(new File("dir1"), new File("dir2")),
+				commandLineParser.getTempDirectories());
+		Assert.assertEquals("Incorrect temp space.", 20L * 1024 * 1024 * 1024, commandLineParser.getTempSpace());
+	}
+	
+	
+	/**
+	 * Validates failure when an invalid size is specified.
+	 */
+	@Test (expected = OsmosisRuntimeException.class)
+	public void testInvalidTempSpace() {
+		CommandLineParser commandLineParser;
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {"-ts", "lots"});
+	}
+	
+	
+	/**
+	 * Validates the memory budget option.
+	 */
+	@Test
+	public void testMemoryOption() {
+		CommandLineParser commandLineParser;
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {});
+		Assert.assertEquals("Memory should default to unmanaged.", 0, commandLineParser.getMemory());
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {"-memory", "512M"});
+		Assert.assertEquals("Incorrect memory.", 512L * 1024 * 1024, commandLineParser.getMemory());
+	}
+	
+	
+	/**
+	 * Validates the prefetch depth option.
+	 */
+	@Test
+	public void testPrefetchOption() {
+		CommandLineParser commandLineParser;
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {});
+		Assert.assertEquals("Incorrect default prefetch depth.",
+				PrefetchingInputStream.DEFAULT_PREFETCH_DEPTH, commandLineParser.getPrefetchDepth());
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {"-prefetch", "0"});
+		Assert.assertEquals("Incorrect prefetch depth.", 0, commandLineParser.getPrefetchDepth());
+		
+		commandLineParser = new CommandLineParser();
+		commandLineParser.parse(new String[] {"-pf", "8"});
+		Assert.assertEquals("Incorrect prefetch depth.", 8, commandLineParser.getPrefetchDepth());
+	}
+	
+	
 	/**
 	 * Validates failure when an unknown option is specified.
 	 */
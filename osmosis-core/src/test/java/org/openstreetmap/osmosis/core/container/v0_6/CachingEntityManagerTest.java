@@ -0,0 +1,196 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.container.v0_6;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
+import org.openstreetmap.osmosis.core.store.ReleasableAdaptorForIterator;
+
+
+/**
+ * Tests the {@link CachingEntityManager} class.
+ */
+public class CachingEntityManagerTest {
+
+	private static Node createNode(long id, int version) {
+		return new Node(new CommonEntityData(id, version, new Date(), OsmUser.NONE, 1), 1, 1);
+	}
+
+
+	/**
+	 * Verifies that repeated lookups are served from the cache.
+	 */
+	@Test
+	public void testGetEntityCached() {
+		MapEntityManager source = new MapEntityManager(10);
+		CachingEntityManager<Node> cachingManager = new CachingEntityManager<Node>(source, 5);
+
+		Assert.assertEquals("Incorrect node returned.", 3, cachingManager.getEntity(3).getId());
+		Assert.assertEquals("Incorrect node returned.", 3, cachingManager.getEntity(3).getId());
+
+		Assert.assertEquals("Incorrect source lookup count.", 1, source.getCount);
+		Assert.assertEquals("Incorrect hit count.", 1, cachingManager.getHitCount());
+		Assert.assertEquals("Incorrect miss count.", 1, cachingManager.getMissCount());
+		Assert.assertEquals("Incorrect hit rate.", 0.5, cachingManager.getHitRate(), 0);
+		Assert.assertTrue("Cached node should be read-only.", cachingManager.getEntity(3).isReadOnly());
+	}
+
+
+	/**
+	 * Verifies that the least recently used entity is evicted once the cache is
+	 * full.
+	 */
+	@Test
+	public void testEviction() {
+		MapEntityManager source = new MapEntityManager(10);
+		CachingEntityManager<Node> cachingManager = new CachingEntityManager<Node>(source, 2);
+
+		cachingManager.getEntity(1);
+		cachingManager.getEntity(2);
+		cachingManager.getEntity(1);
+		cachingManager.getEntity(3);
+
+		Assert.assertEquals("Incorrect cache size.", 2, cachingManager.getSize());
+
+		// Node 1 was used more recently than node 2 so should remain cached.
+		cachingManager.getEntity(1);
+		Assert.assertEquals("Incorrect source lookup count.", 3, source.getCount);
+		cachingManager.getEntity(2);
+		Assert.assertEquals("Incorrect source lookup count.", 4, source.getCount);
+	}
+
+
+	/**
+	 * Verifies that bulk retrieval only loads uncached entities, and loads them
+	 * with a single call.
+	 */
+	@Test
+	public void testGetEntities() {
+		MapEntityManager source = new MapEntityManager(10);
+		CachingEntityManager<Node> cachingManager = new CachingEntityManager<Node>(source, 20);
+		List<Node> nodes;
+
+		cachingManager.getEntity(2);
+
+		nodes = cachingManager.getEntities(new long[] {1, 2, 3, 50});
+
+		Assert.assertEquals("Incorrect node count.", 3, nodes.size());
+		Assert.assertEquals("Incorrect bulk lookup count.", 1, source.getEntitiesCount);
+		Assert.assertArrayEquals("Incorrect ids requested.", new long[] {1, 3, 50}, source.lastIds);
+		Assert.assertEquals("Incorrect hit count.", 1, cachingManager.getHitCount());
+
+		cachingManager.getEntity(3);
+		Assert.assertEquals("Bulk loaded node was not cached.", 2, cachingManager.getHitCount());
+	}
+
+
+	/**
+	 * Verifies that writes invalidate cached entities.
+	 */
+	@Test
+	public void testInvalidation() {
+		MapEntityManager source = new MapEntityManager(10);
+		CachingEntityManager<Node> cachingManager = new CachingEntityManager<Node>(source, 5);
+
+		cachingManager.getEntity(4);
+		cachingManager.modifyEntity(createNode(4, 2));
+
+		Assert.assertEquals("Modified node was not reloaded.", 2, cachingManager.getEntity(4).getVersion());
+
+		cachingManager.removeEntity(4);
+		Assert.assertFalse("Removed node should not exist.", cachingManager.exists(4));
+	}
+
+
+	/**
+	 * Verifies that caches sized from a memory grant hold their requested size
+	 * when no budget is configured.
+	 */
+	@Test
+	public void testMemoryGrant() {
+		MemoryGrant memoryGrant = CachingEntityManager.requestMemory(5000, 3);
+
+		Assert.assertEquals("Incorrect requested size.", 5000L * 3 * MemoryManager.ESTIMATED_ENTITY_SIZE,
+				memoryGrant.getDefaultBytes());
+		Assert.assertEquals("Incorrect cache size.", 5000, CachingEntityManager.getMaximumSize(memoryGrant, 3));
+	}
+
+
+	private static class MapEntityManager implements EntityManager<Node> {
+		private Map<Long, Node> nodes = new HashMap<Long, Node>();
+		private int getCount;
+		private int getEntitiesCount;
+		private long[] lastIds;
+
+
+		MapEntityManager(int nodeCount) {
+			for (int i = 0; i < nodeCount; i++) {
+				nodes.put((long) i, createNode(i, 1));
+			}
+		}
+
+
+		@Override
+		public Node getEntity(long id) {
+			getCount++;
+			return nodes.get(id);
+		}
+
+
+		@Override
+		public List<Node> getEntities(long[] ids) {
+			List<Node> result = new ArrayList<Node>();
+
+			getEntitiesCount++;
+			lastIds = ids;
+			for (long id : ids) {
+				if (nodes.containsKey(id)) {
+					result.add(nodes.get(id));
+				}
+			}
+
+			return result;
+		}
+
+
+		@Override
+		public ReleasableIterator<Node> iterate() {
+			return new ReleasableAdaptorForIterator<Node>(nodes.values().iterator());
+		}
+
+
+		@Override
+		public boolean exists(long id) {
+			return nodes.containsKey(id);
+		}
+
+
+		@Override
+		public void addEntity(Node entity) {
+			nodes.put(entity.getId(), entity);
+		}
+
+
+		@Override
+		public void modifyEntity(Node entity) {
+			nodes.put(entity.getId(), entity);
+		}
+
+
+		@Override
+		public void removeEntity(long entityId) {
+			nodes.remove(entityId);
+		}
+	}
+}
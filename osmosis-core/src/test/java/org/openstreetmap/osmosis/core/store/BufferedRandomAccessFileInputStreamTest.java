@@ -0,0 +1,124 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link BufferedRandomAccessFileInputStream} class.
+ */
+public class BufferedRandomAccessFileInputStreamTest {
+
+	private static final int VALUE_COUNT = 10000;
+
+
+	private File createDataFile() throws IOException {
+		File file = File.createTempFile("blockcachetest", null);
+		file.deleteOnExit();
+
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			for (int i = 0; i < VALUE_COUNT; i++) {
+				out.writeInt(i);
+			}
+		}
+
+		return file;
+	}
+
+
+	/**
+	 * Verifies that random reads return correct data, and that a second stream
+	 * on the same file is served from the shared cache.
+	 *
+	 * @throws IOException
+	 *             if the test file cannot be created.
+	 */
+	@Test
+	public void testRandomReadsShareCache() throws IOException {
+		File file = createDataFile();
+		BlockCache blockCache = new BlockCache(BlockCache.DEFAULT_MAXIMUM_SIZE);
+
+		try (BufferedRandomAccessFileInputStream stream = new BufferedRandomAccessFileInputStream(file, blockCache)) {
+			DataInputStream dataStream = new DataInputStream(stream);
+
+			for (int i = VALUE_COUNT - 1; i >= 0; i -= 7) {
+				stream.seek(i * 4L);
+				Assert.assertEquals("Incorrect value read.", i, dataStream.readInt());
+			}
+			stream.seek(VALUE_COUNT * 4L);
+			Assert.assertEquals("Expected end of stream.", -1, stream.read());
+		}
+
+		long missCount = blockCache.getMissCount();
+
+		try (BufferedRandomAccessFileInputStream stream = new BufferedRandomAccessFileInputStream(file, blockCache)) {
+			DataInputStream dataStream = new DataInputStream(stream);
+
+			for (int i = 0; i < VALUE_COUNT; i++) {
+				Assert.assertEquals("Incorrect value read.", i, dataStream.readInt());
+			}
+		}
+
+		Assert.assertEquals("Second reader should not access the file.", missCount, blockCache.getMissCount());
+		Assert.assertTrue("Cache hits were not recorded.", blockCache.getHitCount() > 0);
+
+		blockCache.invalidate(file);
+		Assert.assertEquals("Cache should be empty after invalidation.", 0, blockCache.getCurrentSize());
+	}
+
+
+	/**
+	 * Verifies that the cache never exceeds its maximum size.
+	 *
+	 * @throws IOException
+	 *             if the test file cannot be created.
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		File file = createDataFile();
+		BlockCache blockCache = new BlockCache(BlockCache.BLOCK_SIZE * 2);
+
+		try (BufferedRandomAccessFileInputStream stream = new BufferedRandomAccessFileInputStream(file, blockCache)) {
+			DataInputStream dataStream = new DataInputStream(stream);
+
+			for (int i = 0; i < VALUE_COUNT; i++) {
+				Assert.assertEquals("Incorrect value read.", i, dataStream.readInt());
+				Assert.assertTrue("Cache exceeded maximum size.",
+						blockCache.getCurrentSize() <= blockCache.getMaximumSize());
+			}
+		}
+	}
+
+
+	/**
+	 * Verifies that streams created with the legacy buffer sizing arguments
+	 * read correctly through the shared cache.
+	 *
+	 * @throws IOException
+	 *             if the test file cannot be created.
+	 */
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testLegacyConstructor() throws IOException {
+		File file = createDataFile();
+
+		try (BufferedRandomAccessFileInputStream stream =
+				new BufferedRandomAccessFileInputStream(file, 4, 16, 4096, 2)) {
+			DataInputStream dataStream = new DataInputStream(stream);
+
+			stream.seek((VALUE_COUNT - 1) * 4L);
+			Assert.assertEquals("Incorrect value read.", VALUE_COUNT - 1, dataStream.readInt());
+			stream.seek(0);
+			Assert.assertEquals("Incorrect value read.", 0, dataStream.readInt());
+		} finally {
+			BlockCache.getInstance().invalidate(file);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link MemoryManager} class.
+ */
+public class MemoryManagerTest {
+
+	/**
+	 * Verifies that defaults are granted when no budget is configured.
+	 */
+	@Test
+	public void testNoBudget() {
+		MemoryManager manager = new MemoryManager();
+		MemoryGrant grant;
+
+		grant = manager.request("test", 1000, 10);
+
+		Assert.assertEquals("Default should be granted.", 1000, grant.getBytes());
+	}
+
+
+	/**
+	 * Verifies that the budget is divided in proportion to the defaults and
+	 * that minimums are respected without exceeding the budget.
+	 */
+	@Test
+	public void testProportionalAllocation() {
+		MemoryManager manager = new MemoryManager();
+		MemoryGrant large;
+		MemoryGrant small;
+		MemoryGrant tiny;
+
+		manager.setBudget(10000);
+
+		manager.beginTask("1");
+		large = manager.request("large", 3000, 0);
+		manager.endTask();
+		manager.beginTask("2");
+		small = manager.request("small", 1000, 0);
+		tiny = manager.request("tiny", 1, 500);
+		manager.endTask();
+
+		manager.allocate();
+
+		Assert.assertEquals("Incorrect owner.", "1", large.getOwner());
+		Assert.assertEquals("Incorrect owner.", "2", small.getOwner());
+		Assert.assertEquals("Large grant is incorrect.", 7125, large.getBytes());
+		Assert.assertEquals("Small grant is incorrect.", 2375, small.getBytes());
+		Assert.assertEquals("Minimum should be granted.", 500, tiny.getBytes());
+	}
+
+
+	/**
+	 * Verifies that minimums larger than the budget are reduced to fit it.
+	 */
+	@Test
+	public void testMinimumsExceedBudget() {
+		MemoryManager manager = new MemoryManager();
+		MemoryGrant first;
+		MemoryGrant second;
+
+		manager.setBudget(1000);
+		first = manager.request("first", 5000, 1500);
+		second = manager.request("second", 5000, 500);
+
+		manager.allocate();
+
+		Assert.assertEquals("First grant is incorrect.", 750, first.getBytes());
+		Assert.assertEquals("Second grant is incorrect.", 250, second.getBytes());
+	}
+
+
+	/**
+	 * Verifies that an explicit weight is used instead of the default size
+	 * when dividing the budget.
+	 */
+	@Test
+	public void testWeightedRequest() {
+		MemoryManager manager = new MemoryManager();
+		MemoryGrant cache;
+		MemoryGrant sort;
+
+		manager.setBudget(8000);
+		cache = manager.request("cache", 4000, 0, 1000);
+		sort = manager.request("sort", 1000, 0);
+
+		manager.allocate();
+
+		Assert.assertEquals("Cache grant is incorrect.", 4000, cache.getBytes());
+		Assert.assertEquals("Sort grant is incorrect.", 4000, sort.getBytes());
+	}
+
+
+	/**
+	 * Verifies that requests made after allocation receive their default.
+	 */
+	@Test
+	public void testLateRequest() {
+		MemoryManager manager = new MemoryManager();
+		MemoryGrant grant;
+
+		manager.setBudget(10000);
+		manager.request("early", 100, 0);
+		manager.allocate();
+
+		grant = manager.request("late", 2000, 0);
+
+		Assert.assertEquals("Late request should receive its default.", 2000, grant.getBytes());
+		Assert.assertEquals("Incorrect owner.", "pipeline", grant.getOwner());
+	}
+}
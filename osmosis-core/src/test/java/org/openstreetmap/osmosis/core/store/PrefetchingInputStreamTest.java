@@ -0,0 +1,91 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link PrefetchingInputStream} class.
+ */
+public class PrefetchingInputStreamTest {
+
+	private byte[] createData(int length) {
+		byte[] data = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+
+		return data;
+	}
+
+
+	/**
+	 * Verifies that all data is returned in order when read through small
+	 * blocks and a shallow queue.
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be read.
+	 */
+	@Test
+	public void testReadAll() throws IOException {
+		byte[] data = createData(100003);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+		try (InputStream in = new PrefetchingInputStream(new ByteArrayInputStream(data), 2, 1000)) {
+			byte[] buffer = new byte[777];
+			int count;
+
+			Assert.assertEquals("First byte incorrect.", data[0] & 0xff, in.read());
+			result.write(data[0]);
+
+			while ((count = in.read(buffer)) >= 0) {
+				result.write(buffer, 0, count);
+			}
+			Assert.assertEquals("End of stream should be repeated.", -1, in.read());
+		}
+
+		Assert.assertArrayEquals("Incorrect data returned.", data, result.toByteArray());
+	}
+
+
+	/**
+	 * Verifies that closing the stream before it is exhausted stops the
+	 * background reader.
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be read.
+	 */
+	@Test
+	public void testEarlyClose() throws IOException {
+		InputStream in = new PrefetchingInputStream(new ByteArrayInputStream(createData(1000000)), 1, 100);
+
+		Assert.assertEquals("First byte incorrect.", 0, in.read());
+		in.close();
+		Assert.assertEquals("Closed stream should return end of stream.", -1, in.read());
+	}
+
+
+	/**
+	 * Verifies that errors on the background thread are passed to the reader.
+	 */
+	@Test(expected = IOException.class)
+	public void testSourceError() throws IOException {
+		InputStream source = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Test failure.");
+			}
+		};
+
+		try (InputStream in = new PrefetchingInputStream(source, 1)) {
+			in.read();
+		}
+	}
+}
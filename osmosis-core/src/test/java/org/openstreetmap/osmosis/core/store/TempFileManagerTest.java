@@ -0,0 +1,95 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.core.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link TempFileManager} class.
+ */
+public class TempFileManagerTest {
+
+	private File createDirectory(String prefix) throws IOException {
+		File directory = File.createTempFile(prefix, null);
+
+		Assert.assertTrue("Unable to delete placeholder file.", directory.delete());
+		Assert.assertTrue("Unable to create directory.", directory.mkdir());
+		directory.deleteOnExit();
+
+		return directory;
+	}
+
+
+	/**
+	 * Verifies that files are striped across directories and that usage is
+	 * tracked until files are released.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	@Test
+	public void testStripingAndUsage() throws IOException {
+		TempFileManager manager = new TempFileManager();
+		File directory1 = createDirectory("tfm1");
+		File directory2 = createDirectory("tfm2");
+
+		manager.configure(Arrays.asList(directory1, directory2), 0);
+
+		File file1 = manager.createTempFile("test", null);
+		File file2 = manager.createTempFile("test", null);
+		Assert.assertEquals("First file in wrong directory.", directory1, file1.getParentFile());
+		Assert.assertEquals("Second file in wrong directory.", directory2, file2.getParentFile());
+
+		try (OutputStream out = manager.createOutputStream(file1)) {
+			out.write(new byte[1000]);
+		}
+		try (OutputStream out = manager.createOutputStream(file2)) {
+			out.write(new byte[500]);
+		}
+		Assert.assertEquals("Incorrect usage.", 1500, manager.getCurrentUsage());
+
+		manager.release(file1);
+		manager.release(file2);
+		Assert.assertFalse("File was not deleted.", file1.exists());
+		Assert.assertEquals("Usage was not released.", 0, manager.getCurrentUsage());
+		Assert.assertEquals("Incorrect peak usage.", 1500, manager.getPeakUsage());
+
+		Assert.assertTrue(directory1.delete());
+		Assert.assertTrue(directory2.delete());
+	}
+
+
+	/**
+	 * Verifies that writes fail once the budget is exceeded.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be created.
+	 */
+	@Test
+	public void testBudgetExceeded() throws IOException {
+		TempFileManager manager = new TempFileManager();
+		File directory = createDirectory("tfm");
+		File file;
+
+		manager.configure(Arrays.asList(directory), 1000);
+		file = manager.createTempFile("test", null);
+
+		try (OutputStream out = manager.createOutputStream(file)) {
+			out.write(new byte[800]);
+			out.write(new byte[800]);
+			Assert.fail("Budget was not enforced.");
+
+		} catch (IOException e) {
+			// Expected.
+		} finally {
+			manager.release(file);
+			Assert.assertTrue(directory.delete());
+		}
+	}
+}
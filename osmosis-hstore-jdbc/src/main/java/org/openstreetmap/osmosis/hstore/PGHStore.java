@@ -21,6 +21,7 @@
 */
 package org.openstreetmap.osmosis.hstore;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 
 import java.util.Set;
@@ -31,13 +32,19 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Collection;
 
+import org.postgresql.util.PGBinaryObject;
 import org.postgresql.util.PGobject;
 
 
 /**
- * This implements a class that handles the PostgreSQL contrib/hstore type
+ * This implements a class that handles the PostgreSQL contrib/hstore type.
+ * <p>
+ * Both the text representation and the binary send/receive representation
+ * are supported. The binary representation is a 4 byte pair count followed by
+ * each key and value as a 4 byte length and UTF-8 bytes, with a length of -1
+ * representing a null value.
  */
-public class PGHStore extends PGobject implements Map<String, String>
+public class PGHStore extends PGobject implements PGBinaryObject, Map<String, String>
 {
     private final static long serialVersionUID = 1;
     private Map<String, String> _map;
@@ -93,34 +100,39 @@ public class PGHStore extends PGobject implements Map<String, String>
     public String getValue()
     {
         StringBuilder builder = new StringBuilder();
-        Iterator<String> i = _map.keySet().iterator();
-        boolean first = true;
-        while (i.hasNext()) {
-            Object key = i.next();
-            Object value = _map.get(key);
+        writeValue(builder);
+        return builder.toString();
+    }
 
+    /**
+     * Appends the text representation of the hstore to a caller supplied
+     * buffer, avoiding the creation of an intermediate string.
+     *
+     * @param builder The buffer to append to
+     */
+    public void writeValue(StringBuilder builder)
+    {
+        boolean first = true;
+        for (Map.Entry<String, String> entry : _map.entrySet()) {
             if (first) {
                 first = false;
             } else {
                 builder.append(',');
             }
 
-            writeValue(builder, key);
+            appendQuoted(builder, entry.getKey());
             builder.append("=>");
-            writeValue(builder, value);
+            appendQuoted(builder, entry.getValue());
         }
-
-        return builder.toString();
     }
 
-    private static void writeValue(StringBuilder buf, Object o) {
-        if (o == null) {
+    private static void appendQuoted(StringBuilder buf, String s)
+    {
+        if (s == null) {
             buf.append("NULL");
             return;
         }
 
-        String s = o.toString();
-
         buf.append('"');
         for (int i=0; i<s.length(); i++) {
             char c = s.charAt(i);
@@ -132,6 +144,174 @@ public class PGHStore extends PGobject implements Map<String, String>
         buf.append('"');
     }
 
+    /**
+     * Returns the number of bytes required by the binary representation.
+     *
+     * @return The binary length
+     */
+    public int lengthInBytes()
+    {
+        int length = 4;
+        for (Map.Entry<String, String> entry : _map.entrySet()) {
+            length += 4 + utf8Length(entry.getKey());
+            length += 4;
+            if (entry.getValue() != null) {
+                length += utf8Length(entry.getValue());
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the binary representation into an existing array. The array
+     * must have at least {@link #lengthInBytes()} bytes available from the
+     * offset.
+     *
+     * @param bytes The array to write to
+     * @param offset The position to start writing at
+     */
+    public void toBytes(byte[] bytes, int offset)
+    {
+        int pos = writeInt(bytes, offset, _map.size());
+        for (Map.Entry<String, String> entry : _map.entrySet()) {
+            pos = writeInt(bytes, pos, utf8Length(entry.getKey()));
+            pos = encodeUtf8(entry.getKey(), bytes, pos);
+            if (entry.getValue() == null) {
+                pos = writeInt(bytes, pos, -1);
+            } else {
+                pos = writeInt(bytes, pos, utf8Length(entry.getValue()));
+                pos = encodeUtf8(entry.getValue(), bytes, pos);
+            }
+        }
+    }
+
+    /**
+     * Returns the binary representation of the hstore.
+     *
+     * @return The binary representation
+     */
+    public byte[] toBytes()
+    {
+        byte[] bytes = new byte[lengthInBytes()];
+        toBytes(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Replaces the contents of the hstore with a binary representation.
+     *
+     * @param value The array containing the binary representation
+     * @param offset The position of the binary representation in the array
+     * @throws SQLException Is thrown if the binary representation is truncated
+     */
+    public void setByteValue(byte[] value, int offset)
+    throws SQLException
+    {
+        try {
+            int pos = offset;
+            int count = readInt(value, pos);
+            pos += 4;
+
+            Map<String, String> map = new HashMap<String, String>(Math.max(16, count * 2));
+            for (int i=0; i<count; i++) {
+                int keyLength = readInt(value, pos);
+                pos += 4;
+                String key = new String(value, pos, keyLength, StandardCharsets.UTF_8);
+                pos += keyLength;
+
+                int valueLength = readInt(value, pos);
+                pos += 4;
+                String val = null;
+                if (valueLength >= 0) {
+                    val = new String(value, pos, valueLength, StandardCharsets.UTF_8);
+                    pos += valueLength;
+                }
+
+                map.put(key, val);
+            }
+
+            _map = map;
+
+        } catch (IndexOutOfBoundsException e) {
+            throw new SQLException("Truncated binary hstore value", e);
+        }
+    }
+
+    private static int writeInt(byte[] bytes, int offset, int value)
+    {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static int readInt(byte[] bytes, int offset)
+    {
+        return ((bytes[offset] & 0xff) << 24)
+            | ((bytes[offset + 1] & 0xff) << 16)
+            | ((bytes[offset + 2] & 0xff) << 8)
+            | (bytes[offset + 3] & 0xff);
+    }
+
+    private static boolean isSurrogatePair(String s, int i)
+    {
+        return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length()
+            && Character.isLowSurrogate(s.charAt(i + 1));
+    }
+
+    /**
+     * Calculates the UTF-8 encoded length of a string. Unpaired surrogates
+     * are counted as a single replacement byte to match String.getBytes.
+     */
+    private static int utf8Length(String s)
+    {
+        int length = 0;
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(s, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int encodeUtf8(String s, byte[] bytes, int offset)
+    {
+        int pos = offset;
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (isSurrogatePair(s, i)) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                bytes[pos++] = (byte) (0xf0 | (cp >> 18));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                bytes[pos++] = (byte) '?';
+            } else {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+
 
     /**
      * Returns whether an object is equal to this one or not
@@ -0,0 +1,117 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.hstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link PGHStore} class.
+ */
+public class PGHStoreTest {
+
+	private static Map<String, String> createTags() {
+		Map<String, String> tags;
+
+		tags = new HashMap<String, String>();
+		tags.put("name", "Main \"Street\" \\ North");
+		tags.put("name:ru", "\u0443\u043b\u0438\u0446\u0430");
+		tags.put("symbol", "\ud83d\ude80 \u20ac");
+		tags.put("note", null);
+
+		return tags;
+	}
+
+
+	/**
+	 * Verifies that the binary representation matches the server's hstore
+	 * send format, and that it can be read back.
+	 *
+	 * @throws IOException
+	 *             if the expected value cannot be built.
+	 * @throws SQLException
+	 *             if the binary value cannot be parsed.
+	 */
+	@Test
+	public void testBinaryRoundTrip() throws IOException, SQLException {
+		PGHStore hstore;
+		ByteArrayOutputStream expectedBuffer;
+		DataOutputStream expectedOutput;
+		byte[] actual;
+		PGHStore decoded;
+
+		hstore = new PGHStore(createTags());
+
+		expectedBuffer = new ByteArrayOutputStream();
+		expectedOutput = new DataOutputStream(expectedBuffer);
+		expectedOutput.writeInt(hstore.size());
+		for (Map.Entry<String, String> entry : hstore.entrySet()) {
+			byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			expectedOutput.writeInt(key.length);
+			expectedOutput.write(key);
+			if (entry.getValue() == null) {
+				expectedOutput.writeInt(-1);
+			} else {
+				byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+				expectedOutput.writeInt(value.length);
+				expectedOutput.write(value);
+			}
+		}
+
+		actual = hstore.toBytes();
+		Assert.assertEquals("Incorrect binary length.", actual.length, hstore.lengthInBytes());
+		Assert.assertArrayEquals("Incorrect binary value.", expectedBuffer.toByteArray(), actual);
+
+		decoded = new PGHStore();
+		decoded.setByteValue(actual, 0);
+		Assert.assertEquals("Incorrect decoded value.", createTags(), new HashMap<String, String>(decoded));
+	}
+
+
+	/**
+	 * Verifies that a truncated binary value is rejected.
+	 *
+	 * @throws SQLException
+	 *             if the binary value cannot be parsed, as expected.
+	 */
+	@Test(expected = SQLException.class)
+	public void testTruncatedBinary() throws SQLException {
+		byte[] bytes;
+
+		bytes = new PGHStore(createTags()).toBytes();
+
+		new PGHStore().setByteValue(Arrays.copyOf(bytes, bytes.length - 2), 0);
+	}
+
+
+	/**
+	 * Verifies that the text representation written to a caller supplied
+	 * buffer matches the string value and can be parsed.
+	 *
+	 * @throws SQLException
+	 *             if the text value cannot be parsed.
+	 */
+	@Test
+	public void testTextRoundTrip() throws SQLException {
+		PGHStore hstore;
+		StringBuilder builder;
+
+		hstore = new PGHStore(createTags());
+
+		builder = new StringBuilder("prefix");
+		hstore.writeValue(builder);
+		Assert.assertEquals("Incorrect buffer value.", "prefix" + hstore.getValue(), builder.toString());
+
+		Assert.assertEquals("Incorrect parsed value.", createTags(),
+				new HashMap<String, String>(new PGHStore(hstore.getValue())));
+	}
+}
@@ -15,6 +15,7 @@ public class BinaryPluginLoader implements PluginLoader {
 
           OsmosisReaderFactory reader = new OsmosisReaderFactory();
           OsmosisSerializerFactory writer = new OsmosisSerializerFactory();
+          OsmosisChangeApplierFactory changeApplier = new OsmosisChangeApplierFactory();
           
           factoryMap = new HashMap<String, TaskManagerFactory>();
           factoryMap.put("read-pbf", reader);
@@ -23,9 +24,12 @@ public class BinaryPluginLoader implements PluginLoader {
           factoryMap.put("write-pbf", writer);
           factoryMap.put("write-bin", writer);
           factoryMap.put("wb", writer);
+          factoryMap.put("apply-change-pbf", changeApplier);
+          factoryMap.put("acpbf", changeApplier);
 
           factoryMap.put("read-pbf-0.6", reader);
           factoryMap.put("write-pbf-0.6", writer);
+          factoryMap.put("apply-change-pbf-0.6", changeApplier);
           return factoryMap;
     }
   } 
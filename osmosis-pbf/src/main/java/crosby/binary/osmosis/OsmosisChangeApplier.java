@@ -0,0 +1,713 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package crosby.binary.osmosis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import crosby.binary.file.BlockOutputStream;
+import crosby.binary.file.FileBlock;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
+import org.openstreetmap.osmosis.core.sort.v0_6.SortedDeltaChangePipeValidator;
+import org.openstreetmap.osmosis.core.store.GenericObjectSerializationFactory;
+import org.openstreetmap.osmosis.core.store.SimpleObjectStore;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+
+/**
+ * Applies a change stream to a PBF file and writes the result to a new PBF
+ * file. It produces the same data as reading the file, applying the change
+ * and writing the result, but only the blocks of the base file that contain
+ * changed entities are decoded and re-encoded. All other blocks are copied to
+ * the output in their original compressed form which makes applying a small
+ * change to a large file considerably cheaper.
+ * <p>
+ * Both the base file and the change stream must be sorted by type then id.
+ * The change stream is buffered until it is complete, then the base file is
+ * processed in a single pass.
+ *
+ * @author Brett Henderson
+ */
+public class OsmosisChangeApplier implements ChangeSink {
+
+	private static final Logger LOG = Logger.getLogger(OsmosisChangeApplier.class.getName());
+	private static final String TYPE_HEADER = "OSMHeader";
+	private static final String TYPE_DATA = "OSMData";
+
+	/**
+	 * Required features of the base file which don't prevent its blocks being
+	 * decoded and re-encoded.
+	 */
+	private static final Set<String> SUPPORTED_FEATURES =
+			new HashSet<String>(Arrays.asList("OsmSchema-V0.6", "DenseNodes", "HistoricalInformation"));
+
+	// Field numbers of the PrimitiveBlock message and its children.
+	private static final int FIELD_BLOCK_PRIMITIVEGROUP = 2;
+	private static final int FIELD_GROUP_NODES = 1;
+	private static final int FIELD_GROUP_DENSE = 2;
+	private static final int FIELD_GROUP_WAYS = 3;
+	private static final int FIELD_GROUP_RELATIONS = 4;
+	private static final int FIELD_ENTITY_ID = 1;
+
+
+	private File baseFile;
+	private File outputFile;
+	private int batchLimit;
+	private boolean omitMetadata;
+	private boolean useDense;
+	private int granularity;
+	private String compress;
+	private SortedDeltaChangePipeValidator changeValidator;
+	private SimpleObjectStore<ChangeContainer> changeStore;
+
+	private OutputStream outputStream;
+	private DataOutputStream rawOutput;
+	private OsmosisSerializer serializer;
+	private ReleasableIterator<ChangeContainer> changeIterator;
+	private ChangeContainer nextChange;
+	private EntityType lastBlockType;
+	private long lastBlockId;
+	private int copiedBlockCount;
+	private int patchedBlockCount;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param baseFile
+	 *            The PBF file to apply changes to.
+	 * @param outputFile
+	 *            The PBF file to be written.
+	 * @param batchLimit
+	 *            The maximum number of entities in each re-encoded block.
+	 * @param omitMetadata
+	 *            If true, metadata is omitted from re-encoded blocks.
+	 * @param useDense
+	 *            If true, re-encoded nodes use the dense format.
+	 * @param granularity
+	 *            The coordinate granularity of re-encoded blocks.
+	 * @param compress
+	 *            The compression of re-encoded blocks, deflate or none.
+	 */
+	public OsmosisChangeApplier(File baseFile, File outputFile, int batchLimit, boolean omitMetadata,
+			boolean useDense, int granularity, String compress) {
+		this.baseFile = baseFile;
+		this.outputFile = outputFile;
+		this.batchLimit = batchLimit;
+		this.omitMetadata = omitMetadata;
+		this.useDense = useDense;
+		this.granularity = granularity;
+		this.compress = compress;
+
+		changeStore = new SimpleObjectStore<ChangeContainer>(new GenericObjectSerializationFactory(), "acpbf", true);
+
+		changeValidator = new SortedDeltaChangePipeValidator();
+		changeValidator.setChangeSink(new ChangeSink() {
+			@Override
+			public void initialize(Map<String, Object> metaData) {
+				// Do nothing.
+			}
+
+			@Override
+			public void process(ChangeContainer change) {
+				changeStore.add(change);
+			}
+
+			@Override
+			public void complete() {
+				// Do nothing.
+			}
+
+			@Override
+			public void close() {
+				// Do nothing.
+			}
+		});
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize(Map<String, Object> metaData) {
+		// Do nothing.
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(ChangeContainer change) {
+		changeValidator.process(change);
+	}
+
+
+	private void openOutput() throws IOException {
+		BlockOutputStream blockOutput;
+
+		// Re-encoded and copied blocks are interleaved on the same stream.
+		outputStream = new BufferedOutputStream(new FileOutputStream(outputFile), 65536);
+		rawOutput = new DataOutputStream(outputStream);
+
+		blockOutput = new BlockOutputStream(outputStream);
+		blockOutput.setCompress(compress);
+
+		serializer = new OsmosisSerializer(blockOutput);
+		serializer.configBatchLimit(batchLimit);
+		serializer.configOmit(omitMetadata);
+		serializer.setUseDense(useDense);
+		serializer.configGranularity(granularity);
+	}
+
+
+	/**
+	 * Reads the next blob from the base file.
+	 *
+	 * @return The blob, or null if the end of the file has been reached.
+	 */
+	private RawBlock readBlock(DataInputStream input) throws IOException {
+		int headerLength;
+		byte[] headerBuffer;
+		Fileformat.BlobHeader blobHeader;
+		byte[] blobData;
+
+		// The only expected end of file is at the start of a blob.
+		try {
+			headerLength = input.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+
+		headerBuffer = new byte[headerLength];
+		input.readFully(headerBuffer);
+		blobHeader = Fileformat.BlobHeader.parseFrom(headerBuffer);
+
+		blobData = new byte[blobHeader.getDatasize()];
+		input.readFully(blobData);
+
+		return new RawBlock(blobHeader.getType(), blobData);
+	}
+
+
+	/**
+	 * Obtains the uncompressed content of a blob.
+	 */
+	private static byte[] decompress(RawBlock block) throws InvalidProtocolBufferException {
+		Fileformat.Blob blob;
+		byte[] blobData;
+
+		blob = Fileformat.Blob.parseFrom(block.getData());
+
+		if (blob.hasRaw()) {
+			blobData = blob.getRaw().toByteArray();
+		} else if (blob.hasZlibData()) {
+			Inflater inflater = new Inflater();
+			inflater.setInput(blob.getZlibData().toByteArray());
+			blobData = new byte[blob.getRawSize()];
+			try {
+				inflater.inflate(blobData);
+			} catch (DataFormatException e) {
+				throw new OsmosisRuntimeException("Unable to decompress PBF blob.", e);
+			} finally {
+				inflater.end();
+			}
+		} else {
+			throw new OsmosisRuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
+		}
+
+		return blobData;
+	}
+
+
+	/**
+	 * Opens a stream of the uncompressed content of a blob. Compressed data
+	 * is only inflated as far as it is read.
+	 */
+	private static InputStream openBlob(RawBlock block) throws InvalidProtocolBufferException {
+		Fileformat.Blob blob;
+
+		blob = Fileformat.Blob.parseFrom(block.getData());
+
+		if (blob.hasRaw()) {
+			return blob.getRaw().newInput();
+		} else if (blob.hasZlibData()) {
+			return new InflaterInputStream(blob.getZlibData().newInput());
+		} else {
+			throw new OsmosisRuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
+		}
+	}
+
+
+	/**
+	 * Reads the id of an entity message, which is its first field for all
+	 * entity types. For dense nodes this is the first of the packed ids, which
+	 * isn't delta encoded.
+	 *
+	 * @return The id, or null if the message contains no ids.
+	 */
+	private static Long readEntityId(CodedInputStream input, boolean zigZag) throws IOException {
+		int messageLimit;
+		int tag;
+
+		messageLimit = input.pushLimit(input.readRawVarint32());
+
+		while ((tag = input.readTag()) != 0) {
+			if (WireFormat.getTagFieldNumber(tag) != FIELD_ENTITY_ID) {
+				input.skipField(tag);
+
+			} else if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+				int packedLimit;
+
+				packedLimit = input.pushLimit(input.readRawVarint32());
+				if (!input.isAtEnd()) {
+					return input.readSInt64();
+				}
+				input.popLimit(packedLimit);
+
+			} else {
+				return zigZag ? input.readSInt64() : input.readInt64();
+			}
+		}
+
+		input.popLimit(messageLimit);
+
+		return null;
+	}
+
+
+	/**
+	 * Determines the type and id of the first entity in a data block. The
+	 * block is scanned only as far as the id of the first entity in its first
+	 * non-empty group, neither the string table nor any entities are decoded.
+	 *
+	 * @return True if the block contains any entities.
+	 */
+	private static boolean readFirstEntity(RawBlock block) throws IOException {
+		try (InputStream blobStream = openBlob(block)) {
+			CodedInputStream input;
+			int tag;
+
+			input = CodedInputStream.newInstance(blobStream);
+
+			while ((tag = input.readTag()) != 0) {
+				int groupLimit;
+				int groupTag;
+
+				if (WireFormat.getTagFieldNumber(tag) != FIELD_BLOCK_PRIMITIVEGROUP) {
+					input.skipField(tag);
+					continue;
+				}
+
+				groupLimit = input.pushLimit(input.readRawVarint32());
+
+				while ((groupTag = input.readTag()) != 0) {
+					EntityType entityType;
+					Long id;
+
+					switch (WireFormat.getTagFieldNumber(groupTag)) {
+					case FIELD_GROUP_NODES:
+					case FIELD_GROUP_DENSE:
+						entityType = EntityType.Node;
+						id = readEntityId(input, true);
+						break;
+					case FIELD_GROUP_WAYS:
+						entityType = EntityType.Way;
+						id = readEntityId(input, false);
+						break;
+					case FIELD_GROUP_RELATIONS:
+						entityType = EntityType.Relation;
+						id = readEntityId(input, false);
+						break;
+					default:
+						input.skipField(groupTag);
+						continue;
+					}
+
+					if (id != null) {
+						block.setFirstEntity(entityType, id);
+						return true;
+					}
+				}
+
+				input.popLimit(groupLimit);
+			}
+
+			return false;
+		}
+	}
+
+
+	private static int compare(EntityType type0, long id0, EntityType type1, long id1) {
+		int result;
+
+		result = type0.compareTo(type1);
+		if (result == 0) {
+			result = Long.compare(id0, id1);
+		}
+
+		return result;
+	}
+
+
+	private static int compare(EntityType type, long id, Entity entity) {
+		return compare(type, id, entity.getType(), entity.getId());
+	}
+
+
+	/**
+	 * Gets the next change if it sorts before the specified entity.
+	 *
+	 * @param type
+	 *            The type of the upper limit, or null for no limit.
+	 * @param id
+	 *            The id of the upper limit.
+	 * @return The change, or null if no more changes are within the limit.
+	 */
+	private ChangeContainer nextChangeBefore(EntityType type, long id) {
+		ChangeContainer change;
+
+		if (nextChange == null && changeIterator.hasNext()) {
+			nextChange = changeIterator.next();
+		}
+
+		if (nextChange == null) {
+			return null;
+		}
+		if (type != null && compare(type, id, nextChange.getEntityContainer().getEntity()) <= 0) {
+			return null;
+		}
+
+		change = nextChange;
+		nextChange = null;
+
+		return change;
+	}
+
+
+	/**
+	 * Writes a blob to the output in its original form.
+	 */
+	private void copyBlock(RawBlock block) throws IOException {
+		byte[] headerBytes;
+
+		// Any entities waiting to be encoded precede this block.
+		serializer.writeEmptyHeaderIfNeeded();
+		serializer.flushBatch();
+
+		headerBytes = Fileformat.BlobHeader.newBuilder()
+				.setType(block.getType())
+				.setDatasize(block.getData().length)
+				.build()
+				.toByteArray();
+
+		rawOutput.writeInt(headerBytes.length);
+		rawOutput.write(headerBytes);
+		rawOutput.write(block.getData());
+
+		copiedBlockCount++;
+	}
+
+
+	/**
+	 * Decodes a block, applies changes to it and passes the result to the
+	 * serializer. The rules for resolving changes match the apply-change task.
+	 */
+	private void patchBlock(byte[] blockData, List<ChangeContainer> changes) {
+		OsmosisBinaryParser parser;
+		final List<EntityContainer> entities;
+		int changeIndex;
+
+		entities = new ArrayList<EntityContainer>();
+		parser = new OsmosisBinaryParser();
+		parser.setSink(new Sink() {
+			@Override
+			public void initialize(Map<String, Object> metaData) {
+				// Do nothing.
+			}
+
+			@Override
+			public void process(EntityContainer entityContainer) {
+				entities.add(entityContainer);
+			}
+
+			@Override
+			public void complete() {
+				// Do nothing.
+			}
+
+			@Override
+			public void close() {
+				// Do nothing.
+			}
+		});
+		parser.handleBlock(FileBlock.newInstance(TYPE_DATA, ByteString.copyFrom(blockData), null));
+
+		changeIndex = 0;
+		for (EntityContainer entityContainer : entities) {
+			Entity entity;
+
+			entity = entityContainer.getEntity();
+
+			// Entities only present in the change are created, or re-created
+			// if the change is being re-applied.
+			while (changeIndex < changes.size()
+					&& compare(entity.getType(), entity.getId(),
+							changes.get(changeIndex).getEntityContainer().getEntity()) > 0) {
+				processChange(changes.get(changeIndex++));
+			}
+
+			if (changeIndex < changes.size()
+					&& compare(entity.getType(), entity.getId(),
+							changes.get(changeIndex).getEntityContainer().getEntity()) == 0) {
+				processChange(changes.get(changeIndex++));
+			} else {
+				serializer.process(entityContainer);
+			}
+		}
+
+		while (changeIndex < changes.size()) {
+			processChange(changes.get(changeIndex++));
+		}
+
+		patchedBlockCount++;
+	}
+
+
+	private void processChange(ChangeContainer change) {
+		// Deletes of existing or missing entities both result in no output.
+		if (change.getAction().equals(ChangeAction.Create) || change.getAction().equals(ChangeAction.Modify)) {
+			serializer.process(change.getEntityContainer());
+		}
+	}
+
+
+	/**
+	 * Writes a data block along with all changes sorting before the limit.
+	 *
+	 * @param block
+	 *            The block to be written.
+	 * @param limit
+	 *            The next block in the file, or null if this is the last.
+	 */
+	private void writeBlock(RawBlock block, RawBlock limit) throws IOException {
+		List<ChangeContainer> changes;
+		ChangeContainer change;
+
+		changes = new ArrayList<ChangeContainer>();
+		if (limit != null) {
+			while ((change = nextChangeBefore(limit.getFirstType(), limit.getFirstId())) != null) {
+				changes.add(change);
+			}
+		} else {
+			while ((change = nextChangeBefore(null, 0)) != null) {
+				changes.add(change);
+			}
+		}
+
+		// Only blocks containing changes are fully decompressed.
+		if (changes.isEmpty()) {
+			copyBlock(block);
+		} else {
+			patchBlock(decompress(block), changes);
+		}
+	}
+
+
+	/**
+	 * Writes the output header based on the header of the base file. Blocks
+	 * copied from the base file are unchanged, so the features and other
+	 * properties of the base file are carried over, with any features needed
+	 * by re-encoded blocks added.
+	 */
+	private void processHeader(RawBlock block) throws IOException {
+		Osmformat.HeaderBlock baseHeader;
+
+		baseHeader = Osmformat.HeaderBlock.parseFrom(decompress(block));
+
+		for (String feature : baseHeader.getRequiredFeaturesList()) {
+			if (!SUPPORTED_FEATURES.contains(feature)) {
+				throw new OsmosisRuntimeException("PBF file " + baseFile + " requires unknown feature: " + feature);
+			}
+		}
+
+		serializer.finishHeader(baseHeader.toBuilder());
+	}
+
+
+	private void processBaseFile() throws IOException {
+		try (DataInputStream input =
+				new DataInputStream(new BufferedInputStream(new FileInputStream(baseFile), 65536))) {
+			RawBlock block;
+			RawBlock pendingBlock;
+
+			pendingBlock = null;
+
+			// A block is written once the next block has been read because
+			// changes between the two blocks are added to the first one.
+			while ((block = readBlock(input)) != null) {
+				if (TYPE_HEADER.equals(block.getType())) {
+					processHeader(block);
+
+				} else if (TYPE_DATA.equals(block.getType())) {
+					if (!readFirstEntity(block)) {
+						continue;
+					}
+
+					if (lastBlockType != null
+							&& compare(lastBlockType, lastBlockId, block.getFirstType(), block.getFirstId()) >= 0) {
+						throw new OsmosisRuntimeException(
+								"PBF file " + baseFile + " is not sorted by type then id.");
+					}
+					lastBlockType = block.getFirstType();
+					lastBlockId = block.getFirstId();
+
+					if (pendingBlock != null) {
+						writeBlock(pendingBlock, block);
+					}
+					pendingBlock = block;
+
+				} else {
+					LOG.fine("Skipping unknown PBF blob type " + block.getType() + ".");
+				}
+			}
+
+			if (pendingBlock != null) {
+				writeBlock(pendingBlock, null);
+			}
+		}
+
+		// Changes beyond the end of the base file are added at the end.
+		for (ChangeContainer change = nextChangeBefore(null, 0); change != null;
+				change = nextChangeBefore(null, 0)) {
+			processChange(change);
+		}
+	}
+
+
+	/**
+	 * Processes the base file and writes the updated file.
+	 */
+	@Override
+	public void complete() {
+		changeStore.complete();
+
+		try {
+			openOutput();
+
+			changeIterator = changeStore.iterate();
+
+			processBaseFile();
+
+			serializer.writeEmptyHeaderIfNeeded();
+			serializer.complete();
+
+			LOG.fine("Copied " + copiedBlockCount + " and re-encoded " + patchedBlockCount + " PBF blocks.");
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to apply changes to PBF file " + baseFile + ".", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		if (changeIterator != null) {
+			changeIterator.close();
+			changeIterator = null;
+		}
+		changeStore.close();
+
+		if (serializer != null) {
+			serializer.close();
+			serializer = null;
+		} else if (outputStream != null) {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Unable to close PBF output stream.", e);
+			}
+		}
+		outputStream = null;
+	}
+
+
+	/**
+	 * A blob of the base file in its original encoded form.
+	 */
+	private static class RawBlock {
+		private String type;
+		private byte[] data;
+		private EntityType firstType;
+		private long firstId;
+
+
+		RawBlock(String type, byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+
+
+		String getType() {
+			return type;
+		}
+
+
+		byte[] getData() {
+			return data;
+		}
+
+
+		void setFirstEntity(EntityType entityType, long id) {
+			firstType = entityType;
+			firstId = id;
+		}
+
+
+		EntityType getFirstType() {
+			return firstType;
+		}
+
+
+		long getFirstId() {
+			return firstId;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package crosby.binary.osmosis;
+
+import java.io.File;
+
+import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManagerFactory;
+import org.openstreetmap.osmosis.core.pipeline.v0_6.ChangeSinkManager;
+
+
+/**
+ * The task manager factory for applying a change stream directly to a binary
+ * (PBF) file.
+ */
+public class OsmosisChangeApplierFactory extends TaskManagerFactory {
+    private static final String ARG_BASE_FILE_NAME = "baseFile";
+    private static final String DEFAULT_BASE_FILE_NAME = "base.osm.pbf";
+    private static final String ARG_FILE_NAME = "file";
+    private static final String DEFAULT_FILE_NAME = "dump.osm.pbf";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+        String baseFileName;
+        String fileName;
+        OsmosisChangeApplier task;
+
+        // Get the task arguments.
+        baseFileName = getStringArgument(taskConfig, ARG_BASE_FILE_NAME, DEFAULT_BASE_FILE_NAME);
+        fileName = getStringArgument(taskConfig, ARG_FILE_NAME,
+                getDefaultStringArgument(taskConfig, DEFAULT_FILE_NAME));
+
+        // Build the task object. Re-encoded blocks use the same options as the PBF writer.
+        task = new OsmosisChangeApplier(
+                new File(baseFileName),
+                new File(fileName),
+                getIntegerArgument(taskConfig, "batchlimit", 8000),
+                getBooleanArgument(taskConfig, "omitmetadata", false),
+                getBooleanArgument(taskConfig, "usedense", true),
+                getIntegerArgument(taskConfig, "granularity", 100),
+                getStringArgument(taskConfig, "compress", "deflate"));
+
+        return new ChangeSinkManager(taskConfig.getId(), task, taskConfig.getPipeArgs());
+    }
+}
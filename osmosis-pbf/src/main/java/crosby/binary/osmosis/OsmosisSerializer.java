@@ -444,15 +444,16 @@ public class OsmosisSerializer extends BinarySerializer implements Sink {
       finishHeader(headerblock);
     }
 
-    /** Write the header fields that are always needed.
+    /** Write the header fields that are always needed. Required features
+     * already present in the builder are not repeated.
      * 
      * @param headerblock Incomplete builder to complete and write.
      * */
     public void finishHeader(Osmformat.HeaderBlock.Builder headerblock) {
       headerblock.setWritingprogram(OsmosisConstants.VERSION);
-      headerblock.addRequiredFeatures("OsmSchema-V0.6");
+      addRequiredFeature(headerblock, "OsmSchema-V0.6");
       if (useDense) {
-        headerblock.addRequiredFeatures("DenseNodes");
+        addRequiredFeature(headerblock, "DenseNodes");
       }
       Osmformat.HeaderBlock message = headerblock.build();
       try {
@@ -463,6 +464,12 @@ public class OsmosisSerializer extends BinarySerializer implements Sink {
       }
       headerWritten = true;
     }
+
+    private static void addRequiredFeature(Osmformat.HeaderBlock.Builder headerblock, String feature) {
+      if (!headerblock.getRequiredFeaturesList().contains(feature)) {
+        headerblock.addRequiredFeatures(feature);
+      }
+    }
     
     
     /**
@@ -480,6 +487,20 @@ public class OsmosisSerializer extends BinarySerializer implements Sink {
         entityContainer.process(processor);
     }
 
+    /**
+     * Writes all buffered entities to the output so that any data written to
+     * the underlying stream afterwards follows them.
+     */
+    public void flushBatch() {
+        try {
+            switchTypes();
+            processBatch();
+            flush();
+        } catch (IOException e) {
+        	throw new OsmosisRuntimeException("Unable to write a PBF block.", e);
+        }
+    }
+
     @Override
     public void complete() {
         try {
@@ -0,0 +1,86 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package crosby.binary.osmosis;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.Osmosis;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+
+/**
+ * Tests the OsmosisChangeApplier class.
+ *
+ * @author Brett Henderson
+ */
+public class OsmosisChangeApplierTest extends AbstractDataTest {
+	/**
+	 * Tests applying a change to a PBF file where some blocks are changed and
+	 * others are copied unmodified.
+	 *
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testApplyChange() throws IOException {
+		testApplyChange(true);
+	}
+
+
+	/**
+	 * As per testApplyChange but re-encoding nodes without the dense format.
+	 * Copied blocks remain dense so the output must still declare dense nodes.
+	 *
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testApplyChangeNotDense() throws IOException {
+		testApplyChange(false);
+	}
+
+
+	private void testApplyChange(boolean useDense) throws IOException {
+		// Generate data files.
+		File inputXmlFile = dataUtils.createDataFile("v0_6/data-snapshot.osm");
+		File changeFile = dataUtils.createDataFile("v0_6/apply-change-pbf.osc");
+		File expectedXmlFile = dataUtils.createDataFile("v0_6/apply-change-pbf-out.osm");
+		File basePbfFile = dataUtils.newFile();
+		File outputPbfFile = dataUtils.newFile();
+		File outputXmlFile = dataUtils.newFile();
+
+		// Write the base PBF with small blocks so that changes only affect some of them.
+		Osmosis.run(new String[] {
+				"-q",
+				"--read-xml-0.6",
+				inputXmlFile.getPath(),
+				"--write-pbf-0.6",
+				"batchlimit=2",
+				basePbfFile.getPath()
+		});
+
+		// Apply the change to the PBF.
+		Osmosis.run(new String[] {
+				"-q",
+				"--read-xml-change-0.6",
+				changeFile.getPath(),
+				"--apply-change-pbf-0.6",
+				"baseFile=" + basePbfFile.getPath(),
+				"usedense=" + (useDense ? "yes" : "no"),
+				outputPbfFile.getPath()
+		});
+
+		// Read the result and write to XML.
+		Osmosis.run(new String[] {
+				"-q",
+				"--read-pbf-0.6",
+				outputPbfFile.getPath(),
+				"--write-xml-0.6",
+				outputXmlFile.getPath()
+		});
+
+		// Validate that the output file matches the expected result.
+		dataUtils.compareFiles(expectedXmlFile, outputXmlFile);
+	}
+}
@@ -4,7 +4,6 @@ package org.openstreetmap.osmosis.pgsimple.common;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
@@ -16,6 +15,7 @@ import net.postgis.jdbc.geometry.Geometry;
 import net.postgis.jdbc.geometry.binary.BinaryWriter;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.lifecycle.Completable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 
 
 /**
@@ -275,7 +275,8 @@ public class CopyFileWriter implements Completable {
 		if (!initialized) {
 			try {
 				writer = new BufferedWriter(
-						new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), 65536), "UTF-8"));
+						new OutputStreamWriter(new BufferedOutputStream(
+								TempFileManager.getInstance().createOutputStream(file), 65536), "UTF-8"));
 				
 			} catch (IOException e) {
 				throw new OsmosisRuntimeException("Unable to open file for writing.", e);
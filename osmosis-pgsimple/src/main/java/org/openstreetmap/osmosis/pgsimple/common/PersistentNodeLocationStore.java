@@ -5,8 +5,8 @@ import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +14,7 @@ import java.util.logging.Logger;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.store.BufferedRandomAccessFileInputStream;
 import org.openstreetmap.osmosis.core.store.StorageStage;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
 
 
@@ -31,7 +32,7 @@ public class PersistentNodeLocationStore implements NodeLocationStore {
 	private File nodeStorageFile;
 	private StorageStage stage;
 	private long lastNodeId;
-	private FileOutputStream fileOutStream;
+	private OutputStream fileOutStream;
 	private DataOutputStream dataOutStream;
 	private BufferedRandomAccessFileInputStream fileInStream;
 	private DataInputStream dataInStream;
@@ -64,9 +65,9 @@ public class PersistentNodeLocationStore implements NodeLocationStore {
 		// If we're not up to the add stage, initialise for adding.
 		if (stage.compareTo(StorageStage.Add) < 0) {
 			try {
-				nodeStorageFile = File.createTempFile("nodelatlon", null);
+				nodeStorageFile = TempFileManager.getInstance().createTempFile("nodelatlon", null);
 				
-				fileOutStream = new FileOutputStream(nodeStorageFile);
+				fileOutStream = TempFileManager.getInstance().createOutputStream(nodeStorageFile);
 				dataOutStream = new DataOutputStream(new BufferedOutputStream(fileOutStream, 65536));
 				currentFileOffset = 0;
 				
@@ -239,10 +240,7 @@ public class PersistentNodeLocationStore implements NodeLocationStore {
 		}
 		
 		if (nodeStorageFile != null) {
-			if (!nodeStorageFile.delete()) {
-				// We cannot throw an exception within a release method.
-				LOG.warning("Unable to delete file " + nodeStorageFile);
-			}
+			TempFileManager.getInstance().release(nodeStorageFile);
 			nodeStorageFile = null;
 		}
 	}
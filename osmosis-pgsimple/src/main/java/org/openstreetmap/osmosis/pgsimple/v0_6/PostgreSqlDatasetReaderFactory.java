@@ -15,6 +15,8 @@ import org.openstreetmap.osmosis.core.pipeline.v0_6.RunnableDatasetSourceManager
  * @author Brett Henderson
  */
 public class PostgreSqlDatasetReaderFactory extends DatabaseTaskManagerFactory {
+	private static final String ARG_ENTITY_CACHE_SIZE = "entityCacheSize";
+	private static final int DEFAULT_ENTITY_CACHE_SIZE = 0;
 	
 	/**
 	 * {@inheritDoc}
@@ -23,14 +25,16 @@ public class PostgreSqlDatasetReaderFactory extends DatabaseTaskManagerFactory {
 	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
 		DatabaseLoginCredentials loginCredentials;
 		DatabasePreferences preferences;
+		int entityCacheSize;
 		
 		// Get the task arguments.
 		loginCredentials = getDatabaseLoginCredentials(taskConfig);
 		preferences = getDatabasePreferences(taskConfig);
+		entityCacheSize = getIntegerArgument(taskConfig, ARG_ENTITY_CACHE_SIZE, DEFAULT_ENTITY_CACHE_SIZE);
 		
 		return new RunnableDatasetSourceManager(
 			taskConfig.getId(),
-			new PostgreSqlDatasetReader(loginCredentials, preferences),
+			new PostgreSqlDatasetReader(loginCredentials, preferences, entityCacheSize),
 			taskConfig.getPipeArgs()
 		);
 	}
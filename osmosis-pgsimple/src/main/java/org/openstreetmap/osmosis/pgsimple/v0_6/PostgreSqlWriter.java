@@ -3,7 +3,9 @@ package org.openstreetmap.osmosis.pgsimple.v0_6;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -55,32 +57,33 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	
 	private static final Logger LOG = Logger.getLogger(PostgreSqlWriter.class.getName());
 	
-	// These constants define how many rows of each data type will be inserted
-	// with single insert statements.
-	private static final int INSERT_BULK_ROW_COUNT_NODE = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_NODE_TAG = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_WAY = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_WAY_TAG = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_WAY_NODE = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_RELATION = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_RELATION_TAG = 1000;
-	private static final int INSERT_BULK_ROW_COUNT_RELATION_MEMBER = 1000;
+	// The PostgreSQL driver supports at most 32767 bind parameters in a single
+	// statement. Way inserts with both geometry builders enabled have the most
+	// parameters per row and therefore limit the number of rows in each
+	// multi-row insert.
+	private static final int MAX_BIND_PARAMETER_COUNT = 32767;
+	private static final int INSERT_PRM_COUNT_WAY = 7;
 	
+	/**
+	 * The largest number of rows which can be inserted by a single multi-row insert statement.
+	 */
+	public static final int MAX_BULK_ROW_COUNT = MAX_BIND_PARAMETER_COUNT / INSERT_PRM_COUNT_WAY;
 	
 	private DatabaseContext dbCtx;
+	private int bulkRowCount;
 	private boolean enableBboxBuilder;
 	private boolean enableLinestringBuilder;
 	private boolean enableKeepPartialLinestring;
 	private SchemaVersionValidator schemaVersionValidator;
 	private IndexManager indexManager;
-	private List<Node> nodeBuffer;
-	private List<DbFeature<Tag>> nodeTagBuffer;
-	private List<Way> wayBuffer;
-	private List<DbFeature<Tag>> wayTagBuffer;
-	private List<DbOrderedFeature<WayNode>> wayNodeBuffer;
-	private List<Relation> relationBuffer;
-	private List<DbFeature<Tag>> relationTagBuffer;
-	private List<DbOrderedFeature<RelationMember>> relationMemberBuffer;
+	private Deque<Node> nodeBuffer;
+	private Deque<DbFeature<Tag>> nodeTagBuffer;
+	private Deque<Way> wayBuffer;
+	private Deque<DbFeature<Tag>> wayTagBuffer;
+	private Deque<DbOrderedFeature<WayNode>> wayNodeBuffer;
+	private Deque<Relation> relationBuffer;
+	private Deque<DbFeature<Tag>> relationTagBuffer;
+	private Deque<DbOrderedFeature<RelationMember>> relationMemberBuffer;
 	private boolean initialized;
 	private HashSet<Integer> userSet;
 	private ActionDao actionDao;
@@ -135,13 +138,22 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            nodes.
 	 * @param storeType
 	 *            The node location storage type used by the geometry builders.
+	 * @param bulkRowCount
+	 *            The number of rows to insert with each multi-row insert
+	 *            statement, at most {@link #MAX_BULK_ROW_COUNT}.
 	 */
 	public PostgreSqlWriter(
 			DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
 			boolean enableBboxBuilder, boolean enableLinestringBuilder,
-			boolean enableKeepPartialLinestring, NodeLocationStoreType storeType) {
+			boolean enableKeepPartialLinestring, NodeLocationStoreType storeType, int bulkRowCount) {
+		if (bulkRowCount < 1 || bulkRowCount > MAX_BULK_ROW_COUNT) {
+			throw new OsmosisRuntimeException("The bulk row count must be between 1 and " + MAX_BULK_ROW_COUNT
+					+ ", " + bulkRowCount + " was specified.");
+		}
+		
 		dbCtx = new DatabaseContext(loginCredentials);
 		
+		this.bulkRowCount = bulkRowCount;
 		this.enableBboxBuilder = enableBboxBuilder;
 		this.enableLinestringBuilder = enableLinestringBuilder;
 		this.enableKeepPartialLinestring = enableKeepPartialLinestring;
@@ -149,14 +161,14 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		schemaVersionValidator = new SchemaVersionValidator(dbCtx, preferences);
 		indexManager = new IndexManager(dbCtx, !enableBboxBuilder, !enableLinestringBuilder);
 		
-		nodeBuffer = new ArrayList<Node>();
-		nodeTagBuffer = new ArrayList<DbFeature<Tag>>();
-		wayBuffer = new ArrayList<Way>();
-		wayTagBuffer = new ArrayList<DbFeature<Tag>>();
-		wayNodeBuffer = new ArrayList<DbOrderedFeature<WayNode>>();
-		relationBuffer = new ArrayList<Relation>();
-		relationTagBuffer = new ArrayList<DbFeature<Tag>>();
-		relationMemberBuffer = new ArrayList<DbOrderedFeature<RelationMember>>();
+		nodeBuffer = new ArrayDeque<Node>();
+		nodeTagBuffer = new ArrayDeque<DbFeature<Tag>>();
+		wayBuffer = new ArrayDeque<Way>();
+		wayTagBuffer = new ArrayDeque<DbFeature<Tag>>();
+		wayNodeBuffer = new ArrayDeque<DbOrderedFeature<WayNode>>();
+		relationBuffer = new ArrayDeque<Relation>();
+		relationTagBuffer = new ArrayDeque<DbFeature<Tag>>();
+		relationMemberBuffer = new ArrayDeque<DbOrderedFeature<RelationMember>>();
 		
 		// Create an action dao but disable it so that no records will be written.
 		actionDao = new ActionDao(dbCtx, false);
@@ -189,35 +201,35 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 			schemaVersionValidator.validateVersion(PostgreSqlVersionConstants.SCHEMA_VERSION);
 			
 			bulkNodeStatement = statementContainer.add(
-					dbCtx.prepareStatement(nodeBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_NODE)));
+					dbCtx.prepareStatement(nodeBuilder.getSqlInsert(bulkRowCount)));
 			singleNodeStatement = statementContainer.add(
 					dbCtx.prepareStatement(nodeBuilder.getSqlInsert(1)));
 			bulkNodeTagStatement = statementContainer.add(
-					dbCtx.prepareStatement(nodeTagBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_NODE_TAG)));
+					dbCtx.prepareStatement(nodeTagBuilder.getSqlInsert(bulkRowCount)));
 			singleNodeTagStatement = statementContainer.add(
 					dbCtx.prepareStatement(nodeTagBuilder.getSqlInsert(1)));
 			bulkWayStatement = statementContainer.add(
-					dbCtx.prepareStatement(wayBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_WAY)));
+					dbCtx.prepareStatement(wayBuilder.getSqlInsert(bulkRowCount)));
 			singleWayStatement = statementContainer.add(
 					dbCtx.prepareStatement(wayBuilder.getSqlInsert(1)));
 			bulkWayTagStatement = statementContainer.add(
-					dbCtx.prepareStatement(wayTagBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_WAY_TAG)));
+					dbCtx.prepareStatement(wayTagBuilder.getSqlInsert(bulkRowCount)));
 			singleWayTagStatement = statementContainer.add(
 					dbCtx.prepareStatement(wayTagBuilder.getSqlInsert(1)));
 			bulkWayNodeStatement = statementContainer.add(
-					dbCtx.prepareStatement(wayNodeBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_WAY_NODE)));
+					dbCtx.prepareStatement(wayNodeBuilder.getSqlInsert(bulkRowCount)));
 			singleWayNodeStatement = statementContainer.add(
 					dbCtx.prepareStatement(wayNodeBuilder.getSqlInsert(1)));
 			bulkRelationStatement = statementContainer.add(
-					dbCtx.prepareStatement(relationBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_RELATION)));
+					dbCtx.prepareStatement(relationBuilder.getSqlInsert(bulkRowCount)));
 			singleRelationStatement = statementContainer.add(
 					dbCtx.prepareStatement(relationBuilder.getSqlInsert(1)));
 			bulkRelationTagStatement = statementContainer.add(
-					dbCtx.prepareStatement(relationTagBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_RELATION_TAG)));
+					dbCtx.prepareStatement(relationTagBuilder.getSqlInsert(bulkRowCount)));
 			singleRelationTagStatement = statementContainer.add(
 					dbCtx.prepareStatement(relationTagBuilder.getSqlInsert(1)));
 			bulkRelationMemberStatement = statementContainer.add(
-					dbCtx.prepareStatement(relationMemberBuilder.getSqlInsert(INSERT_BULK_ROW_COUNT_RELATION_MEMBER)));
+					dbCtx.prepareStatement(relationMemberBuilder.getSqlInsert(bulkRowCount)));
 			singleRelationMemberStatement = statementContainer.add(
 					dbCtx.prepareStatement(relationMemberBuilder.getSqlInsert(1)));
 			
@@ -260,17 +272,17 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushNodes(boolean complete) {
-		while (nodeBuffer.size() >= INSERT_BULK_ROW_COUNT_NODE) {
+		while (nodeBuffer.size() >= bulkRowCount) {
 			List<Node> processedNodes;
 			int prmIndex;
 			
-			processedNodes = new ArrayList<Node>(INSERT_BULK_ROW_COUNT_NODE);
+			processedNodes = new ArrayList<Node>(bulkRowCount);
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_NODE; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				Node node;
 				
-				node = nodeBuffer.remove(0);
+				node = nodeBuffer.removeFirst();
 				processedNodes.add(node);
 				
 				prmIndex = nodeBuilder.populateEntityParameters(bulkNodeStatement, prmIndex, node);
@@ -288,10 +300,10 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (nodeBuffer.size() > 0) {
+			while (!nodeBuffer.isEmpty()) {
 				Node node;
 				
-				node = nodeBuffer.remove(0);
+				node = nodeBuffer.removeFirst();
 				
 				nodeBuilder.populateEntityParameters(singleNodeStatement, 1, node);
 				
@@ -333,13 +345,13 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushNodeTags(boolean complete) {
-		while (nodeTagBuffer.size() >= INSERT_BULK_ROW_COUNT_NODE_TAG) {
+		while (nodeTagBuffer.size() >= bulkRowCount) {
 			int prmIndex;
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_NODE_TAG; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				prmIndex = nodeTagBuilder.populateEntityParameters(
-						bulkNodeTagStatement, prmIndex, nodeTagBuffer.remove(0));
+						bulkNodeTagStatement, prmIndex, nodeTagBuffer.removeFirst());
 			}
 			
 			try {
@@ -350,8 +362,8 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (nodeTagBuffer.size() > 0) {
-				nodeTagBuilder.populateEntityParameters(singleNodeTagStatement, 1, nodeTagBuffer.remove(0));
+			while (!nodeTagBuffer.isEmpty()) {
+				nodeTagBuilder.populateEntityParameters(singleNodeTagStatement, 1, nodeTagBuffer.removeFirst());
 				
 				try {
 					singleNodeTagStatement.executeUpdate();
@@ -374,18 +386,18 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushWays(boolean complete) {
-		while (wayBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY) {
+		while (wayBuffer.size() >= bulkRowCount) {
 			List<Way> processedWays;
 			int prmIndex;
 			
-			processedWays = new ArrayList<Way>(INSERT_BULK_ROW_COUNT_WAY);
+			processedWays = new ArrayList<Way>(bulkRowCount);
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				Way way;
 				List<Geometry> geometries;
 				
-				way = wayBuffer.remove(0);
+				way = wayBuffer.removeFirst();
 				processedWays.add(way);
 				
 				geometries = new ArrayList<Geometry>();
@@ -411,11 +423,11 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (wayBuffer.size() > 0) {
+			while (!wayBuffer.isEmpty()) {
 				Way way;
 				List<Geometry> geometries;
 				
-				way = wayBuffer.remove(0);
+				way = wayBuffer.removeFirst();
 				
 				geometries = new ArrayList<Geometry>();
 				if (enableBboxBuilder) {
@@ -483,13 +495,13 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushWayTags(boolean complete) {
-		while (wayTagBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY_TAG) {
+		while (wayTagBuffer.size() >= bulkRowCount) {
 			int prmIndex;
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY_TAG; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				prmIndex = wayTagBuilder.populateEntityParameters(
-						bulkWayTagStatement, prmIndex, wayTagBuffer.remove(0));
+						bulkWayTagStatement, prmIndex, wayTagBuffer.removeFirst());
 			}
 			
 			try {
@@ -500,8 +512,8 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (wayTagBuffer.size() > 0) {
-				wayTagBuilder.populateEntityParameters(singleWayTagStatement, 1, wayTagBuffer.remove(0));
+			while (!wayTagBuffer.isEmpty()) {
+				wayTagBuilder.populateEntityParameters(singleWayTagStatement, 1, wayTagBuffer.removeFirst());
 				
 				try {
 					singleWayTagStatement.executeUpdate();
@@ -524,13 +536,13 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushWayNodes(boolean complete) {
-		while (wayNodeBuffer.size() >= INSERT_BULK_ROW_COUNT_WAY_NODE) {
+		while (wayNodeBuffer.size() >= bulkRowCount) {
 			int prmIndex;
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_WAY_NODE; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				prmIndex = wayNodeBuilder.populateEntityParameters(
-						bulkWayNodeStatement, prmIndex, wayNodeBuffer.remove(0));
+						bulkWayNodeStatement, prmIndex, wayNodeBuffer.removeFirst());
 			}
 			
 			try {
@@ -541,8 +553,8 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (wayNodeBuffer.size() > 0) {
-				wayNodeBuilder.populateEntityParameters(singleWayNodeStatement, 1, wayNodeBuffer.remove(0));
+			while (!wayNodeBuffer.isEmpty()) {
+				wayNodeBuilder.populateEntityParameters(singleWayNodeStatement, 1, wayNodeBuffer.removeFirst());
 				
 				try {
 					singleWayNodeStatement.executeUpdate();
@@ -565,17 +577,17 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushRelations(boolean complete) {
-		while (relationBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION) {
+		while (relationBuffer.size() >= bulkRowCount) {
 			List<Relation> processedRelations;
 			int prmIndex;
 			
-			processedRelations = new ArrayList<Relation>(INSERT_BULK_ROW_COUNT_RELATION);
+			processedRelations = new ArrayList<Relation>(bulkRowCount);
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				Relation relation;
 				
-				relation = relationBuffer.remove(0);
+				relation = relationBuffer.removeFirst();
 				processedRelations.add(relation);
 				
 				prmIndex = relationBuilder.populateEntityParameters(bulkRelationStatement, prmIndex, relation);
@@ -594,10 +606,10 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (relationBuffer.size() > 0) {
+			while (!relationBuffer.isEmpty()) {
 				Relation relation;
 				
-				relation = relationBuffer.remove(0);
+				relation = relationBuffer.removeFirst();
 				
 				relationBuilder.populateEntityParameters(singleRelationStatement, 1, relation);
 				
@@ -659,13 +671,13 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushRelationTags(boolean complete) {
-		while (relationTagBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION_TAG) {
+		while (relationTagBuffer.size() >= bulkRowCount) {
 			int prmIndex;
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION_TAG; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				prmIndex = relationTagBuilder.populateEntityParameters(
-						bulkRelationTagStatement, prmIndex, relationTagBuffer.remove(0));
+						bulkRelationTagStatement, prmIndex, relationTagBuffer.removeFirst());
 			}
 			
 			try {
@@ -676,8 +688,9 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (relationTagBuffer.size() > 0) {
-				relationTagBuilder.populateEntityParameters(singleRelationTagStatement, 1, relationTagBuffer.remove(0));
+			while (!relationTagBuffer.isEmpty()) {
+				relationTagBuilder.populateEntityParameters(
+						singleRelationTagStatement, 1, relationTagBuffer.removeFirst());
 				
 				try {
 					singleRelationTagStatement.executeUpdate();
@@ -700,13 +713,13 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 	 *            some data may be left until more data is available.
 	 */
 	private void flushRelationMembers(boolean complete) {
-		while (relationMemberBuffer.size() >= INSERT_BULK_ROW_COUNT_RELATION_MEMBER) {
+		while (relationMemberBuffer.size() >= bulkRowCount) {
 			int prmIndex;
 			
 			prmIndex = 1;
-			for (int i = 0; i < INSERT_BULK_ROW_COUNT_RELATION_MEMBER; i++) {
+			for (int i = 0; i < bulkRowCount; i++) {
 				prmIndex = relationMemberBuilder.populateEntityParameters(
-						bulkRelationMemberStatement, prmIndex, relationMemberBuffer.remove(0));
+						bulkRelationMemberStatement, prmIndex, relationMemberBuffer.removeFirst());
 			}
 			
 			try {
@@ -717,9 +730,9 @@ public class PostgreSqlWriter implements Sink, EntityProcessor {
 		}
 		
 		if (complete) {
-			while (relationMemberBuffer.size() > 0) {
+			while (!relationMemberBuffer.isEmpty()) {
 				relationMemberBuilder.populateEntityParameters(
-						singleRelationMemberStatement, 1, relationMemberBuffer.remove(0));
+						singleRelationMemberStatement, 1, relationMemberBuffer.removeFirst());
 				
 				try {
 					singleRelationMemberStatement.executeUpdate();
@@ -1,6 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsimple.v0_6;
 
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.buffer.v0_6.BackgroundSink;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
 import org.openstreetmap.osmosis.core.database.DatabaseTaskManagerFactory;
@@ -8,6 +10,7 @@ import org.openstreetmap.osmosis.pgsimple.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
 import org.openstreetmap.osmosis.core.pipeline.v0_6.SinkManager;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 
 
 /**
@@ -20,10 +23,15 @@ public class PostgreSqlWriterFactory extends DatabaseTaskManagerFactory {
 	private static final String ARG_ENABLE_LINESTRING_BUILDER = "enableLinestringBuilder";
 	private static final String ARG_ENABLE_KEEP_PARTIAL_LINESTRING = "enableKeepPartialLinestring";
 	private static final String ARG_NODE_LOCATION_STORE_TYPE = "nodeLocationStoreType";
+	private static final String ARG_BULK_ROW_COUNT = "bulkRowCount";
+	private static final String ARG_ASYNC_WRITE = "asyncWrite";
 	private static final boolean DEFAULT_ENABLE_BBOX_BUILDER = false;
 	private static final boolean DEFAULT_ENABLE_LINESTRING_BUILDER = false;
 	private static final boolean DEFAULT_ENABLE_KEEP_PARTIAL_LINESTRING = false;
 	private static final String DEFAULT_NODE_LOCATION_STORE_TYPE = "CompactTempFile";
+	private static final int DEFAULT_BULK_ROW_COUNT = 1000;
+	private static final boolean DEFAULT_ASYNC_WRITE = false;
+	private static final int ASYNC_WRITE_BUFFER_CAPACITY = 10000;
 	
 	/**
 	 * {@inheritDoc}
@@ -36,6 +44,9 @@ public class PostgreSqlWriterFactory extends DatabaseTaskManagerFactory {
 		boolean enableLinestringBuilder;
 		boolean enableKeepPartialLinestring;
 		NodeLocationStoreType storeType;
+		int bulkRowCount;
+		boolean asyncWrite;
+		Sink sink;
 		
 		// Get the task arguments.
 		loginCredentials = getDatabaseLoginCredentials(taskConfig);
@@ -48,11 +59,27 @@ public class PostgreSqlWriterFactory extends DatabaseTaskManagerFactory {
 		storeType = Enum.valueOf(
 				NodeLocationStoreType.class,
 				getStringArgument(taskConfig, ARG_NODE_LOCATION_STORE_TYPE, DEFAULT_NODE_LOCATION_STORE_TYPE));
+		bulkRowCount = getIntegerArgument(taskConfig, ARG_BULK_ROW_COUNT, DEFAULT_BULK_ROW_COUNT);
+		if (bulkRowCount < 1 || bulkRowCount > PostgreSqlWriter.MAX_BULK_ROW_COUNT) {
+			throw new OsmosisRuntimeException(
+					"Argument " + ARG_BULK_ROW_COUNT + " for task " + taskConfig.getId()
+					+ " must be between 1 and " + PostgreSqlWriter.MAX_BULK_ROW_COUNT
+					+ " to stay within the database bind parameter limit.");
+		}
+		asyncWrite = getBooleanArgument(taskConfig, ARG_ASYNC_WRITE, DEFAULT_ASYNC_WRITE);
+		
+		sink = new PostgreSqlWriter(loginCredentials, preferences, enableBboxBuilder, enableLinestringBuilder,
+				enableKeepPartialLinestring, storeType, bulkRowCount);
+		
+		// Move all database access onto a dedicated thread so that the
+		// pipeline can continue producing data while statements execute.
+		if (asyncWrite) {
+			sink = new BackgroundSink(sink, ASYNC_WRITE_BUFFER_CAPACITY, taskConfig.getId() + "-writer");
+		}
 		
 		return new SinkManager(
 			taskConfig.getId(),
-			new PostgreSqlWriter(loginCredentials, preferences, enableBboxBuilder, enableLinestringBuilder,
-				enableKeepPartialLinestring, storeType),
+			sink,
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -16,6 +16,7 @@ import org.openstreetmap.osmosis.core.OsmosisConstants;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.BoundContainerIterator;
+import org.openstreetmap.osmosis.core.container.v0_6.CachingEntityManager;
 import org.openstreetmap.osmosis.core.container.v0_6.DatasetContext;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityManager;
@@ -28,6 +29,7 @@ import org.openstreetmap.osmosis.core.container.v0_6.WayContainerIterator;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
 import org.openstreetmap.osmosis.core.domain.v0_6.Bound;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
 import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
 import org.openstreetmap.osmosis.core.domain.v0_6.Node;
 import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
@@ -65,11 +67,12 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	private NodeDao nodeDao;
 	private WayDao wayDao;
 	private RelationDao relationDao;
-	private PostgreSqlEntityManager<Node> nodeManager;
-	private PostgreSqlEntityManager<Way> wayManager;
-	private PostgreSqlEntityManager<Relation> relationManager;
+	private EntityManager<Node> nodeManager;
+	private EntityManager<Way> wayManager;
+	private EntityManager<Relation> relationManager;
 	private PolygonBuilder polygonBuilder;
 	private ReleasableContainer releasableContainer;
+	private int entityCacheSize;
 	
 	
 	/**
@@ -81,8 +84,26 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	 *            Contains preferences configuring database behaviour.
 	 */
 	public PostgreSqlDatasetContext(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences) {
+		this(loginCredentials, preferences, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param preferences
+	 *            Contains preferences configuring database behaviour.
+	 * @param entityCacheSize
+	 *            The maximum number of entities of each type to cache when
+	 *            retrieving entities by id. Zero disables caching.
+	 */
+	public PostgreSqlDatasetContext(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
+			int entityCacheSize) {
 		this.loginCredentials = loginCredentials;
 		this.preferences = preferences;
+		this.entityCacheSize = entityCacheSize;
 		
 		polygonBuilder = new PolygonBuilder();
 		
@@ -112,15 +133,45 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 			wayDao = releasableContainer.add(new WayDao(dbCtx, actionDao));
 			relationDao = releasableContainer.add(new RelationDao(dbCtx, actionDao));
 			
-			nodeManager = new PostgreSqlEntityManager<Node>(nodeDao, userDao);
-			wayManager = new PostgreSqlEntityManager<Way>(wayDao, userDao);
-			relationManager = new PostgreSqlEntityManager<Relation>(relationDao, userDao);
+			nodeManager = createEntityManager(new PostgreSqlEntityManager<Node>(nodeDao, userDao));
+			wayManager = createEntityManager(new PostgreSqlEntityManager<Way>(wayDao, userDao));
+			relationManager = createEntityManager(new PostgreSqlEntityManager<Relation>(relationDao, userDao));
 		}
 		
 		initialized = true;
 	}
 	
 	
+	/**
+	 * Wraps the entity manager in a cache if caching is enabled.
+	 * 
+	 * @param <T>
+	 *            The entity type to be supported.
+	 * @param entityManager
+	 *            The entity manager providing direct database access.
+	 * @return The entity manager to be used.
+	 */
+	private <T extends Entity> EntityManager<T> createEntityManager(EntityManager<T> entityManager) {
+		if (entityCacheSize > 0) {
+			return new CachingEntityManager<T>(entityManager, entityCacheSize);
+		} else {
+			return entityManager;
+		}
+	}
+	
+	
+	private void logCacheStatistics(String entityName, EntityManager<?> entityManager) {
+		if (entityManager instanceof CachingEntityManager) {
+			CachingEntityManager<?> cachingManager;
+			
+			cachingManager = (CachingEntityManager<?>) entityManager;
+			LOG.fine(entityName + " cache: " + cachingManager.getHitCount() + " hits, "
+					+ cachingManager.getMissCount() + " misses, "
+					+ Math.round(cachingManager.getHitRate() * 100) + "% hit rate.");
+		}
+	}
+	
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -456,6 +507,10 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	 */
 	@Override
 	public void close() {
+		logCacheStatistics("Node", nodeManager);
+		logCacheStatistics("Way", wayManager);
+		logCacheStatistics("Relation", relationManager);
+		
 		releasableContainer.close();
 		releasableContainer.clear();
 		
@@ -5,6 +5,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import org.openstreetmap.osmosis.pgsimple.common.InMemoryNodeLocationStore;
+import org.openstreetmap.osmosis.pgsimple.common.MappedSparseNodeLocationStore;
 import org.openstreetmap.osmosis.pgsimple.common.NodeLocation;
 import org.openstreetmap.osmosis.pgsimple.common.NodeLocationStore;
 import org.openstreetmap.osmosis.pgsimple.common.PersistentNodeLocationStore;
@@ -76,4 +77,45 @@ public class NodeLocationStoreTest {
 	public void testInMemory() {
 		testStoreImplementation(new InMemoryNodeLocationStore());
 	}
+	
+	
+	/**
+	 * Tests the memory-mapped sparse implementation.
+	 */
+	@Test
+	public void testMappedSparse() {
+		testStoreImplementation(new MappedSparseNodeLocationStore());
+	}
+	
+	
+	/**
+	 * Tests that the memory-mapped sparse implementation supports ids beyond
+	 * the 32-bit range and nodes added out of order.
+	 */
+	@Test
+	public void testMappedSparseLargeIds() {
+		NodeLocationStore store;
+		NodeLocation location;
+		long largeId;
+		
+		store = new MappedSparseNodeLocationStore();
+		largeId = 1L << 40;
+		
+		store.addLocation(largeId, new NodeLocation(10.5, -20.25));
+		store.addLocation(5, new NodeLocation(-1.5, 2.5));
+		
+		location = store.getNodeLocation(largeId);
+		Assert.assertTrue("The large node location should be valid.", location.isValid());
+		Assert.assertEquals("The longitude is incorrect.", 10.5, location.getLongitude(), 0);
+		Assert.assertEquals("The latitude is incorrect.", -20.25, location.getLatitude(), 0);
+		
+		location = store.getNodeLocation(5);
+		Assert.assertTrue("The small node location should be valid.", location.isValid());
+		Assert.assertEquals("The longitude is incorrect.", -1.5, location.getLongitude(), 0);
+		
+		Assert.assertFalse("The node location should be invalid.", store.getNodeLocation(largeId + 1).isValid());
+		Assert.assertFalse("The node location should be invalid.", store.getNodeLocation(1L << 50).isValid());
+		
+		store.close();
+	}
 }
@@ -0,0 +1,393 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.postgis.jdbc.geometry.Geometry;
+import net.postgis.jdbc.geometry.binary.BinaryWriter;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.hstore.PGHStore;
+import org.postgresql.util.PGobject;
+
+
+/**
+ * A variant of the COPY file writer producing the PostgreSQL binary COPY
+ * format. Values are written in their binary wire representation which avoids
+ * the text formatting and escaping on the client and the corresponding
+ * parsing on the server. The resulting data must be loaded using COPY with
+ * the binary format option.
+ * <p>
+ * The binary format is strictly typed, each value must be written using the
+ * method matching the column type: int values for int4 columns, long values
+ * for int8 columns, and so on.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryCopyFileWriter extends CopyFileWriter {
+
+	private static Logger log = Logger.getLogger(BinaryCopyFileWriter.class.getName());
+
+	private static final byte[] FILE_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+	/**
+	 * The PostgreSQL timestamp epoch of 2000-01-01 in milliseconds since the
+	 * java epoch.
+	 */
+	private static final long POSTGRES_EPOCH_MILLIS = 946684800000L;
+
+	/**
+	 * The PostgreSQL type identifier for the int8 type.
+	 */
+	private static final int INT8_OID = 20;
+
+
+	private boolean initialized;
+	private DataOutputStream output;
+	private ByteArrayOutputStream recordBuffer;
+	private DataOutputStream recordOutput;
+	private int fieldCount;
+	private TimeZone timeZone;
+	private BinaryWriter postgisBinaryWriter;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param file
+	 *            The file to write.
+	 */
+	public BinaryCopyFileWriter(File file) {
+		super(file);
+
+		initializeFields();
+	}
+
+
+	/**
+	 * Creates a new instance writing to a stream rather than a file. The stream
+	 * is closed when writing completes and cannot be re-used afterwards.
+	 *
+	 * @param outputStream
+	 *            The stream to write.
+	 */
+	public BinaryCopyFileWriter(OutputStream outputStream) {
+		super(outputStream);
+
+		initializeFields();
+	}
+
+
+	private void initializeFields() {
+		recordBuffer = new ByteArrayOutputStream();
+		recordOutput = new DataOutputStream(recordBuffer);
+		fieldCount = 0;
+
+		// Timestamps are stored without time zone using local time to match
+		// the text format where the zone offset is ignored by the server.
+		timeZone = TimeZone.getDefault();
+		postgisBinaryWriter = new BinaryWriter();
+	}
+
+
+	/**
+	 * Opens the output and writes the file header. This may be called
+	 * multiple times without adverse affect.
+	 */
+	private void initialize() {
+		if (!initialized) {
+			try {
+				output = new DataOutputStream(new BufferedOutputStream(openOutputStream(), 65536));
+
+				output.write(FILE_SIGNATURE);
+				// Flags field, no OIDs are included.
+				output.writeInt(0);
+				// Header extension length.
+				output.writeInt(0);
+
+			} catch (IOException e) {
+				throw new OsmosisRuntimeException("Unable to open file for writing.", e);
+			}
+
+			initialized = true;
+		}
+	}
+
+
+	/**
+	 * Writes a field containing the specified bytes.
+	 *
+	 * @param data
+	 *            The field data, or null to write a NULL field.
+	 */
+	private void writeBytesField(byte[] data) throws IOException {
+		fieldCount++;
+
+		if (data == null) {
+			recordOutput.writeInt(-1);
+		} else {
+			recordOutput.writeInt(data.length);
+			recordOutput.write(data);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(boolean data) {
+		initialize();
+
+		try {
+			fieldCount++;
+			recordOutput.writeInt(1);
+			recordOutput.writeBoolean(data);
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(int data) {
+		initialize();
+
+		try {
+			fieldCount++;
+			recordOutput.writeInt(4);
+			recordOutput.writeInt(data);
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(long data) {
+		initialize();
+
+		try {
+			fieldCount++;
+			recordOutput.writeInt(8);
+			recordOutput.writeLong(data);
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(String data) {
+		initialize();
+
+		try {
+			if (data == null) {
+				writeBytesField(null);
+			} else {
+				writeBytesField(data.getBytes(StandardCharsets.UTF_8));
+			}
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(Date data) {
+		initialize();
+
+		try {
+			long localMillis;
+
+			// Truncate to whole seconds to match the text format.
+			localMillis = data.getTime() + timeZone.getOffset(data.getTime());
+			localMillis = Math.floorDiv(localMillis, 1000) * 1000;
+
+			fieldCount++;
+			recordOutput.writeInt(8);
+			recordOutput.writeLong((localMillis - POSTGRES_EPOCH_MILLIS) * 1000);
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeField(Geometry data) {
+		initialize();
+
+		try {
+			if (data == null) {
+				writeBytesField(null);
+			} else {
+				writeBytesField(postgisBinaryWriter.writeBinary(data));
+			}
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * Writes data to the output file. Only hstore values are supported in the
+	 * binary format.
+	 *
+	 * @param data
+	 *            The data to be written.
+	 */
+	@Override
+	public void writeField(PGobject data) {
+		initialize();
+
+		if (!(data instanceof PGHStore)) {
+			throw new OsmosisRuntimeException(
+					"Type " + data.getType() + " is not supported by the binary COPY format.");
+		}
+
+		try {
+			// The hstore encodes itself directly into its binary send format.
+			writeBytesField(((PGHStore) data).toBytes());
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * Writes data to the output file as an int8 array.
+	 *
+	 * @param data
+	 *            The data to be written.
+	 */
+	@Override
+	public void writeField(List<Long> data) {
+		initialize();
+
+		try {
+			fieldCount++;
+
+			if (data.isEmpty()) {
+				// An empty array has no dimensions.
+				recordOutput.writeInt(12);
+				recordOutput.writeInt(0);
+				recordOutput.writeInt(0);
+				recordOutput.writeInt(INT8_OID);
+
+			} else {
+				recordOutput.writeInt(20 + data.size() * 12);
+				// Dimension count, null flag, and element type.
+				recordOutput.writeInt(1);
+				recordOutput.writeInt(0);
+				recordOutput.writeInt(INT8_OID);
+				// Dimension size and lower bound.
+				recordOutput.writeInt(data.size());
+				recordOutput.writeInt(1);
+
+				for (Long value : data) {
+					recordOutput.writeInt(8);
+					recordOutput.writeLong(value);
+				}
+			}
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void endRecord() {
+		try {
+			output.writeShort(fieldCount);
+			recordBuffer.writeTo(output);
+
+			recordBuffer.reset();
+			fieldCount = 0;
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to end record.", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void complete() {
+		initialize();
+
+		try {
+			if (fieldCount > 0) {
+				throw new OsmosisRuntimeException("The current record has not been ended.");
+			}
+
+			// The file trailer is a field count of -1.
+			output.writeShort(-1);
+			output.close();
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to complete writing to the data stream.", e);
+		} finally {
+			initialized = false;
+			output = null;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		try {
+			try {
+				if (output != null) {
+					output.close();
+				}
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "Unable to close writer.", e);
+			}
+
+		} finally {
+			initialized = false;
+			output = null;
+		}
+	}
+}
@@ -4,8 +4,8 @@ package org.openstreetmap.osmosis.pgsnapshot.common;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -17,6 +17,8 @@ import net.postgis.jdbc.geometry.Geometry;
 import net.postgis.jdbc.geometry.binary.BinaryWriter;
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.lifecycle.Completable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.hstore.PGHStore;
 import org.postgresql.util.PGobject;
 
 
@@ -32,11 +34,14 @@ public class CopyFileWriter implements Completable {
 	
 	
 	private File file;
+	private OutputStream outputStream;
 	private boolean initialized;
 	private BufferedWriter writer;
 	private boolean midRecord;
 	private SimpleDateFormat dateFormat;
 	private BinaryWriter postgisBinaryWriter;
+	private StringBuilder valueBuilder;
+	private char[] runBuffer;
 	
 	
 	/**
@@ -52,6 +57,22 @@ public class CopyFileWriter implements Completable {
 		
 		dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZ");
 		postgisBinaryWriter = new BinaryWriter();
+		valueBuilder = new StringBuilder();
+		runBuffer = new char[256];
+	}
+	
+	
+	/**
+	 * Creates a new instance writing to a stream rather than a file. The stream
+	 * is closed when writing completes and cannot be re-used afterwards.
+	 * 
+	 * @param outputStream
+	 *            The stream to write.
+	 */
+	public CopyFileWriter(OutputStream outputStream) {
+		this((File) null);
+		
+		this.outputStream = outputStream;
 	}
 	
 	
@@ -135,57 +156,100 @@ public class CopyFileWriter implements Completable {
 	
 	
 	/**
-	 * Inserts escape sequences needed to make a String suitable for writing to
-	 * a COPY file.
+	 * Gets the escape sequence representing a character in a COPY file.
+	 * 
+	 * @param data
+	 *            The character to be written.
+	 * @return The escape sequence, or null if the character is written as is.
+	 */
+	private static String getEscapeSequence(char data) {
+		switch (data) {
+		case '\\': // Slash
+			return "\\\\";
+		case 8: // Backspace
+			return "\\b";
+		case 12: // Form feed
+			return "\\f";
+		case 10: // Newline
+			return "\\n";
+		case 13: // Carriage return
+			return "\\r";
+		case 9: // Tab
+			return "\\t";
+		case 11: // Vertical tab
+			return "\\v";
+		default:
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Writes a range of characters which don't require escaping.
+	 * 
+	 * @param data
+	 *            The raw data.
+	 * @param start
+	 *            The index of the first character to write.
+	 * @param end
+	 *            The index after the last character to write.
+	 * @throws IOException
+	 *             if the data cannot be written.
+	 */
+	private void writeRun(CharSequence data, int start, int end) throws IOException {
+		int length;
+		
+		length = end - start;
+		if (length <= 0) {
+			return;
+		}
+		
+		if (data instanceof String) {
+			writer.write((String) data, start, length);
+		} else {
+			// Copy into a re-usable buffer rather than creating a string.
+			if (runBuffer.length < length) {
+				runBuffer = new char[Math.max(length, runBuffer.length * 2)];
+			}
+			for (int i = 0; i < length; i++) {
+				runBuffer[i] = data.charAt(start + i);
+			}
+			writer.write(runBuffer, 0, length);
+		}
+	}
+	
+	
+	/**
+	 * Writes a value to the output file, inserting the escape sequences needed
+	 * to make it suitable for a COPY file. Characters between escape sequences
+	 * are written in a single call rather than one at a time.
 	 * 
 	 * @param data
-	 *            The raw data string.
-	 * @return The escaped string.
+	 *            The raw data, or null to write a null value.
+	 * @throws IOException
+	 *             if the data cannot be written.
 	 */
-	private String escapeString(String data) {
-		StringBuilder result;
-		char[] dataArray;
+	private void writeEscaped(CharSequence data) throws IOException {
+		int runStart;
 		
 		if (data == null) {
-			return "\\N";
+			writer.write("\\N");
+			return;
 		}
 		
-		result = new StringBuilder(data.length());
-		dataArray = data.toCharArray();
-		for (int i = 0; i < dataArray.length; i++) {
-			char currentChar;
+		runStart = 0;
+		for (int i = 0; i < data.length(); i++) {
+			String escapeSequence;
 			
-			currentChar = dataArray[i];
+			escapeSequence = getEscapeSequence(data.charAt(i));
 			
-			switch (currentChar) {
-			case '\\': // Slash
-				result.append("\\\\");
-				break;
-			case 8: // Backspace
-				result.append("\\b");
-				break;
-			case 12: // Form feed
-				result.append("\\f");
-				break;
-			case 10: // Newline
-				result.append("\\n");
-				break;
-			case 13: // Carriage return
-				result.append("\\r");
-				break;
-			case 9: // Tab
-				result.append("\\t");
-				break;
-			case 11: // Vertical tab
-				result.append("\\v");
-				break;
-			default:
-				result.append(currentChar);
-				
+			if (escapeSequence != null) {
+				writeRun(data, runStart, i);
+				writer.write(escapeSequence);
+				runStart = i + 1;
 			}
 		}
-		
-		return result.toString();
+		writeRun(data, runStart, data.length());
 	}
 	
 	
@@ -201,7 +265,7 @@ public class CopyFileWriter implements Completable {
 		try {
 			separateField();
 			
-			writer.write(escapeString(data));
+			writeEscaped(data);
 			
 		} catch (IOException e) {
 			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
@@ -242,7 +306,7 @@ public class CopyFileWriter implements Completable {
 			separateField();
 
 		    if (data == null) {
-                writer.write(escapeString(null));
+                writeEscaped(null);
             } else {	
 			    writer.write(postgisBinaryWriter.writeHexed(data));
             }
@@ -265,7 +329,15 @@ public class CopyFileWriter implements Completable {
 		try {
 			separateField();
 			
-			writer.write(escapeString(data.getValue()));
+			if (data instanceof PGHStore) {
+				// Render into a re-usable buffer to avoid creating a string per
+				// record.
+				valueBuilder.setLength(0);
+				((PGHStore) data).writeValue(valueBuilder);
+				writeEscaped(valueBuilder);
+			} else {
+				writeEscaped(data.getValue());
+			}
 			
 		} catch (IOException e) {
 			throw new OsmosisRuntimeException("Unable to write value (" + data + ")", e);
@@ -314,6 +386,30 @@ public class CopyFileWriter implements Completable {
 	}
 	
 	
+	/**
+	 * Opens the underlying file, or returns the stream provided during
+	 * construction.
+	 * 
+	 * @return The stream to write to.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	protected OutputStream openOutputStream() throws IOException {
+		OutputStream targetStream;
+		
+		if (file != null) {
+			targetStream = TempFileManager.getInstance().createOutputStream(file);
+		} else if (outputStream != null) {
+			targetStream = outputStream;
+			outputStream = null;
+		} else {
+			throw new OsmosisRuntimeException("The output stream has already been closed.");
+		}
+		
+		return targetStream;
+	}
+	
+	
 	/**
 	 * Initialises the output file for writing. This must be called by
 	 * sub-classes before any writing is performed. This method may be called
@@ -324,7 +420,7 @@ public class CopyFileWriter implements Completable {
 		if (!initialized) {
 			try {
 				writer = new BufferedWriter(
-						new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), 65536), "UTF-8"));
+						new OutputStreamWriter(new BufferedOutputStream(openOutputStream(), 65536), "UTF-8"));
 				
 			} catch (IOException e) {
 				throw new OsmosisRuntimeException("Unable to open file for writing.", e);
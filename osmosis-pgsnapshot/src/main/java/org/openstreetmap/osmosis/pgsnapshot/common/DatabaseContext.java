@@ -5,6 +5,7 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -20,6 +21,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionCallback;
@@ -72,11 +74,61 @@ public class DatabaseContext implements AutoCloseable {
 	 * executeWithinTransaction is being used.
 	 */
     public void beginTransaction() {
+    	beginTransaction(new DefaultTransactionDefinition());
+    }
+    
+    
+	/**
+	 * Begins a new read-only database transaction with repeatable read
+	 * isolation. All queries within the transaction see a single snapshot of
+	 * the database which may be shared with other connections using
+	 * {@link #exportSnapshot()} and {@link #importSnapshot(String)}.
+	 */
+    public void beginRepeatableReadTransaction() {
+    	DefaultTransactionDefinition definition;
+    	
+    	definition = new DefaultTransactionDefinition();
+    	definition.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    	definition.setReadOnly(true);
+    	
+    	beginTransaction(definition);
+    }
+    
+    
+    private void beginTransaction(DefaultTransactionDefinition definition) {
     	if (transaction != null) {
     		throw new OsmosisRuntimeException("A transaction is already active.");
     	}
     	
-    	transaction = txnManager.getTransaction(new DefaultTransactionDefinition());
+    	transaction = txnManager.getTransaction(definition);
+    }
+    
+    
+	/**
+	 * Exports the snapshot of the current repeatable read transaction. The
+	 * snapshot remains available for import until this transaction ends.
+	 * 
+	 * @return The snapshot identifier.
+	 */
+    public String exportSnapshot() {
+    	return jdbcTemplate.queryForObject("SELECT pg_export_snapshot()", String.class);
+    }
+    
+    
+	/**
+	 * Switches the current repeatable read transaction to a snapshot exported
+	 * by another connection. This must be invoked before any other statement
+	 * within the transaction.
+	 * 
+	 * @param snapshotId
+	 *            The snapshot identifier returned by {@link #exportSnapshot()}.
+	 */
+    public void importSnapshot(String snapshotId) {
+    	if (!snapshotId.matches("[0-9A-Fa-f-]+")) {
+    		throw new OsmosisRuntimeException("Snapshot identifier " + snapshotId + " is invalid.");
+    	}
+    	
+    	jdbcTemplate.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
     }
     
     
@@ -197,6 +249,48 @@ public class DatabaseContext implements AutoCloseable {
 	 *            The columns to be loaded (optional).
 	 */
     public void loadCopyFile(File copyFile, String tableName, String... columns) {
+    	loadCopyFile(copyFile, false, tableName, columns);
+    }
+
+
+	/**
+	 * Loads a table from a COPY file.
+	 * 
+	 * @param copyFile
+	 *            The file to be loaded.
+	 * @param binary
+	 *            If true, the file is in the binary COPY format, otherwise it
+	 *            is in the text format.
+	 * @param tableName
+	 *            The table to load the data into.
+	 * @param columns
+	 *            The columns to be loaded (optional).
+	 */
+    public void loadCopyFile(File copyFile, boolean binary, String tableName, String... columns) {
+		try (BufferedInputStream inStream = new BufferedInputStream(new FileInputStream(copyFile), 65536)) {
+			loadCopyStream(inStream, binary, tableName, columns);
+		} catch (IOException e) {
+    		throw new OsmosisRuntimeException("Unable to process COPY file " + copyFile + ".", e);
+    	}
+    }
+
+
+	/**
+	 * Loads a table from a stream containing COPY data. The stream is read
+	 * until end of stream, this may be used to load data while it is still
+	 * being produced by another thread.
+	 * 
+	 * @param inStream
+	 *            The stream to be loaded.
+	 * @param binary
+	 *            If true, the stream is in the binary COPY format, otherwise it
+	 *            is in the text format.
+	 * @param tableName
+	 *            The table to load the data into.
+	 * @param columns
+	 *            The columns to be loaded (optional).
+	 */
+    public void loadCopyStream(InputStream inStream, boolean binary, String tableName, String... columns) {
     	CopyManager copyManager;
 
 		StringBuilder copyStatement = new StringBuilder();
@@ -213,20 +307,19 @@ public class DatabaseContext implements AutoCloseable {
 			copyStatement.append(')');
 		}
 		copyStatement.append(" FROM STDIN");
+		if (binary) {
+			copyStatement.append(" WITH (FORMAT binary)");
+		}
 		
-		try (BufferedInputStream inStream = new BufferedInputStream(new FileInputStream(copyFile), 65536)) {
-    		Connection conn = DataSourceUtils.getConnection(dataSource);
-    		try {
-	    		copyManager = new CopyManager(conn.unwrap(BaseConnection.class));
-	    		
-	    		copyManager.copyIn(copyStatement.toString(), inStream);
-    		} catch (SQLException e) {
-        		throw new OsmosisRuntimeException("Unable to process COPY file " + copyFile + ".", e);
-        	} finally {
-    			DataSourceUtils.releaseConnection(conn, dataSource);
-    		}
-		} catch (IOException e) {
-    		throw new OsmosisRuntimeException("Unable to process COPY file " + copyFile + ".", e);
-    	}
+		Connection conn = DataSourceUtils.getConnection(dataSource);
+		try {
+    		copyManager = new CopyManager(conn.unwrap(BaseConnection.class));
+    		
+    		copyManager.copyIn(copyStatement.toString(), inStream);
+		} catch (SQLException | IOException e) {
+    		throw new OsmosisRuntimeException("Unable to load COPY data into table " + tableName + ".", e);
+    	} finally {
+			DataSourceUtils.releaseConnection(conn, dataSource);
+		}
     }
 }
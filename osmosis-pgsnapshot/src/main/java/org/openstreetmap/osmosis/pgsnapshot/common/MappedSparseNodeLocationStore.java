@@ -0,0 +1,237 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
+
+
+/**
+ * A node location store implementation holding all data in a memory-mapped
+ * temporary file. Node ids are divided into fixed size pages, and space for a
+ * page is only allocated within the file when the first node within it is
+ * added. This keeps the file small for extracts with widely spread ids while
+ * allowing a full planet to be stored with a small JVM heap because all data
+ * resides in the operating system page cache rather than on the heap.
+ * <p>
+ * Each page contains a bitmap flagging which nodes are present followed by
+ * the packed fixed precision longitude and latitude of each node. Pages are
+ * stored in the order they are first used within large mapped regions of the
+ * file, mapping each page individually would exceed the operating system
+ * limit on the number of mappings per process for a full planet. Space used
+ * by pages is charged against the temporary file budget. Nodes may be added
+ * in any order. Once all nodes have been added, locations may be read
+ * concurrently by multiple threads.
+ *
+ * @author Brett Henderson
+ */
+public class MappedSparseNodeLocationStore implements NodeLocationStore {
+
+	private static final Logger LOG = Logger.getLogger(MappedSparseNodeLocationStore.class.getName());
+
+	private static final int NODE_DATA_SIZE = 8;
+	private static final int PAGE_ELEMENT_COUNT = 65536;
+	private static final int PAGE_BITMAP_SIZE = PAGE_ELEMENT_COUNT / 8;
+	private static final int PAGE_SIZE = PAGE_BITMAP_SIZE + PAGE_ELEMENT_COUNT * NODE_DATA_SIZE;
+	private static final int REGION_PAGE_COUNT = 2048;
+	private static final long REGION_SIZE = (long) REGION_PAGE_COUNT * PAGE_SIZE;
+
+
+	private File nodeStorageFile;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel fileChannel;
+	private List<MappedByteBuffer> regions;
+	private Map<Long, Integer> pageSlots;
+	private int pageCount;
+	private NodeLocation invalidNodeLocation;
+
+
+	/**
+	 * Creates a new instance.
+	 */
+	public MappedSparseNodeLocationStore() {
+		regions = new CopyOnWriteArrayList<MappedByteBuffer>();
+		pageSlots = new ConcurrentHashMap<Long, Integer>();
+		pageCount = 0;
+
+		invalidNodeLocation = new NodeLocation();
+	}
+
+
+	/**
+	 * Returns the slot within the file holding the specified page, allocating
+	 * it if it doesn't already exist.
+	 *
+	 * @param pageIndex
+	 *            The index of the page.
+	 * @return The page slot.
+	 */
+	private synchronized int getOrCreatePageSlot(long pageIndex) {
+		Integer pageSlot;
+
+		pageSlot = pageSlots.get(pageIndex);
+		if (pageSlot != null) {
+			return pageSlot;
+		}
+
+		try {
+			if (fileChannel == null) {
+				nodeStorageFile = TempFileManager.getInstance().createTempFile("nodelatlon", null);
+				randomAccessFile = new RandomAccessFile(nodeStorageFile, "rw");
+				fileChannel = randomAccessFile.getChannel();
+			}
+
+			// Pages are only written once used so the file remains sparse,
+			// charge the budget for each page as it is allocated.
+			TempFileManager.getInstance().reserve(nodeStorageFile, PAGE_SIZE);
+
+			// Map a new region once all pages in the existing ones are in use.
+			// Mapping beyond the end of the file extends it, the new region
+			// is zero filled and hence contains no nodes.
+			if (pageCount == regions.size() * REGION_PAGE_COUNT) {
+				regions.add(fileChannel.map(FileChannel.MapMode.READ_WRITE, regions.size() * REGION_SIZE, REGION_SIZE));
+			}
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException(
+					"Unable to allocate a node location page in temporary file " + nodeStorageFile + ".", e);
+		}
+
+		pageSlot = pageCount++;
+		pageSlots.put(pageIndex, pageSlot);
+
+		if (LOG.isLoggable(Level.FINER)) {
+			LOG.finer("The store contains " + pageCount + " pages, total "
+					+ ((long) pageCount * PAGE_SIZE / 1048576) + "MB.");
+		}
+
+		return pageSlot;
+	}
+
+
+	/**
+	 * Returns the region holding the page in the specified slot.
+	 *
+	 * @param pageSlot
+	 *            The page slot.
+	 * @return The region buffer.
+	 */
+	private MappedByteBuffer getRegion(int pageSlot) {
+		return regions.get(pageSlot / REGION_PAGE_COUNT);
+	}
+
+
+	/**
+	 * Returns the offset within its region of the page in the specified slot.
+	 *
+	 * @param pageSlot
+	 *            The page slot.
+	 * @return The offset of the start of the page.
+	 */
+	private int getPageOffset(int pageSlot) {
+		return (pageSlot % REGION_PAGE_COUNT) * PAGE_SIZE;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addLocation(long nodeId, NodeLocation nodeLocation) {
+		MappedByteBuffer region;
+		int pageSlot;
+		int pageOffset;
+		int elementIndex;
+		int bitmapOffset;
+		int dataOffset;
+
+		pageSlot = getOrCreatePageSlot(Math.floorDiv(nodeId, PAGE_ELEMENT_COUNT));
+		region = getRegion(pageSlot);
+		pageOffset = getPageOffset(pageSlot);
+		elementIndex = (int) Math.floorMod(nodeId, PAGE_ELEMENT_COUNT);
+
+		dataOffset = pageOffset + PAGE_BITMAP_SIZE + elementIndex * NODE_DATA_SIZE;
+		region.putInt(dataOffset, FixedPrecisionCoordinateConvertor.convertToFixed(nodeLocation.getLongitude()));
+		region.putInt(dataOffset + 4, FixedPrecisionCoordinateConvertor.convertToFixed(nodeLocation.getLatitude()));
+
+		bitmapOffset = pageOffset + (elementIndex >>> 3);
+		region.put(bitmapOffset, (byte) (region.get(bitmapOffset) | (1 << (elementIndex & 7))));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeLocation getNodeLocation(long nodeId) {
+		MappedByteBuffer region;
+		Integer pageSlot;
+		int pageOffset;
+		int elementIndex;
+		int dataOffset;
+
+		pageSlot = pageSlots.get(Math.floorDiv(nodeId, PAGE_ELEMENT_COUNT));
+		if (pageSlot == null) {
+			return invalidNodeLocation;
+		}
+
+		region = getRegion(pageSlot);
+		pageOffset = getPageOffset(pageSlot);
+		elementIndex = (int) Math.floorMod(nodeId, PAGE_ELEMENT_COUNT);
+
+		if ((region.get(pageOffset + (elementIndex >>> 3)) & (1 << (elementIndex & 7))) == 0) {
+			return invalidNodeLocation;
+		}
+
+		dataOffset = pageOffset + PAGE_BITMAP_SIZE + elementIndex * NODE_DATA_SIZE;
+
+		return new NodeLocation(
+			FixedPrecisionCoordinateConvertor.convertToDouble(region.getInt(dataOffset)),
+			FixedPrecisionCoordinateConvertor.convertToDouble(region.getInt(dataOffset + 4))
+		);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		LOG.fine("The store contains " + pageCount + " pages, total "
+				+ ((long) pageCount * PAGE_SIZE / 1048576) + "MB.");
+
+		// Mapped buffers are unmapped when garbage collected, we can only
+		// release our references to them.
+		regions.clear();
+		pageSlots.clear();
+		pageCount = 0;
+
+		if (randomAccessFile != null) {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				// We cannot throw an exception within a release method.
+				LOG.log(Level.WARNING, "Unable to close node location file.", e);
+			}
+			randomAccessFile = null;
+			fileChannel = null;
+		}
+
+		if (nodeStorageFile != null) {
+			TempFileManager.getInstance().release(nodeStorageFile);
+			nodeStorageFile = null;
+		}
+	}
+}
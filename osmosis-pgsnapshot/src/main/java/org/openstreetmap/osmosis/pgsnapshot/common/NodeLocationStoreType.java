@@ -24,5 +24,13 @@ public enum NodeLocationStoreType {
 	 * temporary file on disk. This is optimised for small datasets, and is less
 	 * efficient for large datasets.
 	 */
-	CompactTempFile
+	CompactTempFile,
+	
+	/**
+	 * A memory-mapped temporary file based node location store. Space is only
+	 * allocated for ranges of node ids in use, and data is held in the
+	 * operating system page cache rather than the JVM heap. This supports
+	 * planet sized datasets with a small JVM heap.
+	 */
+	MappedSparse
 }
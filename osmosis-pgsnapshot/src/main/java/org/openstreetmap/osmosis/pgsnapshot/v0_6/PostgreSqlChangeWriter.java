@@ -20,6 +20,7 @@ import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
 import org.openstreetmap.osmosis.pgsnapshot.common.SchemaVersionValidator;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.ActionChangeWriter;
+import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.BulkChangeWriter;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.ChangeWriter;
 
 
@@ -59,11 +60,44 @@ public class PostgreSqlChangeWriter implements ChangeSink {
 	 * @param logging
 	 * 			  If true, will log all sql queries to the database that was executed
 	 * 			  from the change log
+	 * @param bulkMode
+	 *            If true, changes are applied in batches using staging tables
+	 *            and set-based statements instead of one entity at a time.
 	 */
 	public PostgreSqlChangeWriter(DatabaseLoginCredentials loginCredentials, 
-			DatabasePreferences preferences, boolean keepInvalidWays, boolean logging) {
+			DatabasePreferences preferences, boolean keepInvalidWays, boolean logging, boolean bulkMode) {
+		this(loginCredentials, preferences, keepInvalidWays, logging, bulkMode, BulkChangeWriter.DEFAULT_BATCH_SIZE);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param preferences
+	 *            Contains preferences configuring database behaviour.
+	 * @param keepInvalidWays
+	 *            If true, zero and single node ways are kept. Otherwise they are
+	 *            silently dropped to avoid putting invalid geometries into the 
+	 *            database which can cause problems with postgis functions.
+	 * @param logging
+	 * 			  If true, will log all sql queries to the database that was executed
+	 * 			  from the change log
+	 * @param bulkMode
+	 *            If true, changes are applied in batches using staging tables
+	 *            and set-based statements instead of one entity at a time.
+	 * @param bulkBatchSize
+	 *            The number of changes in each batch when bulkMode is enabled.
+	 */
+	public PostgreSqlChangeWriter(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
+			boolean keepInvalidWays, boolean logging, boolean bulkMode, int bulkBatchSize) {
 		dbCtx = new DatabaseContext(loginCredentials);
-		changeWriter = new ChangeWriter(dbCtx, logging);
+		if (bulkMode) {
+			changeWriter = new BulkChangeWriter(dbCtx, bulkBatchSize);
+		} else {
+			changeWriter = new ChangeWriter(dbCtx, logging);
+		}
 		actionWriterMap = new HashMap<ChangeAction, ActionChangeWriter>();
 		actionWriterMap.put(ChangeAction.Create, 
 				new ActionChangeWriter(changeWriter, ChangeAction.Create, keepInvalidWays));
@@ -160,6 +194,13 @@ public class PostgreSqlChangeWriter implements ChangeSink {
 		}
 		
 		dbCtx.commitTransaction();
+		
+		// Prepare for another set of changes which long running sources may provide.
+		initialized = false;
+		appliedChangeSets.clear();
+		modifications.clear();
+		earliestTimestamp = 9999999999999L;
+		latestTimestamp = 0L;
 	}
 	
 	
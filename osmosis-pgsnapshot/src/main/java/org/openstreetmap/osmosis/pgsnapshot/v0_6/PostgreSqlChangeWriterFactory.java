@@ -1,10 +1,12 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsnapshot.v0_6;
 
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.database.DatabaseTaskManagerFactory;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
 import org.openstreetmap.osmosis.core.pipeline.v0_6.ChangeSinkManager;
+import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.BulkChangeWriter;
 
 
 /**
@@ -18,6 +20,10 @@ public class PostgreSqlChangeWriterFactory extends DatabaseTaskManagerFactory {
 	private static final boolean DEFAULT_KEEP_INVALID_WAYS = true;
 	private static final String ARG_LOGGING = "logging";
 	private static final boolean DEFAULT_LOGGING = false;
+	private static final String ARG_BULK_MODE = "bulkMode";
+	private static final boolean DEFAULT_BULK_MODE = false;
+	private static final String ARG_BULK_BATCH_SIZE = "bulkBatchSize";
+	private static final int DEFAULT_BULK_BATCH_SIZE = BulkChangeWriter.DEFAULT_BATCH_SIZE;
 	
 	/**
 	 * {@inheritDoc}
@@ -26,6 +32,13 @@ public class PostgreSqlChangeWriterFactory extends DatabaseTaskManagerFactory {
 	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
 		boolean keepInvalidWays = getBooleanArgument(taskConfig, ARG_KEEP_INVALID_WAYS, DEFAULT_KEEP_INVALID_WAYS);
 		boolean logging = getBooleanArgument(taskConfig, ARG_LOGGING, DEFAULT_LOGGING);
+		boolean bulkMode = getBooleanArgument(taskConfig, ARG_BULK_MODE, DEFAULT_BULK_MODE);
+		int bulkBatchSize = getIntegerArgument(taskConfig, ARG_BULK_BATCH_SIZE, DEFAULT_BULK_BATCH_SIZE);
+		
+		if (bulkBatchSize < 1) {
+			throw new OsmosisRuntimeException(
+				"Argument " + ARG_BULK_BATCH_SIZE + " for task " + taskConfig.getId() + " must be at least 1.");
+		}
 		
 		return new ChangeSinkManager(
 			taskConfig.getId(),
@@ -33,7 +46,9 @@ public class PostgreSqlChangeWriterFactory extends DatabaseTaskManagerFactory {
 				getDatabaseLoginCredentials(taskConfig),
 				getDatabasePreferences(taskConfig),
 				keepInvalidWays,
-				logging
+				logging,
+				bulkMode,
+				bulkBatchSize
 			),
 			taskConfig.getPipeArgs()
 		);
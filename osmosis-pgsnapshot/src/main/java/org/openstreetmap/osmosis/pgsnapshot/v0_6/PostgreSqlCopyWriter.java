@@ -13,6 +13,7 @@ import org.openstreetmap.osmosis.pgsnapshot.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.CopyFilesetBuilder;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.CopyFilesetLoader;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.DatabaseCapabilityChecker;
+import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.DirectCopyLoader;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.TempCopyFileset;
 
 
@@ -28,6 +29,7 @@ public class PostgreSqlCopyWriter implements Sink {
 	
 	private CopyFilesetBuilder copyFilesetBuilder;
 	private CopyFilesetLoader copyFilesetLoader;
+	private DirectCopyLoader directCopyLoader;
 	private TempCopyFileset copyFileset;
 	private DatabaseLoginCredentials loginCredentials;
 	private DatabasePreferences preferences;
@@ -36,6 +38,9 @@ public class PostgreSqlCopyWriter implements Sink {
 	private boolean populateLinestring;
 	private boolean enableKeepPartialLinestring;
 	private boolean keepInvalidWays;
+	private boolean directLoad;
+	private boolean binaryCopy;
+	private int postLoadConnections;
 	private boolean initialized;
 	
 	
@@ -55,15 +60,29 @@ public class PostgreSqlCopyWriter implements Sink {
 	 *            If true, zero and single node ways are kept. Otherwise they are
 	 *            silently dropped to avoid putting invalid geometries into the 
 	 *            database which can cause problems with postgis functions.
+	 * @param directLoad
+	 *            If true, data is streamed into the database while the input
+	 *            is being processed instead of being written to temporary
+	 *            COPY files first.
+	 * @param binaryCopy
+	 *            If true, data is sent to the database in the PostgreSQL
+	 *            binary COPY format instead of the text format.
+	 * @param postLoadConnections
+	 *            The number of database connections used to create indexes
+	 *            and optimise tables after the data is loaded.
 	 */
 	public PostgreSqlCopyWriter(
 			DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
-			boolean enableKeepPartialLinestring, NodeLocationStoreType storeType, boolean keepInvalidWays) {
+			boolean enableKeepPartialLinestring, NodeLocationStoreType storeType, boolean keepInvalidWays,
+			boolean directLoad, boolean binaryCopy, int postLoadConnections) {
 		this.loginCredentials = loginCredentials;
 		this.preferences = preferences;
 		this.storeType = storeType;
 		this.enableKeepPartialLinestring = enableKeepPartialLinestring;
 		this.keepInvalidWays = keepInvalidWays;
+		this.directLoad = directLoad;
+		this.binaryCopy = binaryCopy;
+		this.postLoadConnections = postLoadConnections;
 		
 		copyFileset = new TempCopyFileset();
 	}
@@ -80,13 +99,25 @@ public class PostgreSqlCopyWriter implements Sink {
 				populateLinestring = capabilityChecker.isWayLinestringSupported();
 			}
 
-			copyFilesetBuilder =
-				new CopyFilesetBuilder(copyFileset, populateBbox, populateLinestring, enableKeepPartialLinestring,
-					storeType, keepInvalidWays);
-			
-			copyFilesetLoader = new CopyFilesetLoader(loginCredentials, preferences, copyFileset);
-			
-			LOG.fine("Processing input data, building geometries and creating database load files.");
+			if (directLoad) {
+				directCopyLoader = new DirectCopyLoader(loginCredentials, preferences, binaryCopy, postLoadConnections);
+				
+				copyFilesetBuilder =
+					new CopyFilesetBuilder(directCopyLoader, populateBbox, populateLinestring,
+						enableKeepPartialLinestring, storeType, keepInvalidWays, binaryCopy);
+				
+				LOG.fine("Processing input data, building geometries and loading the database.");
+				
+			} else {
+				copyFilesetBuilder =
+					new CopyFilesetBuilder(copyFileset, populateBbox, populateLinestring, enableKeepPartialLinestring,
+						storeType, keepInvalidWays, binaryCopy);
+				
+				copyFilesetLoader = new CopyFilesetLoader(
+						loginCredentials, preferences, copyFileset, binaryCopy, postLoadConnections);
+				
+				LOG.fine("Processing input data, building geometries and creating database load files.");
+			}
 			
 			initialized = true;
 		}
@@ -119,8 +150,13 @@ public class PostgreSqlCopyWriter implements Sink {
 		
 		copyFilesetBuilder.complete();
 		
-		LOG.fine("All data has been received, beginning database load.");
-		copyFilesetLoader.run();
+		if (directLoad) {
+			LOG.fine("All data has been received, completing database load.");
+			directCopyLoader.complete();
+		} else {
+			LOG.fine("All data has been received, beginning database load.");
+			copyFilesetLoader.run();
+		}
 		
 		LOG.fine("Processing complete.");
 	}
@@ -130,6 +166,12 @@ public class PostgreSqlCopyWriter implements Sink {
 	 * Releases all database resources.
 	 */
 	public void close() {
+		// Abort any direct loads first, closing the builder would otherwise
+		// end the COPY streams normally and commit partial data.
+		if (directCopyLoader != null) {
+			directCopyLoader.close();
+			directCopyLoader = null;
+		}
 		if (copyFilesetBuilder != null) {
 			copyFilesetBuilder.close();
 			copyFilesetBuilder = null;
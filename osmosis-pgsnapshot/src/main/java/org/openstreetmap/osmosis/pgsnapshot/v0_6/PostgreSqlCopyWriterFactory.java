@@ -1,6 +1,7 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsnapshot.v0_6;
 
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.database.DatabaseTaskManagerFactory;
 import org.openstreetmap.osmosis.pgsnapshot.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
@@ -20,6 +21,12 @@ public class PostgreSqlCopyWriterFactory extends DatabaseTaskManagerFactory {
 	private static final boolean DEFAULT_ENABLE_KEEP_PARTIAL_LIENSTRING = false;
 	private static final String ARG_KEEP_INVALID_WAYS = "keepInvalidWays";
 	private static final boolean DEFAULT_KEEP_INVALID_WAYS = true;
+	private static final String ARG_DIRECT_LOAD = "directLoad";
+	private static final boolean DEFAULT_DIRECT_LOAD = false;
+	private static final String ARG_BINARY_COPY = "binaryCopy";
+	private static final boolean DEFAULT_BINARY_COPY = false;
+	private static final String ARG_POST_LOAD_CONNECTIONS = "postLoadConnections";
+	private static final int DEFAULT_POST_LOAD_CONNECTIONS = 1;
 	
 	/**
 	 * {@inheritDoc}
@@ -29,6 +36,9 @@ public class PostgreSqlCopyWriterFactory extends DatabaseTaskManagerFactory {
 		boolean enableKeepPartialLinestring;
 		NodeLocationStoreType storeType;
 		boolean keepInvalidWays;
+		boolean directLoad;
+		boolean binaryCopy;
+		int postLoadConnections;
 
 		enableKeepPartialLinestring = getBooleanArgument(taskConfig, ARG_ENABLE_KEEP_PARTIAL_LIENSTRING,
 			DEFAULT_ENABLE_KEEP_PARTIAL_LIENSTRING);
@@ -36,6 +46,14 @@ public class PostgreSqlCopyWriterFactory extends DatabaseTaskManagerFactory {
 				NodeLocationStoreType.class,
 				getStringArgument(taskConfig, ARG_NODE_LOCATION_STORE_TYPE, DEFAULT_NODE_LOCATION_STORE_TYPE));
 		keepInvalidWays = getBooleanArgument(taskConfig, ARG_KEEP_INVALID_WAYS, DEFAULT_KEEP_INVALID_WAYS);
+		directLoad = getBooleanArgument(taskConfig, ARG_DIRECT_LOAD, DEFAULT_DIRECT_LOAD);
+		binaryCopy = getBooleanArgument(taskConfig, ARG_BINARY_COPY, DEFAULT_BINARY_COPY);
+		postLoadConnections =
+			getIntegerArgument(taskConfig, ARG_POST_LOAD_CONNECTIONS, DEFAULT_POST_LOAD_CONNECTIONS);
+		if (postLoadConnections < 1) {
+			throw new OsmosisRuntimeException(
+				"Argument " + ARG_POST_LOAD_CONNECTIONS + " for task " + taskConfig.getId() + " must be at least 1.");
+		}
 		
 		return new SinkManager(
 			taskConfig.getId(),
@@ -44,7 +62,10 @@ public class PostgreSqlCopyWriterFactory extends DatabaseTaskManagerFactory {
 				getDatabasePreferences(taskConfig),	
 				enableKeepPartialLinestring,
 				storeType, 
-				keepInvalidWays),
+				keepInvalidWays,
+				directLoad,
+				binaryCopy,
+				postLoadConnections),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -1,10 +1,12 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsnapshot.v0_6;
 
+import org.openstreetmap.osmosis.core.container.v0_6.CachingEntityManager;
 import org.openstreetmap.osmosis.core.container.v0_6.Dataset;
 import org.openstreetmap.osmosis.core.container.v0_6.DatasetContext;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.PostgreSqlDatasetContext;
 import org.openstreetmap.osmosis.core.task.v0_6.DatasetSink;
 import org.openstreetmap.osmosis.core.task.v0_6.RunnableDatasetSource;
@@ -16,9 +18,17 @@ import org.openstreetmap.osmosis.core.task.v0_6.RunnableDatasetSource;
  * @author Brett Henderson
  */
 public class PostgreSqlDatasetReader implements RunnableDatasetSource, Dataset {
+	
+	/**
+	 * Nodes, ways and relations are each cached separately.
+	 */
+	private static final int ENTITY_CACHE_COUNT = 3;
+	
 	private DatasetSink datasetSink;
 	private DatabaseLoginCredentials loginCredentials;
 	private DatabasePreferences preferences;
+	private boolean parallelReads;
+	private MemoryGrant entityCacheGrant;
 	
 	
 	/**
@@ -30,8 +40,35 @@ public class PostgreSqlDatasetReader implements RunnableDatasetSource, Dataset {
 	 *            Contains preferences configuring database behaviour.
 	 */
 	public PostgreSqlDatasetReader(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences) {
+		this(loginCredentials, preferences, false, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param preferences
+	 *            Contains preferences configuring database behaviour.
+	 * @param parallelReads
+	 *            If true, entity types are read concurrently on separate
+	 *            connections sharing a single database snapshot.
+	 * @param entityCacheSize
+	 *            The maximum number of entities of each type to cache when
+	 *            retrieving entities by id. Zero disables caching.
+	 */
+	public PostgreSqlDatasetReader(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
+			boolean parallelReads, int entityCacheSize) {
 		this.loginCredentials = loginCredentials;
 		this.preferences = preferences;
+		this.parallelReads = parallelReads;
+		
+		// Contexts are created while the pipeline is running so their caches
+		// must request memory up front.
+		if (entityCacheSize > 0) {
+			entityCacheGrant = CachingEntityManager.requestMemory(entityCacheSize, ENTITY_CACHE_COUNT);
+		}
 	}
 	
 	
@@ -63,6 +100,14 @@ public class PostgreSqlDatasetReader implements RunnableDatasetSource, Dataset {
 	 */
 	@Override
 	public DatasetContext createReader() {
-		return new PostgreSqlDatasetContext(loginCredentials, preferences, false);
+		int entityCacheSize;
+		
+		if (entityCacheGrant != null) {
+			entityCacheSize = CachingEntityManager.getMaximumSize(entityCacheGrant, ENTITY_CACHE_COUNT);
+		} else {
+			entityCacheSize = 0;
+		}
+		
+		return new PostgreSqlDatasetContext(loginCredentials, preferences, false, parallelReads, entityCacheSize);
 	}
 }
@@ -13,6 +13,10 @@ import org.openstreetmap.osmosis.core.pipeline.v0_6.RunnableDatasetSourceManager
  * @author Brett Henderson
  */
 public class PostgreSqlDatasetReaderFactory extends DatabaseTaskManagerFactory {
+	private static final String ARG_PARALLEL_READS = "parallelReads";
+	private static final boolean DEFAULT_PARALLEL_READS = false;
+	private static final String ARG_ENTITY_CACHE_SIZE = "entityCacheSize";
+	private static final int DEFAULT_ENTITY_CACHE_SIZE = 0;
 	
 	/**
 	 * {@inheritDoc}
@@ -23,7 +27,9 @@ public class PostgreSqlDatasetReaderFactory extends DatabaseTaskManagerFactory {
 			taskConfig.getId(),
 			new PostgreSqlDatasetReader(
 				getDatabaseLoginCredentials(taskConfig), 
-				getDatabasePreferences(taskConfig)),
+				getDatabasePreferences(taskConfig),
+				getBooleanArgument(taskConfig, ARG_PARALLEL_READS, DEFAULT_PARALLEL_READS),
+				getIntegerArgument(taskConfig, ARG_ENTITY_CACHE_SIZE, DEFAULT_ENTITY_CACHE_SIZE)),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -46,19 +46,22 @@ public class PostgreSqlDumpWriter implements Sink {
 	 *            If true, zero and single node ways are kept. Otherwise they are
 	 *            silently dropped to avoid putting invalid geometries into the 
 	 *            database which can cause problems with postgis functions.
+	 * @param binaryCopy
+	 *            If true, the files are written in the PostgreSQL binary COPY
+	 *            format instead of the text format.
 	 */
 	public PostgreSqlDumpWriter(
 			File filePrefix, boolean enableBboxBuilder,
 			boolean enableLinestringBuilder,
 			boolean enableKeepPartialLinestring,
-			NodeLocationStoreType storeType, boolean keepInvalidWays) {
+			NodeLocationStoreType storeType, boolean keepInvalidWays, boolean binaryCopy) {
 		DirectoryCopyFileset copyFileset;
 		
 		copyFileset = new DirectoryCopyFileset(filePrefix);
 		
 		copyFilesetBuilder =
 			new CopyFilesetBuilder(copyFileset, enableBboxBuilder, enableLinestringBuilder,
-				enableKeepPartialLinestring, storeType, keepInvalidWays);
+				enableKeepPartialLinestring, storeType, keepInvalidWays, binaryCopy);
 	}
     
     
@@ -22,12 +22,14 @@ public class PostgreSqlDumpWriterFactory extends TaskManagerFactory {
 	private static final String ARG_KEEP_INVALID_WAYS = "keepInvalidWays";
 	private static final String ARG_FILE_NAME = "directory";
 	private static final String ARG_NODE_LOCATION_STORE_TYPE = "nodeLocationStoreType";
+	private static final String ARG_BINARY_COPY = "binaryCopy";
 	private static final boolean DEFAULT_ENABLE_BBOX_BUILDER = false;
 	private static final boolean DEFAULT_ENABLE_LINESTRING_BUILDER = false;
 	private static final boolean DEFAULT_ENABLE_KEEP_PARTIAL_LINESTRING = false;
 	private static final boolean DEFAULT_KEEP_INVALID_WAYS = true;
 	private static final String DEFAULT_FILE_PREFIX = "pgimport";
 	private static final String DEFAULT_NODE_LOCATION_STORE_TYPE = "CompactTempFile";
+	private static final boolean DEFAULT_BINARY_COPY = false;
 	
 	
 	/**
@@ -42,6 +44,7 @@ public class PostgreSqlDumpWriterFactory extends TaskManagerFactory {
 		boolean enableKeepPartialLinestring;
 		boolean keepInvalidWays;
 		NodeLocationStoreType storeType;
+		boolean binaryCopy;
 		
 		// Get the task arguments.
 		filePrefixString = getStringArgument(
@@ -56,6 +59,7 @@ public class PostgreSqlDumpWriterFactory extends TaskManagerFactory {
 		storeType = Enum.valueOf(
 				NodeLocationStoreType.class,
 				getStringArgument(taskConfig, ARG_NODE_LOCATION_STORE_TYPE, DEFAULT_NODE_LOCATION_STORE_TYPE));
+		binaryCopy = getBooleanArgument(taskConfig, ARG_BINARY_COPY, DEFAULT_BINARY_COPY);
 		
 		// Create a file object representing the directory from the file name provided.
 		filePrefix = new File(filePrefixString);
@@ -64,7 +68,7 @@ public class PostgreSqlDumpWriterFactory extends TaskManagerFactory {
 			taskConfig.getId(),
 			new PostgreSqlDumpWriter(
 					filePrefix, enableBboxBuilder, enableLinestringBuilder, enableKeepPartialLinestring, storeType,
-						keepInvalidWays),
+						keepInvalidWays, binaryCopy),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -12,6 +12,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
  */
 public class ActionDao {
 	private static final String SQL_INSERT = "INSERT INTO actions(data_type, action, id) VALUES(?, ?, ?)";
+	private static final String SQL_INSERT_FROM_QUERY = "INSERT INTO actions(data_type, action, id) ";
 	private static final String SQL_TRUNCATE = "TRUNCATE actions";
 	
 	private JdbcTemplate jdbcTemplate;
@@ -45,6 +46,21 @@ public class ActionDao {
 	}
 	
 	
+	/**
+	 * Adds the actions returned by the specified query to the database. This
+	 * allows actions for many records to be added in a single statement.
+	 * 
+	 * @param selectSql
+	 *            A query returning the data type, action and identifier columns
+	 *            of the actions to be added.
+	 */
+	public void addActions(String selectSql) {
+		if (capabilityChecker.isActionSupported()) {
+			jdbcTemplate.update(SQL_INSERT_FROM_QUERY + selectSql);
+		}
+	}
+	
+	
 	/**
 	 * Removes all action records.
 	 */
@@ -0,0 +1,573 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.lifecycle.CompletableContainer;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.hstore.PGHStore;
+import org.openstreetmap.osmosis.pgsnapshot.common.CopyFileWriter;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+import org.openstreetmap.osmosis.pgsnapshot.common.PointBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * Writes changes to a database using set-based statements. Changes are
+ * collected into batches, each batch is loaded into temporary staging tables
+ * using COPY, then applied to the main tables with a small number of
+ * statements. This avoids the multiple round trips per entity required by the
+ * standard change writer.
+ * <p>
+ * Within a batch only the last change to each entity is applied. Action
+ * records are created in the same way as the standard change writer, with
+ * creates and modifies determined by the current contents of the database.
+ *
+ * @author Brett Henderson
+ */
+public class BulkChangeWriter extends ChangeWriter {
+
+	private static final Logger LOG = Logger.getLogger(BulkChangeWriter.class.getName());
+
+	/**
+	 * The default number of changes to collect before applying them to the
+	 * database.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100000;
+
+	private static final String[] STAGING_TABLES = {
+		"bulk_users", "bulk_nodes", "bulk_ways", "bulk_way_nodes", "bulk_relations", "bulk_relation_members",
+		"bulk_deletes"};
+
+	private static final String SQL_CREATE_STAGING_TABLE_PREFIX = "CREATE TEMPORARY TABLE ";
+	private static final String SQL_CREATE_STAGING_TABLE_SUFFIX = " ON COMMIT DROP AS ";
+	private static final String SQL_SELECT_USER_STAGING_COLUMNS = "SELECT id, name FROM users WITH NO DATA";
+	private static final String SQL_SELECT_NODE_STAGING_COLUMNS =
+		"SELECT id, version, user_id, tstamp, changeset_id, tags, geom FROM nodes WITH NO DATA";
+	private static final String SQL_SELECT_WAY_STAGING_COLUMNS =
+		"SELECT id, version, user_id, tstamp, changeset_id, tags, nodes FROM ways WITH NO DATA";
+	private static final String SQL_SELECT_WAY_NODE_STAGING_COLUMNS =
+		"SELECT way_id, node_id, sequence_id FROM way_nodes WITH NO DATA";
+	private static final String SQL_SELECT_RELATION_STAGING_COLUMNS =
+		"SELECT id, version, user_id, tstamp, changeset_id, tags FROM relations WITH NO DATA";
+	private static final String SQL_SELECT_RELATION_MEMBER_STAGING_COLUMNS =
+		"SELECT relation_id, member_id, member_type, member_role, sequence_id FROM relation_members WITH NO DATA";
+	private static final String SQL_CREATE_DELETE_STAGING_TABLE =
+		"CREATE TEMPORARY TABLE bulk_deletes"
+		+ " (data_type character(1) NOT NULL, id bigint NOT NULL, existing_only boolean NOT NULL)"
+		+ " ON COMMIT DROP";
+
+	private static final String SQL_SELECT_USER_ACTIONS =
+		"SELECT 'U', CASE WHEN u.id IS NULL THEN 'C' ELSE 'M' END, s.id"
+		+ " FROM bulk_users s LEFT OUTER JOIN users u ON u.id = s.id"
+		+ " WHERE u.id IS NULL OR u.name <> s.name";
+	private static final String SQL_UPSERT_USERS =
+		"INSERT INTO users (id, name) SELECT id, name FROM bulk_users"
+		+ " ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name WHERE users.name <> EXCLUDED.name";
+
+	private static final String SQL_UPSERT_NODES =
+		"INSERT INTO nodes (id, version, user_id, tstamp, changeset_id, tags, geom)"
+		+ " SELECT id, version, user_id, tstamp, changeset_id, tags, geom FROM bulk_nodes"
+		+ " ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version, user_id = EXCLUDED.user_id,"
+		+ " tstamp = EXCLUDED.tstamp, changeset_id = EXCLUDED.changeset_id, tags = EXCLUDED.tags,"
+		+ " geom = EXCLUDED.geom";
+	private static final String SQL_DELETE_STAGED_WAY_NODES =
+		"DELETE FROM way_nodes wn USING bulk_ways s WHERE wn.way_id = s.id";
+	private static final String SQL_UPSERT_WAYS =
+		"INSERT INTO ways (id, version, user_id, tstamp, changeset_id, tags, nodes)"
+		+ " SELECT id, version, user_id, tstamp, changeset_id, tags, nodes FROM bulk_ways"
+		+ " ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version, user_id = EXCLUDED.user_id,"
+		+ " tstamp = EXCLUDED.tstamp, changeset_id = EXCLUDED.changeset_id, tags = EXCLUDED.tags,"
+		+ " nodes = EXCLUDED.nodes";
+	private static final String SQL_INSERT_WAY_NODES =
+		"INSERT INTO way_nodes (way_id, node_id, sequence_id)"
+		+ " SELECT way_id, node_id, sequence_id FROM bulk_way_nodes";
+	private static final String SQL_DELETE_STAGED_RELATION_MEMBERS =
+		"DELETE FROM relation_members rm USING bulk_relations s WHERE rm.relation_id = s.id";
+	private static final String SQL_UPSERT_RELATIONS =
+		"INSERT INTO relations (id, version, user_id, tstamp, changeset_id, tags)"
+		+ " SELECT id, version, user_id, tstamp, changeset_id, tags FROM bulk_relations"
+		+ " ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version, user_id = EXCLUDED.user_id,"
+		+ " tstamp = EXCLUDED.tstamp, changeset_id = EXCLUDED.changeset_id, tags = EXCLUDED.tags";
+	private static final String SQL_INSERT_RELATION_MEMBERS =
+		"INSERT INTO relation_members (relation_id, member_id, member_type, member_role, sequence_id)"
+		+ " SELECT relation_id, member_id, member_type, member_role, sequence_id FROM bulk_relation_members";
+
+	private static final String SQL_SELECT_DELETE_ACTIONS =
+		"SELECT d.data_type, 'D', d.id FROM bulk_deletes d"
+		+ " WHERE NOT d.existing_only OR EXISTS (SELECT 1 FROM ways w WHERE w.id = d.id)";
+	private static final String SQL_DELETE_RELATION_MEMBERS =
+		"DELETE FROM relation_members rm USING bulk_deletes d WHERE d.data_type = 'R' AND rm.relation_id = d.id";
+	private static final String SQL_DELETE_RELATIONS =
+		"DELETE FROM relations r USING bulk_deletes d WHERE d.data_type = 'R' AND r.id = d.id";
+	private static final String SQL_DELETE_WAY_NODES =
+		"DELETE FROM way_nodes wn USING bulk_deletes d WHERE d.data_type = 'W' AND wn.way_id = d.id";
+	private static final String SQL_DELETE_WAYS =
+		"DELETE FROM ways w USING bulk_deletes d WHERE d.data_type = 'W' AND w.id = d.id";
+	private static final String SQL_DELETE_NODES =
+		"DELETE FROM nodes n USING bulk_deletes d WHERE d.data_type = 'N' AND n.id = d.id";
+
+	private static final String SQL_AFFECTED_WAYS =
+		" WHERE w.id IN ("
+		+ " SELECT id FROM bulk_ways"
+		+ " UNION SELECT wn.way_id FROM way_nodes wn INNER JOIN bulk_nodes s ON wn.node_id = s.id"
+		+ " )";
+	private static final String SQL_UPDATE_WAY_BBOX =
+		WayGeometryUpdater.SQL_UPDATE_WAY_BBOX_PREFIX + SQL_AFFECTED_WAYS;
+	private static final String SQL_UPDATE_WAY_LINESTRING =
+		WayGeometryUpdater.SQL_UPDATE_WAY_LINESTRING_PREFIX + SQL_AFFECTED_WAYS;
+
+	private static final String[] COMMON_COLUMNS = {"id", "version", "user_id", "tstamp", "changeset_id", "tags"};
+	private static final String[] NODE_COLUMNS =
+		{"id", "version", "user_id", "tstamp", "changeset_id", "tags", "geom"};
+	private static final String[] WAY_COLUMNS =
+		{"id", "version", "user_id", "tstamp", "changeset_id", "tags", "nodes"};
+
+
+	private DatabaseContext dbCtx;
+	private JdbcTemplate jdbcTemplate;
+	private ActionDao actionDao;
+	private DatabaseCapabilityChecker capabilityChecker;
+	private MemberTypeValueMapper memberTypeValueMapper;
+	private PointBuilder pointBuilder;
+	private boolean stagingTablesCreated;
+	private int batchSize;
+	private int changeCount;
+	private Map<Integer, OsmUser> users;
+	private Set<Integer> userSet;
+	private Map<Long, Node> nodes;
+	private Map<Long, Way> ways;
+	private Map<Long, Relation> relations;
+	private Set<Long> nodeDeletes;
+	private Set<Long> wayDeletes;
+	private Set<Long> relationDeletes;
+	private Set<Long> invalidWays;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param dbCtx
+	 *            The database context to use for accessing the database.
+	 * @param batchSize
+	 *            The number of changes to collect before applying them to the
+	 *            database.
+	 */
+	public BulkChangeWriter(DatabaseContext dbCtx, int batchSize) {
+		super(dbCtx, false);
+
+		if (batchSize < 1) {
+			throw new OsmosisRuntimeException("The batch size must be at least 1, " + batchSize + " was specified.");
+		}
+
+		this.dbCtx = dbCtx;
+		this.batchSize = batchSize;
+
+		jdbcTemplate = dbCtx.getJdbcTemplate();
+		actionDao = new ActionDao(dbCtx);
+		capabilityChecker = new DatabaseCapabilityChecker(dbCtx);
+		memberTypeValueMapper = new MemberTypeValueMapper();
+		pointBuilder = new PointBuilder();
+
+		stagingTablesCreated = false;
+		changeCount = 0;
+		users = new LinkedHashMap<Integer, OsmUser>();
+		userSet = new HashSet<Integer>();
+		nodes = new LinkedHashMap<Long, Node>();
+		ways = new LinkedHashMap<Long, Way>();
+		relations = new LinkedHashMap<Long, Relation>();
+		nodeDeletes = new LinkedHashSet<Long>();
+		wayDeletes = new LinkedHashSet<Long>();
+		relationDeletes = new LinkedHashSet<Long>();
+		invalidWays = new HashSet<Long>();
+	}
+
+
+	/**
+	 * Performs any validation and pre-processing required for all entity types.
+	 */
+	private void processEntityPrerequisites(Entity entity) {
+		OsmUser user;
+
+		// We can't write an entity with a null timestamp.
+		if (entity.getTimestamp() == null) {
+			throw new OsmosisRuntimeException("Entity(" + entity.getType()
+					+ ") " + entity.getId() + " does not have a timestamp set.");
+		}
+
+		// Users will only be updated in the database once per changeset run.
+		user = entity.getUser();
+		if (!OsmUser.NONE.equals(user) && userSet.add(user.getId())) {
+			users.put(user.getId(), user);
+		}
+	}
+
+
+	/**
+	 * Applies the current batch to the database if it has reached the batch
+	 * size.
+	 */
+	private void checkBatchSize() {
+		changeCount++;
+
+		if (changeCount >= batchSize) {
+			flush();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Node node, ChangeAction action) {
+		processEntityPrerequisites(node);
+
+		if (ChangeAction.Create.equals(action) || ChangeAction.Modify.equals(action)) {
+			nodeDeletes.remove(node.getId());
+			nodes.put(node.getId(), node);
+		} else {
+			nodes.remove(node.getId());
+			nodeDeletes.add(node.getId());
+		}
+
+		checkBatchSize();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Way way, ChangeAction action, boolean keepInvalidWays) {
+		processEntityPrerequisites(way);
+
+		if (ChangeAction.Create.equals(action) || ChangeAction.Modify.equals(action)) {
+			if (way.getWayNodes().size() >= 2 || keepInvalidWays) {
+				wayDeletes.remove(way.getId());
+				invalidWays.remove(way.getId());
+				ways.put(way.getId(), way);
+			} else {
+				// Invalid ways are removed only if they already exist.
+				ways.remove(way.getId());
+				if (wayDeletes.add(way.getId())) {
+					invalidWays.add(way.getId());
+				}
+			}
+		} else {
+			ways.remove(way.getId());
+			invalidWays.remove(way.getId());
+			wayDeletes.add(way.getId());
+		}
+
+		checkBatchSize();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Relation relation, ChangeAction action) {
+		processEntityPrerequisites(relation);
+
+		if (ChangeAction.Create.equals(action) || ChangeAction.Modify.equals(action)) {
+			relationDeletes.remove(relation.getId());
+			relations.put(relation.getId(), relation);
+		} else {
+			relations.remove(relation.getId());
+			relationDeletes.add(relation.getId());
+		}
+
+		checkBatchSize();
+	}
+
+
+	private void createStagingTables() {
+		if (!stagingTablesCreated) {
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_users" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_USER_STAGING_COLUMNS);
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_nodes" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_NODE_STAGING_COLUMNS);
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_ways" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_WAY_STAGING_COLUMNS);
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_way_nodes" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_WAY_NODE_STAGING_COLUMNS);
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_relations" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_RELATION_STAGING_COLUMNS);
+			jdbcTemplate.update(
+					SQL_CREATE_STAGING_TABLE_PREFIX + "bulk_relation_members" + SQL_CREATE_STAGING_TABLE_SUFFIX
+					+ SQL_SELECT_RELATION_MEMBER_STAGING_COLUMNS);
+			jdbcTemplate.update(SQL_CREATE_DELETE_STAGING_TABLE);
+
+			stagingTablesCreated = true;
+		}
+	}
+
+
+	private PGHStore buildTags(Entity entity) {
+		PGHStore tags;
+
+		tags = new PGHStore();
+		for (Tag tag : entity.getTags()) {
+			tags.put(tag.getKey(), tag.getValue());
+		}
+
+		return tags;
+	}
+
+
+	private void writeCommonFields(CopyFileWriter writer, Entity entity) {
+		writer.writeField(entity.getId());
+		writer.writeField(entity.getVersion());
+		writer.writeField(entity.getUser().getId());
+		writer.writeField(entity.getTimestamp());
+		writer.writeField(entity.getChangesetId());
+		writer.writeField(buildTags(entity));
+	}
+
+
+	private void writeDeletes(CopyFileWriter writer, ActionDataType dataType, Set<Long> entityIds) {
+		for (long entityId : entityIds) {
+			writer.writeField(dataType.getDatabaseValue());
+			writer.writeField(entityId);
+			writer.writeField(ActionDataType.WAY.equals(dataType) && invalidWays.contains(entityId));
+			writer.endRecord();
+		}
+	}
+
+
+	/**
+	 * Writes the current batch to a set of COPY files.
+	 */
+	private void writeCopyFiles(CopyFileset copyFileset, File deleteFile) {
+		CompletableContainer writerContainer;
+
+		writerContainer = new CompletableContainer();
+
+		try {
+			CopyFileWriter userWriter;
+			CopyFileWriter nodeWriter;
+			CopyFileWriter wayWriter;
+			CopyFileWriter wayNodeWriter;
+			CopyFileWriter relationWriter;
+			CopyFileWriter relationMemberWriter;
+			CopyFileWriter deleteWriter;
+
+			userWriter = writerContainer.add(new CopyFileWriter(copyFileset.getUserFile()));
+			nodeWriter = writerContainer.add(new CopyFileWriter(copyFileset.getNodeFile()));
+			wayWriter = writerContainer.add(new CopyFileWriter(copyFileset.getWayFile()));
+			wayNodeWriter = writerContainer.add(new CopyFileWriter(copyFileset.getWayNodeFile()));
+			relationWriter = writerContainer.add(new CopyFileWriter(copyFileset.getRelationFile()));
+			relationMemberWriter = writerContainer.add(new CopyFileWriter(copyFileset.getRelationMemberFile()));
+			deleteWriter = writerContainer.add(new CopyFileWriter(deleteFile));
+
+			for (OsmUser user : users.values()) {
+				userWriter.writeField(user.getId());
+				userWriter.writeField(user.getName());
+				userWriter.endRecord();
+			}
+
+			for (Node node : nodes.values()) {
+				writeCommonFields(nodeWriter, node);
+				nodeWriter.writeField(pointBuilder.createPoint(node.getLatitude(), node.getLongitude()));
+				nodeWriter.endRecord();
+			}
+
+			for (Way way : ways.values()) {
+				List<Long> nodeIds;
+				int sequenceId;
+
+				nodeIds = new ArrayList<Long>(way.getWayNodes().size());
+				for (WayNode wayNode : way.getWayNodes()) {
+					nodeIds.add(wayNode.getNodeId());
+				}
+
+				writeCommonFields(wayWriter, way);
+				wayWriter.writeField(nodeIds);
+				wayWriter.endRecord();
+
+				sequenceId = 0;
+				for (WayNode wayNode : way.getWayNodes()) {
+					wayNodeWriter.writeField(way.getId());
+					wayNodeWriter.writeField(wayNode.getNodeId());
+					wayNodeWriter.writeField(sequenceId++);
+					wayNodeWriter.endRecord();
+				}
+			}
+
+			for (Relation relation : relations.values()) {
+				int memberSequenceId;
+
+				writeCommonFields(relationWriter, relation);
+				relationWriter.endRecord();
+
+				memberSequenceId = 0;
+				for (RelationMember member : relation.getMembers()) {
+					relationMemberWriter.writeField(relation.getId());
+					relationMemberWriter.writeField(member.getMemberId());
+					relationMemberWriter.writeField(memberTypeValueMapper.getMemberType(member.getMemberType()));
+					relationMemberWriter.writeField(member.getMemberRole());
+					relationMemberWriter.writeField(memberSequenceId++);
+					relationMemberWriter.endRecord();
+				}
+			}
+
+			writeDeletes(deleteWriter, ActionDataType.NODE, nodeDeletes);
+			writeDeletes(deleteWriter, ActionDataType.WAY, wayDeletes);
+			writeDeletes(deleteWriter, ActionDataType.RELATION, relationDeletes);
+
+			writerContainer.complete();
+
+		} finally {
+			writerContainer.close();
+		}
+	}
+
+
+	/**
+	 * Applies the staged data to the main tables.
+	 */
+	private void applyStagedChanges() {
+		// Users.
+		actionDao.addActions(SQL_SELECT_USER_ACTIONS);
+		jdbcTemplate.update(SQL_UPSERT_USERS);
+
+		// Actions must be recorded before the entities are written so that we
+		// can distinguish between creates and modifies.
+		actionDao.addActions(
+				"SELECT 'N', CASE WHEN n.id IS NULL THEN 'C' ELSE 'M' END, s.id"
+				+ " FROM bulk_nodes s LEFT OUTER JOIN nodes n ON n.id = s.id");
+		actionDao.addActions(
+				"SELECT 'W', CASE WHEN w.id IS NULL THEN 'C' ELSE 'M' END, s.id"
+				+ " FROM bulk_ways s LEFT OUTER JOIN ways w ON w.id = s.id");
+		actionDao.addActions(
+				"SELECT 'R', CASE WHEN r.id IS NULL THEN 'C' ELSE 'M' END, s.id"
+				+ " FROM bulk_relations s LEFT OUTER JOIN relations r ON r.id = s.id");
+		actionDao.addActions(SQL_SELECT_DELETE_ACTIONS);
+
+		// Creates and modifies.
+		jdbcTemplate.update(SQL_UPSERT_NODES);
+		jdbcTemplate.update(SQL_DELETE_STAGED_WAY_NODES);
+		jdbcTemplate.update(SQL_UPSERT_WAYS);
+		jdbcTemplate.update(SQL_INSERT_WAY_NODES);
+		jdbcTemplate.update(SQL_DELETE_STAGED_RELATION_MEMBERS);
+		jdbcTemplate.update(SQL_UPSERT_RELATIONS);
+		jdbcTemplate.update(SQL_INSERT_RELATION_MEMBERS);
+
+		// Deletes.
+		jdbcTemplate.update(SQL_DELETE_RELATION_MEMBERS);
+		jdbcTemplate.update(SQL_DELETE_RELATIONS);
+		jdbcTemplate.update(SQL_DELETE_WAY_NODES);
+		jdbcTemplate.update(SQL_DELETE_WAYS);
+		jdbcTemplate.update(SQL_DELETE_NODES);
+
+		// Rebuild geometries of ways that have changed or reference changed nodes.
+		if (capabilityChecker.isWayBboxSupported()) {
+			jdbcTemplate.update(SQL_UPDATE_WAY_BBOX);
+		}
+		if (capabilityChecker.isWayLinestringSupported()) {
+			jdbcTemplate.update(SQL_UPDATE_WAY_LINESTRING);
+		}
+
+		for (String stagingTable : STAGING_TABLES) {
+			jdbcTemplate.update("TRUNCATE " + stagingTable);
+		}
+	}
+
+
+	/**
+	 * Applies all changes in the current batch to the database.
+	 */
+	private void flush() {
+		TempCopyFileset copyFileset;
+		File deleteFile;
+
+		if (changeCount == 0 && users.isEmpty()) {
+			return;
+		}
+
+		LOG.fine("Applying a batch of " + changeCount + " changes.");
+
+		createStagingTables();
+
+		copyFileset = new TempCopyFileset();
+		deleteFile = null;
+
+		try {
+			try {
+				deleteFile = TempFileManager.getInstance().createTempFile("copy", "d");
+			} catch (IOException e) {
+				throw new OsmosisRuntimeException("Unable to create COPY temp file.", e);
+			}
+
+			writeCopyFiles(copyFileset, deleteFile);
+
+			dbCtx.loadCopyFile(copyFileset.getUserFile(), "bulk_users");
+			dbCtx.loadCopyFile(copyFileset.getNodeFile(), "bulk_nodes", NODE_COLUMNS);
+			dbCtx.loadCopyFile(copyFileset.getWayFile(), "bulk_ways", WAY_COLUMNS);
+			dbCtx.loadCopyFile(copyFileset.getWayNodeFile(), "bulk_way_nodes");
+			dbCtx.loadCopyFile(copyFileset.getRelationFile(), "bulk_relations", COMMON_COLUMNS);
+			dbCtx.loadCopyFile(copyFileset.getRelationMemberFile(), "bulk_relation_members");
+			dbCtx.loadCopyFile(deleteFile, "bulk_deletes");
+
+		} finally {
+			copyFileset.close();
+			if (deleteFile != null) {
+				TempFileManager.getInstance().release(deleteFile);
+			}
+		}
+
+		applyStagedChanges();
+
+		changeCount = 0;
+		users.clear();
+		nodes.clear();
+		ways.clear();
+		relations.clear();
+		nodeDeletes.clear();
+		wayDeletes.clear();
+		relationDeletes.clear();
+		invalidWays.clear();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void complete() {
+		flush();
+
+		super.complete();
+
+		// The staging tables are dropped when the caller commits the transaction, and a
+		// long running source may supply another set of changes in a new transaction.
+		stagingTablesCreated = false;
+		userSet.clear();
+	}
+}
@@ -34,6 +34,7 @@ public class ChangeWriter {
 	private NodeDao nodeDao;
 	private WayDao wayDao;
 	private RelationDao relationDao;
+	private WayGeometryUpdater wayGeometryUpdater;
 	private Set<Integer> userSet;
 	
 	
@@ -50,8 +51,9 @@ public class ChangeWriter {
 		
 		actionDao = new ActionDao(dbCtx);
 		userDao = new UserDao(dbCtx, actionDao);
-		nodeDao = new NodeDao(dbCtx, actionDao, logging);
-		wayDao = new WayDao(dbCtx, actionDao, logging);
+		wayGeometryUpdater = new WayGeometryUpdater(dbCtx);
+		nodeDao = new NodeDao(dbCtx, actionDao, logging, wayGeometryUpdater);
+		wayDao = new WayDao(dbCtx, actionDao, logging, wayGeometryUpdater);
 		relationDao = new RelationDao(dbCtx, actionDao, logging);
 		
 		userSet = new HashSet<Integer>();
@@ -211,6 +213,9 @@ public class ChangeWriter {
 	 * Performs post-change database updates.
 	 */
 	public void complete() {
+		// Rebuild the geometries of all ways affected by this change in bulk.
+		wayGeometryUpdater.update();
+		
 		dbCtx.getJdbcTemplate().call(
 				new CallableStatementCreator() {
 					@Override
@@ -221,6 +226,9 @@ public class ChangeWriter {
 		
 		// Clear all action records.
 		actionDao.truncate();
+		
+		// Users must be checked again by the next set of changes.
+		userSet.clear();
 	}
 
 
@@ -1,6 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 
+import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -22,6 +24,7 @@ import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
 import org.openstreetmap.osmosis.core.domain.v0_6.Way;
 import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
 import org.openstreetmap.osmosis.core.lifecycle.CompletableContainer;
+import org.openstreetmap.osmosis.pgsnapshot.common.BinaryCopyFileWriter;
 import org.openstreetmap.osmosis.pgsnapshot.common.CopyFileWriter;
 import org.openstreetmap.osmosis.pgsnapshot.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.pgsnapshot.common.PointBuilder;
@@ -78,10 +81,90 @@ public class CopyFilesetBuilder implements Sink, EntityProcessor {
 	 *            If true, zero and single node ways are kept. Otherwise they are
 	 *            silently dropped to avoid putting invalid geometries into the 
 	 *            database which can cause problems with postgis functions.
+	 * @param binaryCopy
+	 *            If true, data is written in the PostgreSQL binary COPY format
+	 *            instead of the text format.
 	 */
 	public CopyFilesetBuilder(
 			CopyFileset copyFileset, boolean enableBboxBuilder,
 			boolean enableLinestringBuilder, boolean enableKeepPartialLinestring,
+			NodeLocationStoreType storeType, boolean keepInvalidWays, boolean binaryCopy) {
+		this(
+			createWriter(copyFileset.getUserFile(), binaryCopy),
+			createWriter(copyFileset.getNodeFile(), binaryCopy),
+			createWriter(copyFileset.getWayFile(), binaryCopy),
+			createWriter(copyFileset.getWayNodeFile(), binaryCopy),
+			createWriter(copyFileset.getRelationFile(), binaryCopy),
+			createWriter(copyFileset.getRelationMemberFile(), binaryCopy),
+			enableBboxBuilder, enableLinestringBuilder, enableKeepPartialLinestring, storeType, keepInvalidWays);
+	}
+	
+	
+	/**
+	 * Creates a new instance writing directly to streams rather than files.
+	 * 
+	 * @param copyStreamset
+	 *            The set of COPY streams to be populated.
+	 * @param enableBboxBuilder
+	 *            If true, the way bbox geometry is built during processing
+	 *            instead of relying on the database to build them after import.
+	 *            This increases processing but is faster than relying on the
+	 *            database.
+	 * @param enableLinestringBuilder
+	 *            If true, the way linestring geometry is built during
+	 *            processing instead of relying on the database to build them
+	 *            after import. This increases processing but is faster than
+	 *            relying on the database.
+	 * @param enableKeepPartialLinestring
+	 *            If true, the way linestring is build even on invalid or missing
+	 *            nodes.
+	 * @param storeType
+	 *            The node location storage type used by the geometry builders.
+	 * @param keepInvalidWays
+	 *            If true, zero and single node ways are kept. Otherwise they are
+	 *            silently dropped to avoid putting invalid geometries into the 
+	 *            database which can cause problems with postgis functions.
+	 * @param binaryCopy
+	 *            If true, data is written in the PostgreSQL binary COPY format
+	 *            instead of the text format.
+	 */
+	public CopyFilesetBuilder(
+			CopyStreamset copyStreamset, boolean enableBboxBuilder,
+			boolean enableLinestringBuilder, boolean enableKeepPartialLinestring,
+			NodeLocationStoreType storeType, boolean keepInvalidWays, boolean binaryCopy) {
+		this(
+			createWriter(copyStreamset.getUserStream(), binaryCopy),
+			createWriter(copyStreamset.getNodeStream(), binaryCopy),
+			createWriter(copyStreamset.getWayStream(), binaryCopy),
+			createWriter(copyStreamset.getWayNodeStream(), binaryCopy),
+			createWriter(copyStreamset.getRelationStream(), binaryCopy),
+			createWriter(copyStreamset.getRelationMemberStream(), binaryCopy),
+			enableBboxBuilder, enableLinestringBuilder, enableKeepPartialLinestring, storeType, keepInvalidWays);
+	}
+	
+	
+	private static CopyFileWriter createWriter(File file, boolean binaryCopy) {
+		if (binaryCopy) {
+			return new BinaryCopyFileWriter(file);
+		} else {
+			return new CopyFileWriter(file);
+		}
+	}
+	
+	
+	private static CopyFileWriter createWriter(OutputStream outputStream, boolean binaryCopy) {
+		if (binaryCopy) {
+			return new BinaryCopyFileWriter(outputStream);
+		} else {
+			return new CopyFileWriter(outputStream);
+		}
+	}
+	
+	
+	private CopyFilesetBuilder(
+			CopyFileWriter userWriter, CopyFileWriter nodeWriter, CopyFileWriter wayWriter,
+			CopyFileWriter wayNodeWriter, CopyFileWriter relationWriter, CopyFileWriter relationMemberWriter,
+			boolean enableBboxBuilder, boolean enableLinestringBuilder, boolean enableKeepPartialLinestring,
 			NodeLocationStoreType storeType, boolean keepInvalidWays) {
 		this.enableBboxBuilder = enableBboxBuilder;
 		this.enableLinestringBuilder = enableLinestringBuilder;
@@ -90,12 +173,12 @@ public class CopyFilesetBuilder implements Sink, EntityProcessor {
 		
 		writerContainer = new CompletableContainer();
 		
-		userWriter = writerContainer.add(new CopyFileWriter(copyFileset.getUserFile()));
-		nodeWriter = writerContainer.add(new CopyFileWriter(copyFileset.getNodeFile()));
-		wayWriter = writerContainer.add(new CopyFileWriter(copyFileset.getWayFile()));
-		wayNodeWriter = writerContainer.add(new CopyFileWriter(copyFileset.getWayNodeFile()));
-		relationWriter = writerContainer.add(new CopyFileWriter(copyFileset.getRelationFile()));
-		relationMemberWriter = writerContainer.add(new CopyFileWriter(copyFileset.getRelationMemberFile()));
+		this.userWriter = writerContainer.add(userWriter);
+		this.nodeWriter = writerContainer.add(nodeWriter);
+		this.wayWriter = writerContainer.add(wayWriter);
+		this.wayNodeWriter = writerContainer.add(wayNodeWriter);
+		this.relationWriter = writerContainer.add(relationWriter);
+		this.relationMemberWriter = writerContainer.add(relationMemberWriter);
 		
 		pointBuilder = new PointBuilder();
 		wayGeometryBuilder = new WayGeometryBuilder(storeType);
@@ -20,7 +20,7 @@ public class CopyFilesetLoader implements Runnable {
 	private static final Logger LOG = Logger.getLogger(CopyFilesetLoader.class.getName());
 	
 	
-	private static String[] appendColumn(String[] columns, String newColumn) {
+	static String[] appendColumn(String[] columns, String newColumn) {
 		String[] result;
 		
 		result = new String[columns.length + 1];
@@ -32,15 +32,17 @@ public class CopyFilesetLoader implements Runnable {
 	}
 	
 	
-	private static final String[] COMMON_COLUMNS = {"id", "version", "user_id", "tstamp", "changeset_id", "tags"};
-	private static final String[] NODE_COLUMNS = appendColumn(COMMON_COLUMNS, "geom");
-	private static final String[] WAY_COLUMNS = appendColumn(COMMON_COLUMNS, "nodes");
-	private static final String[] RELATION_COLUMNS = COMMON_COLUMNS;
+	static final String[] COMMON_COLUMNS = {"id", "version", "user_id", "tstamp", "changeset_id", "tags"};
+	static final String[] NODE_COLUMNS = appendColumn(COMMON_COLUMNS, "geom");
+	static final String[] WAY_COLUMNS = appendColumn(COMMON_COLUMNS, "nodes");
+	static final String[] RELATION_COLUMNS = COMMON_COLUMNS;
 	
 	
 	private DatabaseLoginCredentials loginCredentials;
 	private DatabasePreferences preferences;
 	private CopyFileset copyFileset;
+	private boolean binaryCopy;
+	private int postLoadConnections;
 	
 	
 	/**
@@ -52,12 +54,21 @@ public class CopyFilesetLoader implements Runnable {
 	 *            Contains preferences configuring database behaviour.
 	 * @param copyFileset
 	 *            The set of COPY files to be loaded into the database.
+	 * @param binaryCopy
+	 *            If true, the files are in the binary COPY format, otherwise
+	 *            they are in the text format.
+	 * @param postLoadConnections
+	 *            The number of connections used to create indexes and optimise
+	 *            tables after the load. If greater than 1, the data is
+	 *            committed prior to creating indexes.
 	 */
 	public CopyFilesetLoader(DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences,
-			CopyFileset copyFileset) {
+			CopyFileset copyFileset, boolean binaryCopy, int postLoadConnections) {
 		this.loginCredentials = loginCredentials;
 		this.preferences = preferences;
 		this.copyFileset = copyFileset;
+		this.binaryCopy = binaryCopy;
+		this.postLoadConnections = postLoadConnections;
 	}
     
 
@@ -90,31 +101,39 @@ public class CopyFilesetLoader implements Runnable {
 			indexManager.prepareForLoad();
     		
     		LOG.finer("Loading users.");
-    		dbCtx.loadCopyFile(copyFileset.getUserFile(), "users");
+    		dbCtx.loadCopyFile(copyFileset.getUserFile(), binaryCopy, "users");
     		LOG.finer("Loading nodes.");
-    		dbCtx.loadCopyFile(copyFileset.getNodeFile(), "nodes", NODE_COLUMNS);
+    		dbCtx.loadCopyFile(copyFileset.getNodeFile(), binaryCopy, "nodes", NODE_COLUMNS);
     		LOG.finer("Loading ways.");
-    		dbCtx.loadCopyFile(copyFileset.getWayFile(), "ways", wayColumns);
+    		dbCtx.loadCopyFile(copyFileset.getWayFile(), binaryCopy, "ways", wayColumns);
     		LOG.finer("Loading way nodes.");
-    		dbCtx.loadCopyFile(copyFileset.getWayNodeFile(), "way_nodes");
+    		dbCtx.loadCopyFile(copyFileset.getWayNodeFile(), binaryCopy, "way_nodes");
     		LOG.finer("Loading relations.");
-    		dbCtx.loadCopyFile(copyFileset.getRelationFile(), "relations", RELATION_COLUMNS);
+    		dbCtx.loadCopyFile(copyFileset.getRelationFile(), binaryCopy, "relations", RELATION_COLUMNS);
     		LOG.finer("Loading relation members.");
-    		dbCtx.loadCopyFile(copyFileset.getRelationMemberFile(), "relation_members");
+    		dbCtx.loadCopyFile(copyFileset.getRelationMemberFile(), binaryCopy, "relation_members");
     		LOG.finer("Committing changes.");
     		
     		LOG.fine("Data load complete.");
     		
-    		// Add all constraints and indexes.
-    		indexManager.completeAfterLoad();
-    		
-    		dbCtx.commitTransaction();
-    		
-    		LOG.fine("Clustering database.");
-    		dbCtx.getJdbcTemplate().update("CLUSTER");
-    		
-    		LOG.fine("Vacuuming database.");
-    		dbCtx.getJdbcTemplate().update("VACUUM ANALYZE");
+    		if (postLoadConnections > 1) {
+    			dbCtx.commitTransaction();
+    			
+    			// Add all constraints and indexes, then optimise the tables.
+    			indexManager.completeAndOptimizeAfterLoad(loginCredentials, postLoadConnections);
+    			
+    		} else {
+	    		// Add all constraints and indexes.
+	    		indexManager.completeAfterLoad();
+	    		
+	    		dbCtx.commitTransaction();
+	    		
+	    		LOG.fine("Clustering database.");
+	    		dbCtx.getJdbcTemplate().update("CLUSTER");
+	    		
+	    		LOG.fine("Vacuuming database.");
+	    		dbCtx.getJdbcTemplate().update("VACUUM ANALYZE");
+    		}
     		
     		LOG.fine("Complete.");
     	}
@@ -0,0 +1,338 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+
+
+/**
+ * Loads a single table using the COPY command while the data is still being
+ * produced. Data written to this stream is passed in blocks through a bounded
+ * queue to a background thread which streams it to the database over its own
+ * connection. The bounded queue prevents the producer from getting too far
+ * ahead of the database.
+ * <p>
+ * Closing the stream ends the COPY normally, {@link #abort()} must be called
+ * instead if the load is to be abandoned.
+ *
+ * @author Brett Henderson
+ */
+public class CopyStreamLoader extends OutputStream {
+
+	private static final Logger LOG = Logger.getLogger(CopyStreamLoader.class.getName());
+
+	private static final int BLOCK_SIZE = 65536;
+	private static final int QUEUE_DEPTH = 16;
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private DatabaseLoginCredentials loginCredentials;
+	private boolean binary;
+	private String tableName;
+	private String[] columns;
+	private BlockingQueue<byte[]> queue;
+	private Thread loaderThread;
+	private volatile boolean aborted;
+	private volatile Throwable loaderException;
+	private boolean closed;
+
+	private byte[] currentBlock;
+	private int currentBlockOffset;
+
+
+	/**
+	 * Creates a new instance and starts the background load.
+	 *
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param binary
+	 *            If true, the data is in the binary COPY format, otherwise it
+	 *            is in the text format.
+	 * @param tableName
+	 *            The table to load the data into.
+	 * @param columns
+	 *            The columns to be loaded (optional).
+	 */
+	public CopyStreamLoader(
+			DatabaseLoginCredentials loginCredentials, boolean binary, String tableName, String... columns) {
+		this.loginCredentials = loginCredentials;
+		this.binary = binary;
+		this.tableName = tableName;
+		this.columns = columns;
+
+		queue = new ArrayBlockingQueue<byte[]>(QUEUE_DEPTH);
+		currentBlock = new byte[BLOCK_SIZE];
+		currentBlockOffset = 0;
+
+		loaderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				load();
+			}
+		}, "copy-" + tableName);
+		loaderThread.setDaemon(true);
+		loaderThread.start();
+	}
+
+
+	/**
+	 * Streams all queued data into the database. This runs on the loader
+	 * thread.
+	 */
+	private void load() {
+		try (DatabaseContext dbCtx = new DatabaseContext(loginCredentials)) {
+			LOG.finer("Beginning load of table " + tableName + ".");
+
+			dbCtx.loadCopyStream(new QueueInputStream(), binary, tableName, columns);
+
+			LOG.finer("Completed load of table " + tableName + ".");
+
+		} catch (Throwable t) {
+			loaderException = t;
+
+			// Discard any queued data so the producer isn't left waiting.
+			queue.clear();
+		}
+	}
+
+
+	/**
+	 * Adds a block to the queue, waiting for space to become available.
+	 *
+	 * @param block
+	 *            The block to add.
+	 */
+	private void offer(byte[] block) throws IOException {
+		try {
+			while (!aborted && loaderException == null) {
+				if (queue.offer(block, 1, TimeUnit.SECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting to send data to table " + tableName + ".", e);
+		}
+
+		if (loaderException != null) {
+			throw new IOException("Unable to load table " + tableName + ".", loaderException);
+		} else {
+			throw new IOException("The load of table " + tableName + " has been aborted.");
+		}
+	}
+
+
+	/**
+	 * Passes the current block to the loader thread if it contains data.
+	 */
+	private void sendCurrentBlock() throws IOException {
+		if (currentBlockOffset > 0) {
+			byte[] block;
+
+			if (currentBlockOffset == BLOCK_SIZE) {
+				block = currentBlock;
+				currentBlock = new byte[BLOCK_SIZE];
+			} else {
+				block = new byte[currentBlockOffset];
+				System.arraycopy(currentBlock, 0, block, 0, currentBlockOffset);
+			}
+			currentBlockOffset = 0;
+
+			offer(block);
+		}
+	}
+
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("The stream for table " + tableName + " has already been closed.");
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+
+		if (currentBlockOffset == BLOCK_SIZE) {
+			sendCurrentBlock();
+		}
+
+		currentBlock[currentBlockOffset++] = (byte) b;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+
+		while (len > 0) {
+			int copyLength;
+
+			if (currentBlockOffset == BLOCK_SIZE) {
+				sendCurrentBlock();
+			}
+
+			copyLength = BLOCK_SIZE - currentBlockOffset;
+			if (copyLength > len) {
+				copyLength = len;
+			}
+
+			System.arraycopy(b, off, currentBlock, currentBlockOffset, copyLength);
+			currentBlockOffset += copyLength;
+			off += copyLength;
+			len -= copyLength;
+		}
+	}
+
+
+	/**
+	 * Sends all remaining data to the loader thread and signals the end of the
+	 * data. This does not wait for the load to complete, use
+	 * {@link #waitForCompletion()} for that. This has no effect if the load
+	 * has been aborted.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed && !aborted) {
+			closed = true;
+
+			sendCurrentBlock();
+			offer(END_OF_STREAM);
+		}
+	}
+
+
+	/**
+	 * Waits for the loader thread to finish loading all data written to the
+	 * stream. The stream must have been closed first.
+	 */
+	public void waitForCompletion() {
+		if (!closed) {
+			throw new OsmosisRuntimeException("The stream for table " + tableName + " has not been closed.");
+		}
+
+		try {
+			loaderThread.join();
+		} catch (InterruptedException e) {
+			throw new OsmosisRuntimeException("Interrupted while waiting for table " + tableName + " to load.", e);
+		}
+
+		if (loaderException != null) {
+			throw new OsmosisRuntimeException("Unable to load table " + tableName + ".", loaderException);
+		}
+	}
+
+
+	/**
+	 * Abandons the load. The COPY is cancelled so no data is committed to the
+	 * table. This has no effect if the load has already completed.
+	 */
+	public void abort() {
+		if (!aborted) {
+			aborted = true;
+
+			try {
+				loaderThread.join();
+			} catch (InterruptedException e) {
+				LOG.log(Level.WARNING, "Interrupted while waiting for the load of table " + tableName + " to stop.", e);
+				Thread.currentThread().interrupt();
+			}
+
+			queue.clear();
+		}
+	}
+
+
+	/**
+	 * Provides the data queued by the producer to the COPY command. Reads fail
+	 * if the load is aborted causing the COPY to be cancelled.
+	 */
+	private class QueueInputStream extends InputStream {
+		private byte[] readBlock;
+		private int readBlockOffset;
+
+
+		private boolean populateBlock() throws IOException {
+			if (readBlock == END_OF_STREAM) {
+				return false;
+			}
+
+			if (readBlock == null || readBlockOffset >= readBlock.length) {
+				readBlock = null;
+				try {
+					while (readBlock == null) {
+						if (aborted) {
+							throw new IOException("The load of table " + tableName + " has been aborted.");
+						}
+						readBlock = queue.poll(1, TimeUnit.SECONDS);
+					}
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while waiting for data for table " + tableName + ".", e);
+				}
+				readBlockOffset = 0;
+
+				if (readBlock == END_OF_STREAM) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			if (populateBlock()) {
+				return readBlock[readBlockOffset++] & 0xff;
+			} else {
+				return -1;
+			}
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			if (populateBlock()) {
+				int readLength;
+
+				readLength = readBlock.length - readBlockOffset;
+				if (readLength > len) {
+					readLength = len;
+				}
+
+				System.arraycopy(readBlock, readBlockOffset, b, off, readLength);
+				readBlockOffset += readLength;
+
+				return readLength;
+
+			} else {
+				return -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.io.OutputStream;
+
+
+/**
+ * A copy streamset is a collection of streams accepting data in the PostgreSQL
+ * "COPY" format used to populate the database. It is the streaming equivalent
+ * of a {@link CopyFileset}.
+ * 
+ * @author Brett Henderson
+ */
+public interface CopyStreamset {
+	/**
+	 * Gets the user table stream.
+	 * 
+	 * @return The user table stream.
+	 */
+	OutputStream getUserStream();
+
+
+	/**
+	 * Gets the node table stream.
+	 * 
+	 * @return The node table stream.
+	 */
+	OutputStream getNodeStream();
+
+
+	/**
+	 * Gets the way table stream.
+	 * 
+	 * @return The way table stream.
+	 */
+	OutputStream getWayStream();
+
+
+	/**
+	 * Gets the way node table stream.
+	 * 
+	 * @return The way node table stream.
+	 */
+	OutputStream getWayNodeStream();
+
+
+	/**
+	 * Gets the relation table stream.
+	 * 
+	 * @return The relation table stream.
+	 */
+	OutputStream getRelationStream();
+
+
+	/**
+	 * Gets the relation member table stream.
+	 * 
+	 * @return The relation member table stream.
+	 */
+	OutputStream getRelationMemberStream();
+}
@@ -0,0 +1,246 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
+import org.openstreetmap.osmosis.core.database.DatabasePreferences;
+import org.openstreetmap.osmosis.core.lifecycle.Completable;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+import org.openstreetmap.osmosis.pgsnapshot.common.SchemaVersionValidator;
+import org.openstreetmap.osmosis.pgsnapshot.v0_6.PostgreSqlVersionConstants;
+
+
+/**
+ * Loads data into the database as it is produced rather than via intermediate
+ * COPY files. Each table is loaded over its own connection by a
+ * {@link CopyStreamLoader} so that all tables load concurrently with input
+ * processing. Constraints and indexes are dropped before the load starts and
+ * re-created once all tables have been loaded.
+ * <p>
+ * Unlike {@link CopyFilesetLoader} the load is not performed within a single
+ * transaction, a failed load leaves the database without indexes and must be
+ * truncated before retrying.
+ *
+ * @author Brett Henderson
+ */
+public class DirectCopyLoader implements CopyStreamset, Completable {
+
+	private static final Logger LOG = Logger.getLogger(DirectCopyLoader.class.getName());
+
+
+	private DatabaseLoginCredentials loginCredentials;
+	private DatabasePreferences preferences;
+	private boolean binaryCopy;
+	private int postLoadConnections;
+	private DatabaseContext dbCtx;
+	private IndexManager indexManager;
+	private List<CopyStreamLoader> loaders;
+	private CopyStreamLoader userLoader;
+	private CopyStreamLoader nodeLoader;
+	private CopyStreamLoader wayLoader;
+	private CopyStreamLoader wayNodeLoader;
+	private CopyStreamLoader relationLoader;
+	private CopyStreamLoader relationMemberLoader;
+	private boolean initialized;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param preferences
+	 *            Contains preferences configuring database behaviour.
+	 * @param binaryCopy
+	 *            If true, the streams accept the binary COPY format, otherwise
+	 *            they accept the text format.
+	 * @param postLoadConnections
+	 *            The number of connections used to create indexes and optimise
+	 *            tables after the load.
+	 */
+	public DirectCopyLoader(
+			DatabaseLoginCredentials loginCredentials, DatabasePreferences preferences, boolean binaryCopy,
+			int postLoadConnections) {
+		this.loginCredentials = loginCredentials;
+		this.preferences = preferences;
+		this.binaryCopy = binaryCopy;
+		this.postLoadConnections = postLoadConnections;
+
+		loaders = new ArrayList<CopyStreamLoader>();
+	}
+
+
+	private CopyStreamLoader createLoader(String tableName, String... columns) {
+		CopyStreamLoader loader;
+
+		loader = new CopyStreamLoader(loginCredentials, binaryCopy, tableName, columns);
+		loaders.add(loader);
+
+		return loader;
+	}
+
+
+	private void initialize() {
+		if (!initialized) {
+			DatabaseCapabilityChecker capabilityChecker;
+			String[] wayColumns;
+
+			dbCtx = new DatabaseContext(loginCredentials);
+
+			capabilityChecker = new DatabaseCapabilityChecker(dbCtx);
+			new SchemaVersionValidator(dbCtx.getJdbcTemplate(), preferences)
+				.validateVersion(PostgreSqlVersionConstants.SCHEMA_VERSION);
+
+			wayColumns = CopyFilesetLoader.WAY_COLUMNS;
+			if (capabilityChecker.isWayBboxSupported()) {
+				wayColumns = CopyFilesetLoader.appendColumn(wayColumns, "bbox");
+			}
+			if (capabilityChecker.isWayLinestringSupported()) {
+				wayColumns = CopyFilesetLoader.appendColumn(wayColumns, "linestring");
+			}
+
+			indexManager = new IndexManager(dbCtx, false, false);
+
+			// Drop all constraints and indexes. This must be committed before
+			// the loaders begin, they would otherwise block on the table locks.
+			dbCtx.beginTransaction();
+			indexManager.prepareForLoad();
+			dbCtx.commitTransaction();
+
+			LOG.fine("Starting table loaders.");
+			userLoader = createLoader("users");
+			nodeLoader = createLoader("nodes", CopyFilesetLoader.NODE_COLUMNS);
+			wayLoader = createLoader("ways", wayColumns);
+			wayNodeLoader = createLoader("way_nodes");
+			relationLoader = createLoader("relations", CopyFilesetLoader.RELATION_COLUMNS);
+			relationMemberLoader = createLoader("relation_members");
+
+			initialized = true;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getUserStream() {
+		initialize();
+
+		return userLoader;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getNodeStream() {
+		initialize();
+
+		return nodeLoader;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getWayStream() {
+		initialize();
+
+		return wayLoader;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getWayNodeStream() {
+		initialize();
+
+		return wayNodeLoader;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getRelationStream() {
+		initialize();
+
+		return relationLoader;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputStream getRelationMemberStream() {
+		initialize();
+
+		return relationMemberLoader;
+	}
+
+
+	/**
+	 * Waits for all tables to finish loading, then re-creates indexes and
+	 * optimises the database. All streams must have been closed first.
+	 */
+	@Override
+	public void complete() {
+		initialize();
+
+		LOG.fine("Waiting for table loads to complete.");
+		for (CopyStreamLoader loader : loaders) {
+			loader.waitForCompletion();
+		}
+
+		LOG.fine("Data load complete.");
+
+		if (postLoadConnections > 1) {
+			// Add all constraints and indexes, then optimise the tables.
+			indexManager.completeAndOptimizeAfterLoad(loginCredentials, postLoadConnections);
+
+		} else {
+			// Add all constraints and indexes.
+			dbCtx.beginTransaction();
+			indexManager.completeAfterLoad();
+			dbCtx.commitTransaction();
+
+			LOG.fine("Clustering database.");
+			dbCtx.getJdbcTemplate().update("CLUSTER");
+
+			LOG.fine("Vacuuming database.");
+			dbCtx.getJdbcTemplate().update("VACUUM ANALYZE");
+		}
+
+		LOG.fine("Complete.");
+	}
+
+
+	/**
+	 * Aborts any loads still in progress and releases all database resources.
+	 */
+	@Override
+	public void close() {
+		for (CopyStreamLoader loader : loaders) {
+			loader.abort();
+		}
+		loaders.clear();
+
+		if (dbCtx != null) {
+			dbCtx.close();
+			dbCtx = null;
+		}
+
+		initialized = false;
+	}
+}
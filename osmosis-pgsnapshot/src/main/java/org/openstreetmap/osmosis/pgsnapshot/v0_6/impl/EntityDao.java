@@ -106,6 +106,20 @@ public abstract class EntityDao<T extends Entity> {
 	}
 	
 	
+	/**
+	 * Loads the specified entities from the database using a single query.
+	 * Entities that don't exist are omitted from the result.
+	 * 
+	 * @param entityIds
+	 *            The unique identifiers of the entities.
+	 * @return The loaded entities.
+	 */
+	public List<T> getEntities(long[] entityIds) {
+		return jdbcTemplate.query(entityMapper.getSqlSelect(false, false) + " WHERE e.id = ANY(?)",
+				entityMapper.getRowMapper(), new WayNodesArray(entityIds));
+	}
+	
+	
 	/**
 	 * Adds the specified entity to the database.
 	 * 
@@ -4,6 +4,7 @@ package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.openstreetmap.osmosis.core.database.DbFeature;
@@ -80,6 +81,43 @@ public class EntityFeatureDao<Tef extends Storeable, Tdb extends DbFeature<Tef>>
 	}
 	
 	
+	/**
+	 * Loads all instances of this feature for the specified entities from the
+	 * database using a single query.
+	 * 
+	 * @param entityIds
+	 *            The unique identifiers of the entities.
+	 * @return The features of each entity in their stored order, keyed by
+	 *         entity id. Entities without features are omitted.
+	 */
+	public Map<Long, List<Tef>> getAllRaw(long[] entityIds) {
+		List<Tdb> dbFeatures;
+		Map<Long, List<Tef>> rawFeatures;
+		
+		dbFeatures = jdbcTemplate.query(
+			entityFeatureMapper.getSqlSelect("", false, false)
+				+ " WHERE " + entityFeatureMapper.getParentEntityName() + "_id = ANY(?)"
+				+ entityFeatureMapper.getSqlDefaultOrderBy(),
+			entityFeatureMapper.getRowMapper(),
+			new WayNodesArray(entityIds)
+		);
+		
+		rawFeatures = new HashMap<Long, List<Tef>>();
+		for (Tdb dbFeature : dbFeatures) {
+			List<Tef> entityFeatures;
+			
+			entityFeatures = rawFeatures.get(dbFeature.getEntityId());
+			if (entityFeatures == null) {
+				entityFeatures = new ArrayList<Tef>();
+				rawFeatures.put(dbFeature.getEntityId(), entityFeatures);
+			}
+			entityFeatures.add(dbFeature.getFeature());
+		}
+		
+		return rawFeatures;
+	}
+	
+	
 	/**
 	 * Adds the specified features to the database.
 	 * 
@@ -1,8 +1,15 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 
@@ -35,16 +42,20 @@ public class IndexManager {
 		"DROP INDEX idx_ways_linestring"
 	};
 	
-	private static final String[] POST_LOAD_SQL = {
-		"ALTER TABLE ONLY users ADD CONSTRAINT pk_users PRIMARY KEY (id)",
-		"ALTER TABLE ONLY nodes ADD CONSTRAINT pk_nodes PRIMARY KEY (id)",
-		"ALTER TABLE ONLY ways ADD CONSTRAINT pk_ways PRIMARY KEY (id)",
-		"ALTER TABLE ONLY way_nodes ADD CONSTRAINT pk_way_nodes PRIMARY KEY (way_id, sequence_id)",
-		"ALTER TABLE ONLY relations ADD CONSTRAINT pk_relations PRIMARY KEY (id)",
-		"ALTER TABLE ONLY relation_members ADD CONSTRAINT pk_relation_members PRIMARY KEY (relation_id, sequence_id)",
-		"CREATE INDEX idx_nodes_geom ON nodes USING gist (geom)",
-		"CREATE INDEX idx_way_nodes_node_id ON way_nodes USING btree (node_id)",
-		"CREATE INDEX idx_relation_members_member_id_and_type ON relation_members USING btree (member_id, member_type)"
+	// Each post-load statement is paired with the table it modifies. The
+	// first statement for each table creates the primary key.
+	private static final String[][] POST_LOAD_SQL = {
+		{"users", "ALTER TABLE ONLY users ADD CONSTRAINT pk_users PRIMARY KEY (id)"},
+		{"nodes", "ALTER TABLE ONLY nodes ADD CONSTRAINT pk_nodes PRIMARY KEY (id)"},
+		{"ways", "ALTER TABLE ONLY ways ADD CONSTRAINT pk_ways PRIMARY KEY (id)"},
+		{"way_nodes", "ALTER TABLE ONLY way_nodes ADD CONSTRAINT pk_way_nodes PRIMARY KEY (way_id, sequence_id)"},
+		{"relations", "ALTER TABLE ONLY relations ADD CONSTRAINT pk_relations PRIMARY KEY (id)"},
+		{"relation_members", "ALTER TABLE ONLY relation_members ADD CONSTRAINT pk_relation_members"
+			+ " PRIMARY KEY (relation_id, sequence_id)"},
+		{"nodes", "CREATE INDEX idx_nodes_geom ON nodes USING gist (geom)"},
+		{"way_nodes", "CREATE INDEX idx_way_nodes_node_id ON way_nodes USING btree (node_id)"},
+		{"relation_members", "CREATE INDEX idx_relation_members_member_id_and_type"
+			+ " ON relation_members USING btree (member_id, member_type)"}
 	};
 	private static final String[] POST_LOAD_SQL_WAY_BBOX = {
 		"CREATE INDEX idx_ways_bbox ON ways USING gist (bbox)"
@@ -66,6 +77,13 @@ public class IndexManager {
 		+ ")";
 	
 	
+	private static final String[] LOADED_TABLES = {
+		"users", "nodes", "ways", "way_nodes", "relations", "relation_members"
+	};
+	private static final String SQL_SELECT_CLUSTERED_INDEX_COUNT =
+		"SELECT Count(*) FROM pg_index WHERE indrelid = ?::regclass AND indisclustered";
+	
+	
 	private JdbcTemplate jdbcTemplate;
 	private DatabaseCapabilityChecker capabilityChecker;
 	private boolean populateBbox;
@@ -126,8 +144,8 @@ public class IndexManager {
 	public void completeAfterLoad() {
 		LOG.fine("Running post-load SQL.");
 		for (int i = 0; i < POST_LOAD_SQL.length; i++) {
-			LOG.finer("SQL: " + POST_LOAD_SQL[i]);
-			jdbcTemplate.update(POST_LOAD_SQL[i]);
+			LOG.finer("SQL: " + POST_LOAD_SQL[i][1]);
+			jdbcTemplate.update(POST_LOAD_SQL[i][1]);
 		}
 		if (capabilityChecker.isWayBboxSupported()) {
 			LOG.fine("Running post-load bbox SQL statements.");
@@ -152,4 +170,117 @@ public class IndexManager {
 			}
 		}
 	}
+	
+	
+	private void addTableStatement(ParallelStatementRunner runner, Map<String, List<String>> tableStatements,
+			String table, String sql, Collection<String> dependsOn) {
+		List<String> statements;
+		List<String> allDependencies;
+		
+		statements = tableStatements.get(table);
+		
+		// The first statement on each table creates the primary key which
+		// takes an exclusive lock, all others must wait for it.
+		allDependencies = new ArrayList<String>(dependsOn);
+		if (statements.size() > 0) {
+			allDependencies.add(statements.get(0));
+		}
+		
+		runner.add(sql, allDependencies);
+		statements.add(sql);
+	}
+	
+	
+	/**
+	 * Creates indexes in the database, populates derived columns, then
+	 * clusters and analyzes the loaded tables. This performs the same work as
+	 * {@link #completeAfterLoad()} followed by a database CLUSTER and VACUUM
+	 * ANALYZE, but statements are scheduled according to their dependencies
+	 * and independent statements are run concurrently on separate
+	 * connections. The statements do not run within the current transaction,
+	 * all loaded data must have been committed before calling this method.
+	 * 
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param connectionCount
+	 *            The maximum number of statements to run concurrently.
+	 */
+	public void completeAndOptimizeAfterLoad(DatabaseLoginCredentials loginCredentials, int connectionCount) {
+		ParallelStatementRunner runner;
+		Map<String, List<String>> tableStatements;
+		List<String> wayNodeKeys;
+		List<String> wayPopulateStatements;
+		
+		runner = new ParallelStatementRunner(loginCredentials, connectionCount);
+		
+		tableStatements = new HashMap<String, List<String>>();
+		for (String table : LOADED_TABLES) {
+			tableStatements.put(table, new ArrayList<String>());
+		}
+		
+		for (int i = 0; i < POST_LOAD_SQL.length; i++) {
+			addTableStatement(
+					runner, tableStatements, POST_LOAD_SQL[i][0], POST_LOAD_SQL[i][1],
+					Collections.<String>emptyList());
+		}
+		
+		// Way geometries are built from the node and way node tables and
+		// require their primary keys. Updates of the ways table are run one
+		// after another, and its geometry indexes are built after the updates.
+		wayNodeKeys = new ArrayList<String>();
+		wayNodeKeys.add(tableStatements.get("nodes").get(0));
+		wayNodeKeys.add(tableStatements.get("way_nodes").get(0));
+		wayPopulateStatements = new ArrayList<String>();
+		if (capabilityChecker.isWayBboxSupported() && populateBbox) {
+			addTableStatement(runner, tableStatements, "ways", POST_LOAD_SQL_POPULATE_WAY_BBOX, wayNodeKeys);
+			wayPopulateStatements.add(POST_LOAD_SQL_POPULATE_WAY_BBOX);
+		}
+		if (capabilityChecker.isWayLinestringSupported() && populateLinestring) {
+			List<String> dependsOn;
+			
+			dependsOn = new ArrayList<String>(wayNodeKeys);
+			dependsOn.addAll(wayPopulateStatements);
+			
+			addTableStatement(runner, tableStatements, "ways", POST_LOAD_SQL_POPULATE_WAY_LINESTRING, dependsOn);
+			wayPopulateStatements.add(POST_LOAD_SQL_POPULATE_WAY_LINESTRING);
+		}
+		if (capabilityChecker.isWayBboxSupported()) {
+			for (int i = 0; i < POST_LOAD_SQL_WAY_BBOX.length; i++) {
+				addTableStatement(runner, tableStatements, "ways", POST_LOAD_SQL_WAY_BBOX[i], wayPopulateStatements);
+			}
+		}
+		if (capabilityChecker.isWayLinestringSupported()) {
+			for (int i = 0; i < POST_LOAD_SQL_WAY_LINESTRING.length; i++) {
+				addTableStatement(
+						runner, tableStatements, "ways", POST_LOAD_SQL_WAY_LINESTRING[i], wayPopulateStatements);
+			}
+		}
+		
+		// Each table is clustered (if it has a cluster index) and analyzed
+		// once all of its indexes exist. The node and way node tables must
+		// also wait until they are no longer being read to build way
+		// geometries.
+		for (String table : LOADED_TABLES) {
+			List<String> dependsOn;
+			
+			dependsOn = new ArrayList<String>(tableStatements.get(table));
+			if (wayNodeKeys.contains(dependsOn.get(0))) {
+				dependsOn.addAll(wayPopulateStatements);
+			}
+			
+			if (jdbcTemplate.queryForObject(SQL_SELECT_CLUSTERED_INDEX_COUNT, Integer.class, table) > 0) {
+				String clusterSql;
+				
+				clusterSql = "CLUSTER " + table;
+				runner.add(clusterSql, dependsOn);
+				dependsOn = Collections.singletonList(clusterSql);
+			}
+			
+			runner.add("VACUUM ANALYZE " + table, dependsOn);
+		}
+		
+		LOG.fine("Running post-load SQL statements in parallel.");
+		runner.run();
+		LOG.fine("Post-load SQL statements complete.");
+	}
 }
@@ -39,6 +39,7 @@ public class NodeDao extends EntityDao<Node> {
 	
 	private JdbcTemplate jdbcTemplate;
 	private DatabaseCapabilityChecker capabilityChecker;
+	private WayGeometryUpdater geometryUpdater;
 	
 	
 	/**
@@ -52,8 +53,28 @@ public class NodeDao extends EntityDao<Node> {
 	 * 			  Verbose logging directly to the database
 	 */
 	public NodeDao(DatabaseContext dbCtx, ActionDao actionDao, boolean logging) {
+		this(dbCtx, actionDao, logging, null);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param dbCtx
+	 *            The database context to use for accessing the database.
+	 * @param actionDao
+	 *            The dao to use for adding action records to the database.
+	 * @param logging
+	 * 			  Verbose logging directly to the database
+	 * @param geometryUpdater
+	 *            If not null, the ways using modified nodes are registered
+	 *            with this updater instead of being updated immediately.
+	 */
+	public NodeDao(DatabaseContext dbCtx, ActionDao actionDao, boolean logging, WayGeometryUpdater geometryUpdater) {
 		super(dbCtx.getJdbcTemplate(), new NodeMapper(), actionDao, logging);
 		
+		this.geometryUpdater = geometryUpdater;
+		
 		jdbcTemplate = dbCtx.getJdbcTemplate();
 		capabilityChecker = new DatabaseCapabilityChecker(dbCtx);
 	}
@@ -66,6 +87,11 @@ public class NodeDao extends EntityDao<Node> {
 	public void modifyEntity(Node entity) {
 		super.modifyEntity(entity);
 		
+		if (geometryUpdater != null) {
+			geometryUpdater.addNode(entity.getId());
+			return;
+		}
+		
 		if (capabilityChecker.isWayBboxSupported()) {
 			jdbcTemplate.update(SQL_UPDATE_WAY_BBOX, entity.getId());
 		}
@@ -0,0 +1,203 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+
+
+/**
+ * Executes a graph of SQL statements over a pool of database connections.
+ * Each statement is started once all statements it depends on have
+ * completed, allowing independent statements such as index builds on
+ * different tables to run concurrently. Statements are executed outside of
+ * any transaction.
+ *
+ * @author Brett Henderson
+ */
+public class ParallelStatementRunner {
+
+	private static final Logger LOG = Logger.getLogger(ParallelStatementRunner.class.getName());
+
+
+	private DatabaseLoginCredentials loginCredentials;
+	private int connectionCount;
+	private Map<String, Set<String>> dependencies;
+	private Set<String> pending;
+	private Set<String> completed;
+	private Throwable failure;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param connectionCount
+	 *            The maximum number of statements to execute concurrently.
+	 */
+	public ParallelStatementRunner(DatabaseLoginCredentials loginCredentials, int connectionCount) {
+		if (connectionCount < 1) {
+			throw new OsmosisRuntimeException(
+					"At least one connection is required, " + connectionCount + " was specified.");
+		}
+
+		this.loginCredentials = loginCredentials;
+		this.connectionCount = connectionCount;
+
+		dependencies = new HashMap<String, Set<String>>();
+		pending = new LinkedHashSet<String>();
+		completed = new HashSet<String>();
+	}
+
+
+	/**
+	 * Adds a statement to be executed. Statements without outstanding
+	 * dependencies are started in the order they are added.
+	 *
+	 * @param sql
+	 *            The statement to execute. This also identifies the statement
+	 *            when specifying dependencies.
+	 * @param dependsOn
+	 *            The previously added statements that must complete before
+	 *            this statement is started.
+	 */
+	public void add(String sql, Collection<String> dependsOn) {
+		if (dependencies.containsKey(sql)) {
+			throw new OsmosisRuntimeException("Statement " + sql + " has already been added.");
+		}
+		for (String dependency : dependsOn) {
+			if (!dependencies.containsKey(dependency)) {
+				throw new OsmosisRuntimeException(
+						"Statement " + sql + " depends on unknown statement " + dependency + ".");
+			}
+		}
+
+		dependencies.put(sql, new HashSet<String>(dependsOn));
+		pending.add(sql);
+	}
+
+
+	/**
+	 * Executes all statements, returning once all have completed. If any
+	 * statement fails no further statements are started, and the failure is
+	 * re-thrown once the statements already running have finished.
+	 */
+	public void run() {
+		List<Thread> workers;
+		int workerCount;
+
+		workerCount = Math.min(connectionCount, pending.size());
+		LOG.fine("Executing " + pending.size() + " statements using " + workerCount + " connections.");
+
+		workers = new ArrayList<Thread>(workerCount);
+		for (int i = 0; i < workerCount; i++) {
+			Thread worker;
+
+			worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					executeStatements();
+				}
+			}, "sql-worker-" + i);
+			worker.setDaemon(true);
+			worker.start();
+
+			workers.add(worker);
+		}
+
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				fail(e);
+				throw new OsmosisRuntimeException("Interrupted while waiting for statements to complete.", e);
+			}
+		}
+
+		if (failure != null) {
+			throw new OsmosisRuntimeException("Unable to execute all statements.", failure);
+		}
+	}
+
+
+	/**
+	 * Executes statements on a dedicated connection until no statements remain
+	 * or a failure occurs. This runs on each worker thread.
+	 */
+	private void executeStatements() {
+		try (DatabaseContext dbCtx = new DatabaseContext(loginCredentials)) {
+			String sql;
+
+			while ((sql = nextStatement()) != null) {
+				long startTime;
+
+				LOG.fine("Starting SQL: " + sql);
+				startTime = System.currentTimeMillis();
+
+				dbCtx.getJdbcTemplate().update(sql);
+
+				completeStatement(sql, System.currentTimeMillis() - startTime);
+			}
+
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+
+
+	/**
+	 * Waits until a statement is ready for execution.
+	 *
+	 * @return The statement, or null if no statements remain or a failure has
+	 *         occurred.
+	 */
+	private synchronized String nextStatement() throws InterruptedException {
+		while (failure == null && !pending.isEmpty()) {
+			for (Iterator<String> i = pending.iterator(); i.hasNext();) {
+				String sql;
+
+				sql = i.next();
+				if (completed.containsAll(dependencies.get(sql))) {
+					i.remove();
+
+					return sql;
+				}
+			}
+
+			wait();
+		}
+
+		return null;
+	}
+
+
+	private synchronized void completeStatement(String sql, long duration) {
+		completed.add(sql);
+
+		LOG.info("Completed statement " + completed.size() + " of " + dependencies.size() + " in "
+				+ (duration / 1000.0) + " seconds: " + sql);
+
+		notifyAll();
+	}
+
+
+	private synchronized void fail(Throwable t) {
+		if (failure == null) {
+			failure = t;
+		}
+
+		notifyAll();
+	}
+}
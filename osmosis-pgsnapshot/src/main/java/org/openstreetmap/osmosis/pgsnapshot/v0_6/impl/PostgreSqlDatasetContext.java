@@ -11,6 +11,7 @@ import net.postgis.jdbc.geometry.Polygon;
 import org.openstreetmap.osmosis.core.OsmosisConstants;
 import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.BoundContainerIterator;
+import org.openstreetmap.osmosis.core.container.v0_6.CachingEntityManager;
 import org.openstreetmap.osmosis.core.container.v0_6.DatasetContext;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityManager;
@@ -23,9 +24,11 @@ import org.openstreetmap.osmosis.core.container.v0_6.WayContainerIterator;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
 import org.openstreetmap.osmosis.core.domain.v0_6.Bound;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
 import org.openstreetmap.osmosis.core.domain.v0_6.Node;
 import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
 import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.lifecycle.ReleasableContainer;
 import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
 import org.openstreetmap.osmosis.core.store.MultipleSourceIterator;
 import org.openstreetmap.osmosis.core.store.ReleasableAdaptorForIterator;
@@ -60,11 +63,13 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	private NodeDao nodeDao;
 	private WayDao wayDao;
 	private RelationDao relationDao;
-	private PostgreSqlEntityManager<Node> nodeManager;
-	private PostgreSqlEntityManager<Way> wayManager;
-	private PostgreSqlEntityManager<Relation> relationManager;
+	private EntityManager<Node> nodeManager;
+	private EntityManager<Way> wayManager;
+	private EntityManager<Relation> relationManager;
 	private PolygonBuilder polygonBuilder;
 	private boolean logging;
+	private boolean parallelReads;
+	private int entityCacheSize;
 	
 	/**
 	 * Creates a new instance.
@@ -78,6 +83,29 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	 */
 	public PostgreSqlDatasetContext(DatabaseLoginCredentials loginCredentials, 
 					DatabasePreferences preferences, boolean logging) {
+		this(loginCredentials, preferences, logging, false, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param preferences
+	 *            Contains preferences configuring database behaviour.
+	 * @param logging
+	 * 			  Verbose logging directly to the database
+	 * @param parallelReads
+	 *            If true, a full dataset iteration reads nodes, ways and
+	 *            relations concurrently on separate connections sharing a
+	 *            single repeatable read snapshot.
+	 * @param entityCacheSize
+	 *            The maximum number of entities of each type to cache when
+	 *            retrieving entities by id. Zero disables caching.
+	 */
+	public PostgreSqlDatasetContext(DatabaseLoginCredentials loginCredentials, 
+					DatabasePreferences preferences, boolean logging, boolean parallelReads, int entityCacheSize) {
 		this.loginCredentials = loginCredentials;
 		this.preferences = preferences;
 		
@@ -86,6 +114,8 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 		initialized = false;
 
 		this.logging = logging;
+		this.parallelReads = parallelReads;
+		this.entityCacheSize = entityCacheSize;
 	}
 	
 	
@@ -99,7 +129,12 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 			dbCtx = new DatabaseContext(loginCredentials);
 			jdbcTemplate = dbCtx.getJdbcTemplate();
 			
-			dbCtx.beginTransaction();
+			if (parallelReads) {
+				// The snapshot of this transaction is shared with the parallel readers.
+				dbCtx.beginRepeatableReadTransaction();
+			} else {
+				dbCtx.beginTransaction();
+			}
 			
 			new SchemaVersionValidator(jdbcTemplate, preferences).validateVersion(
 					PostgreSqlVersionConstants.SCHEMA_VERSION);
@@ -112,15 +147,45 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 			wayDao = new WayDao(dbCtx, actionDao, this.logging);
 			relationDao = new RelationDao(dbCtx, actionDao, this.logging);
 			
-			nodeManager = new PostgreSqlEntityManager<>(nodeDao, userDao);
-			wayManager = new PostgreSqlEntityManager<>(wayDao, userDao);
-			relationManager = new PostgreSqlEntityManager<>(relationDao, userDao);
+			nodeManager = createEntityManager(new PostgreSqlEntityManager<>(nodeDao, userDao));
+			wayManager = createEntityManager(new PostgreSqlEntityManager<>(wayDao, userDao));
+			relationManager = createEntityManager(new PostgreSqlEntityManager<>(relationDao, userDao));
 		}
 		
 		initialized = true;
 	}
 	
 	
+	/**
+	 * Wraps the entity manager in a cache if caching is enabled.
+	 * 
+	 * @param <T>
+	 *            The entity type to be supported.
+	 * @param entityManager
+	 *            The entity manager providing direct database access.
+	 * @return The entity manager to be used.
+	 */
+	private <T extends Entity> EntityManager<T> createEntityManager(EntityManager<T> entityManager) {
+		if (entityCacheSize > 0) {
+			return new CachingEntityManager<T>(entityManager, entityCacheSize);
+		} else {
+			return entityManager;
+		}
+	}
+	
+	
+	private void logCacheStatistics(String entityName, EntityManager<?> entityManager) {
+		if (entityManager instanceof CachingEntityManager) {
+			CachingEntityManager<?> cachingManager;
+			
+			cachingManager = (CachingEntityManager<?>) entityManager;
+			LOG.fine(entityName + " cache: " + cachingManager.getHitCount() + " hits, "
+					+ cachingManager.getMissCount() + " misses, "
+					+ Math.round(cachingManager.getHitRate() * 100) + "% hit rate.");
+		}
+	}
+	
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -206,6 +271,10 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 		bounds = new ArrayList<Bound>();
 		bounds.add(new Bound("Osmosis " + OsmosisConstants.VERSION));
 		
+		if (parallelReads) {
+			return iterateParallel(bounds);
+		}
+		
 		sources = new ArrayList<ReleasableIterator<EntityContainer>>();
 		
 		sources.add(new UpcastIterator<EntityContainer, BoundContainer>(
@@ -221,6 +290,53 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	}
 	
 	
+	/**
+	 * Reads all nodes on the current connection while ways and relations are
+	 * read concurrently on dedicated connections. All connections share the
+	 * snapshot of the current transaction so the results are consistent. Each
+	 * type is read into a sorted store before being returned in type then id
+	 * order.
+	 * 
+	 * @param bounds
+	 *            The bounds to be returned ahead of the entities.
+	 * @return The entity iterator.
+	 */
+	private ReleasableIterator<EntityContainer> iterateParallel(List<Bound> bounds) {
+		try (ReleasableContainer releasableContainer = new ReleasableContainer()) {
+			String snapshotId;
+			SnapshotEntityReader<Way> wayReader;
+			SnapshotEntityReader<Relation> relationReader;
+			List<ReleasableIterator<EntityContainer>> sources;
+			
+			snapshotId = dbCtx.exportSnapshot();
+			LOG.fine("Reading entity types in parallel using snapshot " + snapshotId + ".");
+			
+			wayReader = releasableContainer.add(new SnapshotEntityReader<Way>(loginCredentials, snapshotId,
+					ctx -> new WayDao(ctx, new ActionDao(ctx), logging), "pgsql-way-reader"));
+			relationReader = releasableContainer.add(new SnapshotEntityReader<Relation>(loginCredentials, snapshotId,
+					ctx -> new RelationDao(ctx, new ActionDao(ctx), logging), "pgsql-relation-reader"));
+			wayReader.start();
+			relationReader.start();
+			
+			sources = new ArrayList<ReleasableIterator<EntityContainer>>();
+			
+			sources.add(new UpcastIterator<EntityContainer, BoundContainer>(
+					new BoundContainerIterator(new ReleasableAdaptorForIterator<Bound>(bounds.iterator()))));
+			sources.add(new UpcastIterator<EntityContainer, NodeContainer>(
+					new NodeContainerIterator(releasableContainer.add(nodeDao.iterate()))));
+			sources.add(new UpcastIterator<EntityContainer, WayContainer>(
+					new WayContainerIterator(releasableContainer.add(wayReader.getResult()))));
+			sources.add(new UpcastIterator<EntityContainer, RelationContainer>(
+					new RelationContainerIterator(releasableContainer.add(relationReader.getResult()))));
+			
+			// The sources are now owned by the returned iterator.
+			releasableContainer.clear();
+			
+			return new MultipleSourceIterator<EntityContainer>(sources);
+		}
+	}
+	
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -437,6 +553,10 @@ public class PostgreSqlDatasetContext implements DatasetContext {
 	 */
 	@Override
 	public void close() {
+		logCacheStatistics("Node", nodeManager);
+		logCacheStatistics("Way", wayManager);
+		logCacheStatistics("Relation", relationManager);
+		
 		if (dbCtx != null) {
 			dbCtx.close();
 			
@@ -2,6 +2,7 @@
 package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.openstreetmap.osmosis.core.container.v0_6.EntityManager;
@@ -104,6 +105,15 @@ public class PostgreSqlEntityManager<T extends Entity> implements EntityManager<
 		return entityDao.getEntity(id);
 	}
 
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<T> getEntities(long[] ids) {
+		return entityDao.getEntities(ids);
+	}
+
 	
 	/**
 	 * {@inheritDoc}
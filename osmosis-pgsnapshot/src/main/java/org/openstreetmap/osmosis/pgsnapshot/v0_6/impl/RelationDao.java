@@ -3,6 +3,7 @@ package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.openstreetmap.osmosis.core.database.DbFeature;
 import org.openstreetmap.osmosis.core.database.DbOrderedFeature;
@@ -73,6 +74,38 @@ public class RelationDao extends EntityDao<Relation> {
 	}
 	
 	
+	/**
+	 * Loads the specified relations and their members from the database. The
+	 * members of all relations are loaded using a single query.
+	 * 
+	 * @param entityIds
+	 *            The unique identifiers of the relations.
+	 * @return The loaded relations.
+	 */
+	@Override
+	public List<Relation> getEntities(long[] entityIds) {
+		List<Relation> entities;
+		Map<Long, List<RelationMember>> members;
+		
+		entities = super.getEntities(entityIds);
+		
+		if (!entities.isEmpty()) {
+			members = relationMemberDao.getAllRaw(entityIds);
+			
+			for (Relation entity : entities) {
+				List<RelationMember> entityMembers;
+				
+				entityMembers = members.get(entity.getId());
+				if (entityMembers != null) {
+					entity.getMembers().addAll(entityMembers);
+				}
+			}
+		}
+		
+		return entities;
+	}
+	
+	
 	/**
 	 * Adds the specified relation member list to the database.
 	 * 
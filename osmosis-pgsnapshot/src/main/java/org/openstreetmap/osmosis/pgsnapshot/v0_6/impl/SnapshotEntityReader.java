@@ -0,0 +1,151 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+
+
+/**
+ * Reads all entities of a single type on a background thread using a dedicated
+ * database connection. The connection imports a snapshot exported by another
+ * transaction, allowing several entity types to be read concurrently while
+ * still seeing a single consistent view of the database.
+ *
+ * @author Brett Henderson
+ * @param <T>
+ *            The type of entity to be read.
+ */
+public class SnapshotEntityReader<T extends Entity> implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(SnapshotEntityReader.class.getName());
+
+
+	private DatabaseLoginCredentials loginCredentials;
+	private String snapshotId;
+	private Function<DatabaseContext, EntityDao<T>> daoFactory;
+	private Thread readerThread;
+	private ReleasableIterator<T> result;
+	private Throwable failure;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param loginCredentials
+	 *            Contains all information required to connect to the database.
+	 * @param snapshotId
+	 *            The identifier of the exported snapshot to read from.
+	 * @param daoFactory
+	 *            Creates the dao for reading the entities from the reader's
+	 *            own database context.
+	 * @param threadName
+	 *            The name of the background thread.
+	 */
+	public SnapshotEntityReader(DatabaseLoginCredentials loginCredentials, String snapshotId,
+			Function<DatabaseContext, EntityDao<T>> daoFactory, String threadName) {
+		this.loginCredentials = loginCredentials;
+		this.snapshotId = snapshotId;
+		this.daoFactory = daoFactory;
+
+		readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, threadName);
+		readerThread.setDaemon(true);
+	}
+
+
+	/**
+	 * Reads the entities into a local store. This runs on the background
+	 * thread.
+	 */
+	private void read() {
+		try (DatabaseContext dbCtx = new DatabaseContext(loginCredentials)) {
+			dbCtx.beginRepeatableReadTransaction();
+			dbCtx.importSnapshot(snapshotId);
+
+			result = daoFactory.apply(dbCtx).iterate();
+
+			dbCtx.commitTransaction();
+
+		} catch (Throwable t) {
+			failure = t;
+
+			if (result != null) {
+				result.close();
+				result = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Starts reading on the background thread.
+	 */
+	public void start() {
+		readerThread.start();
+	}
+
+
+	private void join() throws InterruptedException {
+		if (readerThread != null) {
+			readerThread.join();
+			readerThread = null;
+		}
+	}
+
+
+	/**
+	 * Waits for the read to complete and returns the results. Responsibility
+	 * for releasing the returned iterator passes to the caller.
+	 *
+	 * @return The entity iterator.
+	 */
+	public ReleasableIterator<T> getResult() {
+		ReleasableIterator<T> resultIterator;
+
+		try {
+			join();
+		} catch (InterruptedException e) {
+			throw new OsmosisRuntimeException("Interrupted while waiting for the entity read to complete.", e);
+		}
+
+		if (failure != null) {
+			throw new OsmosisRuntimeException("Unable to read entities from the database snapshot.", failure);
+		}
+
+		resultIterator = result;
+		result = null;
+
+		return resultIterator;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		try {
+			join();
+		} catch (InterruptedException e) {
+			LOG.log(Level.WARNING, "Interrupted while waiting for the entity read to complete.", e);
+			Thread.currentThread().interrupt();
+		}
+
+		if (result != null) {
+			result.close();
+			result = null;
+		}
+	}
+}
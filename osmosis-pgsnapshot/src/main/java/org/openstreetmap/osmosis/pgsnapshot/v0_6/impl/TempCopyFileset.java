@@ -4,10 +4,10 @@ package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.logging.Logger;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 
 
 /**
@@ -18,8 +18,6 @@ import org.openstreetmap.osmosis.core.lifecycle.Closeable;
  */
 public class TempCopyFileset implements CopyFileset, Closeable {
 	
-	private static final Logger LOG = Logger.getLogger(TempCopyFileset.class.getName());
-	
 	
 	private ArrayList<File> tmpFiles;
 	private File userFile;
@@ -45,7 +43,7 @@ public class TempCopyFileset implements CopyFileset, Closeable {
 		try {
 			File tmpFile;
 			
-			tmpFile = File.createTempFile("copy", suffix);
+			tmpFile = TempFileManager.getInstance().createTempFile("copy", suffix);
 			tmpFiles.add(tmpFile);
 			
 			return tmpFile;
@@ -142,10 +140,7 @@ public class TempCopyFileset implements CopyFileset, Closeable {
 	@Override
 	public void close() {
 		for (File tmpFile : tmpFiles) {
-			if (!tmpFile.delete()) {
-				// We cannot throw an exception within a release statement.
-				LOG.warning("Unable to delete file " + tmpFile);
-			}
+			TempFileManager.getInstance().release(tmpFile);
 		}
 		
 		tmpFiles.clear();
@@ -40,6 +40,7 @@ public class WayDao extends EntityDao<Way> {
 	private DatabaseCapabilityChecker capabilityChecker;
 	private EntityFeatureDao<WayNode, DbOrderedFeature<WayNode>> wayNodeDao;
 	private WayNodeMapper wayNodeMapper;
+	private WayGeometryUpdater geometryUpdater;
 	
 	
 	/**
@@ -53,8 +54,28 @@ public class WayDao extends EntityDao<Way> {
 	 * 			  Verbose logging directly to the database
 	 */
 	public WayDao(DatabaseContext dbCtx, ActionDao actionDao, boolean logging) {
+		this(dbCtx, actionDao, logging, null);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param dbCtx
+	 *            The database context to use for accessing the database.
+	 * @param actionDao
+	 *            The dao to use for adding action records to the database.
+	 * @param logging
+	 * 			  Verbose logging directly to the database
+	 * @param geometryUpdater
+	 *            If not null, way geometries are registered with this updater
+	 *            instead of being updated immediately.
+	 */
+	public WayDao(DatabaseContext dbCtx, ActionDao actionDao, boolean logging, WayGeometryUpdater geometryUpdater) {
 		super(dbCtx.getJdbcTemplate(), new WayMapper(), actionDao, logging);
 		
+		this.geometryUpdater = geometryUpdater;
+		
 		jdbcTemplate = dbCtx.getJdbcTemplate();
 		capabilityChecker = new DatabaseCapabilityChecker(dbCtx);
 		wayNodeMapper = new WayNodeMapper();
@@ -90,6 +111,11 @@ public class WayDao extends EntityDao<Way> {
 	 *            The way bounding box.
 	 */
 	private void updateWayGeometries(long wayId) {
+		if (geometryUpdater != null) {
+			geometryUpdater.addWay(wayId);
+			return;
+		}
+		
 		if (capabilityChecker.isWayBboxSupported()) {
 			jdbcTemplate.update(SQL_UPDATE_WAY_BBOX, wayId);
 		}
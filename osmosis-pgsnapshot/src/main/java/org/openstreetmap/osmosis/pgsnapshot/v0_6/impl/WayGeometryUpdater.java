@@ -0,0 +1,189 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.v0_6.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * Recomputes the bbox and linestring columns of ways in bulk. Ways are
+ * registered as they are modified, either directly or via a change to one of
+ * their nodes, and the geometries of all registered ways are rebuilt with a
+ * small number of set-based statements when {@link #update()} is called. A way
+ * affected by several changes is only rebuilt once.
+ *
+ * @author Brett Henderson
+ */
+public class WayGeometryUpdater {
+
+	private static final Logger LOG = Logger.getLogger(WayGeometryUpdater.class.getName());
+
+	/**
+	 * The maximum number of identifiers passed to a single statement.
+	 */
+	private static final int BATCH_SIZE = 10000;
+
+	/**
+	 * The number of pending identifiers at which an update is triggered
+	 * automatically to limit memory usage.
+	 */
+	private static final int MAX_PENDING_IDS = 1000000;
+
+	private static final String SQL_SELECT_NODE_WAYS =
+		"SELECT DISTINCT way_id FROM way_nodes WHERE node_id = ANY(?)";
+
+	/**
+	 * Rebuilds the bbox of the ways aliased as w selected by an appended WHERE
+	 * clause.
+	 */
+	static final String SQL_UPDATE_WAY_BBOX_PREFIX =
+		"UPDATE ways w SET bbox = ("
+		+ " SELECT ST_Envelope(ST_Collect(n.geom))"
+		+ " FROM nodes n INNER JOIN way_nodes wn ON wn.node_id = n.id"
+		+ " WHERE wn.way_id = w.id"
+		+ " )";
+
+	/**
+	 * Rebuilds the linestring of the ways aliased as w selected by an appended
+	 * WHERE clause.
+	 */
+	static final String SQL_UPDATE_WAY_LINESTRING_PREFIX =
+		"UPDATE ways w SET linestring = ("
+		+ " SELECT ST_MakeLine(c.geom) AS way_line FROM ("
+		+ " SELECT n.geom AS geom FROM nodes n INNER JOIN way_nodes wn ON n.id = wn.node_id"
+		+ " WHERE (wn.way_id = w.id) ORDER BY wn.sequence_id"
+		+ " ) c"
+		+ " )";
+
+	private static final String SQL_UPDATE_WAY_BBOX = SQL_UPDATE_WAY_BBOX_PREFIX + " WHERE w.id = ANY(?)";
+	private static final String SQL_UPDATE_WAY_LINESTRING = SQL_UPDATE_WAY_LINESTRING_PREFIX + " WHERE w.id = ANY(?)";
+
+
+	private JdbcTemplate jdbcTemplate;
+	private DatabaseCapabilityChecker capabilityChecker;
+	private Set<Long> wayIds;
+	private Set<Long> nodeIds;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param dbCtx
+	 *            The database context to use for accessing the database.
+	 */
+	public WayGeometryUpdater(DatabaseContext dbCtx) {
+		jdbcTemplate = dbCtx.getJdbcTemplate();
+		capabilityChecker = new DatabaseCapabilityChecker(dbCtx);
+
+		wayIds = new HashSet<Long>();
+		nodeIds = new HashSet<Long>();
+	}
+
+
+	/**
+	 * Indicates if the database contains any way geometry columns requiring
+	 * maintenance.
+	 *
+	 * @return True if way geometries are stored.
+	 */
+	private boolean isGeometrySupported() {
+		return capabilityChecker.isWayBboxSupported() || capabilityChecker.isWayLinestringSupported();
+	}
+
+
+	private void checkPendingSize() {
+		if (wayIds.size() + nodeIds.size() >= MAX_PENDING_IDS) {
+			update();
+		}
+	}
+
+
+	/**
+	 * Registers a way whose geometry must be rebuilt.
+	 *
+	 * @param wayId
+	 *            The way identifier.
+	 */
+	public void addWay(long wayId) {
+		if (isGeometrySupported()) {
+			wayIds.add(wayId);
+			checkPendingSize();
+		}
+	}
+
+
+	/**
+	 * Registers a node whose location has changed. The geometries of all ways
+	 * using the node will be rebuilt.
+	 *
+	 * @param nodeId
+	 *            The node identifier.
+	 */
+	public void addNode(long nodeId) {
+		if (isGeometrySupported()) {
+			nodeIds.add(nodeId);
+			checkPendingSize();
+		}
+	}
+
+
+	private static long[] toSortedArray(Set<Long> ids) {
+		long[] result;
+		int i;
+
+		result = new long[ids.size()];
+		i = 0;
+		for (Long id : ids) {
+			result[i++] = id;
+		}
+		Arrays.sort(result);
+
+		return result;
+	}
+
+
+	/**
+	 * Rebuilds the geometries of all registered ways, then clears the
+	 * registrations. This must be called once all changes have been written
+	 * so that the latest way nodes and node locations are used.
+	 */
+	public void update() {
+		long[] ids;
+
+		if (wayIds.isEmpty() && nodeIds.isEmpty()) {
+			return;
+		}
+
+		// Resolve the ways dependent on the modified nodes.
+		ids = toSortedArray(nodeIds);
+		nodeIds.clear();
+		for (int offset = 0; offset < ids.length; offset += BATCH_SIZE) {
+			long[] batch;
+
+			batch = Arrays.copyOfRange(ids, offset, Math.min(offset + BATCH_SIZE, ids.length));
+			wayIds.addAll(jdbcTemplate.queryForList(SQL_SELECT_NODE_WAYS, Long.class, new WayNodesArray(batch)));
+		}
+
+		LOG.finer("Updating the geometries of " + wayIds.size() + " ways.");
+
+		ids = toSortedArray(wayIds);
+		wayIds.clear();
+		for (int offset = 0; offset < ids.length; offset += BATCH_SIZE) {
+			WayNodesArray batch;
+
+			batch = new WayNodesArray(Arrays.copyOfRange(ids, offset, Math.min(offset + BATCH_SIZE, ids.length)));
+
+			if (capabilityChecker.isWayBboxSupported()) {
+				jdbcTemplate.update(SQL_UPDATE_WAY_BBOX, batch);
+			}
+			if (capabilityChecker.isWayLinestringSupported()) {
+				jdbcTemplate.update(SQL_UPDATE_WAY_LINESTRING, batch);
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.hstore.PGHStore;
+
+
+/**
+ * Tests for the binary COPY file writer.
+ * 
+ * @author Brett Henderson
+ */
+public class BinaryCopyFileWriterTest {
+	
+	private DataInputStream readHeader(ByteArrayOutputStream outStream) throws IOException {
+		DataInputStream inStream;
+		byte[] signature;
+		
+		inStream = new DataInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+		
+		signature = new byte[11];
+		inStream.readFully(signature);
+		Assert.assertArrayEquals("Incorrect signature.",
+				new byte[] {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0}, signature);
+		Assert.assertEquals("Incorrect flags.", 0, inStream.readInt());
+		Assert.assertEquals("Incorrect header extension length.", 0, inStream.readInt());
+		
+		return inStream;
+	}
+	
+	
+	/**
+	 * Verifies that an empty file contains only the header and trailer.
+	 * 
+	 * @throws IOException
+	 *             if the output cannot be read.
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream outStream;
+		BinaryCopyFileWriter writer;
+		DataInputStream inStream;
+		
+		outStream = new ByteArrayOutputStream();
+		writer = new BinaryCopyFileWriter(outStream);
+		writer.complete();
+		writer.close();
+		
+		inStream = readHeader(outStream);
+		Assert.assertEquals("Incorrect trailer.", -1, inStream.readShort());
+		Assert.assertEquals("Unexpected trailing data.", -1, inStream.read());
+	}
+	
+	
+	/**
+	 * Verifies the encoding of each supported field type.
+	 * 
+	 * @throws IOException
+	 *             if the output cannot be read.
+	 */
+	@Test
+	public void testFieldTypes() throws IOException {
+		ByteArrayOutputStream outStream;
+		BinaryCopyFileWriter writer;
+		DataInputStream inStream;
+		PGHStore tags;
+		Date timestamp;
+		byte[] buffer;
+		
+		timestamp = new Date(946684800000L - TimeZone.getDefault().getOffset(946684800000L) + 5500);
+		tags = new PGHStore();
+		tags.put("highway", "primary");
+		
+		outStream = new ByteArrayOutputStream();
+		writer = new BinaryCopyFileWriter(outStream);
+		writer.writeField(7);
+		writer.writeField(123456789012L);
+		writer.writeField("a\tb");
+		writer.writeField((String) null);
+		writer.writeField(timestamp);
+		writer.writeField(tags);
+		writer.writeField(Arrays.asList(3L, 4L));
+		writer.writeField(Collections.<Long>emptyList());
+		writer.endRecord();
+		writer.complete();
+		writer.close();
+		
+		inStream = readHeader(outStream);
+		Assert.assertEquals("Incorrect field count.", 8, inStream.readShort());
+		
+		// int4
+		Assert.assertEquals(4, inStream.readInt());
+		Assert.assertEquals(7, inStream.readInt());
+		
+		// int8
+		Assert.assertEquals(8, inStream.readInt());
+		Assert.assertEquals(123456789012L, inStream.readLong());
+		
+		// text, no escaping is applied
+		Assert.assertEquals(3, inStream.readInt());
+		buffer = new byte[3];
+		inStream.readFully(buffer);
+		Assert.assertEquals("a\tb", new String(buffer, "UTF-8"));
+		
+		// null
+		Assert.assertEquals(-1, inStream.readInt());
+		
+		// timestamp, microseconds since 2000-01-01 truncated to whole seconds
+		Assert.assertEquals(8, inStream.readInt());
+		Assert.assertEquals(5000000L, inStream.readLong());
+		
+		// hstore
+		Assert.assertEquals(4 + 4 + 7 + 4 + 7, inStream.readInt());
+		Assert.assertEquals(1, inStream.readInt());
+		Assert.assertEquals(7, inStream.readInt());
+		buffer = new byte[7];
+		inStream.readFully(buffer);
+		Assert.assertEquals("highway", new String(buffer, "UTF-8"));
+		Assert.assertEquals(7, inStream.readInt());
+		inStream.readFully(buffer);
+		Assert.assertEquals("primary", new String(buffer, "UTF-8"));
+		
+		// int8[]
+		Assert.assertEquals(20 + 2 * 12, inStream.readInt());
+		Assert.assertEquals(1, inStream.readInt());
+		Assert.assertEquals(0, inStream.readInt());
+		Assert.assertEquals(20, inStream.readInt());
+		Assert.assertEquals(2, inStream.readInt());
+		Assert.assertEquals(1, inStream.readInt());
+		Assert.assertEquals(8, inStream.readInt());
+		Assert.assertEquals(3L, inStream.readLong());
+		Assert.assertEquals(8, inStream.readInt());
+		Assert.assertEquals(4L, inStream.readLong());
+		
+		// empty int8[]
+		Assert.assertEquals(12, inStream.readInt());
+		Assert.assertEquals(0, inStream.readInt());
+		Assert.assertEquals(0, inStream.readInt());
+		Assert.assertEquals(20, inStream.readInt());
+		
+		Assert.assertEquals("Incorrect trailer.", -1, inStream.readShort());
+		Assert.assertEquals("Unexpected trailing data.", -1, inStream.read());
+	}
+}
@@ -0,0 +1,74 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.pgsnapshot.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.hstore.PGHStore;
+
+
+/**
+ * Tests for the text COPY file writer.
+ *
+ * @author Brett Henderson
+ */
+public class CopyFileWriterTest {
+
+	private String write(Object... fields) {
+		ByteArrayOutputStream outStream;
+		CopyFileWriter writer;
+
+		outStream = new ByteArrayOutputStream();
+		writer = new CopyFileWriter(outStream);
+		for (Object field : fields) {
+			if (field instanceof PGHStore) {
+				writer.writeField((PGHStore) field);
+			} else {
+				writer.writeField((String) field);
+			}
+		}
+		writer.endRecord();
+		writer.complete();
+		writer.close();
+
+		return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Verifies that special characters are escaped wherever they appear in a
+	 * value, and that the text around them is preserved.
+	 */
+	@Test
+	public void testEscaping() {
+		Assert.assertEquals("Incorrect plain value.", "plain value\n", write("plain value"));
+		Assert.assertEquals("Incorrect escaped value.", "\\\\start\\tmid\\r\\nend\\v\n",
+				write("\\start\tmid\r\nend\u000b"));
+		Assert.assertEquals("Incorrect control characters.", "a\\bb\\fc\n", write("a\bb\fc"));
+		Assert.assertEquals("Incorrect empty and null values.", "\t\\N\n", write("", null));
+	}
+
+
+	/**
+	 * Verifies that hstore values are escaped in the same way as strings,
+	 * including values longer than the initial run buffer.
+	 */
+	@Test
+	public void testHStoreEscaping() {
+		PGHStore hstore;
+		StringBuilder longValue;
+
+		hstore = new PGHStore(Collections.singletonMap("name", "a\tb\\c"));
+		Assert.assertEquals("Incorrect hstore value.", "\"name\"=>\"a\\tb\\\\\\\\c\"\n", write(hstore));
+
+		longValue = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			longValue.append((char) ('a' + i % 26));
+		}
+		hstore = new PGHStore(Collections.singletonMap("note", longValue.toString()));
+		Assert.assertEquals("Incorrect long hstore value.", "\"note\"=>\"" + longValue + "\"\n", write(hstore));
+	}
+}
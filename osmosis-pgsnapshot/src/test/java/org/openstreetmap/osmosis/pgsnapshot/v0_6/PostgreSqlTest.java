@@ -3,10 +3,26 @@ package org.openstreetmap.osmosis.pgsnapshot.v0_6;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.openstreetmap.osmosis.core.Osmosis;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.database.AuthenticationPropertiesLoader;
+import org.openstreetmap.osmosis.core.database.DatabaseConstants;
+import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
+import org.openstreetmap.osmosis.core.database.DatabasePreferences;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.pgsnapshot.common.DatabaseContext;
+import org.openstreetmap.osmosis.pgsnapshot.v0_6.impl.BulkChangeWriter;
 import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 
 /**
@@ -30,6 +46,48 @@ public class PostgreSqlTest extends AbstractDataTest {
 	 */
 	@Test
 	public void testLoadAndDump() throws IOException {
+		testLoadAndDump(false, false, 1);
+	}
+	
+	
+	/**
+	 * As per testLoadAndDump but streaming data directly into the database.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testLoadAndDumpDirect() throws IOException {
+		testLoadAndDump(true, false, 1);
+	}
+	
+	
+	/**
+	 * As per testLoadAndDump but using the binary COPY format.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testLoadAndDumpBinary() throws IOException {
+		testLoadAndDump(false, true, 1);
+	}
+	
+	
+	/**
+	 * As per testLoadAndDump but building indexes on multiple connections.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testLoadAndDumpParallelPostLoad() throws IOException {
+		testLoadAndDump(false, false, 3);
+	}
+	
+	
+	private void testLoadAndDump(boolean directLoad, boolean binaryCopy, int postLoadConnections)
+			throws IOException {
 		File authFile;
 		File inputFile;
 		File outputFile;
@@ -55,6 +113,9 @@ public class PostgreSqlTest extends AbstractDataTest {
 				"--read-xml-0.6",
 				inputFile.getPath(),
 				"--write-pgsql-0.6",
+				"directLoad=" + (directLoad ? "yes" : "no"),
+				"binaryCopy=" + (binaryCopy ? "yes" : "no"),
+				"postLoadConnections=" + postLoadConnections,
 				"authFile=" + authFile.getPath()
 			}
 		);
@@ -77,6 +138,81 @@ public class PostgreSqlTest extends AbstractDataTest {
 	}
 	
 	
+	/**
+	 * A test loading an osm file into a pgsql database, then dumping it both
+	 * serially and with parallel reads and verifying that the dumps are
+	 * identical.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testDumpParallelReads() throws IOException {
+		File authFile;
+		File inputFile;
+		File serialOutputFile;
+		File parallelOutputFile;
+		
+		// Generate input files.
+		authFile = getAuthFile("v0_6/pgsql-authfile.txt");
+		inputFile = dataUtils.createDataFile("v0_6/db-snapshot.osm");
+		serialOutputFile = dataUtils.newFile();
+		parallelOutputFile = dataUtils.newFile();
+		
+		// Remove all existing data from the database.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--truncate-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Load the database with a dataset.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-0.6",
+				inputFile.getPath(),
+				"--write-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Dump the database to an osm file reading all types on one connection.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-pgsql-0.6",
+				"authFile=" + authFile.getPath(),
+				"parallelReads=no",
+				"--dataset-dump-0.6",
+				"--tag-sort-0.6",
+				"--write-xml-0.6",
+				serialOutputFile.getPath()
+			}
+		);
+		
+		// Dump the database to an osm file reading each type on its own connection.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-pgsql-0.6",
+				"authFile=" + authFile.getPath(),
+				"parallelReads=yes",
+				"--dataset-dump-0.6",
+				"--tag-sort-0.6",
+				"--write-xml-0.6",
+				parallelOutputFile.getPath()
+			}
+		);
+		
+		// Validate that both dumps match each other and the input file.
+		dataUtils.compareFiles(serialOutputFile, parallelOutputFile);
+		dataUtils.compareFiles(inputFile, parallelOutputFile);
+	}
+	
+	
 	/**
 	 * A test loading an osm file into a pgsql database, then applying a
 	 * changeset, then dumping it again and verifying the output is as expected.
@@ -86,6 +222,36 @@ public class PostgreSqlTest extends AbstractDataTest {
 	 */
 	@Test
 	public void testChangeset() throws IOException {
+		testChangeset(false, BulkChangeWriter.DEFAULT_BATCH_SIZE);
+	}
+	
+	
+	/**
+	 * As per testChangeset but applying the changeset in bulk mode.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testChangesetBulk() throws IOException {
+		testChangeset(true, BulkChangeWriter.DEFAULT_BATCH_SIZE);
+	}
+	
+	
+	/**
+	 * As per testChangesetBulk but splitting the changeset into many small
+	 * batches.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testChangesetBulkSmallBatches() throws IOException {
+		testChangeset(true, 2);
+	}
+	
+	
+	private void testChangeset(boolean bulkMode, int bulkBatchSize) throws IOException {
 		File authFile;
 		File snapshotFile;
 		File changesetFile;
@@ -127,6 +293,8 @@ public class PostgreSqlTest extends AbstractDataTest {
 				changesetFile.getPath(),
 				"--write-pgsql-change-0.6",
 				"keepInvalidWays=false", 
+				"bulkMode=" + (bulkMode ? "yes" : "no"),
+				"bulkBatchSize=" + bulkBatchSize,
 				"authFile=" + authFile.getPath()
 			}
 		);
@@ -149,6 +317,199 @@ public class PostgreSqlTest extends AbstractDataTest {
 	}
 
 
+	/**
+	 * A test moving a node shared by several ways and verifying that the bbox
+	 * and linestring of every way using it are rebuilt.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testChangesetWayGeometry() throws IOException {
+		testChangesetWayGeometry(false);
+	}
+	
+	
+	/**
+	 * As per testChangesetWayGeometry but applying the changeset in bulk mode.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testChangesetWayGeometryBulk() throws IOException {
+		testChangesetWayGeometry(true);
+	}
+	
+	
+	private void testChangesetWayGeometry(boolean bulkMode) throws IOException {
+		File authFile;
+		File snapshotFile;
+		File changesetFile;
+		
+		// Generate input files.
+		authFile = getAuthFile("v0_6/pgsql-authfile.txt");
+		snapshotFile = dataUtils.createDataFile("v0_6/db-geometry-snapshot.osm");
+		changesetFile = dataUtils.createDataFile("v0_6/db-geometry-changeset.osc");
+		
+		// Remove all existing data from the database.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--truncate-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Load the database with the snapshot file.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-0.6",
+				snapshotFile.getPath(),
+				"--write-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Apply the changeset file moving node 3 to the database.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-change-0.6",
+				changesetFile.getPath(),
+				"--write-pgsql-change-0.6",
+				"bulkMode=" + (bulkMode ? "yes" : "no"),
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Ways 10, 11 and 12 use the moved node, way 13 doesn't.
+		try (DatabaseContext dbCtx = createDatabaseContext(authFile)) {
+			JdbcTemplate jdbcTemplate = dbCtx.getJdbcTemplate();
+			
+			assertWayGeometry(jdbcTemplate, 10, -1, 0, 1, 5, "LINESTRING(0 0,1 1,-1 5)");
+			assertWayGeometry(jdbcTemplate, 11, -1, 3, 0, 5, "LINESTRING(-1 5,0 3)");
+			assertWayGeometry(jdbcTemplate, 12, -1, 1, 1, 5, "LINESTRING(1 1,-1 5,0 3)");
+			assertWayGeometry(jdbcTemplate, 13, 0, 0, 1, 1, "LINESTRING(0 0,1 1)");
+		}
+	}
+	
+	
+	/**
+	 * A test applying several sets of changes in bulk mode through a single
+	 * change writer, as a long running replication task does. Each set is
+	 * committed in its own transaction.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testChangesetBulkRepeated() throws IOException {
+		File authFile;
+		File snapshotFile;
+		PostgreSqlChangeWriter changeWriter;
+		
+		// Generate input files.
+		authFile = getAuthFile("v0_6/pgsql-authfile.txt");
+		snapshotFile = dataUtils.createDataFile("v0_6/db-geometry-snapshot.osm");
+		
+		// Remove all existing data from the database.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--truncate-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Load the database with the snapshot file.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-0.6",
+				snapshotFile.getPath(),
+				"--write-pgsql-0.6",
+				"authFile=" + authFile.getPath()
+			}
+		);
+		
+		// Move nodes 3 and 4 in separate transactions, renaming their user in the second.
+		changeWriter = new PostgreSqlChangeWriter(loadCredentials(authFile),
+				new DatabasePreferences(DatabaseConstants.TASK_DEFAULT_VALIDATE_SCHEMA_VERSION,
+						DatabaseConstants.TASK_ALLOW_INCORRECT_SCHEMA_VERSION),
+				false, false, true);
+		try {
+			changeWriter.process(modifyNode(3, 5, -1, "user10"));
+			changeWriter.complete();
+			
+			changeWriter.process(modifyNode(4, 6, 2, "user10renamed"));
+			changeWriter.complete();
+			
+		} finally {
+			changeWriter.close();
+		}
+		
+		try (DatabaseContext dbCtx = createDatabaseContext(authFile)) {
+			JdbcTemplate jdbcTemplate = dbCtx.getJdbcTemplate();
+			
+			assertWayGeometry(jdbcTemplate, 11, -1, 5, 2, 6, "LINESTRING(-1 5,2 6)");
+			assertWayGeometry(jdbcTemplate, 12, -1, 1, 2, 6, "LINESTRING(1 1,-1 5,2 6)");
+			Assert.assertEquals("The user should be updated by the second set of changes.", "user10renamed",
+					jdbcTemplate.queryForObject("SELECT name FROM users WHERE id = 10", String.class));
+		}
+	}
+	
+	
+	private ChangeContainer modifyNode(long id, double latitude, double longitude, String userName) {
+		Node node;
+		
+		node = new Node(new CommonEntityData(id, 2, new Date(1199329445000L), new OsmUser(10, userName), 12),
+				latitude, longitude);
+		
+		return new ChangeContainer(new NodeContainer(node), ChangeAction.Modify);
+	}
+	
+	
+	private DatabaseLoginCredentials loadCredentials(File authFile) {
+		DatabaseLoginCredentials credentials;
+		
+		credentials = new DatabaseLoginCredentials(DatabaseConstants.TASK_DEFAULT_HOST,
+				DatabaseConstants.TASK_DEFAULT_DATABASE, DatabaseConstants.TASK_DEFAULT_USER,
+				DatabaseConstants.TASK_DEFAULT_PASSWORD, DatabaseConstants.TASK_DEFAULT_FORCE_UTF8,
+				DatabaseConstants.TASK_DEFAULT_PROFILE_SQL, DatabaseConstants.TASK_DEFAULT_DB_TYPE);
+		new AuthenticationPropertiesLoader(authFile).updateLoginCredentials(credentials);
+		
+		return credentials;
+	}
+	
+	
+	private DatabaseContext createDatabaseContext(File authFile) {
+		return new DatabaseContext(loadCredentials(authFile));
+	}
+	
+	
+	private void assertWayGeometry(JdbcTemplate jdbcTemplate, long wayId, double minX, double minY, double maxX,
+			double maxY, String linestring) {
+		Map<String, Object> row;
+		
+		row = jdbcTemplate.queryForMap(
+				"SELECT ST_XMin(bbox) AS min_x, ST_YMin(bbox) AS min_y, ST_XMax(bbox) AS max_x,"
+				+ " ST_YMax(bbox) AS max_y, ST_AsText(linestring) AS linestring FROM ways WHERE id = ?",
+				wayId);
+		
+		Assert.assertEquals("Incorrect bbox min x for way " + wayId + ".",
+				minX, ((Number) row.get("min_x")).doubleValue(), 0.0000001);
+		Assert.assertEquals("Incorrect bbox min y for way " + wayId + ".",
+				minY, ((Number) row.get("min_y")).doubleValue(), 0.0000001);
+		Assert.assertEquals("Incorrect bbox max x for way " + wayId + ".",
+				maxX, ((Number) row.get("max_x")).doubleValue(), 0.0000001);
+		Assert.assertEquals("Incorrect bbox max y for way " + wayId + ".",
+				maxY, ((Number) row.get("max_y")).doubleValue(), 0.0000001);
+		Assert.assertEquals("Incorrect linestring for way " + wayId + ".", linestring, row.get("linestring"));
+	}
+
+
 	/**
 	 * A test loading an osm file into a pgsql database, then making some modifications via the
 	 * dataset api, then dumping it again and verifying the output is as expected.
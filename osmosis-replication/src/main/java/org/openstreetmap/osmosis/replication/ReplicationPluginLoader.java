@@ -6,12 +6,15 @@ import java.util.Map;
 
 import org.openstreetmap.osmosis.core.pipeline.common.TaskManagerFactory;
 import org.openstreetmap.osmosis.core.plugin.PluginLoader;
+import org.openstreetmap.osmosis.replication.v0_6.BinaryChangeReaderFactory;
+import org.openstreetmap.osmosis.replication.v0_6.BinaryChangeWriterFactory;
 import org.openstreetmap.osmosis.replication.v0_6.IntervalDownloaderFactory;
 import org.openstreetmap.osmosis.replication.v0_6.IntervalDownloaderInitializerFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationDownloaderFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationDownloaderInitializerFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationFileMergerFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationFileMergerInitializerFactory;
+import org.openstreetmap.osmosis.replication.v0_6.ReplicationFileServerFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationLagReaderFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationToChangeWriterFactory;
 import org.openstreetmap.osmosis.replication.v0_6.ReplicationWriterFactory;
@@ -51,6 +54,12 @@ public class ReplicationPluginLoader implements PluginLoader {
 		factoryMap.put("wr", new ReplicationWriterFactory());
 		factoryMap.put("replication-to-change", new ReplicationToChangeWriterFactory());
 		factoryMap.put("rtc", new ReplicationToChangeWriterFactory());
+		factoryMap.put("read-bin-change", new BinaryChangeReaderFactory());
+		factoryMap.put("rbc", new BinaryChangeReaderFactory());
+		factoryMap.put("write-bin-change", new BinaryChangeWriterFactory());
+		factoryMap.put("wbc", new BinaryChangeWriterFactory());
+		factoryMap.put("serve-replication-files", new ReplicationFileServerFactory());
+		factoryMap.put("srf", new ReplicationFileServerFactory());
 		
 		factoryMap.put("read-change-interval-0.6", new IntervalDownloaderFactory());
 		factoryMap.put("read-change-interval-init-0.6", new IntervalDownloaderInitializerFactory());
@@ -61,6 +70,9 @@ public class ReplicationPluginLoader implements PluginLoader {
 		factoryMap.put("read-replication-lag-0.6", new ReplicationLagReaderFactory());
 		factoryMap.put("write-replication-0.6", new ReplicationWriterFactory());
 		factoryMap.put("replication-to-change-0.6", new ReplicationToChangeWriterFactory());
+		factoryMap.put("read-bin-change-0.6", new BinaryChangeReaderFactory());
+		factoryMap.put("write-bin-change-0.6", new BinaryChangeWriterFactory());
+		factoryMap.put("serve-replication-files-0.6", new ReplicationFileServerFactory());
 		
 		return factoryMap;
 	}
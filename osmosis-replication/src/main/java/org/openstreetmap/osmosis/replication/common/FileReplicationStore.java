@@ -3,10 +3,9 @@ package org.openstreetmap.osmosis.replication.common;
 
 import java.io.File;
 
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.core.util.PropertiesPersister;
-import org.openstreetmap.osmosis.xml.common.CompressionMethod;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
 
 
 /**
@@ -20,6 +19,7 @@ public class FileReplicationStore implements ReplicationStore {
 	private PropertiesPersister currentStatePersister;
 	private ReplicationFileSequenceFormatter sequenceFormatter;
 	private boolean saveCurrentState;
+	private ReplicationDataFormat dataFormat;
 
 
 	/**
@@ -33,9 +33,27 @@ public class FileReplicationStore implements ReplicationStore {
 	 *            sequenced state.
 	 */
 	public FileReplicationStore(File storeDirectory, boolean saveCurrentState) {
+		this(storeDirectory, saveCurrentState, ReplicationDataFormat.Xml);
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param storeDirectory
+	 *            The directory used to hold the contents of the store.
+	 * @param saveCurrentState
+	 *            If true, the current state will be updated by the
+	 *            {@link #saveState(ReplicationState)} operation as well as the
+	 *            sequenced state.
+	 * @param dataFormat
+	 *            The format to store change data in.
+	 */
+	public FileReplicationStore(File storeDirectory, boolean saveCurrentState, ReplicationDataFormat dataFormat) {
 		currentStatePersister = new PropertiesPersister(new File(storeDirectory, STATE_FILE));
 		sequenceFormatter = new ReplicationFileSequenceFormatter(storeDirectory);
 		this.saveCurrentState = saveCurrentState;
+		this.dataFormat = dataFormat;
 	}
 
 
@@ -55,9 +73,9 @@ public class FileReplicationStore implements ReplicationStore {
 
 
 	@Override
-	public XmlChangeReader getData(long sequence) {
-		File changeFile = sequenceFormatter.getFormattedName(sequence, ".osc.gz");
-		return new XmlChangeReader(changeFile, false, CompressionMethod.GZip);
+	public RunnableChangeSource getData(long sequence) {
+		File changeFile = sequenceFormatter.getFormattedName(sequence, dataFormat.getFileSuffix());
+		return dataFormat.createReader(changeFile, false);
 	}
 
 
@@ -73,8 +91,8 @@ public class FileReplicationStore implements ReplicationStore {
 
 
 	@Override
-	public XmlChangeWriter saveData(long sequence) {
-		File changeFile = sequenceFormatter.getFormattedName(sequence, ".osc.gz");
-		return new XmlChangeWriter(changeFile, CompressionMethod.GZip);
+	public ChangeSink saveData(long sequence) {
+		File changeFile = sequenceFormatter.getFormattedName(sequence, dataFormat.getFileSuffix());
+		return dataFormat.createWriter(changeFile);
 	}
 }
@@ -0,0 +1,134 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.common;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.replication.v0_6.BinaryChangeReader;
+import org.openstreetmap.osmosis.replication.v0_6.BinaryChangeWriter;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
+
+
+/**
+ * Defines the formats that replication data files may be stored in.
+ *
+ * @author Brett Henderson
+ */
+public enum ReplicationDataFormat {
+
+	/**
+	 * Gzip compressed OsmChange xml. This is the standard public format.
+	 */
+	Xml("xml", ".osc.gz"),
+
+	/**
+	 * The compact binary change format which is considerably cheaper to parse.
+	 */
+	Binary("binary", ".osc.bin");
+
+
+	private final String formatName;
+	private final String fileSuffix;
+
+
+	ReplicationDataFormat(String formatName, String fileSuffix) {
+		this.formatName = formatName;
+		this.fileSuffix = fileSuffix;
+	}
+
+
+	/**
+	 * Gets the format with the specified name.
+	 *
+	 * @param name
+	 *            The name of the format, one of xml or binary.
+	 * @return The format.
+	 */
+	public static ReplicationDataFormat forName(String name) {
+		for (ReplicationDataFormat format : values()) {
+			if (format.formatName.equalsIgnoreCase(name.trim())) {
+				return format;
+			}
+		}
+
+		throw new OsmosisRuntimeException(
+				"Replication data format " + name + " is not recognised, it must be xml or binary.");
+	}
+
+
+	/**
+	 * Gets the suffix appended to the sequence number to name data files.
+	 *
+	 * @return The file suffix.
+	 */
+	public String getFileSuffix() {
+		return fileSuffix;
+	}
+
+
+	/**
+	 * Indicates if the files are gzip compressed as a whole.
+	 *
+	 * @return True if the files are gzip compressed.
+	 */
+	public boolean isGzipped() {
+		return this == Xml;
+	}
+
+
+	/**
+	 * Creates a reader for a data file.
+	 *
+	 * @param file
+	 *            The file to be read.
+	 * @param enableDateParsing
+	 *            If false, xml timestamps are not parsed. Binary timestamps
+	 *            are always available.
+	 * @return The change reader.
+	 */
+	public RunnableChangeSource createReader(File file, boolean enableDateParsing) {
+		if (this == Binary) {
+			return new BinaryChangeReader(file);
+		} else {
+			return new XmlChangeReader(file, enableDateParsing, CompressionMethod.GZip);
+		}
+	}
+
+
+	/**
+	 * Creates a reader for data being received from a stream. Gzipped formats
+	 * must already have been decompressed.
+	 *
+	 * @param stream
+	 *            The stream to be read.
+	 * @return The change reader.
+	 */
+	public RunnableChangeSource createReader(InputStream stream) {
+		if (this == Binary) {
+			return new BinaryChangeReader(stream);
+		} else {
+			return new XmlChangeReader(stream, true, CompressionMethod.None);
+		}
+	}
+
+
+	/**
+	 * Creates a writer for a data file.
+	 *
+	 * @param file
+	 *            The file to be written.
+	 * @return The change writer.
+	 */
+	public ChangeSink createWriter(File file) {
+		if (this == Binary) {
+			return new BinaryChangeWriter(file, true);
+		} else {
+			return new XmlChangeWriter(file, CompressionMethod.GZip);
+		}
+	}
+}
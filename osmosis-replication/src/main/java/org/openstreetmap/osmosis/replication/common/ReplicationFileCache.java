@@ -0,0 +1,408 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.core.util.FileBasedLock;
+
+
+/**
+ * An on-disk cache of replication files which may be shared by multiple
+ * replication consumers on the same host, including consumers running in
+ * separate processes. Only files that never change once published, such as
+ * sequence numbered change and state files, may be cached. Entries are
+ * addressed by a hash of their source URL, which includes both the base URL
+ * and the sequence number. All access is serialised by a lock file within the
+ * cache directory, but downloads occur outside the lock so consumers only
+ * wait for each other briefly.
+ * <p>
+ * Entries are evicted if they haven't been used within the maximum age, and
+ * the least recently used entries are evicted when the cache exceeds its
+ * maximum size.
+ *
+ * @author Brett Henderson
+ */
+public class ReplicationFileCache implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationFileCache.class.getName());
+	private static final String LOCK_FILE = "cache.lock";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long LOCK_TIMEOUT = 60000;
+	private static final long EVICTION_INTERVAL = 300000;
+
+	/**
+	 * Threads within a process must not request overlapping file locks so they
+	 * are serialised before the file lock is obtained.
+	 */
+	private static final Object PROCESS_LOCK = new Object();
+
+
+	private File directory;
+	private long maxSize;
+	private long maxAge;
+	private FileBasedLock fileLock;
+	private long lastEvictionTime;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param directory
+	 *            The directory to store cached files in. It is created if it
+	 *            doesn't exist.
+	 * @param maxSize
+	 *            The maximum total size of cached files in bytes, or 0 for no
+	 *            limit.
+	 * @param maxAge
+	 *            The time in milliseconds after which unused entries are
+	 *            evicted, or 0 for no limit.
+	 */
+	public ReplicationFileCache(File directory, long maxSize, long maxAge) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+
+		if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new OsmosisRuntimeException("Unable to create cache directory " + directory + ".");
+		}
+
+		fileLock = new FileBasedLock(new File(directory, LOCK_FILE));
+	}
+
+
+	/**
+	 * Determines the location of the cache entry for a URL.
+	 */
+	private File getEntryFile(URL url) {
+		MessageDigest digest;
+		StringBuilder key;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new OsmosisRuntimeException("The SHA-256 digest algorithm is not available.", e);
+		}
+
+		key = new StringBuilder();
+		for (byte b : digest.digest(url.toExternalForm().getBytes(StandardCharsets.UTF_8))) {
+			key.append(String.format("%02x", b));
+		}
+
+		// Entries are spread across sub-directories to keep directory sizes manageable.
+		return new File(new File(directory, key.substring(0, 2)), key.toString());
+	}
+
+
+	/**
+	 * Performs an action while holding exclusive access to the cache.
+	 */
+	private <T> T withLock(CacheAction<T> action) throws IOException {
+		synchronized (PROCESS_LOCK) {
+			fileLock.lock(LOCK_TIMEOUT);
+
+			try {
+				return action.perform();
+			} finally {
+				fileLock.unlock();
+			}
+		}
+	}
+
+
+	/**
+	 * Copies a cached file into a new temporary file. The caller is
+	 * responsible for releasing the file via {@link TempFileManager}.
+	 *
+	 * @param url
+	 *            The location the file was originally retrieved from.
+	 * @return The temporary file, or null if the file isn't cached.
+	 */
+	public File retrieve(URL url) {
+		final File entryFile;
+		InputStream entryStream;
+		File outputFile;
+
+		entryFile = getEntryFile(url);
+
+		try {
+			// Only the entry is opened within the lock. The open stream keeps the data readable
+			// if the entry is evicted or replaced while it is being copied.
+			entryStream = withLock(() -> {
+				if (!entryFile.isFile()) {
+					return null;
+				}
+
+				// Record the use of the entry so that it is evicted last.
+				entryFile.setLastModified(System.currentTimeMillis());
+
+				return Files.newInputStream(entryFile.toPath());
+			});
+
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to read " + url + " from the cache.", e);
+			return null;
+		}
+
+		if (entryStream == null) {
+			return null;
+		}
+
+		outputFile = null;
+		try (InputStream inputStream = entryStream) {
+			outputFile = TempFileManager.getInstance().createTempFile("change", null);
+			Files.copy(inputStream, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			// The file isn't written through the manager so charge its size explicitly.
+			TempFileManager.getInstance().reserve(outputFile, outputFile.length());
+
+			LOG.finer("Retrieved " + url + " from the cache.");
+
+			return outputFile;
+
+		} catch (IOException e) {
+			if (outputFile != null) {
+				TempFileManager.getInstance().release(outputFile);
+			}
+
+			LOG.log(Level.WARNING, "Unable to read " + url + " from the cache.", e);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Retrieves the content of a cached text file.
+	 *
+	 * @param url
+	 *            The location the file was originally retrieved from.
+	 * @return The file content, or null if the file isn't cached.
+	 */
+	public String retrieveText(URL url) {
+		final File entryFile;
+
+		entryFile = getEntryFile(url);
+
+		try {
+			return withLock(() -> {
+				if (!entryFile.isFile()) {
+					return null;
+				}
+
+				entryFile.setLastModified(System.currentTimeMillis());
+
+				return new String(Files.readAllBytes(entryFile.toPath()), StandardCharsets.UTF_8);
+			});
+
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to read " + url + " from the cache.", e);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Adds a copy of a file to the cache. Failures are logged but otherwise
+	 * ignored because the cache is only an optimisation.
+	 *
+	 * @param url
+	 *            The location the file was retrieved from.
+	 * @param file
+	 *            The file to be cached. It is not modified.
+	 */
+	public void store(URL url, File file) {
+		File entryFile;
+		File tempFile;
+
+		entryFile = getEntryFile(url);
+		tempFile = null;
+
+		try {
+			// Copy the data before obtaining the lock, the final move is quick.
+			tempFile = File.createTempFile("cache", TEMP_SUFFIX, directory);
+			Files.copy(file.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			commit(tempFile, entryFile);
+			tempFile = null;
+
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to add " + url + " to the cache.", e);
+		} finally {
+			if (tempFile != null) {
+				deleteFile(tempFile);
+			}
+		}
+	}
+
+
+	/**
+	 * Adds a text file to the cache. Failures are logged but otherwise ignored.
+	 *
+	 * @param url
+	 *            The location the file was retrieved from.
+	 * @param content
+	 *            The file content.
+	 */
+	public void storeText(URL url, String content) {
+		File entryFile;
+		File tempFile;
+
+		entryFile = getEntryFile(url);
+		tempFile = null;
+
+		try {
+			tempFile = File.createTempFile("cache", TEMP_SUFFIX, directory);
+			Files.write(tempFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+			commit(tempFile, entryFile);
+			tempFile = null;
+
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to add " + url + " to the cache.", e);
+		} finally {
+			if (tempFile != null) {
+				deleteFile(tempFile);
+			}
+		}
+	}
+
+
+	/**
+	 * Moves a fully written temporary file into place and evicts old entries
+	 * if they haven't been checked recently.
+	 */
+	private void commit(final File tempFile, final File entryFile) throws IOException {
+		withLock(() -> {
+			File parent;
+
+			parent = entryFile.getParentFile();
+			if (!parent.exists() && !parent.mkdirs()) {
+				throw new IOException("Unable to create cache directory " + parent + ".");
+			}
+
+			Files.move(tempFile.toPath(), entryFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			if (System.currentTimeMillis() - lastEvictionTime >= EVICTION_INTERVAL) {
+				evict();
+				lastEvictionTime = System.currentTimeMillis();
+			}
+
+			return null;
+		});
+	}
+
+
+	/**
+	 * Removes expired entries, then the least recently used entries until the
+	 * cache is within its size limit. This must be called while holding the
+	 * lock.
+	 */
+	private void evict() {
+		List<File> entries;
+		long now;
+		long totalSize;
+		int evictedCount;
+		File[] subDirectories;
+		File[] tempFiles;
+
+		now = System.currentTimeMillis();
+		entries = new ArrayList<File>();
+		totalSize = 0;
+		evictedCount = 0;
+
+		subDirectories = directory.listFiles(File::isDirectory);
+		if (subDirectories == null) {
+			return;
+		}
+
+		for (File subDirectory : subDirectories) {
+			File[] files;
+
+			files = subDirectory.listFiles();
+			if (files == null) {
+				continue;
+			}
+
+			for (File file : files) {
+				if (maxAge > 0 && now - file.lastModified() > maxAge) {
+					deleteFile(file);
+					evictedCount++;
+				} else {
+					entries.add(file);
+					totalSize += file.length();
+				}
+			}
+		}
+
+		if (maxSize > 0 && totalSize > maxSize) {
+			entries.sort(Comparator.comparingLong(File::lastModified));
+
+			for (File file : entries) {
+				if (totalSize <= maxSize) {
+					break;
+				}
+
+				totalSize -= file.length();
+				deleteFile(file);
+				evictedCount++;
+			}
+		}
+
+		// Remove temporary files abandoned by consumers that failed while adding entries.
+		tempFiles = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+		if (tempFiles != null) {
+			for (File file : tempFiles) {
+				if (now - file.lastModified() > EVICTION_INTERVAL) {
+					deleteFile(file);
+				}
+			}
+		}
+
+		if (evictedCount > 0) {
+			LOG.fine("Evicted " + evictedCount + " files from the replication cache.");
+		}
+	}
+
+
+	private static void deleteFile(File file) {
+		if (!file.delete()) {
+			LOG.warning("Unable to delete file " + file.getName());
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		fileLock.close();
+	}
+
+
+	/**
+	 * An operation performed while the cache is locked.
+	 *
+	 * @param <T>
+	 *            The type of result.
+	 */
+	private interface CacheAction<T> {
+		T perform() throws IOException;
+	}
+}
@@ -0,0 +1,726 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.common;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisConstants;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+
+
+/**
+ * Performs HTTP requests against a server hosting replication data. All
+ * requests share a single underlying client so that connections are kept alive
+ * between files. Failed requests are retried with a jittered exponential
+ * backoff, and frequently polled files such as the latest server state can be
+ * retrieved with conditional requests. A request only times out if no data
+ * is received from the server for the request timeout, so large files over
+ * slow connections are not interrupted while they are still arriving.
+ * Instances may be used by several threads concurrently.
+ *
+ * @author Brett Henderson
+ */
+public class ReplicationHttpClient {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationHttpClient.class.getName());
+
+	/**
+	 * The default time in seconds to wait for a connection to be established.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30;
+	/**
+	 * The default time in seconds to wait for data from the server before a
+	 * request is abandoned.
+	 */
+	public static final int DEFAULT_REQUEST_TIMEOUT = 60;
+	/**
+	 * The default number of times a failed request is retried.
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	private static final long INITIAL_RETRY_DELAY = 1000;
+	private static final long MAXIMUM_RETRY_DELAY = 60000;
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final int HTTP_SERVER_ERROR = 500;
+
+
+	private HttpClient httpClient;
+	private Duration requestTimeout;
+	private int maxRetries;
+	private Map<URI, CachedResponse> conditionalCache;
+	private AtomicLong requestCount;
+	private AtomicLong notModifiedCount;
+	private AtomicLong retryCount;
+	private AtomicLong byteCount;
+	private AtomicLong requestNanos;
+
+
+	/**
+	 * Creates a new instance with default timeouts and retries.
+	 */
+	public ReplicationHttpClient() {
+		this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_MAX_RETRIES);
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param connectTimeout
+	 *            The time in seconds to wait for a connection to be
+	 *            established.
+	 * @param requestTimeout
+	 *            The time in seconds to wait for data from the server, either
+	 *            for the response to begin or between parts of its body.
+	 * @param maxRetries
+	 *            The number of times a failed request is retried before giving
+	 *            up.
+	 */
+	public ReplicationHttpClient(int connectTimeout, int requestTimeout, int maxRetries) {
+		HttpClient.Builder builder;
+
+		if (connectTimeout < 1 || requestTimeout < 1) {
+			throw new OsmosisRuntimeException("HTTP timeouts must be at least 1 second.");
+		}
+		if (maxRetries < 0) {
+			throw new OsmosisRuntimeException("The maximum retry count cannot be negative, "
+					+ maxRetries + " was specified.");
+		}
+
+		this.requestTimeout = Duration.ofSeconds(requestTimeout);
+		this.maxRetries = maxRetries;
+
+		builder = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofSeconds(connectTimeout))
+				.followRedirects(HttpClient.Redirect.NORMAL);
+
+		// Honour the standard proxy system properties as URLConnection does.
+		if (ProxySelector.getDefault() != null) {
+			builder.proxy(ProxySelector.getDefault());
+		}
+
+		httpClient = builder.build();
+
+		conditionalCache = new ConcurrentHashMap<URI, CachedResponse>();
+		requestCount = new AtomicLong();
+		notModifiedCount = new AtomicLong();
+		retryCount = new AtomicLong();
+		byteCount = new AtomicLong();
+		requestNanos = new AtomicLong();
+	}
+
+
+	private URI toUri(URL url) {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			throw new OsmosisRuntimeException("Unable to convert URL " + url + " into a URI.", e);
+		}
+	}
+
+
+	private HttpRequest.Builder newRequest(URI uri) {
+		return HttpRequest.newBuilder(uri)
+				.timeout(requestTimeout)
+				.header("User-Agent", "Osmosis/" + OsmosisConstants.VERSION)
+				.GET();
+	}
+
+
+	private boolean isRetryable(int statusCode) {
+		return statusCode >= HTTP_SERVER_ERROR || statusCode == HTTP_TOO_MANY_REQUESTS;
+	}
+
+
+	private void waitBeforeRetry(URI uri, int attempt, String failure) {
+		long delay;
+
+		// Double the delay for each attempt and pick a random point in its upper
+		// half so that concurrent clients don't retry in lock step.
+		delay = Math.min(MAXIMUM_RETRY_DELAY, INITIAL_RETRY_DELAY << Math.min(attempt, 16));
+		delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+		LOG.warning("Request for " + uri + " failed (" + failure + "), retrying in " + delay + "ms.");
+		retryCount.incrementAndGet();
+
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OsmosisRuntimeException("Interrupted while waiting to retry " + uri + ".", e);
+		}
+	}
+
+
+	/**
+	 * Sends a request, retrying on connection failures, timeouts and server
+	 * errors. The request times out if no part of the response is received
+	 * within the request timeout so that a stalled transfer cannot block
+	 * indefinitely, but a slow transfer which is still progressing can take as
+	 * long as it needs. Streamed bodies apply the same timeout as they are
+	 * read.
+	 */
+	private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+		for (int attempt = 0;; attempt++) {
+			CompletableFuture<HttpResponse<T>> future;
+			AtomicLong lastActivity;
+			long startTime;
+			String failure;
+			Throwable cause;
+
+			startTime = System.nanoTime();
+			lastActivity = new AtomicLong(startTime);
+			future = httpClient.sendAsync(request, responseInfo -> {
+				lastActivity.set(System.nanoTime());
+				return new ActivityTrackingSubscriber<T>(bodyHandler.apply(responseInfo), lastActivity);
+			});
+
+			try {
+				HttpResponse<T> response;
+
+				response = awaitResponse(future, lastActivity);
+
+				requestCount.incrementAndGet();
+				requestNanos.addAndGet(System.nanoTime() - startTime);
+
+				if (!isRetryable(response.statusCode()) || attempt >= maxRetries) {
+					return response;
+				}
+				failure = "HTTP status " + response.statusCode();
+				cause = null;
+				discard(response);
+
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				failure = "no data received for " + requestTimeout.getSeconds() + " seconds";
+				cause = e;
+
+			} catch (ExecutionException e) {
+				failure = String.valueOf(e.getCause());
+				cause = e.getCause();
+
+			} catch (InterruptedException e) {
+				future.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new OsmosisRuntimeException("Interrupted while requesting " + request.uri() + ".", e);
+			}
+
+			if (attempt >= maxRetries) {
+				throw new OsmosisRuntimeException("Unable to retrieve " + request.uri() + ", " + failure + ".", cause);
+			}
+
+			waitBeforeRetry(request.uri(), attempt, failure);
+		}
+	}
+
+
+	/**
+	 * Waits for a response to complete, timing out once no data has been
+	 * received for the request timeout.
+	 */
+	private <T> HttpResponse<T> awaitResponse(CompletableFuture<HttpResponse<T>> future, AtomicLong lastActivity)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		for (;;) {
+			long idleNanos;
+
+			idleNanos = System.nanoTime() - lastActivity.get();
+
+			try {
+				return future.get(requestTimeout.toNanos() - idleNanos, TimeUnit.NANOSECONDS);
+
+			} catch (TimeoutException e) {
+				// Keep waiting if more data arrived in the meantime.
+				if (System.nanoTime() - lastActivity.get() >= requestTimeout.toNanos()) {
+					throw e;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Releases the connection held by a streamed response that won't be read.
+	 */
+	private void discard(HttpResponse<?> response) {
+		if (response.body() instanceof InputStream) {
+			try {
+				((InputStream) response.body()).close();
+			} catch (IOException e) {
+				LOG.log(Level.FINER, "Unable to close the response from " + response.uri() + ".", e);
+			}
+		}
+	}
+
+
+	private void checkStatus(HttpResponse<?> response) {
+		if (response.statusCode() != HTTP_OK) {
+			discard(response);
+			throw new OsmosisRuntimeException(
+					"Unable to retrieve " + response.uri() + ", the server returned HTTP status "
+					+ response.statusCode() + ".");
+		}
+	}
+
+
+	/**
+	 * Retrieves a small text file from the server.
+	 *
+	 * @param url
+	 *            The location of the file.
+	 * @param conditional
+	 *            If true, the validators of the previous response for this url
+	 *            are sent with the request and the previous content is reused
+	 *            if the server reports that it has not been modified. This is
+	 *            intended for files that are polled repeatedly.
+	 * @return The file content.
+	 */
+	public String getText(URL url, boolean conditional) {
+		URI uri;
+		HttpRequest.Builder requestBuilder;
+		CachedResponse cachedResponse;
+		HttpResponse<byte[]> response;
+		String content;
+
+		uri = toUri(url);
+		requestBuilder = newRequest(uri);
+
+		cachedResponse = null;
+		if (conditional) {
+			cachedResponse = conditionalCache.get(uri);
+
+			if (cachedResponse != null) {
+				if (cachedResponse.eTag != null) {
+					requestBuilder.header("If-None-Match", cachedResponse.eTag);
+				}
+				if (cachedResponse.lastModified != null) {
+					requestBuilder.header("If-Modified-Since", cachedResponse.lastModified);
+				}
+			}
+		}
+
+		response = send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+
+		if (cachedResponse != null && response.statusCode() == HTTP_NOT_MODIFIED) {
+			LOG.finer(uri + " has not been modified.");
+			notModifiedCount.incrementAndGet();
+
+			return cachedResponse.content;
+		}
+
+		checkStatus(response);
+
+		byteCount.addAndGet(response.body().length);
+		content = new String(response.body(), StandardCharsets.UTF_8);
+
+		if (conditional) {
+			String eTag;
+			String lastModified;
+
+			eTag = response.headers().firstValue("ETag").orElse(null);
+			lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+			if (eTag != null || lastModified != null) {
+				conditionalCache.put(uri, new CachedResponse(eTag, lastModified, content));
+			} else {
+				conditionalCache.remove(uri);
+			}
+		}
+
+		return content;
+	}
+
+
+	/**
+	 * Downloads a file from the server into a new temporary file allocated by
+	 * the {@link TempFileManager}. The caller is responsible for releasing the
+	 * file with the manager.
+	 *
+	 * @param url
+	 *            The location of the file.
+	 * @return The temporary file containing the downloaded data.
+	 */
+	public File download(URL url) {
+		URI uri;
+		final List<File> attemptFiles;
+		HttpResponse<Path> response;
+		File outputFile;
+
+		uri = toUri(url);
+
+		// Each attempt writes to its own file because an abandoned attempt may
+		// still be writing when the request is retried. Only successful
+		// responses are written at all.
+		attemptFiles = Collections.synchronizedList(new ArrayList<File>());
+		outputFile = null;
+
+		try {
+			response = send(newRequest(uri).build(), responseInfo -> {
+				File attemptFile;
+
+				if (responseInfo.statusCode() != HTTP_OK) {
+					return HttpResponse.BodySubscribers.replacing(null);
+				}
+
+				try {
+					attemptFile = TempFileManager.getInstance().createTempFile("change", null);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				attemptFiles.add(attemptFile);
+
+				return HttpResponse.BodySubscribers.ofFile(attemptFile.toPath(),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			});
+			checkStatus(response);
+
+			outputFile = response.body().toFile();
+
+			// The file isn't written through the manager so charge its size explicitly.
+			TempFileManager.getInstance().reserve(outputFile, outputFile.length());
+
+			byteCount.addAndGet(outputFile.length());
+
+			return outputFile;
+
+		} catch (IOException e) {
+			outputFile = null;
+			throw new OsmosisRuntimeException("Unable to store " + uri + " in a temporary file.", e);
+
+		} finally {
+			synchronized (attemptFiles) {
+				for (File attemptFile : attemptFiles) {
+					if (!attemptFile.equals(outputFile)) {
+						TempFileManager.getInstance().release(attemptFile);
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Opens a stream for reading a file from the server without storing it
+	 * locally. Failures before the response begins are retried. Once the
+	 * stream has been returned, a read fails with an IOException if no data
+	 * is received for the request timeout. Other incomplete transfers, such as
+	 * a connection closed early, must be detected by the caller.
+	 *
+	 * @param url
+	 *            The location of the file.
+	 * @return The stream of file content, which must be closed by the caller.
+	 */
+	public InputStream openStream(URL url) {
+		HttpResponse<InputStream> response;
+
+		response = send(newRequest(toUri(url)).build(), responseInfo -> new IdleTimeoutBodyStream(requestTimeout));
+		checkStatus(response);
+
+		return new CountingInputStream(response.body());
+	}
+
+
+	/**
+	 * Logs the number of requests performed by this client along with their
+	 * throughput and average latency.
+	 */
+	public void logStatistics() {
+		long requests;
+		double seconds;
+
+		requests = requestCount.get();
+		if (requests == 0) {
+			return;
+		}
+
+		seconds = requestNanos.get() / 1000000000.0;
+
+		LOG.info(String.format(
+				"Completed %d HTTP requests (%d not modified, %d retries) transferring %d bytes"
+				+ " at %.1f KiB/s with an average latency of %.0f ms.",
+				requests, notModifiedCount.get(), retryCount.get(), byteCount.get(),
+				seconds > 0 ? byteCount.get() / 1024.0 / seconds : 0.0, seconds * 1000 / requests));
+	}
+
+
+	/**
+	 * Adds the bytes read from a streamed response to the transfer statistics.
+	 */
+	private class CountingInputStream extends FilterInputStream {
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+
+		@Override
+		public int read() throws IOException {
+			int result;
+
+			result = super.read();
+			if (result >= 0) {
+				byteCount.incrementAndGet();
+			}
+
+			return result;
+		}
+
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count;
+
+			count = super.read(b, off, len);
+			if (count > 0) {
+				byteCount.addAndGet(count);
+			}
+
+			return count;
+		}
+	}
+
+
+	/**
+	 * Records the time at which each part of a response body is received.
+	 */
+	private static class ActivityTrackingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+		private HttpResponse.BodySubscriber<T> delegate;
+		private AtomicLong lastActivity;
+
+
+		ActivityTrackingSubscriber(HttpResponse.BodySubscriber<T> delegate, AtomicLong lastActivity) {
+			this.delegate = delegate;
+			this.lastActivity = lastActivity;
+		}
+
+
+		@Override
+		public CompletionStage<T> getBody() {
+			return delegate.getBody();
+		}
+
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			delegate.onSubscribe(subscription);
+		}
+
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			lastActivity.set(System.nanoTime());
+			delegate.onNext(item);
+		}
+
+
+		@Override
+		public void onError(Throwable throwable) {
+			delegate.onError(throwable);
+		}
+
+
+		@Override
+		public void onComplete() {
+			delegate.onComplete();
+		}
+	}
+
+
+	/**
+	 * Provides a streamed response body to a reader, failing a read if no data
+	 * arrives from the server within the timeout. Unlike the stream provided
+	 * by the standard body handlers, a stalled transfer cannot block the
+	 * reader indefinitely.
+	 */
+	private static class IdleTimeoutBodyStream extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+		private static final Object END_OF_BODY = new Object();
+
+		private Duration timeout;
+		private BlockingQueue<Object> items;
+		private volatile Flow.Subscription subscription;
+		private Iterator<ByteBuffer> currentItem;
+		private ByteBuffer currentBuffer;
+		private boolean ended;
+		private boolean closed;
+
+
+		IdleTimeoutBodyStream(Duration timeout) {
+			this.timeout = timeout;
+
+			items = new LinkedBlockingQueue<Object>();
+		}
+
+
+		@Override
+		public CompletionStage<InputStream> getBody() {
+			// The body is read as it arrives so it is available immediately.
+			return CompletableFuture.completedFuture(this);
+		}
+
+
+		@Override
+		public void onSubscribe(Flow.Subscription newSubscription) {
+			subscription = newSubscription;
+			newSubscription.request(1);
+		}
+
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			items.add(item);
+		}
+
+
+		@Override
+		public void onError(Throwable throwable) {
+			items.add(throwable);
+		}
+
+
+		@Override
+		public void onComplete() {
+			items.add(END_OF_BODY);
+		}
+
+
+		/**
+		 * Waits for the next part of the body to arrive.
+		 *
+		 * @return False if the end of the body has been reached.
+		 */
+		@SuppressWarnings("unchecked")
+		private boolean nextItem() throws IOException {
+			Object item;
+
+			try {
+				item = items.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the response body.");
+			}
+
+			if (item == null) {
+				subscription.cancel();
+				throw new IOException("No data received for " + timeout.getSeconds() + " seconds.");
+			}
+			if (item == END_OF_BODY) {
+				ended = true;
+				return false;
+			}
+			if (item instanceof Throwable) {
+				ended = true;
+				throw new IOException("Unable to read the response body.", (Throwable) item);
+			}
+
+			currentItem = ((List<ByteBuffer>) item).iterator();
+			subscription.request(1);
+
+			return true;
+		}
+
+
+		@Override
+		public int read() throws IOException {
+			byte[] buffer = new byte[1];
+
+			if (read(buffer, 0, 1) < 0) {
+				return -1;
+			}
+
+			return buffer[0] & 0xff;
+		}
+
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count;
+
+			if (closed) {
+				throw new IOException("The response body has been closed.");
+			}
+			if (len == 0) {
+				return 0;
+			}
+
+			while (currentBuffer == null || !currentBuffer.hasRemaining()) {
+				if (currentItem != null && currentItem.hasNext()) {
+					currentBuffer = currentItem.next();
+				} else if (ended || !nextItem()) {
+					return -1;
+				}
+			}
+
+			count = Math.min(len, currentBuffer.remaining());
+			currentBuffer.get(b, off, count);
+
+			return count;
+		}
+
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+
+				// Release the connection if the body hasn't been read to the end.
+				if (!ended && subscription != null) {
+					subscription.cancel();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * The content and validators of a previous response used for conditional
+	 * requests.
+	 */
+	private static class CachedResponse {
+		private String eTag;
+		private String lastModified;
+		private String content;
+
+
+		CachedResponse(String eTag, String lastModified, String content) {
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.content = content;
+		}
+	}
+}
@@ -1,8 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.replication.common;
 
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 
 
 /**
@@ -37,7 +37,7 @@ public interface ReplicationStore {
 	 *            The sequence to be loaded.
 	 * @return The change reader.
 	 */
-	XmlChangeReader getData(long sequence);
+	RunnableChangeSource getData(long sequence);
 
 
 	/**
@@ -59,5 +59,5 @@ public interface ReplicationStore {
 	 *            The sequence to be saved.
 	 * @return The change writer.
 	 */
-	XmlChangeWriter saveData(long sequence);
+	ChangeSink saveData(long sequence);
 }
@@ -1,19 +1,16 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.replication.common;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
-import org.openstreetmap.osmosis.core.OsmosisConstants;
 
 
 /**
@@ -25,25 +22,58 @@ public class ServerStateReader {
 	
 	
 	private ReplicationSequenceFormatter sequenceFormatter;
+	private ReplicationHttpClient httpClient;
+	private ReplicationFileCache cache;
 	
 	
 	/**
-	 * Creates a new instance.
+	 * Creates a new instance using a HTTP client with default settings.
 	 */
 	public ServerStateReader() {
+		this(new ReplicationHttpClient());
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param httpClient
+	 *            The client used to retrieve state files from the server.
+	 */
+	public ServerStateReader(ReplicationHttpClient httpClient) {
+		this(httpClient, null);
+	}
+	
+	
+	/**
+	 * Creates a new instance which consults a local cache before retrieving
+	 * sequence numbered state files from the server.
+	 * 
+	 * @param httpClient
+	 *            The client used to retrieve state files from the server.
+	 * @param cache
+	 *            The cache of previously retrieved files, or null if no cache
+	 *            is to be used.
+	 */
+	public ServerStateReader(ReplicationHttpClient httpClient, ReplicationFileCache cache) {
+		this.httpClient = httpClient;
+		this.cache = cache;
+		
 		sequenceFormatter = new ReplicationSequenceFormatter(9, 3);
 	}
 	
 	
 	/**
-	 * Retrieves the latest state from the server.
+	 * Retrieves the latest state from the server. The file is requested
+	 * conditionally so that repeated polling is cheap when the state hasn't
+	 * changed.
 	 * 
 	 * @param baseUrl
 	 *            The url of the directory containing change files.
 	 * @return The state.
 	 */
 	public ReplicationState getServerState(URL baseUrl) {
-		return getServerState(baseUrl, SERVER_STATE_FILE);
+		return getServerState(baseUrl, SERVER_STATE_FILE, true);
 	}
 	
 	
@@ -57,7 +87,8 @@ public class ServerStateReader {
 	 * @return The state.
 	 */
 	public ReplicationState getServerState(URL baseUrl, long sequenceNumber) {
-		return getServerState(baseUrl, sequenceFormatter.getFormattedName(sequenceNumber, SEQUENCE_STATE_FILE_SUFFIX));
+		return getServerState(
+				baseUrl, sequenceFormatter.getFormattedName(sequenceNumber, SEQUENCE_STATE_FILE_SUFFIX), false);
 	}
 
 
@@ -68,9 +99,12 @@ public class ServerStateReader {
 	 *            The url of the directory containing change files.
 	 * @param stateFile
 	 *            The state file to be retrieved.
+	 * @param conditional
+	 *            If true, the file is only downloaded if it has changed since
+	 *            the previous request.
 	 * @return The state.
 	 */
-	private ReplicationState getServerState(URL baseUrl, String stateFile) {
+	private ReplicationState getServerState(URL baseUrl, String stateFile, boolean conditional) {
 		URL stateUrl;
 		
 		try {
@@ -83,16 +117,24 @@ public class ServerStateReader {
 			Properties stateProperties;
 			Map<String, String> stateMap;
 			ReplicationState state;
+			String stateText;
+			
+			// Only sequence numbered state files are cached, the latest state changes over time.
+			stateText = null;
+			if (!conditional && cache != null) {
+				stateText = cache.retrieveText(stateUrl);
+			}
+			if (stateText == null) {
+				stateText = httpClient.getText(stateUrl, conditional);
+				
+				if (!conditional && cache != null) {
+					cache.storeText(stateUrl, stateText);
+				}
+			}
 			
-			URLConnection connection = stateUrl.openConnection();
-			connection.setReadTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setConnectTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setRequestProperty("User-Agent", "Osmosis/" + OsmosisConstants.VERSION);
-			try (BufferedReader reader  = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+			try (StringReader reader = new StringReader(stateText)) {
 				stateProperties = new Properties();
 				stateProperties.load(reader);
-			} catch (IOException e) {
-				throw new OsmosisRuntimeException("Unable to read the state from the server.", e);
 			}
 			
 			stateMap = new HashMap<String, String>();
@@ -1,30 +1,32 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.replication.v0_6;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
-import org.openstreetmap.osmosis.core.OsmosisConstants;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 import org.openstreetmap.osmosis.core.task.common.RunnableTask;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.core.util.FileBasedLock;
 import org.openstreetmap.osmosis.core.util.PropertiesPersister;
+import org.openstreetmap.osmosis.replication.common.ReplicationDataFormat;
+import org.openstreetmap.osmosis.replication.common.ReplicationFileCache;
+import org.openstreetmap.osmosis.replication.common.ReplicationHttpClient;
 import org.openstreetmap.osmosis.replication.common.ReplicationSequenceFormatter;
 import org.openstreetmap.osmosis.replication.common.ReplicationState;
 import org.openstreetmap.osmosis.replication.common.ServerStateReader;
 import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationDownloaderConfiguration;
-import org.openstreetmap.osmosis.xml.common.CompressionMethod;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationFileStream;
+import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationFilePrefetcher;
+import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationFilePrefetcher.DownloadedInterval;
 
 
 /**
@@ -45,8 +47,15 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	
 	private File workingDirectory;
 	private ReplicationSequenceFormatter sequenceFormatter;
+	private ReplicationHttpClient httpClient;
 	private ServerStateReader serverStateReader;
+	private ReplicationFileCache cache;
 	private boolean single;
+	private int batchSize;
+	private int iterations;
+	private long interval;
+	private long pollInterval;
+	private long lastServerSequenceNumber;
 	
 	
 	/**
@@ -58,11 +67,73 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	 * 			  Set to true if you want to only replicate a single diff file from the server
 	 */
 	public BaseReplicationDownloader(File workingDirectory, boolean single) {
+		this(workingDirectory, single, 1);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param workingDirectory
+	 *            The directory containing configuration and tracking files.
+	 * @param single
+	 * 			  Set to true if you want to only replicate a single diff file from the server
+	 * @param batchSize
+	 *            The number of replication files to be passed to
+	 *            {@link #processChangesets(List, List)} together. If greater than
+	 *            1, each invocation processes at most one batch. A value of 1
+	 *            processes each file individually via
+	 *            {@link #processChangeset(RunnableChangeSource, ReplicationState)}.
+	 */
+	public BaseReplicationDownloader(File workingDirectory, boolean single, int batchSize) {
+		this(workingDirectory, single, batchSize, 1, 0, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance which may perform multiple invocations within a
+	 * single run, avoiding the cost of starting a new process for each one.
+	 * The lock is released and the local state is persisted after each
+	 * invocation exactly as if they were run separately, but the downstream
+	 * tasks are only released once all invocations have completed.
+	 * 
+	 * @param workingDirectory
+	 *            The directory containing configuration and tracking files.
+	 * @param single
+	 * 			  Set to true if you want to only replicate a single diff file from the server
+	 * @param batchSize
+	 *            The number of replication files to be passed to
+	 *            {@link #processChangesets(List, List)} together.
+	 * @param iterations
+	 *            The number of invocations to perform. 0 means infinite.
+	 * @param interval
+	 *            The minimum number of milliseconds between the start of
+	 *            consecutive invocations.
+	 * @param pollInterval
+	 *            If greater than 0, the number of milliseconds between checks
+	 *            for new server state once all available data has been
+	 *            processed. The next invocation begins as soon as new state
+	 *            appears. If 0, invocations begin at the minimum interval
+	 *            regardless of server state.
+	 */
+	public BaseReplicationDownloader(File workingDirectory, boolean single, int batchSize, int iterations,
+			long interval, long pollInterval) {
+		if (batchSize < 1) {
+			throw new OsmosisRuntimeException("The batch size must be at least 1, " + batchSize + " was specified.");
+		}
+		if (iterations < 0) {
+			throw new OsmosisRuntimeException(
+					"The number of iterations cannot be negative, " + iterations + " was specified.");
+		}
+		
 		this.workingDirectory = workingDirectory;
 		
 		sequenceFormatter = new ReplicationSequenceFormatter(9, 3);
-		serverStateReader = new ServerStateReader();
 		this.single = single;
+		this.batchSize = batchSize;
+		this.iterations = iterations;
+		this.interval = interval;
+		this.pollInterval = pollInterval;
 	}
 	
 	
@@ -78,7 +149,8 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	
 	/**
 	 * Downloads the file from the server with the specified name and writes it
-	 * to a local temporary file.
+	 * to a local temporary file. The shared cache is consulted first if one is
+	 * configured.
 	 * 
 	 * @param fileName
 	 *            The name of the file to download.
@@ -95,52 +167,100 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 			throw new OsmosisRuntimeException("The server file URL could not be created.", e);
 		}
 		
-		try {
-			File outputFile;
-			
-			// Open an input stream for the changeset file on the server.
-			URLConnection connection = changesetUrl.openConnection();
-			connection.setReadTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setConnectTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setRequestProperty("User-Agent", "Osmosis/" + OsmosisConstants.VERSION);
+		if (cache != null) {
+			File cachedFile;
+			File downloadedFile;
 			
-			try (BufferedInputStream source = new BufferedInputStream(connection.getInputStream(), 65536)) {
-				// Create a temporary file to write the data to.
-				outputFile = File.createTempFile("change", null);
-
-				// Open a output stream for the destination file.
-				try (BufferedOutputStream sink = new BufferedOutputStream(new FileOutputStream(outputFile), 65536)) {
-					// Download the file.
-					byte[] buffer = new byte[65536];
-					for (int bytesRead = source.read(buffer); bytesRead > 0; bytesRead = source.read(buffer)) {
-						sink.write(buffer, 0, bytesRead);
-					}
-				}
+			cachedFile = cache.retrieve(changesetUrl);
+			if (cachedFile != null) {
+				return cachedFile;
 			}
 			
-			return outputFile;
+			downloadedFile = httpClient.download(changesetUrl);
+			cache.store(changesetUrl, downloadedFile);
+			
+			return downloadedFile;
+		}
+		
+		return httpClient.download(changesetUrl);
+	}
+	
+	
+	/**
+	 * Parses a replication file as it is downloaded from the server. The file
+	 * is verified to have been received intact before returning so that a
+	 * truncated download causes processing to fail rather than the state to
+	 * advance.
+	 * 
+	 * @param fileName
+	 *            The name of the file to download.
+	 * @param baseUrl
+	 *            The url of the directory containing change files.
+	 * @param archiveDirectory
+	 *            The directory to store a copy of the downloaded file in, or
+	 *            null if it is not to be archived.
+	 * @param replicationState
+	 *            The replication state associated with the file.
+	 * @param dataFormat
+	 *            The format of the file.
+	 */
+	private void streamReplicationFile(String fileName, URL baseUrl, File archiveDirectory,
+			ReplicationState replicationState, ReplicationDataFormat dataFormat) {
+		URL changesetUrl;
+		File archiveFile;
+		
+		try {
+			changesetUrl = new URL(baseUrl, fileName);
+		} catch (MalformedURLException e) {
+			throw new OsmosisRuntimeException("The server file URL could not be created.", e);
+		}
+		
+		if (archiveDirectory != null) {
+			archiveFile = new File(archiveDirectory, fileName);
+		} else {
+			archiveFile = null;
+		}
+		
+		try (ReplicationFileStream changeStream = new ReplicationFileStream(
+				httpClient.openStream(changesetUrl), archiveFile, dataFormat.isGzipped())) {
+			
+			// The stream is already decompressed.
+			processChangeset(dataFormat.createReader(changeStream.getInputStream()), replicationState);
 			
-		} catch (IOException e) {
-			throw new OsmosisRuntimeException("Unable to read the changeset file " + fileName + " from the server.", e);
+			changeStream.verify();
 		}
 	}
 	
 	
-	private void processReplicationFile(File replicationFile, ReplicationState replicationState) {
+	private void processReplicationFiles(List<DownloadedInterval> intervals, ReplicationDataFormat dataFormat) {
+		List<RunnableChangeSource> changeReaders;
+		List<ReplicationState> replicationStates;
+		
+		changeReaders = new ArrayList<RunnableChangeSource>(intervals.size());
+		replicationStates = new ArrayList<ReplicationState>(intervals.size());
+		for (DownloadedInterval interval : intervals) {
+			changeReaders.add(dataFormat.createReader(interval.getFile(), true));
+			replicationStates.add(interval.getState());
+		}
+		
+		processChangesets(changeReaders, replicationStates);
+	}
+	
+	
+	private void processReplicationFile(File replicationFile, ReplicationState replicationState,
+			ReplicationDataFormat dataFormat) {
 		try {
-			XmlChangeReader xmlReader;
+			RunnableChangeSource changeReader;
 			
 			// Send the contents of the replication file to the sink but suppress the complete
 			// and release methods.
-			xmlReader = new XmlChangeReader(replicationFile, true, CompressionMethod.GZip);
+			changeReader = dataFormat.createReader(replicationFile, true);
 			
-			// Delegate to the sub-class to process the xml.
-			processChangeset(xmlReader, replicationState);
+			// Delegate to the sub-class to process the changes.
+			processChangeset(changeReader, replicationState);
 			
 		} finally {
-			if (!replicationFile.delete()) {
-				LOG.warning("Unable to delete file " + replicationFile.getName());
-			}
+			TempFileManager.getInstance().release(replicationFile);
 		}
 	}
 
@@ -181,71 +301,131 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	
 	private ReplicationState download(ReplicationDownloaderConfiguration configuration, ReplicationState serverState,
 			ReplicationState initialLocalState) {
-		URL baseUrl;
+		final URL baseUrl;
+		final ReplicationDataFormat dataFormat;
 		ReplicationState localState;
 		Date maximumDownloadTimestamp;
+		int windowSize;
+		long lastSequenceNumber;
+		boolean streamDownloads;
+		File archiveDirectory;
+		List<DownloadedInterval> batch;
 		
 		localState = initialLocalState;
 		
 		// Determine the location of download files.
 		baseUrl = configuration.getBaseUrl();
+		dataFormat = configuration.getDataFormat();
+		
+		// Only a single file is required in single mode so there is no point downloading ahead.
+		windowSize = single ? 1 : configuration.getDownloadWindowSize();
+		
+		// Streamed files are parsed as they arrive so only their states can be retrieved in advance.
+		streamDownloads = configuration.isStreamDownloads();
+		if (streamDownloads && batchSize > 1) {
+			LOG.warning("Streamed downloads are not supported when processing files in batches, ignoring.");
+			streamDownloads = false;
+		}
+		if (streamDownloads && cache != null) {
+			LOG.fine("Streamed downloads bypass the replication file cache.");
+		}
+		archiveDirectory = configuration.getArchiveDirectory();
+		if (archiveDirectory != null && !archiveDirectory.isAbsolute()) {
+			archiveDirectory = new File(workingDirectory, archiveDirectory.getPath());
+		}
 		
 		// Determine the maximum timestamp that can be downloaded.
 		maximumDownloadTimestamp =
 			calculateMaximumTimestamp(configuration, serverState.getTimestamp(), localState.getTimestamp());
 		LOG.fine("The maximum timestamp to be downloaded is " + maximumDownloadTimestamp + ".");
 		
-		// Download all files and send their contents to the sink.
-		while (localState.getSequenceNumber() < serverState.getSequenceNumber()) {
-			File replicationFile;
-			long sequenceNumber;
-			ReplicationState fileReplicationState;
-			
-			// Check to see if our local state has already reached the maximum
-			// allowable timestamp. This will typically occur if a job is run
-			// again before new data becomes available, or if an implementation
-			// of this class (eg. ReplicationFileMerger) is waiting for a full
-			// time period of data to become available before processing.
-			if (localState.getTimestamp().compareTo(maximumDownloadTimestamp) >= 0) {
-				break;
-			}
-			
-			// Calculate the next sequence number.
-			sequenceNumber = localState.getSequenceNumber() + 1;
-			LOG.finer("Processing replication sequence " + sequenceNumber + ".");
-			
-			// Get the state associated with the next file.
-			fileReplicationState = serverStateReader.getServerState(baseUrl, sequenceNumber);
+		// Don't download ahead beyond the intervals a single invocation can process.
+		lastSequenceNumber = serverState.getSequenceNumber();
+		if (single) {
+			lastSequenceNumber = Math.min(lastSequenceNumber, localState.getSequenceNumber() + 1);
+		} else if (batchSize > 1) {
+			lastSequenceNumber = Math.min(lastSequenceNumber, localState.getSequenceNumber() + batchSize);
+		}
+		
+		batch = new ArrayList<DownloadedInterval>();
+		
+		// Download all files and send their contents to the sink. Upcoming files may be downloaded
+		// concurrently, but they are returned and processed in sequence order.
+		try (ReplicationFilePrefetcher prefetcher = new ReplicationFilePrefetcher(
+				sequenceNumber -> serverStateReader.getServerState(baseUrl, sequenceNumber),
+				streamDownloads ? null : sequenceNumber -> downloadReplicationFile(
+						sequenceFormatter.getFormattedName(sequenceNumber, dataFormat.getFileSuffix()), baseUrl),
+				localState.getSequenceNumber() + 1, lastSequenceNumber, maximumDownloadTimestamp, windowSize)) {
 			
-			// Ensure that the next state is within the allowable timestamp
-			// range. We must stop if the next data takes us beyond the maximum
-			// timestamp. This will either occur if a maximum download time
-			// duration limit has been imposed, or if a time-aligned boundary
-			// has been reached.
-			if (fileReplicationState.getTimestamp().compareTo(maximumDownloadTimestamp) > 0) {
-				// We will always allow at least one replication interval
-				// through to deal with the case where a single interval exceeds
-				// the maximum duration. This can happen if the source data has
-				// a long time gap between two intervals due to system downtime.
-				if (localState.getSequenceNumber() != initialLocalState.getSequenceNumber()) {
+			while (localState.getSequenceNumber() < lastSequenceNumber) {
+				DownloadedInterval interval;
+				ReplicationState fileReplicationState;
+				
+				// Check to see if our local state has already reached the maximum
+				// allowable timestamp. This will typically occur if a job is run
+				// again before new data becomes available, or if an implementation
+				// of this class (eg. ReplicationFileMerger) is waiting for a full
+				// time period of data to become available before processing.
+				if (localState.getTimestamp().compareTo(maximumDownloadTimestamp) >= 0) {
+					break;
+				}
+				
+				// Get the state and file associated with the next sequence number.
+				LOG.finer("Processing replication sequence " + (localState.getSequenceNumber() + 1) + ".");
+				interval = prefetcher.next();
+				fileReplicationState = interval.getState();
+				
+				// Ensure that the next state is within the allowable timestamp
+				// range. We must stop if the next data takes us beyond the maximum
+				// timestamp. This will either occur if a maximum download time
+				// duration limit has been imposed, or if a time-aligned boundary
+				// has been reached.
+				if (fileReplicationState.getTimestamp().compareTo(maximumDownloadTimestamp) > 0) {
+					// We will always allow at least one replication interval
+					// through to deal with the case where a single interval exceeds
+					// the maximum duration. This can happen if the source data has
+					// a long time gap between two intervals due to system downtime.
+					if (localState.getSequenceNumber() != initialLocalState.getSequenceNumber()) {
+						interval.deleteFile();
+						break;
+					}
+				}
+				
+				// Process the file and send its contents to the sink. Batched files are
+				// kept until the batch is complete.
+				if (batchSize > 1) {
+					batch.add(interval);
+				} else if (streamDownloads) {
+					streamReplicationFile(
+							sequenceFormatter.getFormattedName(
+									fileReplicationState.getSequenceNumber(), dataFormat.getFileSuffix()),
+							baseUrl, archiveDirectory, fileReplicationState, dataFormat);
+				} else {
+					processReplicationFile(interval.getFile(), fileReplicationState, dataFormat);
+				}
+				
+				// Update the local state to reflect the file state just processed.
+				localState = fileReplicationState;
+	
+				// if single is set to true it means that we only want to get a single replication file
+				// and not up to the current one.
+				if (single) {
+					break;
+				}
+				
+				// Only a single batch is processed per invocation.
+				if (batchSize > 1 && batch.size() >= batchSize) {
 					break;
 				}
 			}
 			
-			// Download the next replication file to a temporary file.
-			replicationFile =
-				downloadReplicationFile(sequenceFormatter.getFormattedName(sequenceNumber, ".osc.gz"), baseUrl);
-			
-			// Process the file and send its contents to the sink.
-			processReplicationFile(replicationFile, fileReplicationState);
+			if (!batch.isEmpty()) {
+				processReplicationFiles(batch, dataFormat);
+			}
 			
-			// Update the local state to reflect the file state just processed.
-			localState = fileReplicationState;
-
-			// if single is set to true it means that we only want to get a single replication file
-			// and not up to the current one.
-			if (single) {
-				break;
+		} finally {
+			for (DownloadedInterval interval : batch) {
+				interval.deleteFile();
 			}
 		}
 		
@@ -253,66 +433,102 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	}
 	
 	
-	private void runImpl() {
-		try {
-			ReplicationDownloaderConfiguration configuration;
-			ReplicationState serverState;
-			ReplicationState localState;
-			PropertiesPersister localStatePersistor;
-			
-			// Instantiate utility objects.
-			configuration = new ReplicationDownloaderConfiguration(new File(workingDirectory, CONFIG_FILE));
+	private ReplicationFileCache createCache(ReplicationDownloaderConfiguration configuration) {
+		File cacheDirectory;
+		
+		cacheDirectory = configuration.getCacheDirectory();
+		if (cacheDirectory == null) {
+			return null;
+		}
+		if (!cacheDirectory.isAbsolute()) {
+			cacheDirectory = new File(workingDirectory, cacheDirectory.getPath());
+		}
+		
+		return new ReplicationFileCache(cacheDirectory, configuration.getCacheMaxSize() * 1024L * 1024L,
+				configuration.getCacheMaxAge() * 1000L);
+	}
+	
+	
+	private void initializeHttpClient(ReplicationDownloaderConfiguration configuration) {
+		// The HTTP client and cache are retained between invocations to keep server connections alive.
+		if (httpClient == null) {
+			httpClient = new ReplicationHttpClient(
+					configuration.getConnectTimeout(), configuration.getRequestTimeout(),
+					configuration.getMaxRetries());
+			cache = createCache(configuration);
+			serverStateReader = new ServerStateReader(httpClient, cache);
+		}
+	}
+	
+	
+	/**
+	 * Performs a single invocation.
+	 * 
+	 * @return True if all data available on the server has been processed.
+	 */
+	private boolean runImpl() {
+		ReplicationDownloaderConfiguration configuration;
+		ReplicationState serverState;
+		ReplicationState localState;
+		PropertiesPersister localStatePersistor;
+		
+		// Instantiate utility objects.
+		configuration = new ReplicationDownloaderConfiguration(new File(workingDirectory, CONFIG_FILE));
+		initializeHttpClient(configuration);
 
-			// check for custom server state file
-			File customServerStateFile = new File(workingDirectory, CUSTOM_SERVER_STATE_FILE);
-			if (customServerStateFile.exists()) {
-				serverState = new ReplicationState(new PropertiesPersister(customServerStateFile).loadMap());
-				LOG.info(String.format("Reading custom server state. [%s]", serverState.toString()));
-			} else {
-				// Obtain the server state.
-				serverState = serverStateReader.getServerState(configuration.getBaseUrl());
-				LOG.info(String.format("Reading current server state. [%s]", serverState.toString()));
-			}
-			
+		// check for custom server state file
+		File customServerStateFile = new File(workingDirectory, CUSTOM_SERVER_STATE_FILE);
+		if (customServerStateFile.exists()) {
+			serverState = new ReplicationState(new PropertiesPersister(customServerStateFile).loadMap());
+			LOG.info(String.format("Reading custom server state. [%s]", serverState.toString()));
+		} else {
 			// Obtain the server state.
-			LOG.fine("Reading current server state.");
 			serverState = serverStateReader.getServerState(configuration.getBaseUrl());
+			LOG.info(String.format("Reading current server state. [%s]", serverState.toString()));
+		}
+		
+		// Obtain the server state.
+		LOG.fine("Reading current server state.");
+		serverState = serverStateReader.getServerState(configuration.getBaseUrl());
+		
+		// Build the local state persister which is used for both loading and storing local state.
+		localStatePersistor = new PropertiesPersister(new File(workingDirectory, LOCAL_STATE_FILE));
+		
+		// Begin processing.
+		processInitialize(Collections.<String, Object>emptyMap());
+		
+		// If local state isn't available we need to copy server state to be the initial local state
+		// then exit.
+		if (localStatePersistor.exists()) {
+			localState = new ReplicationState(localStatePersistor.loadMap());
 			
-			// Build the local state persister which is used for both loading and storing local state.
-			localStatePersistor = new PropertiesPersister(new File(workingDirectory, LOCAL_STATE_FILE));
-			
-			// Begin processing.
-			processInitialize(Collections.<String, Object>emptyMap());
-			
-			// If local state isn't available we need to copy server state to be the initial local state
-			// then exit.
-			if (localStatePersistor.exists()) {
-				localState = new ReplicationState(localStatePersistor.loadMap());
-				
-				// Download and process the replication files.
-				localState = download(configuration, serverState, localState);
-				
-			} else {
-				localState = serverState;
-				
-				processInitializeState(localState);
-			}
-			
-			// Commit downstream changes.
-			processComplete();
+			// Download and process the replication files.
+			localState = download(configuration, serverState, localState);
 			
-			// Persist the local state.
-			localStatePersistor.store(localState.store());
+		} else {
+			localState = serverState;
 			
-		} finally {
-			processRelease();
+			processInitializeState(localState);
 		}
+		
+		// Commit downstream changes.
+		processComplete();
+		
+		// Persist the local state.
+		localStatePersistor.store(localState.store());
+		
+		httpClient.logStatistics();
+		
+		lastServerSequenceNumber = serverState.getSequenceNumber();
+		
+		return localState.getSequenceNumber() >= serverState.getSequenceNumber();
 	}
 	
 	
 	/**
 	 * This is called prior to any processing being performed. It allows any
-	 * setup activities to be performed.
+	 * setup activities to be performed. It is called at the start of each
+	 * invocation if multiple iterations are performed.
 	 * 
 	 * @param metaData
 	 *            The meta data associated with this processing request (empty
@@ -334,12 +550,30 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	/**
 	 * Processes the changeset.
 	 * 
-	 * @param xmlReader
+	 * @param changeReader
 	 *            The changeset reader initialised to point to the changeset file.
 	 * @param replicationState
 	 *            The replication state associated with the changeset file.
 	 */
-	protected abstract void processChangeset(XmlChangeReader xmlReader, ReplicationState replicationState);
+	protected abstract void processChangeset(RunnableChangeSource changeReader, ReplicationState replicationState);
+	
+	
+	/**
+	 * Processes a batch of consecutive changesets. This is only called if a
+	 * batch size greater than 1 was specified. The default implementation
+	 * processes each changeset in turn.
+	 * 
+	 * @param changeReaders
+	 *            The changeset readers in sequence order.
+	 * @param replicationStates
+	 *            The replication states associated with each changeset.
+	 */
+	protected void processChangesets(List<RunnableChangeSource> changeReaders,
+			List<ReplicationState> replicationStates) {
+		for (int i = 0; i < changeReaders.size(); i++) {
+			processChangeset(changeReaders.get(i), replicationStates.get(i));
+		}
+	}
 
 
 	/**
@@ -352,29 +586,135 @@ public abstract class BaseReplicationDownloader implements RunnableTask {
 	/**
 	 * This is implemented by sub-classes and is called and the completion of all processing
 	 * regardless of whether it was successful or not. This should perform any cleanup tasks such as
-	 * closing files or releasing database connections.
+	 * closing files or releasing database connections. It is only called once after the final
+	 * iteration so that connections may be reused between iterations.
 	 */
 	protected abstract void processRelease();
 	
 	
 	/**
-	 * {@inheritDoc}
+	 * Performs a single invocation while holding the working directory lock.
+	 * 
+	 * @return True if all data available on the server has been processed.
 	 */
-	@Override
-	public void run() {
+	private boolean runIteration() {
 		FileBasedLock fileLock;
+		boolean caughtUp;
 		
 		fileLock = new FileBasedLock(new File(workingDirectory, LOCK_FILE));
 		
 		try {
 			fileLock.lock();
 			
-			runImpl();
+			caughtUp = runImpl();
 			
 			fileLock.unlock();
 			
+			return caughtUp;
+			
 		} finally {
 			fileLock.close();
 		}
 	}
+	
+	
+	/**
+	 * Sleeps for the specified duration.
+	 * 
+	 * @param duration
+	 *            The time to sleep in milliseconds.
+	 * @return False if the thread was interrupted while sleeping, in which
+	 *         case the interrupt flag is restored.
+	 */
+	private boolean sleep(long duration) {
+		try {
+			Thread.sleep(duration);
+			
+			return true;
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Waits until the next invocation is due. The lock is not held while
+	 * waiting so that other tasks may inspect the working directory.
+	 * 
+	 * @param iterationStart
+	 *            The time the previous invocation began.
+	 * @param caughtUp
+	 *            True if the previous invocation processed all data available
+	 *            on the server.
+	 * @return False if the thread was interrupted while waiting and no further
+	 *         invocations should occur.
+	 */
+	private boolean waitForNextIteration(long iterationStart, boolean caughtUp) {
+		long remainingInterval;
+		URL baseUrl;
+		
+		remainingInterval = iterationStart + interval - System.currentTimeMillis();
+		if (remainingInterval > 0 && !sleep(remainingInterval)) {
+			return false;
+		}
+		
+		// If data is still outstanding there is no point waiting for more.
+		if (pollInterval <= 0 || !caughtUp) {
+			return true;
+		}
+		
+		// The state file is requested conditionally so polling is cheap while it is unchanged.
+		baseUrl = new ReplicationDownloaderConfiguration(new File(workingDirectory, CONFIG_FILE)).getBaseUrl();
+		while (serverStateReader.getServerState(baseUrl).getSequenceNumber() <= lastServerSequenceNumber) {
+			if (!sleep(pollInterval)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		try {
+			// Perform invocations up to the number of iterations, or infinitely if set to 0.
+			for (int iterationCount = 1; true; iterationCount++) {
+				long iterationStart;
+				boolean caughtUp;
+				
+				iterationStart = System.currentTimeMillis();
+				
+				caughtUp = runIteration();
+				
+				if (iterations > 0 && iterationCount >= iterations) {
+					break;
+				}
+				
+				// An interruption between invocations is a request to stop.
+				// Each invocation is complete in its own right so this is not
+				// a failure.
+				if (!waitForNextIteration(iterationStart, caughtUp)) {
+					LOG.info("Interrupted while waiting for the next replication iteration, stopping.");
+					break;
+				}
+			}
+			
+		} finally {
+			try {
+				if (cache != null) {
+					cache.close();
+					cache = null;
+				}
+			} finally {
+				processRelease();
+			}
+		}
+	}
 }
@@ -0,0 +1,120 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.replication.v0_6.impl.BinaryChangeDecoder;
+
+
+/**
+ * A change source reading from a file in the compact binary change format
+ * produced by {@link BinaryChangeWriter}.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeReader implements RunnableChangeSource {
+
+	private static final Logger LOG = Logger.getLogger(BinaryChangeReader.class.getName());
+
+
+	private File file;
+	private InputStream stream;
+	private ChangeSink changeSink;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param file
+	 *            The file to read.
+	 */
+	public BinaryChangeReader(File file) {
+		this.file = file;
+	}
+
+
+	/**
+	 * Creates a new instance reading from a stream.
+	 *
+	 * @param stream
+	 *            The stream to read. It is closed once reading completes.
+	 */
+	public BinaryChangeReader(InputStream stream) {
+		this.stream = stream;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setChangeSink(ChangeSink changeSink) {
+		this.changeSink = changeSink;
+	}
+
+
+	/**
+	 * Reads all data from the file and sends it to the sink.
+	 */
+	@Override
+	public void run() {
+		InputStream inputStream = null;
+
+		try {
+			BinaryChangeDecoder decoder;
+			List<ChangeContainer> changes;
+
+			changeSink.initialize(Collections.<String, Object>emptyMap());
+
+			if (stream != null) {
+				inputStream = stream;
+			} else {
+				inputStream = new FileInputStream(file);
+			}
+			inputStream = new BufferedInputStream(inputStream, 65536);
+
+			decoder = new BinaryChangeDecoder(inputStream);
+			while ((changes = decoder.readBlock()) != null) {
+				for (ChangeContainer change : changes) {
+					changeSink.process(change);
+				}
+			}
+
+			changeSink.complete();
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to read binary change data from " + getSourceName() + ".", e);
+		} finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException e) {
+					LOG.log(Level.SEVERE, "Unable to close input stream.", e);
+				}
+			}
+
+			changeSink.close();
+		}
+	}
+
+
+	private String getSourceName() {
+		if (file != null) {
+			return "file " + file;
+		} else {
+			return "stream";
+		}
+	}
+}
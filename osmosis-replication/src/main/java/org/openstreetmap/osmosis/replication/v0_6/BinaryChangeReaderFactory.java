@@ -0,0 +1,42 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.File;
+
+import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManagerFactory;
+import org.openstreetmap.osmosis.core.pipeline.v0_6.RunnableChangeSourceManager;
+
+
+/**
+ * The task manager factory for a binary change reader.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeReaderFactory extends TaskManagerFactory {
+	private static final String ARG_FILE_NAME = "file";
+	private static final String DEFAULT_FILE_NAME = "change.osc.bin";
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+		String fileName;
+		BinaryChangeReader task;
+
+		// Get the task arguments.
+		fileName = getStringArgument(
+			taskConfig,
+			ARG_FILE_NAME,
+			getDefaultStringArgument(taskConfig, DEFAULT_FILE_NAME)
+		);
+
+		// Build the task object.
+		task = new BinaryChangeReader(new File(fileName));
+
+		return new RunnableChangeSourceManager(taskConfig.getId(), task, taskConfig.getPipeArgs());
+	}
+}
@@ -0,0 +1,126 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.replication.v0_6.impl.BinaryChangeEncoder;
+
+
+/**
+ * A change sink writing to a file in the compact binary change format. The
+ * format is considerably cheaper to read than compressed xml and is intended
+ * for exchanging changes between osmosis instances.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeWriter implements ChangeSink {
+
+	private static final Logger LOG = Logger.getLogger(BinaryChangeWriter.class.getName());
+
+
+	private File file;
+	private boolean compress;
+	private OutputStream outputStream;
+	private BinaryChangeEncoder encoder;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param compress
+	 *            If true, the data blocks are deflate compressed.
+	 */
+	public BinaryChangeWriter(File file, boolean compress) {
+		this.file = file;
+		this.compress = compress;
+	}
+
+
+	/**
+	 * Opens the output file if it hasn't already been opened.
+	 */
+	private void initializeOutput() {
+		if (encoder == null) {
+			try {
+				outputStream = new BufferedOutputStream(new FileOutputStream(file), 65536);
+				encoder = new BinaryChangeEncoder(outputStream, compress);
+
+			} catch (IOException e) {
+				throw new OsmosisRuntimeException("Unable to open file " + file + " for writing.", e);
+			}
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize(Map<String, Object> metaData) {
+		// Do nothing.
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(ChangeContainer change) {
+		initializeOutput();
+
+		try {
+			encoder.process(change);
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write data to file " + file + ".", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void complete() {
+		// An empty file is created if no changes were received.
+		initializeOutput();
+
+		try {
+			encoder.complete();
+			outputStream.close();
+			outputStream = null;
+			encoder = null;
+
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to complete writing to file " + file + ".", e);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		if (outputStream != null) {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+				LOG.log(Level.SEVERE, "Unable to close output stream for file " + file + ".", e);
+			}
+			outputStream = null;
+		}
+		encoder = null;
+	}
+}
@@ -0,0 +1,46 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.File;
+
+import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManagerFactory;
+import org.openstreetmap.osmosis.core.pipeline.v0_6.ChangeSinkManager;
+
+
+/**
+ * The task manager factory for a binary change writer.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeWriterFactory extends TaskManagerFactory {
+	private static final String ARG_FILE_NAME = "file";
+	private static final String DEFAULT_FILE_NAME = "change.osc.bin";
+	private static final String ARG_COMPRESS = "compress";
+	private static final boolean DEFAULT_COMPRESS = true;
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+		String fileName;
+		boolean compress;
+		BinaryChangeWriter task;
+
+		// Get the task arguments.
+		fileName = getStringArgument(
+			taskConfig,
+			ARG_FILE_NAME,
+			getDefaultStringArgument(taskConfig, DEFAULT_FILE_NAME)
+		);
+		compress = getBooleanArgument(taskConfig, ARG_COMPRESS, DEFAULT_COMPRESS);
+
+		// Build the task object.
+		task = new BinaryChangeWriter(new File(fileName), compress);
+
+		return new ChangeSinkManager(taskConfig.getId(), task, taskConfig.getPipeArgs());
+	}
+}
@@ -1,16 +1,9 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.replication.v0_6;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -18,13 +11,14 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
-import org.openstreetmap.osmosis.core.OsmosisConstants;
 import org.openstreetmap.osmosis.core.merge.common.ConflictResolutionMethod;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskRunner;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.core.time.DateParser;
 import org.openstreetmap.osmosis.core.util.FileBasedLock;
+import org.openstreetmap.osmosis.replication.common.ReplicationHttpClient;
 import org.openstreetmap.osmosis.replication.common.TimestampTracker;
 import org.openstreetmap.osmosis.replication.v0_6.impl.ChangesetFileNameFormatter;
 import org.openstreetmap.osmosis.replication.v0_6.impl.IntervalDownloaderConfiguration;
@@ -57,6 +51,7 @@ public class IntervalDownloader implements RunnableChangeSource {
 	private String taskId;
 	private File workingDirectory;
 	private DateParser dateParser;
+	private ReplicationHttpClient httpClient;
 	
 	
 	/**
@@ -74,6 +69,7 @@ public class IntervalDownloader implements RunnableChangeSource {
 		this.workingDirectory = workingDirectory;
 		
 		dateParser = new DateParser();
+		httpClient = new ReplicationHttpClient();
 	}
 	
 	
@@ -102,23 +98,8 @@ public class IntervalDownloader implements RunnableChangeSource {
 			throw new OsmosisRuntimeException("The server timestamp URL could not be created.", e);
 		}
 		
-		try {
-			Date result;
-			
-			URLConnection connection = timestampUrl.openConnection();
-			connection.setReadTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setConnectTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setRequestProperty("User-Agent", "Osmosis/" + OsmosisConstants.VERSION);
-			
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-				result = dateParser.parse(reader.readLine());
-			}
-			
-			return result;
-			
-		} catch (IOException e) {
-			throw new OsmosisRuntimeException("Unable to read the timestamp from the server.", e);
-		}
+		// The timestamp is held on the first line of the file.
+		return dateParser.parse(httpClient.getText(timestampUrl, false).lines().findFirst().orElse(""));
 	}
 	
 	
@@ -141,33 +122,7 @@ public class IntervalDownloader implements RunnableChangeSource {
 			throw new OsmosisRuntimeException("The server file URL could not be created.", e);
 		}
 		
-		try {
-			File outputFile;
-			
-			// Open an input stream for the changeset file on the server.
-			URLConnection connection = changesetUrl.openConnection();
-			connection.setReadTimeout(15 * 60 * 1000); // timeout 15 minutes
-			connection.setConnectTimeout(15 * 60 * 1000); // timeout 15 minutes
-			try (BufferedInputStream source = new BufferedInputStream(connection.getInputStream(), 65536)) {
-
-				// Create a temporary file to write the data to.
-				outputFile = File.createTempFile("change", null);
-				
-				// Open a output stream for the destination file.
-				try (BufferedOutputStream sink = new BufferedOutputStream(new FileOutputStream(outputFile), 65536)) {
-					// Download the file.
-					byte[] buffer = new byte[65536];
-					for (int bytesRead = source.read(buffer); bytesRead > 0; bytesRead = source.read(buffer)) {
-						sink.write(buffer, 0, bytesRead);
-					}
-				}
-			}
-			
-			return outputFile;
-			
-		} catch (IOException e) {
-			throw new OsmosisRuntimeException("Unable to read the changeset file " + fileName + " from the server.", e);
-		}
+		return httpClient.download(changesetUrl);
 	}
 	
 	
@@ -328,9 +283,7 @@ public class IntervalDownloader implements RunnableChangeSource {
 		
 		// Remove the temporary files.
 		for (File tmpFile : tmpFileList) {
-			if (!tmpFile.delete()) {
-				LOG.warning("Unable to delete file " + tmpFile.getName());
-			}
+			TempFileManager.getInstance().release(tmpFile);
 		}
 		
 		if (!tasksSuccessful) {
@@ -2,6 +2,7 @@
 package org.openstreetmap.osmosis.replication.v0_6;
 
 import java.io.File;
+import java.util.List;
 import java.util.Map;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
@@ -11,7 +12,7 @@ import org.openstreetmap.osmosis.core.sort.v0_6.ChangeSorter;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.replication.common.ReplicationState;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+import org.openstreetmap.osmosis.replication.v0_6.impl.SimplifyingChangeMerger;
 
 
 /**
@@ -25,6 +26,7 @@ import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
 public class ReplicationDownloader extends BaseReplicationDownloader implements RunnableChangeSource {
 	
 	private ChangeSorter changeSorter;
+	private ChangeSink changeSink;
 	
 	
 	/**
@@ -36,11 +38,63 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	 * 			  Set to true if you want to only replicate a single diff file from the server
 	 */
 	public ReplicationDownloader(File workingDirectory, boolean single) {
-		super(workingDirectory, single);
+		this(workingDirectory, single, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param workingDirectory
+	 *            The directory containing configuration and tracking files.
+	 * @param single
+	 * 			  Set to true if you want to only replicate a single diff file from the server
+	 * @param catchUpIntervals
+	 *            If greater than 1, up to this many replication files are merged
+	 *            in each invocation and only the final state of each changed
+	 *            entity is sent to the sink. This reduces the work required to
+	 *            apply the changes when far behind the server.
+	 */
+	public ReplicationDownloader(File workingDirectory, boolean single, int catchUpIntervals) {
+		this(workingDirectory, single, catchUpIntervals, 1, 0, 0);
+	}
+	
+	
+	/**
+	 * Creates a new instance which may perform multiple invocations within a
+	 * single run. The sink is initialised and completed once per invocation,
+	 * and only released after the final invocation.
+	 * 
+	 * @param workingDirectory
+	 *            The directory containing configuration and tracking files.
+	 * @param single
+	 * 			  Set to true if you want to only replicate a single diff file from the server
+	 * @param catchUpIntervals
+	 *            If greater than 1, up to this many replication files are merged
+	 *            in each invocation and only the final state of each changed
+	 *            entity is sent to the sink.
+	 * @param iterations
+	 *            The number of invocations to perform. 0 means infinite.
+	 * @param interval
+	 *            The minimum number of milliseconds between the start of
+	 *            consecutive invocations.
+	 * @param pollInterval
+	 *            If greater than 0, the number of milliseconds between checks
+	 *            for new server state once all available data has been
+	 *            processed.
+	 */
+	public ReplicationDownloader(File workingDirectory, boolean single, int catchUpIntervals, int iterations,
+			long interval, long pollInterval) {
+		super(workingDirectory, single, Math.max(1, catchUpIntervals), iterations, interval, pollInterval);
 		
 		// We will sort all contents prior to sending to the sink. This adds overhead that may not
 		// always be required, but provides consistent behaviour.
-		changeSorter = new ChangeSorter(new ChangeForStreamableApplierComparator());
+		changeSorter = createChangeSorter();
+	}
+	
+	
+	private ChangeSorter createChangeSorter() {
+		return new ChangeSorter(new ChangeForStreamableApplierComparator());
 	}
 	
 	
@@ -49,7 +103,8 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	 */
 	@Override
 	public void setChangeSink(ChangeSink changeSink) {
-		changeSorter.setChangeSink(changeSink);
+		this.changeSink = changeSink;
+		changeSorter.setChangeSink(createUnclosableSink(changeSink));
 	}
 
 
@@ -58,6 +113,13 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	 */
 	@Override
 	protected void processInitialize(Map<String, Object> metaData) {
+		// Sorted data cannot be discarded so each invocation after the first requires a new sorter.
+		// The sink is closed by this class instead of the sorter so that it survives between them.
+		if (changeSorter == null) {
+			changeSorter = createChangeSorter();
+			changeSorter.setChangeSink(createUnclosableSink(changeSink));
+		}
+		
 		changeSorter.initialize(metaData);
 	}
 
@@ -83,10 +145,41 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected void processChangeset(XmlChangeReader xmlReader, ReplicationState replicationState) {
-		final ChangeSink localChangeSink = changeSorter;
+	protected void processChangeset(RunnableChangeSource changeReader, ReplicationState replicationState) {
+		changeReader.setChangeSink(createSuppressingSink(changeSorter));
 		
-		xmlReader.setChangeSink(new ChangeSink() {
+		changeReader.run();
+	}
+	
+	
+	/**
+	 * Merges the changesets into a single change containing the final state of
+	 * each entity. The merged changes are already sorted so they bypass the
+	 * sorter used for individual changesets.
+	 * 
+	 * @param changeReaders
+	 *            The changeset readers in sequence order.
+	 * @param replicationStates
+	 *            The replication states associated with each changeset.
+	 */
+	@Override
+	protected void processChangesets(List<RunnableChangeSource> changeReaders,
+			List<ReplicationState> replicationStates) {
+		SimplifyingChangeMerger changeMerger;
+		
+		changeMerger = new SimplifyingChangeMerger(changeReaders);
+		changeMerger.setChangeSink(createSuppressingSink(changeSink));
+		
+		changeMerger.run();
+	}
+	
+	
+	/**
+	 * Creates a sink passing changes to the target without the lifecycle
+	 * calls, which are invoked once for all changesets instead.
+	 */
+	private ChangeSink createSuppressingSink(final ChangeSink localChangeSink) {
+		return new ChangeSink() {
 			private ChangeSink suppressedChangeSink = localChangeSink;
 
 			@Override
@@ -104,9 +197,41 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 			@Override
 			public void close() {
 				// Suppress the call.
-			} });
-		
-		xmlReader.run();
+			} };
+	}
+
+
+	/**
+	 * Creates a sink passing all calls to the target except close.
+	 */
+	private ChangeSink createUnclosableSink(final ChangeSink localChangeSink) {
+		return new ChangeSink() {
+			private ChangeSink unclosableChangeSink = localChangeSink;
+
+			@Override
+			public void initialize(Map<String, Object> metaData) {
+				unclosableChangeSink.initialize(metaData);
+			}
+			@Override
+			public void process(ChangeContainer change) {
+				unclosableChangeSink.process(change);
+			}
+			@Override
+			public void complete() {
+				unclosableChangeSink.complete();
+			}
+			@Override
+			public void close() {
+				// Suppress the call.
+			} };
+	}
+
+
+	private void releaseChangeSorter() {
+		if (changeSorter != null) {
+			changeSorter.close();
+			changeSorter = null;
+		}
 	}
 
 
@@ -116,6 +241,9 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	@Override
 	protected void processComplete() {
 		changeSorter.complete();
+		
+		// Release the sorted data now rather than holding it until the next invocation.
+		releaseChangeSorter();
 	}
 
 
@@ -124,6 +252,8 @@ public class ReplicationDownloader extends BaseReplicationDownloader implements
 	 */
 	@Override
 	protected void processRelease() {
-		changeSorter.close();
+		releaseChangeSorter();
+		
+		changeSink.close();
 	}
 }
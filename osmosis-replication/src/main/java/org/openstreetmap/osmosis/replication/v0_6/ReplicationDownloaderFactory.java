@@ -11,6 +11,14 @@ import org.openstreetmap.osmosis.core.pipeline.v0_6.RunnableChangeSourceManager;
 public class ReplicationDownloaderFactory extends WorkingTaskManagerFactory {
 	private static final String ARG_SINGLE = "single";
 	private static final boolean DEFAULT_SINGLE = false;
+	private static final String ARG_CATCH_UP_INTERVALS = "catchUpIntervals";
+	private static final int DEFAULT_CATCH_UP_INTERVALS = 0;
+	private static final String ARG_ITERATIONS = "iterations";
+	private static final int DEFAULT_ITERATIONS = 1;
+	private static final String ARG_INTERVAL = "interval";
+	private static final int DEFAULT_INTERVAL = 60;
+	private static final String ARG_POLL_INTERVAL = "pollInterval";
+	private static final int DEFAULT_POLL_INTERVAL = 0;
 	
 	/**
 	 * {@inheritDoc}
@@ -18,12 +26,20 @@ public class ReplicationDownloaderFactory extends WorkingTaskManagerFactory {
 	@Override
 	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
 		boolean single = getBooleanArgument(taskConfig, ARG_SINGLE, DEFAULT_SINGLE);	
+		int catchUpIntervals = getIntegerArgument(taskConfig, ARG_CATCH_UP_INTERVALS, DEFAULT_CATCH_UP_INTERVALS);
+		int iterations = getIntegerArgument(taskConfig, ARG_ITERATIONS, DEFAULT_ITERATIONS);
+		int interval = getIntegerArgument(taskConfig, ARG_INTERVAL, DEFAULT_INTERVAL);
+		int pollInterval = getIntegerArgument(taskConfig, ARG_POLL_INTERVAL, DEFAULT_POLL_INTERVAL);
 
 		return new RunnableChangeSourceManager(
 			taskConfig.getId(),
 			new ReplicationDownloader(
 				this.getWorkingDirectory(taskConfig),
-				single
+				single,
+				catchUpIntervals,
+				iterations,
+				interval * 1000L,
+				pollInterval * 1000L
 			),
 			taskConfig.getPipeArgs()
 		);
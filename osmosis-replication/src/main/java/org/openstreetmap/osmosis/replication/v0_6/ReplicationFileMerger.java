@@ -10,13 +10,13 @@ import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
 import org.openstreetmap.osmosis.core.sort.v0_6.ChangeForStreamableApplierComparator;
 import org.openstreetmap.osmosis.core.sort.v0_6.ChangeSorter;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.replication.common.FileReplicationStore;
+import org.openstreetmap.osmosis.replication.common.ReplicationDataFormat;
 import org.openstreetmap.osmosis.replication.common.ReplicationState;
 import org.openstreetmap.osmosis.replication.common.ReplicationStore;
 import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationDownloaderConfiguration;
 import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationFileMergerConfiguration;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
 
 
 /**
@@ -47,13 +47,29 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 	 */
 	public ReplicationFileMerger(File workingDirectory, boolean single) {
 		super(workingDirectory, single);
-		
-		replicationStore = new FileReplicationStore(new File(getWorkingDirectory(), DATA_DIRECTORY), true);
 
 		sinkActive = false;
 	}
 
 
+	/**
+	 * Gets the store for the merged files, creating it on first use. Merged
+	 * files are written in the same format as the files being merged.
+	 */
+	private ReplicationStore getReplicationStore() {
+		if (replicationStore == null) {
+			ReplicationDataFormat dataFormat;
+
+			dataFormat = new ReplicationDownloaderConfiguration(
+					new File(getWorkingDirectory(), CONFIG_FILE)).getDataFormat();
+			replicationStore =
+					new FileReplicationStore(new File(getWorkingDirectory(), DATA_DIRECTORY), true, dataFormat);
+		}
+
+		return replicationStore;
+	}
+
+
 	private Date alignDateToIntervalBoundary(Date requestedDate, long intervalLength) {
 		long remainder;
 
@@ -77,7 +93,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 		long intervalLength;
 
 		// Read the current persisted state.
-		currentDataState = replicationStore.getCurrentState();
+		currentDataState = getReplicationStore().getCurrentState();
 
 		// Get the default maximum timestamp according to base calculations.
 		maximumTimestamp = super.calculateMaximumTimestamp(configuration, serverTimestamp, localTimestamp);
@@ -120,22 +136,22 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 
 
 	private ChangeSink buildResultWriter(long sequenceNumber) {
-		XmlChangeWriter xmlChangeWriter;
+		ChangeSink changeWriter;
 		ChangeSorter changeSorter;
 
-		xmlChangeWriter = replicationStore.saveData(sequenceNumber);
+		changeWriter = getReplicationStore().saveData(sequenceNumber);
 
 		changeSorter = new ChangeSorter(new ChangeForStreamableApplierComparator());
-		changeSorter.setChangeSink(xmlChangeWriter);
+		changeSorter.setChangeSink(changeWriter);
 
 		return changeSorter;
 	}
 
 
-	private void writeChangeset(XmlChangeReader xmlReader) {
+	private void writeChangeset(RunnableChangeSource changeReader) {
 		final ChangeSink localChangeSink = changeSink;
 
-		xmlReader.setChangeSink(new ChangeSink() {
+		changeReader.setChangeSink(new ChangeSink() {
 			private ChangeSink suppressedWriter = localChangeSink;
 
 
@@ -163,7 +179,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 			}
 		});
 
-		xmlReader.run();
+		changeReader.run();
 	}
 
 
@@ -214,7 +230,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 		currentDataState = new ReplicationState(alignedDate, 0);
 
 		// Write out the initial "0" state file.
-		replicationStore.saveState(currentDataState);
+		getReplicationStore().saveState(currentDataState);
 	}
 
 
@@ -222,7 +238,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected void processChangeset(XmlChangeReader xmlReader, ReplicationState replicationState) {
+	protected void processChangeset(RunnableChangeSource changeReader, ReplicationState replicationState) {
 		int intervalLength;
 		ReplicationFileMergerConfiguration configuration;
 
@@ -268,7 +284,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 				changeSink.complete();
 				changeSink.close();
 
-				replicationStore.saveState(currentDataState);
+				getReplicationStore().saveState(currentDataState);
 
 				// Update the state to match the next interval.
 				currentDataState.setSequenceNumber(currentDataState.getSequenceNumber() + 1);
@@ -290,7 +306,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 		}
 
 		// Write the changeset to the writer.
-		writeChangeset(xmlReader);
+		writeChangeset(changeReader);
 
 		// We are guaranteed to have an active writer at this point.
 		sinkActive = true;
@@ -305,7 +321,7 @@ public class ReplicationFileMerger extends BaseReplicationDownloader {
 		if (sinkActive) {
 			LOG.finer("Closing change sink for interval with sequence number " + currentDataState.getSequenceNumber());
 			changeSink.complete();
-			replicationStore.saveState(currentDataState);
+			getReplicationStore().saveState(currentDataState);
 
 			changeSink.close();
 			changeSink = null;
@@ -0,0 +1,246 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.task.common.RunnableTask;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Serves the files of a replication directory over HTTP so that other
+ * replication consumers on the local network can use it as their base URL
+ * instead of each downloading the same files from the public server. The
+ * directory is served read-only and the task runs until it is interrupted.
+ *
+ * @author Brett Henderson
+ */
+public class ReplicationFileServer implements RunnableTask {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationFileServer.class.getName());
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+
+	private File rootDirectory;
+	private String host;
+	private int port;
+	private int threadCount;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param rootDirectory
+	 *            The replication directory to be served.
+	 * @param host
+	 *            The address to listen on, or null to listen on all
+	 *            interfaces.
+	 * @param port
+	 *            The port to listen on.
+	 * @param threadCount
+	 *            The number of requests that may be handled concurrently.
+	 */
+	public ReplicationFileServer(File rootDirectory, String host, int port, int threadCount) {
+		if (threadCount < 1) {
+			throw new OsmosisRuntimeException(
+					"The thread count must be at least 1, " + threadCount + " was specified.");
+		}
+
+		this.rootDirectory = rootDirectory;
+		this.host = host;
+		this.port = port;
+		this.threadCount = threadCount;
+	}
+
+
+	/**
+	 * Resolves a request path to a file within the root directory.
+	 *
+	 * @param requestUri
+	 *            The requested URI.
+	 * @return The file, or null if the path refers to a location outside the
+	 *         root directory or isn't a regular file.
+	 * @throws IOException
+	 *             if the path cannot be resolved.
+	 */
+	private File resolveFile(URI requestUri) throws IOException {
+		String path;
+		File root;
+		File file;
+
+		path = requestUri.getPath();
+		if (path == null) {
+			return null;
+		}
+
+		root = rootDirectory.getCanonicalFile();
+		file = new File(root, path).getCanonicalFile();
+
+		// Reject any path escaping the root directory such as those containing "..".
+		if (!file.toPath().startsWith(root.toPath()) || !file.isFile()) {
+			return null;
+		}
+
+		return file;
+	}
+
+
+	private static String getContentType(File file) {
+		String name;
+
+		name = file.getName();
+
+		if (name.endsWith(".txt")) {
+			return "text/plain; charset=UTF-8";
+		} else if (name.endsWith(".gz")) {
+			return "application/gzip";
+		} else {
+			return "application/octet-stream";
+		}
+	}
+
+
+	private static SimpleDateFormat createDateFormat() {
+		SimpleDateFormat dateFormat;
+
+		dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		return dateFormat;
+	}
+
+
+	/**
+	 * Determines if the client already holds the current version of a file.
+	 */
+	private static boolean isNotModified(HttpExchange exchange, long lastModified) {
+		String ifModifiedSince;
+
+		ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+		if (ifModifiedSince == null) {
+			return false;
+		}
+
+		try {
+			// HTTP dates have a resolution of one second.
+			return lastModified / 1000 <= createDateFormat().parse(ifModifiedSince).getTime() / 1000;
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method;
+			boolean head;
+			File file;
+			long lastModified;
+
+			method = exchange.getRequestMethod();
+			head = "HEAD".equals(method);
+			if (!head && !"GET".equals(method)) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			file = resolveFile(exchange.getRequestURI());
+			if (file == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			lastModified = file.lastModified();
+			exchange.getResponseHeaders().set("Last-Modified", createDateFormat().format(new Date(lastModified)));
+
+			if (isNotModified(exchange, lastModified)) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", getContentType(file));
+
+			if (head) {
+				exchange.getResponseHeaders().set("Content-Length", Long.toString(file.length()));
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				exchange.sendResponseHeaders(200, file.length());
+				try (OutputStream outputStream = exchange.getResponseBody()) {
+					Files.copy(file.toPath(), outputStream);
+				}
+			}
+
+		} catch (IOException e) {
+			LOG.log(Level.FINE, "Unable to serve request for " + exchange.getRequestURI() + ".", e);
+			throw e;
+		} finally {
+			exchange.close();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		HttpServer server;
+		ExecutorService executor;
+		InetSocketAddress address;
+
+		if (!rootDirectory.isDirectory()) {
+			throw new OsmosisRuntimeException("Replication directory " + rootDirectory + " does not exist.");
+		}
+
+		if (host == null) {
+			address = new InetSocketAddress(port);
+		} else {
+			address = new InetSocketAddress(host, port);
+		}
+
+		try {
+			server = HttpServer.create(address, 0);
+		} catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to listen on " + address + ".", e);
+		}
+
+		executor = Executors.newFixedThreadPool(threadCount);
+
+		try {
+			server.createContext("/", this::handle);
+			server.setExecutor(executor);
+			server.start();
+
+			LOG.info("Serving replication directory " + rootDirectory + " on " + server.getAddress() + ".");
+
+			// Requests are handled by the executor threads, this thread waits until interrupted.
+			new CountDownLatch(1).await();
+
+		} catch (InterruptedException e) {
+			LOG.info("Replication file server interrupted, shutting down.");
+			Thread.currentThread().interrupt();
+		} finally {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+}
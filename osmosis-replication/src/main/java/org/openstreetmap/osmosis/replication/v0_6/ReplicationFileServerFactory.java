@@ -0,0 +1,47 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import org.openstreetmap.osmosis.core.pipeline.common.RunnableTaskManager;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
+
+
+/**
+ * The task manager factory for a replication file server.
+ * 
+ * @author Brett Henderson
+ */
+public class ReplicationFileServerFactory extends WorkingTaskManagerFactory {
+	private static final String ARG_HOST = "host";
+	private static final String ARG_PORT = "port";
+	private static final String ARG_THREADS = "threads";
+	private static final String DEFAULT_HOST = "";
+	private static final int DEFAULT_PORT = 8080;
+	private static final int DEFAULT_THREADS = 4;
+	
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+		String host;
+		int port;
+		int threads;
+		
+		host = getStringArgument(taskConfig, ARG_HOST, DEFAULT_HOST);
+		port = getIntegerArgument(taskConfig, ARG_PORT, DEFAULT_PORT);
+		threads = getIntegerArgument(taskConfig, ARG_THREADS, DEFAULT_THREADS);
+		
+		return new RunnableTaskManager(
+			taskConfig.getId(),
+			new ReplicationFileServer(
+				getWorkingDirectory(taskConfig),
+				host.isEmpty() ? null : host,
+				port,
+				threads
+			),
+			taskConfig.getPipeArgs()
+		);
+	}
+}
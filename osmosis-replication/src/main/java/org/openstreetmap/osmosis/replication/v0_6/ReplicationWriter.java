@@ -7,9 +7,9 @@ import java.util.Map;
 import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.replication.common.FileReplicationStore;
+import org.openstreetmap.osmosis.replication.common.ReplicationDataFormat;
 import org.openstreetmap.osmosis.replication.common.ReplicationState;
 import org.openstreetmap.osmosis.replication.common.ReplicationStore;
-import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
 
 
 /**
@@ -25,7 +25,7 @@ public class ReplicationWriter implements ChangeSink {
 	private ReplicationStore replicationStore;
 	private ReplicationStateWriter stateWriter;
 	private ReplicationState state;
-	private XmlChangeWriter changeWriter;
+	private ChangeSink changeWriter;
 
 
 	/**
@@ -35,7 +35,20 @@ public class ReplicationWriter implements ChangeSink {
 	 *            The directory containing configuration and tracking files.
 	 */
 	public ReplicationWriter(File workingDirectory) {
-		replicationStore = new FileReplicationStore(workingDirectory, false);
+		this(workingDirectory, ReplicationDataFormat.Xml);
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param workingDirectory
+	 *            The directory containing configuration and tracking files.
+	 * @param dataFormat
+	 *            The format to write replication files in.
+	 */
+	public ReplicationWriter(File workingDirectory, ReplicationDataFormat dataFormat) {
+		replicationStore = new FileReplicationStore(workingDirectory, false, dataFormat);
 		stateWriter = new ReplicationStateWriter(workingDirectory);
 	}
 
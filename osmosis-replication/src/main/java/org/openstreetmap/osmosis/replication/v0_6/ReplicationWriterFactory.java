@@ -4,21 +4,30 @@ package org.openstreetmap.osmosis.replication.v0_6;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskConfiguration;
 import org.openstreetmap.osmosis.core.pipeline.common.TaskManager;
 import org.openstreetmap.osmosis.core.pipeline.v0_6.ChangeSinkManager;
+import org.openstreetmap.osmosis.replication.common.ReplicationDataFormat;
 
 
 /**
  * The task manager factory for a replication file downloader.
  */
 public class ReplicationWriterFactory extends WorkingTaskManagerFactory {
+	private static final String ARG_DATA_FORMAT = "dataFormat";
+	private static final String DEFAULT_DATA_FORMAT = "xml";
+
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	protected TaskManager createTaskManagerImpl(TaskConfiguration taskConfig) {
+		ReplicationDataFormat dataFormat;
+
+		dataFormat = ReplicationDataFormat.forName(
+				getStringArgument(taskConfig, ARG_DATA_FORMAT, DEFAULT_DATA_FORMAT));
+
 		return new ChangeSinkManager(
 				taskConfig.getId(),
-				new ReplicationWriter(this.getWorkingDirectory(taskConfig)),
+				new ReplicationWriter(this.getWorkingDirectory(taskConfig), dataFormat),
 				taskConfig.getPipeArgs());
 	}
 }
@@ -0,0 +1,405 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
+
+
+/**
+ * Reads changes from a stream using the binary change format described by
+ * {@link BinaryChangeFormat}. Changes are decoded one block at a time.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeDecoder {
+
+	private DataInputStream input;
+	private boolean complete;
+	private byte[] data;
+	private int position;
+	private String[] strings;
+	private long[] lastIds;
+	private int lastLatitude;
+	private int lastLongitude;
+	private long lastTimestamp;
+	private long lastChangesetId;
+	private int lastUserId;
+
+
+	/**
+	 * Creates a new instance. The file header is read and validated
+	 * immediately.
+	 *
+	 * @param input
+	 *            The stream to read from. It is not closed by this class.
+	 * @throws IOException
+	 *             if the header cannot be read.
+	 */
+	public BinaryChangeDecoder(InputStream input) throws IOException {
+		byte[] magic;
+		long version;
+
+		this.input = new DataInputStream(input);
+
+		magic = new byte[BinaryChangeFormat.MAGIC.length];
+		this.input.readFully(magic);
+		if (!Arrays.equals(magic, BinaryChangeFormat.MAGIC)) {
+			throw new OsmosisRuntimeException("The data is not in the binary change format.");
+		}
+
+		version = readUnsigned(this.input);
+		if (version != BinaryChangeFormat.VERSION) {
+			throw new OsmosisRuntimeException("Binary change format version " + version + " is not supported.");
+		}
+	}
+
+
+	/**
+	 * Reads an unsigned varint from a stream.
+	 *
+	 * @param in
+	 *            The source stream.
+	 * @return The value.
+	 * @throws IOException
+	 *             if the value cannot be read.
+	 */
+	private static long readUnsigned(InputStream in) throws IOException {
+		long result;
+		int shift;
+		int b;
+
+		result = 0;
+		shift = 0;
+		do {
+			b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			if (shift > 63) {
+				throw new OsmosisRuntimeException("Malformed varint in binary change data.");
+			}
+			result |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return result;
+	}
+
+
+	private int readByte() {
+		if (position >= data.length) {
+			throw new OsmosisRuntimeException("Binary change block ended unexpectedly.");
+		}
+
+		return data[position++] & 0xFF;
+	}
+
+
+	private long readUnsigned() {
+		long result;
+		int shift;
+		int b;
+
+		result = 0;
+		shift = 0;
+		do {
+			b = readByte();
+			if (shift > 63) {
+				throw new OsmosisRuntimeException("Malformed varint in binary change data.");
+			}
+			result |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return result;
+	}
+
+
+	private int readLength() {
+		long value;
+
+		value = readUnsigned();
+		if (value < 0 || value > data.length) {
+			throw new OsmosisRuntimeException("Invalid length " + value + " in binary change block.");
+		}
+
+		return (int) value;
+	}
+
+
+	private long readSigned() {
+		long value;
+
+		value = readUnsigned();
+
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+
+	private String readString() {
+		long index;
+
+		index = readUnsigned();
+		if (index < 0 || index >= strings.length) {
+			throw new OsmosisRuntimeException("Invalid string index " + index + " in binary change block.");
+		}
+
+		return strings[(int) index];
+	}
+
+
+	/**
+	 * Reads the next block of changes.
+	 *
+	 * @return The changes, or null if the end of the file has been reached.
+	 * @throws IOException
+	 *             if the block cannot be read.
+	 */
+	public List<ChangeContainer> readBlock() throws IOException {
+		int blockType;
+		int rawLength;
+		int storedLength;
+		int expectedChecksum;
+		byte[] storedData;
+		CRC32 checksum;
+		int stringCount;
+		int changeCount;
+		List<ChangeContainer> changes;
+
+		if (complete) {
+			return null;
+		}
+
+		blockType = input.read();
+		if (blockType < 0) {
+			throw new OsmosisRuntimeException("The binary change data is truncated, no end marker was found.");
+		}
+		if (blockType == BinaryChangeFormat.BLOCK_END) {
+			complete = true;
+			return null;
+		}
+		if (blockType != BinaryChangeFormat.BLOCK_RAW && blockType != BinaryChangeFormat.BLOCK_DEFLATED) {
+			throw new OsmosisRuntimeException("Binary change block type " + blockType + " is not recognised.");
+		}
+
+		rawLength = toLength(readUnsigned(input));
+		storedLength = toLength(readUnsigned(input));
+		expectedChecksum = input.readInt();
+		storedData = new byte[storedLength];
+		input.readFully(storedData);
+
+		if (blockType == BinaryChangeFormat.BLOCK_DEFLATED) {
+			data = inflate(storedData, rawLength);
+		} else {
+			data = storedData;
+		}
+
+		checksum = new CRC32();
+		checksum.update(data);
+		if ((int) checksum.getValue() != expectedChecksum) {
+			throw new OsmosisRuntimeException("Binary change block checksum mismatch, the data is corrupt.");
+		}
+
+		position = 0;
+		stringCount = readLength();
+		strings = new String[stringCount];
+		for (int i = 0; i < stringCount; i++) {
+			int length;
+
+			length = readLength();
+			if (position + length > data.length) {
+				throw new OsmosisRuntimeException("Binary change block ended unexpectedly.");
+			}
+			strings[i] = new String(data, position, length, StandardCharsets.UTF_8);
+			position += length;
+		}
+
+		lastIds = new long[3];
+		lastLatitude = 0;
+		lastLongitude = 0;
+		lastTimestamp = 0;
+		lastChangesetId = 0;
+		lastUserId = 0;
+
+		changeCount = readLength();
+		changes = new ArrayList<ChangeContainer>(changeCount);
+		for (int i = 0; i < changeCount; i++) {
+			changes.add(readChange());
+		}
+
+		return changes;
+	}
+
+
+	private static int toLength(long value) {
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new OsmosisRuntimeException("Invalid binary change block length " + value + ".");
+		}
+
+		return (int) value;
+	}
+
+
+	private static byte[] inflate(byte[] storedData, int rawLength) {
+		Inflater inflater;
+		byte[] result;
+
+		inflater = new Inflater();
+		try {
+			inflater.setInput(storedData);
+			result = new byte[rawLength];
+			if (inflater.inflate(result) != rawLength || !inflater.finished()) {
+				throw new OsmosisRuntimeException("Binary change block did not decompress to the expected size.");
+			}
+
+			return result;
+
+		} catch (DataFormatException e) {
+			throw new OsmosisRuntimeException("Unable to decompress binary change block.", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+
+	private ChangeContainer readChange() {
+		int header;
+		ChangeAction action;
+		EntityType type;
+		int typeCode;
+		long id;
+		int version;
+		Date timestamp;
+		long changesetId;
+		OsmUser user;
+		int tagCount;
+		List<Tag> tags;
+		CommonEntityData entityData;
+
+		header = readByte();
+		action = BinaryChangeFormat.getAction(header & 0x03);
+		typeCode = (header >> 2) & 0x03;
+		type = BinaryChangeFormat.getType(typeCode);
+
+		id = lastIds[typeCode] + readSigned();
+		lastIds[typeCode] = id;
+
+		version = (int) readSigned();
+
+		if ((header & BinaryChangeFormat.FLAG_TIMESTAMP) != 0) {
+			lastTimestamp += readSigned();
+			timestamp = new Date(lastTimestamp);
+		} else {
+			timestamp = null;
+		}
+
+		lastChangesetId += readSigned();
+		changesetId = lastChangesetId;
+
+		if ((header & BinaryChangeFormat.FLAG_USER) != 0) {
+			lastUserId += (int) readSigned();
+			user = new OsmUser(lastUserId, readString());
+		} else {
+			user = OsmUser.NONE;
+		}
+
+		tagCount = readLength();
+		tags = new ArrayList<Tag>(tagCount);
+		for (int i = 0; i < tagCount; i++) {
+			String key;
+
+			key = readString();
+			tags.add(new Tag(key, readString()));
+		}
+
+		entityData = new CommonEntityData(id, version, timestamp, user, changesetId, tags);
+
+		switch (type) {
+		case Node:
+			return new ChangeContainer(new NodeContainer(readNode(entityData, header)), action);
+		case Way:
+			return new ChangeContainer(new WayContainer(readWay(entityData)), action);
+		default:
+			return new ChangeContainer(new RelationContainer(readRelation(entityData)), action);
+		}
+	}
+
+
+	private Node readNode(CommonEntityData entityData, int header) {
+		if ((header & BinaryChangeFormat.FLAG_COORDINATES) != 0) {
+			lastLatitude += (int) readSigned();
+			lastLongitude += (int) readSigned();
+
+			return new Node(entityData, FixedPrecisionCoordinateConvertor.convertToDouble(lastLatitude),
+					FixedPrecisionCoordinateConvertor.convertToDouble(lastLongitude));
+		} else {
+			return new Node(entityData, Double.NaN, Double.NaN);
+		}
+	}
+
+
+	private Way readWay(CommonEntityData entityData) {
+		int wayNodeCount;
+		List<WayNode> wayNodes;
+		long nodeId;
+
+		wayNodeCount = readLength();
+		wayNodes = new ArrayList<WayNode>(wayNodeCount);
+		nodeId = 0;
+		for (int i = 0; i < wayNodeCount; i++) {
+			nodeId += readSigned();
+			wayNodes.add(new WayNode(nodeId));
+		}
+
+		return new Way(entityData, wayNodes);
+	}
+
+
+	private Relation readRelation(CommonEntityData entityData) {
+		int memberCount;
+		List<RelationMember> members;
+		long memberId;
+
+		memberCount = readLength();
+		members = new ArrayList<RelationMember>(memberCount);
+		memberId = 0;
+		for (int i = 0; i < memberCount; i++) {
+			EntityType memberType;
+			String memberRole;
+
+			memberType = BinaryChangeFormat.getType((int) readUnsigned());
+			memberRole = readString();
+			memberId += readSigned();
+			members.add(new RelationMember(memberId, memberType, memberRole));
+		}
+
+		return new Relation(entityData, members);
+	}
+}
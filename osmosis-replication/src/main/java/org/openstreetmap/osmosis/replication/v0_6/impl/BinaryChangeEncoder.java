@@ -0,0 +1,381 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityProcessor;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.util.FixedPrecisionCoordinateConvertor;
+
+
+/**
+ * Writes changes to a stream using the binary change format described by
+ * {@link BinaryChangeFormat}. Changes are buffered until a block is full.
+ *
+ * @author Brett Henderson
+ */
+public class BinaryChangeEncoder implements EntityProcessor {
+
+	private DataOutputStream output;
+	private boolean compress;
+	private List<ChangeContainer> changes;
+	private Map<String, Integer> stringIndexes;
+	private List<String> strings;
+	private ByteArrayOutputStream body;
+	private ChangeAction currentAction;
+	private long[] lastIds;
+	private int lastLatitude;
+	private int lastLongitude;
+	private long lastTimestamp;
+	private long lastChangesetId;
+	private int lastUserId;
+	private int entityCount;
+
+
+	/**
+	 * Creates a new instance. The file header is written immediately.
+	 *
+	 * @param output
+	 *            The stream to write to. It is not closed by this class.
+	 * @param compress
+	 *            If true, each block is deflate compressed.
+	 * @throws IOException
+	 *             if the header cannot be written.
+	 */
+	public BinaryChangeEncoder(OutputStream output, boolean compress) throws IOException {
+		ByteArrayOutputStream header;
+
+		this.output = new DataOutputStream(output);
+		this.compress = compress;
+
+		changes = new ArrayList<ChangeContainer>(BinaryChangeFormat.MAX_BLOCK_CHANGES);
+		stringIndexes = new HashMap<String, Integer>();
+		strings = new ArrayList<String>();
+		body = new ByteArrayOutputStream();
+		lastIds = new long[3];
+
+		header = new ByteArrayOutputStream();
+		header.write(BinaryChangeFormat.MAGIC, 0, BinaryChangeFormat.MAGIC.length);
+		writeUnsigned(header, BinaryChangeFormat.VERSION);
+		header.writeTo(this.output);
+	}
+
+
+	/**
+	 * Writes an unsigned varint.
+	 *
+	 * @param out
+	 *            The destination buffer.
+	 * @param value
+	 *            The value to write, treated as unsigned.
+	 */
+	private static void writeUnsigned(ByteArrayOutputStream out, long value) {
+		long remaining = value;
+
+		while ((remaining & ~0x7FL) != 0) {
+			out.write((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		out.write((int) remaining);
+	}
+
+
+	private void writeUnsigned(long value) {
+		writeUnsigned(body, value);
+	}
+
+
+	private void writeSigned(long value) {
+		writeUnsigned((value << 1) ^ (value >> 63));
+	}
+
+
+	private void writeString(String value) {
+		Integer index;
+
+		index = stringIndexes.get(value);
+		if (index == null) {
+			index = strings.size();
+			strings.add(value);
+			stringIndexes.put(value, index);
+		}
+
+		writeUnsigned(index);
+	}
+
+
+	/**
+	 * Adds a change to the current block, writing the block if it is full.
+	 *
+	 * @param change
+	 *            The change to be written.
+	 * @throws IOException
+	 *             if a block cannot be written.
+	 */
+	public void process(ChangeContainer change) throws IOException {
+		changes.add(change);
+
+		if (changes.size() >= BinaryChangeFormat.MAX_BLOCK_CHANGES) {
+			flush();
+		}
+	}
+
+
+	/**
+	 * Writes any buffered changes followed by the end of file marker.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written.
+	 */
+	public void complete() throws IOException {
+		flush();
+
+		output.write(BinaryChangeFormat.BLOCK_END);
+		output.flush();
+	}
+
+
+	private void writeEntity(Entity entity, int typeFlags) {
+		int typeCode;
+		int flags;
+		long timestamp;
+		OsmUser user;
+
+		entityCount++;
+
+		flags = typeFlags;
+		typeCode = BinaryChangeFormat.getTypeCode(entity.getType());
+		if (entity.getTimestamp() != null) {
+			flags |= BinaryChangeFormat.FLAG_TIMESTAMP;
+		}
+		user = entity.getUser();
+		if (user != null && !OsmUser.NONE.equals(user)) {
+			flags |= BinaryChangeFormat.FLAG_USER;
+		}
+
+		body.write(BinaryChangeFormat.getActionCode(currentAction) | (typeCode << 2) | flags);
+
+		writeSigned(entity.getId() - lastIds[typeCode]);
+		lastIds[typeCode] = entity.getId();
+
+		writeSigned(entity.getVersion());
+
+		if ((flags & BinaryChangeFormat.FLAG_TIMESTAMP) != 0) {
+			timestamp = entity.getTimestamp().getTime();
+			writeSigned(timestamp - lastTimestamp);
+			lastTimestamp = timestamp;
+		}
+
+		writeSigned(entity.getChangesetId() - lastChangesetId);
+		lastChangesetId = entity.getChangesetId();
+
+		if ((flags & BinaryChangeFormat.FLAG_USER) != 0) {
+			writeSigned((long) user.getId() - lastUserId);
+			lastUserId = user.getId();
+			writeString(user.getName());
+		}
+
+		writeUnsigned(entity.getTags().size());
+		for (Tag tag : entity.getTags()) {
+			writeString(tag.getKey());
+			writeString(tag.getValue());
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(BoundContainer bound) {
+		// Bounds have no meaning within a change and are not stored.
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(NodeContainer nodeContainer) {
+		Node node;
+		boolean hasCoordinates;
+
+		node = nodeContainer.getEntity();
+
+		// Deleted nodes may be supplied without coordinates.
+		hasCoordinates = !Double.isNaN(node.getLatitude()) && !Double.isNaN(node.getLongitude());
+
+		writeEntity(node, hasCoordinates ? BinaryChangeFormat.FLAG_COORDINATES : 0);
+
+		if (hasCoordinates) {
+			int latitude;
+			int longitude;
+
+			latitude = FixedPrecisionCoordinateConvertor.convertToFixed(node.getLatitude());
+			longitude = FixedPrecisionCoordinateConvertor.convertToFixed(node.getLongitude());
+
+			writeSigned((long) latitude - lastLatitude);
+			writeSigned((long) longitude - lastLongitude);
+
+			lastLatitude = latitude;
+			lastLongitude = longitude;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(WayContainer wayContainer) {
+		Way way;
+		long lastNodeId;
+
+		way = wayContainer.getEntity();
+
+		writeEntity(way, 0);
+
+		writeUnsigned(way.getWayNodes().size());
+		lastNodeId = 0;
+		for (WayNode wayNode : way.getWayNodes()) {
+			writeSigned(wayNode.getNodeId() - lastNodeId);
+			lastNodeId = wayNode.getNodeId();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(RelationContainer relationContainer) {
+		Relation relation;
+		long lastMemberId;
+
+		relation = relationContainer.getEntity();
+
+		writeEntity(relation, 0);
+
+		writeUnsigned(relation.getMembers().size());
+		lastMemberId = 0;
+		for (RelationMember member : relation.getMembers()) {
+			writeUnsigned(BinaryChangeFormat.getTypeCode(member.getMemberType()));
+			writeString(member.getMemberRole());
+			writeSigned(member.getMemberId() - lastMemberId);
+			lastMemberId = member.getMemberId();
+		}
+	}
+
+
+	/**
+	 * Writes all buffered changes as a single block.
+	 *
+	 * @throws IOException
+	 *             if the block cannot be written.
+	 */
+	private void flush() throws IOException {
+		ByteArrayOutputStream block;
+		ByteArrayOutputStream blockHeader;
+		byte[] rawData;
+		byte[] storedData;
+		int storedLength;
+		int blockType;
+		CRC32 checksum;
+
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		// Encode the changes first so that the string table is complete.
+		body.reset();
+		stringIndexes.clear();
+		strings.clear();
+		lastIds = new long[3];
+		lastLatitude = 0;
+		lastLongitude = 0;
+		lastTimestamp = 0;
+		lastChangesetId = 0;
+		lastUserId = 0;
+		entityCount = 0;
+		for (ChangeContainer change : changes) {
+			currentAction = change.getAction();
+			change.getEntityContainer().process(this);
+		}
+
+		block = new ByteArrayOutputStream(body.size() + 65536);
+		writeUnsigned(block, strings.size());
+		for (String string : strings) {
+			byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+
+			writeUnsigned(block, encoded.length);
+			block.write(encoded, 0, encoded.length);
+		}
+		writeUnsigned(block, entityCount);
+		body.writeTo(block);
+		rawData = block.toByteArray();
+
+		checksum = new CRC32();
+		checksum.update(rawData);
+
+		if (compress) {
+			Deflater deflater;
+
+			deflater = new Deflater();
+			try {
+				deflater.setInput(rawData);
+				deflater.finish();
+
+				storedData = new byte[rawData.length + 64];
+				storedLength = 0;
+				while (!deflater.finished()) {
+					if (storedLength == storedData.length) {
+						storedData = Arrays.copyOf(storedData, storedData.length * 2);
+					}
+					storedLength += deflater.deflate(storedData, storedLength, storedData.length - storedLength);
+				}
+			} finally {
+				deflater.end();
+			}
+			blockType = BinaryChangeFormat.BLOCK_DEFLATED;
+
+		} else {
+			storedData = rawData;
+			storedLength = rawData.length;
+			blockType = BinaryChangeFormat.BLOCK_RAW;
+		}
+
+		blockHeader = new ByteArrayOutputStream();
+		blockHeader.write(blockType);
+		writeUnsigned(blockHeader, rawData.length);
+		writeUnsigned(blockHeader, storedLength);
+		blockHeader.writeTo(output);
+		output.writeInt((int) checksum.getValue());
+		output.write(storedData, 0, storedLength);
+
+		changes.clear();
+	}
+}
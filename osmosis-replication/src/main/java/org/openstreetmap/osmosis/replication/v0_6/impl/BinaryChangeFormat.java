@@ -0,0 +1,167 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+
+
+/**
+ * Defines the constants of the binary change format.
+ * <p>
+ * A file begins with a 4 byte magic number followed by a varint format
+ * version. It is followed by a sequence of blocks, each beginning with a one
+ * byte block type. An end block consists of the block type only and terminates
+ * the file, allowing truncated files to be detected. Data blocks follow the
+ * block type with a varint uncompressed length, a varint stored length, a 4
+ * byte CRC32 of the uncompressed data and finally the stored data which may be
+ * deflated.
+ * <p>
+ * The uncompressed data of a block contains a string table holding every
+ * string used within the block, followed by the changes. All integers are
+ * varints and signed values are zigzag encoded. Entity ids are delta coded
+ * against the previous entity of the same type within the block, while
+ * coordinates, timestamps, changesets and user ids are delta coded against the
+ * previous entity of any type. Way node and member ids are delta coded within
+ * each entity.
+ *
+ * @author Brett Henderson
+ */
+public final class BinaryChangeFormat {
+
+	/**
+	 * The magic number identifying the file type.
+	 */
+	public static final byte[] MAGIC = {'O', 'S', 'C', 'B'};
+
+	/**
+	 * The current version of the format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The maximum number of changes to be written to a single block.
+	 */
+	public static final int MAX_BLOCK_CHANGES = 8000;
+
+	/**
+	 * The block type terminating the file.
+	 */
+	public static final int BLOCK_END = 0;
+
+	/**
+	 * The block type of data stored without compression.
+	 */
+	public static final int BLOCK_RAW = 1;
+
+	/**
+	 * The block type of deflate compressed data.
+	 */
+	public static final int BLOCK_DEFLATED = 2;
+
+	/**
+	 * The change header flag indicating that a timestamp is present.
+	 */
+	public static final int FLAG_TIMESTAMP = 0x10;
+
+	/**
+	 * The change header flag indicating that a user is present.
+	 */
+	public static final int FLAG_USER = 0x20;
+
+	/**
+	 * The change header flag indicating that node coordinates are present.
+	 */
+	public static final int FLAG_COORDINATES = 0x40;
+
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private BinaryChangeFormat() {
+	}
+
+
+	/**
+	 * Gets the code representing a change action.
+	 *
+	 * @param action
+	 *            The change action.
+	 * @return The action code.
+	 */
+	public static int getActionCode(ChangeAction action) {
+		switch (action) {
+		case Create:
+			return 0;
+		case Modify:
+			return 1;
+		case Delete:
+			return 2;
+		default:
+			throw new OsmosisRuntimeException("Change action " + action + " is not supported.");
+		}
+	}
+
+
+	/**
+	 * Gets the change action represented by a code.
+	 *
+	 * @param code
+	 *            The action code.
+	 * @return The change action.
+	 */
+	public static ChangeAction getAction(int code) {
+		switch (code) {
+		case 0:
+			return ChangeAction.Create;
+		case 1:
+			return ChangeAction.Modify;
+		case 2:
+			return ChangeAction.Delete;
+		default:
+			throw new OsmosisRuntimeException("Change action code " + code + " is not recognised.");
+		}
+	}
+
+
+	/**
+	 * Gets the code representing an entity type.
+	 *
+	 * @param type
+	 *            The entity type.
+	 * @return The type code.
+	 */
+	public static int getTypeCode(EntityType type) {
+		switch (type) {
+		case Node:
+			return 0;
+		case Way:
+			return 1;
+		case Relation:
+			return 2;
+		default:
+			throw new OsmosisRuntimeException("Entity type " + type + " is not supported.");
+		}
+	}
+
+
+	/**
+	 * Gets the entity type represented by a code.
+	 *
+	 * @param code
+	 *            The type code.
+	 * @return The entity type.
+	 */
+	public static EntityType getType(int code) {
+		switch (code) {
+		case 0:
+			return EntityType.Node;
+		case 1:
+			return EntityType.Way;
+		case 2:
+			return EntityType.Relation;
+		default:
+			throw new OsmosisRuntimeException("Entity type code " + code + " is not recognised.");
+		}
+	}
+}
@@ -8,6 +8,8 @@ import java.util.Properties;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.util.PropertiesPersister;
+import org.openstreetmap.osmosis.replication.common.ReplicationDataFormat;
+import org.openstreetmap.osmosis.replication.common.ReplicationHttpClient;
 
 
 /**
@@ -18,6 +20,19 @@ import org.openstreetmap.osmosis.core.util.PropertiesPersister;
 public class ReplicationDownloaderConfiguration {
 	private static final String KEY_BASE_URL = "baseUrl";
 	private static final String KEY_MAX_INTERVAL = "maxInterval";
+	private static final String KEY_DOWNLOAD_WINDOW_SIZE = "downloadWindowSize";
+	private static final int DEFAULT_DOWNLOAD_WINDOW_SIZE = 1;
+	private static final String KEY_CONNECT_TIMEOUT = "connectTimeout";
+	private static final String KEY_REQUEST_TIMEOUT = "requestTimeout";
+	private static final String KEY_MAX_RETRIES = "maxRetries";
+	private static final String KEY_STREAM_DOWNLOADS = "streamDownloads";
+	private static final String KEY_ARCHIVE_DIRECTORY = "archiveDirectory";
+	private static final String KEY_DATA_FORMAT = "dataFormat";
+	private static final String KEY_CACHE_DIRECTORY = "cacheDirectory";
+	private static final String KEY_CACHE_MAX_SIZE = "cacheMaxSize";
+	private static final int DEFAULT_CACHE_MAX_SIZE = 1024;
+	private static final String KEY_CACHE_MAX_AGE = "cacheMaxAge";
+	private static final int DEFAULT_CACHE_MAX_AGE = 604800;
 	
 	
 	private Properties properties;
@@ -65,4 +80,162 @@ public class ReplicationDownloaderConfiguration {
 	public int getMaxInterval() {
 		return Integer.parseInt(properties.getProperty(KEY_MAX_INTERVAL)) * 1000;
 	}
+	
+	
+	/**
+	 * Returns the maximum number of replication intervals to download
+	 * concurrently. This is optional and defaults to 1 if not specified.
+	 * 
+	 * @return The download window size.
+	 */
+	public int getDownloadWindowSize() {
+		return getOptionalInteger(KEY_DOWNLOAD_WINDOW_SIZE, DEFAULT_DOWNLOAD_WINDOW_SIZE);
+	}
+	
+	
+	/**
+	 * Returns the time in seconds to wait for a connection to the server. This
+	 * is optional.
+	 * 
+	 * @return The connect timeout.
+	 */
+	public int getConnectTimeout() {
+		return getOptionalInteger(KEY_CONNECT_TIMEOUT, ReplicationHttpClient.DEFAULT_CONNECT_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Returns the time in seconds to wait for data from the server before the
+	 * request is retried. This is optional.
+	 * 
+	 * @return The request timeout.
+	 */
+	public int getRequestTimeout() {
+		return getOptionalInteger(KEY_REQUEST_TIMEOUT, ReplicationHttpClient.DEFAULT_REQUEST_TIMEOUT);
+	}
+	
+	
+	/**
+	 * Returns the number of times a failed request is retried. This is
+	 * optional.
+	 * 
+	 * @return The maximum retry count.
+	 */
+	public int getMaxRetries() {
+		return getOptionalInteger(KEY_MAX_RETRIES, ReplicationHttpClient.DEFAULT_MAX_RETRIES);
+	}
+	
+	
+	/**
+	 * Indicates if change files should be parsed as they are downloaded
+	 * instead of being saved to temporary files first. This is optional and
+	 * defaults to false.
+	 * 
+	 * @return True if downloads should be streamed.
+	 */
+	public boolean isStreamDownloads() {
+		String streamDownloads;
+		
+		streamDownloads = properties.getProperty(KEY_STREAM_DOWNLOADS);
+		
+		return streamDownloads != null && Boolean.parseBoolean(streamDownloads.trim());
+	}
+	
+	
+	/**
+	 * Returns the directory that streamed change files should be archived to.
+	 * This is optional.
+	 * 
+	 * @return The archive directory, or null if files are not to be archived.
+	 */
+	public File getArchiveDirectory() {
+		String archiveDirectory;
+		
+		archiveDirectory = properties.getProperty(KEY_ARCHIVE_DIRECTORY);
+		
+		if (archiveDirectory == null || archiveDirectory.trim().isEmpty()) {
+			return null;
+		}
+		
+		return new File(archiveDirectory.trim());
+	}
+	
+	
+	/**
+	 * Returns the format of the change files on the server. This is optional
+	 * and defaults to xml.
+	 * 
+	 * @return The data format.
+	 */
+	public ReplicationDataFormat getDataFormat() {
+		String dataFormat;
+		
+		dataFormat = properties.getProperty(KEY_DATA_FORMAT);
+		
+		if (dataFormat == null) {
+			return ReplicationDataFormat.Xml;
+		}
+		
+		return ReplicationDataFormat.forName(dataFormat);
+	}
+	
+	
+	/**
+	 * Returns the directory of a replication file cache shared with other
+	 * consumers. This is optional.
+	 * 
+	 * @return The cache directory, or null if no cache is to be used.
+	 */
+	public File getCacheDirectory() {
+		String cacheDirectory;
+		
+		cacheDirectory = properties.getProperty(KEY_CACHE_DIRECTORY);
+		
+		if (cacheDirectory == null || cacheDirectory.trim().isEmpty()) {
+			return null;
+		}
+		
+		return new File(cacheDirectory.trim());
+	}
+	
+	
+	/**
+	 * Returns the maximum size of the replication file cache in megabytes. A
+	 * value of 0 removes the limit. This is optional and defaults to 1024.
+	 * 
+	 * @return The maximum cache size in megabytes.
+	 */
+	public int getCacheMaxSize() {
+		return getOptionalInteger(KEY_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE);
+	}
+	
+	
+	/**
+	 * Returns the time in seconds after which unused files are evicted from
+	 * the replication file cache. A value of 0 removes the limit. This is
+	 * optional and defaults to 604800 (one week).
+	 * 
+	 * @return The maximum cache entry age in seconds.
+	 */
+	public int getCacheMaxAge() {
+		return getOptionalInteger(KEY_CACHE_MAX_AGE, DEFAULT_CACHE_MAX_AGE);
+	}
+	
+	
+	private int getOptionalInteger(String key, int defaultValue) {
+		String value;
+		
+		value = properties.getProperty(key);
+		
+		if (value == null) {
+			return defaultValue;
+		}
+		
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new OsmosisRuntimeException(
+					"The configuration property " + key + " (" + value + ") is not a valid integer.", e);
+		}
+	}
 }
@@ -0,0 +1,289 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.replication.common.ReplicationState;
+
+
+/**
+ * Downloads a range of replication intervals using a bounded look-ahead
+ * window. Up to the configured number of intervals are downloaded concurrently
+ * on background threads, but intervals are always returned to the caller in
+ * strict sequence order. With a window size of one, each interval is only
+ * downloaded once the caller requests it.
+ * <p>
+ * If a maximum timestamp is specified, the state of each interval is checked
+ * before its change file is downloaded. The first interval beyond the maximum
+ * is returned without a file and no later intervals are requested, so files
+ * are never downloaded only to be discarded. The first interval in the range
+ * is always downloaded, allowing progress when a single interval exceeds the
+ * maximum.
+ *
+ * @author Brett Henderson
+ */
+public class ReplicationFilePrefetcher implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationFilePrefetcher.class.getName());
+
+
+	private LongFunction<ReplicationState> stateLoader;
+	private LongFunction<File> fileLoader;
+	private long firstSequenceNumber;
+	private long nextSequenceNumber;
+	private long lastSequenceNumber;
+	private Date maximumTimestamp;
+	private AtomicLong limitSequenceNumber;
+	private int windowSize;
+	private ExecutorService executor;
+	private Deque<Future<DownloadedInterval>> pending;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param stateLoader
+	 *            Retrieves the state of a replication sequence from the server.
+	 * @param fileLoader
+	 *            Downloads the change file of a replication sequence into a
+	 *            temporary file. If null, only states are retrieved and the
+	 *            caller obtains change files itself.
+	 * @param firstSequenceNumber
+	 *            The first sequence number to be downloaded.
+	 * @param lastSequenceNumber
+	 *            The last sequence number to be downloaded.
+	 * @param maximumTimestamp
+	 *            The latest timestamp of intervals whose files are required, or
+	 *            null if all intervals up to the last sequence number are
+	 *            required.
+	 * @param windowSize
+	 *            The maximum number of intervals to download concurrently.
+	 */
+	public ReplicationFilePrefetcher(LongFunction<ReplicationState> stateLoader, LongFunction<File> fileLoader,
+			long firstSequenceNumber, long lastSequenceNumber, Date maximumTimestamp, int windowSize) {
+		final AtomicInteger threadCount;
+
+		if (windowSize < 1) {
+			throw new OsmosisRuntimeException("The download window size must be at least 1, "
+					+ windowSize + " was specified.");
+		}
+
+		this.stateLoader = stateLoader;
+		this.fileLoader = fileLoader;
+		this.firstSequenceNumber = firstSequenceNumber;
+		this.nextSequenceNumber = firstSequenceNumber;
+		this.lastSequenceNumber = lastSequenceNumber;
+		this.maximumTimestamp = maximumTimestamp;
+		this.windowSize = windowSize;
+
+		limitSequenceNumber = new AtomicLong(Long.MAX_VALUE);
+
+		threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(windowSize, runnable -> {
+			Thread thread;
+
+			thread = new Thread(runnable, "replication-download-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+		pending = new ArrayDeque<Future<DownloadedInterval>>();
+	}
+
+
+	private DownloadedInterval download(long sequenceNumber) {
+		ReplicationState state;
+		File file;
+
+		LOG.finer("Downloading replication sequence " + sequenceNumber + ".");
+
+		state = stateLoader.apply(sequenceNumber);
+
+		// The caller stops at the first interval beyond the maximum timestamp
+		// so neither its file nor any later interval is required.
+		if (maximumTimestamp != null && sequenceNumber != firstSequenceNumber
+				&& state.getTimestamp().compareTo(maximumTimestamp) > 0) {
+			LOG.finer("Replication sequence " + sequenceNumber + " is beyond the maximum timestamp.");
+			limitSequenceNumber.accumulateAndGet(sequenceNumber, Math::min);
+
+			return new DownloadedInterval(state, null);
+		}
+
+		if (fileLoader != null) {
+			file = fileLoader.apply(sequenceNumber);
+		} else {
+			file = null;
+		}
+
+		return new DownloadedInterval(state, file);
+	}
+
+
+	/**
+	 * Indicates if the specified sequence number may still be required.
+	 *
+	 * @param sequenceNumber
+	 *            The sequence number.
+	 * @return True if the sequence number is within range.
+	 */
+	private boolean isRequired(long sequenceNumber) {
+		return sequenceNumber <= lastSequenceNumber && sequenceNumber <= limitSequenceNumber.get();
+	}
+
+
+	/**
+	 * Starts downloads until the window is full or no more sequences remain.
+	 */
+	private void fillWindow() {
+		while (pending.size() < windowSize && isRequired(nextSequenceNumber)) {
+			final long sequenceNumber;
+
+			sequenceNumber = nextSequenceNumber++;
+			pending.add(executor.submit(() -> download(sequenceNumber)));
+		}
+	}
+
+
+	/**
+	 * Indicates if more intervals are available.
+	 *
+	 * @return True if next may be called.
+	 */
+	public boolean hasNext() {
+		// Pending downloads are always the sequence numbers immediately
+		// preceding the next to be started.
+		return isRequired(nextSequenceNumber - pending.size());
+	}
+
+
+	/**
+	 * Waits for the next interval in sequence to be downloaded. The caller
+	 * takes responsibility for deleting the returned file.
+	 *
+	 * @return The downloaded interval.
+	 */
+	public DownloadedInterval next() {
+		if (!hasNext()) {
+			throw new OsmosisRuntimeException("No more replication intervals are available.");
+		}
+
+		fillWindow();
+
+		try {
+			return pending.removeFirst().get();
+
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof OsmosisRuntimeException) {
+				throw (OsmosisRuntimeException) e.getCause();
+			}
+			throw new OsmosisRuntimeException("Unable to download the replication interval.", e.getCause());
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OsmosisRuntimeException("Interrupted while waiting for a replication download.", e);
+		}
+	}
+
+
+	/**
+	 * Stops all outstanding downloads and deletes any files downloaded but not
+	 * yet returned.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+
+		// Wait for in-progress downloads to finish so that their files can be removed.
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOG.fine("Waiting for replication downloads to stop.");
+			}
+		} catch (InterruptedException e) {
+			LOG.log(Level.WARNING, "Interrupted while waiting for replication downloads to stop.", e);
+			Thread.currentThread().interrupt();
+		}
+
+		for (Future<DownloadedInterval> future : pending) {
+			if (future.isDone() && !future.isCancelled()) {
+				try {
+					future.get().deleteFile();
+				} catch (ExecutionException | InterruptedException e) {
+					// The download failed so there is no file to clean up.
+					LOG.log(Level.FINER, "Discarding a failed replication download.", e);
+				}
+			}
+		}
+		pending.clear();
+	}
+
+
+	/**
+	 * A replication interval that has been downloaded from the server.
+	 */
+	public static class DownloadedInterval {
+		private ReplicationState state;
+		private File file;
+
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param state
+		 *            The state associated with the interval.
+		 * @param file
+		 *            The temporary file containing the interval changes, or null
+		 *            if files are not being downloaded or the interval is beyond
+		 *            the maximum timestamp.
+		 */
+		public DownloadedInterval(ReplicationState state, File file) {
+			this.state = state;
+			this.file = file;
+		}
+
+
+		/**
+		 * Gets the replication state of the interval.
+		 *
+		 * @return The replication state.
+		 */
+		public ReplicationState getState() {
+			return state;
+		}
+
+
+		/**
+		 * Gets the temporary file containing the interval changes.
+		 *
+		 * @return The change file, or null if files are not being downloaded.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+
+		/**
+		 * Deletes the temporary file.
+		 */
+		public void deleteFile() {
+			if (file != null) {
+				TempFileManager.getInstance().release(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,241 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.lifecycle.Closeable;
+
+
+/**
+ * Decompresses a gzipped replication file as it is received from the server,
+ * optionally copying the raw bytes to a local archive file. Because the
+ * contents are consumed before the transfer has finished, {@link #verify()}
+ * must be called once parsing completes. It reads any data the parser didn't
+ * consume so that the gzip trailer checksum and length are validated, which
+ * detects truncated or corrupt downloads. Files that aren't gzipped are passed
+ * through unchanged and must be validated by their parser. The archive file
+ * only appears once the download has been verified.
+ *
+ * @author Brett Henderson
+ */
+public class ReplicationFileStream implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationFileStream.class.getName());
+
+
+	private InputStream source;
+	private File archiveFile;
+	private File archiveTmpFile;
+	private OutputStream archiveStream;
+	private DecompressedStream decompressedStream;
+	private IOException failure;
+	private boolean finished;
+	private boolean verified;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param source
+	 *            The stream received from the server. This
+	 *            will be closed when this object is closed.
+	 * @param archiveFile
+	 *            The file to copy the compressed data to, or null if the data
+	 *            is not to be archived.
+	 * @param gzipped
+	 *            If true, the source data is gzip compressed.
+	 */
+	public ReplicationFileStream(InputStream source, File archiveFile, boolean gzipped) {
+		this.source = source;
+		this.archiveFile = archiveFile;
+
+		try {
+			if (archiveFile != null) {
+				File archiveParent;
+
+				archiveParent = archiveFile.getAbsoluteFile().getParentFile();
+				if (!archiveParent.exists() && !archiveParent.mkdirs()) {
+					throw new OsmosisRuntimeException("Unable to create archive directory " + archiveParent + ".");
+				}
+
+				archiveTmpFile = new File(archiveFile.getPath() + ".tmp");
+				archiveStream = new BufferedOutputStream(new FileOutputStream(archiveTmpFile), 65536);
+			}
+
+			if (gzipped) {
+				decompressedStream = new DecompressedStream(new GZIPInputStream(new ArchivingStream(), 65536));
+			} else {
+				decompressedStream = new DecompressedStream(new ArchivingStream());
+			}
+
+		} catch (IOException e) {
+			close();
+			throw new OsmosisRuntimeException("Unable to open the replication file stream.", e);
+		}
+	}
+
+
+	/**
+	 * Gets the decompressed file contents. Closing the returned stream has no
+	 * effect, the transfer remains open until it is verified or this object is
+	 * closed.
+	 *
+	 * @return The decompressed stream.
+	 */
+	public InputStream getInputStream() {
+		return decompressedStream;
+	}
+
+
+	/**
+	 * Releases the source and archive streams, recording the first error
+	 * encountered.
+	 *
+	 * @param drain
+	 *            If true, any data not consumed by the parser is read first so
+	 *            that the gzip trailer is validated.
+	 */
+	private void finish(boolean drain) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+
+		try {
+			if (drain && decompressedStream != null && failure == null) {
+				byte[] buffer = new byte[65536];
+				while (decompressedStream.readRemaining(buffer) >= 0) {
+					// Discard the data.
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+
+		try {
+			if (archiveStream != null) {
+				archiveStream.close();
+			}
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+
+		try {
+			source.close();
+		} catch (IOException e) {
+			LOG.log(Level.FINER, "Unable to close the replication file source stream.", e);
+		}
+	}
+
+
+	/**
+	 * Ensures that the complete file was received intact and moves the archive
+	 * copy into place.
+	 */
+	public void verify() {
+		finish(true);
+
+		if (failure != null) {
+			throw new OsmosisRuntimeException("The replication file was not received intact.", failure);
+		}
+
+		if (archiveTmpFile != null) {
+			if (archiveFile.exists() && !archiveFile.delete()) {
+				LOG.warning("Unable to replace archive file " + archiveFile + ".");
+			}
+			if (!archiveTmpFile.renameTo(archiveFile)) {
+				throw new OsmosisRuntimeException("Unable to rename " + archiveTmpFile + " to " + archiveFile + ".");
+			}
+		}
+
+		verified = true;
+	}
+
+
+	/**
+	 * Releases all resources, discarding the partial archive copy if the file
+	 * wasn't verified.
+	 */
+	@Override
+	public void close() {
+		finish(false);
+
+		if (!verified && archiveTmpFile != null && archiveTmpFile.exists() && !archiveTmpFile.delete()) {
+			LOG.warning("Unable to delete file " + archiveTmpFile.getName());
+		}
+	}
+
+
+	/**
+	 * Provides the decompressed data to the parser. Parsers commonly close their
+	 * input once the end of the document is reached, but the transfer must
+	 * remain open until it has been verified.
+	 */
+	private class DecompressedStream extends FilterInputStream {
+
+		DecompressedStream(InputStream in) {
+			super(in);
+		}
+
+
+		int readRemaining(byte[] buffer) throws IOException {
+			return in.read(buffer);
+		}
+
+
+		@Override
+		public void close() {
+			// Do nothing, the outer class owns the underlying streams.
+		}
+	}
+
+
+	/**
+	 * Reads from the source stream, capturing any failure and copying the
+	 * data to the archive file.
+	 */
+	private class ArchivingStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] buffer = new byte[1];
+
+			if (read(buffer, 0, 1) < 0) {
+				return -1;
+			}
+
+			return buffer[0] & 0xff;
+		}
+
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count;
+
+			try {
+				count = source.read(b, off, len);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+
+			if (count > 0 && archiveStream != null) {
+				archiveStream.write(b, off, count);
+			}
+
+			return count;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.pipeline.common.TaskRunner;
+import org.openstreetmap.osmosis.core.sort.v0_6.EntityByTypeThenIdThenVersionComparator;
+import org.openstreetmap.osmosis.core.sort.v0_6.EntityContainerComparator;
+import org.openstreetmap.osmosis.core.sort.v0_6.SortedHistoryChangePipeValidator;
+import org.openstreetmap.osmosis.core.store.DataPostbox;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.set.v0_6.impl.ChangeSimplifierImpl;
+import org.openstreetmap.osmosis.set.v0_6.impl.DataPostboxChangeSink;
+
+
+/**
+ * Merges a sequence of individually sorted change sources into a single
+ * simplified change. Each source is read on its own thread and the heads of
+ * all sources are merged with a heap, so no sorting of the combined data is
+ * required. Where several sources contain changes for the same entity, only a
+ * single change reflecting its final state is produced in the same manner as
+ * the change simplifier. Sources must be supplied in chronological order
+ * because later sources take precedence when they contain the same version of
+ * an entity.
+ *
+ * @author Brett Henderson
+ */
+public class SimplifyingChangeMerger implements RunnableChangeSource {
+
+	private static final Logger LOG = Logger.getLogger(SimplifyingChangeMerger.class.getName());
+	private static final int INPUT_BUFFER_CAPACITY = 1000;
+
+
+	private List<? extends RunnableChangeSource> sources;
+	private ChangeSink changeSink;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param sources
+	 *            The change sources to be merged, oldest first. Each must
+	 *            produce changes sorted by type, id and version.
+	 */
+	public SimplifyingChangeMerger(List<? extends RunnableChangeSource> sources) {
+		this.sources = sources;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setChangeSink(ChangeSink changeSink) {
+		this.changeSink = changeSink;
+	}
+
+
+	private void merge(List<DataPostbox<ChangeContainer>> postboxes, ChangeSink simplifier) {
+		final EntityContainerComparator entityComparator;
+		PriorityQueue<MergeInput> heads;
+		long changeCount;
+
+		entityComparator = new EntityContainerComparator(new EntityByTypeThenIdThenVersionComparator());
+		heads = new PriorityQueue<MergeInput>(Math.max(1, postboxes.size()), new Comparator<MergeInput>() {
+			@Override
+			public int compare(MergeInput o1, MergeInput o2) {
+				int result;
+
+				result = entityComparator.compare(o1.change.getEntityContainer(), o2.change.getEntityContainer());
+				if (result == 0) {
+					result = Integer.compare(o1.sourceIndex, o2.sourceIndex);
+				}
+
+				return result;
+			}
+		});
+
+		// Input meta data can't be meaningfully combined so it is discarded.
+		for (int i = 0; i < postboxes.size(); i++) {
+			DataPostbox<ChangeContainer> postbox;
+
+			postbox = postboxes.get(i);
+			postbox.outputInitialize();
+
+			if (postbox.hasNext()) {
+				heads.add(new MergeInput(i, postbox.getNext()));
+			}
+		}
+		simplifier.initialize(Collections.<String, Object>emptyMap());
+
+		changeCount = 0;
+		while (!heads.isEmpty()) {
+			MergeInput head;
+			DataPostbox<ChangeContainer> postbox;
+
+			head = heads.poll();
+			simplifier.process(head.change);
+			changeCount++;
+
+			postbox = postboxes.get(head.sourceIndex);
+			if (postbox.hasNext()) {
+				head.change = postbox.getNext();
+				heads.add(head);
+			}
+		}
+
+		simplifier.complete();
+
+		for (DataPostbox<ChangeContainer> postbox : postboxes) {
+			postbox.outputComplete();
+		}
+
+		LOG.fine("Merged " + changeCount + " changes from " + postboxes.size() + " sources.");
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		List<DataPostbox<ChangeContainer>> postboxes;
+		List<TaskRunner> taskRunners;
+		ChangeSimplifierImpl simplifier;
+		boolean tasksSuccessful;
+
+		postboxes = new ArrayList<DataPostbox<ChangeContainer>>(sources.size());
+		taskRunners = new ArrayList<TaskRunner>(sources.size());
+
+		// Each source writes into its own postbox after verifying that it is sorted.
+		for (int i = 0; i < sources.size(); i++) {
+			DataPostbox<ChangeContainer> postbox;
+			SortedHistoryChangePipeValidator sortedChangeValidator;
+
+			postbox = new DataPostbox<ChangeContainer>(INPUT_BUFFER_CAPACITY);
+			sortedChangeValidator = new SortedHistoryChangePipeValidator();
+			sortedChangeValidator.setChangeSink(new DataPostboxChangeSink(postbox));
+			sources.get(i).setChangeSink(sortedChangeValidator);
+
+			postboxes.add(postbox);
+			taskRunners.add(new TaskRunner(sources.get(i), "Thread-change-merge-source" + i));
+		}
+
+		simplifier = new ChangeSimplifierImpl();
+		simplifier.setChangeSink(changeSink);
+
+		for (TaskRunner taskRunner : taskRunners) {
+			taskRunner.start();
+		}
+
+		try {
+			merge(postboxes, simplifier);
+
+		} finally {
+			simplifier.close();
+
+			for (DataPostbox<ChangeContainer> postbox : postboxes) {
+				postbox.outputRelease();
+			}
+
+			// Wait for all the sources to complete.
+			tasksSuccessful = true;
+			for (int i = 0; i < taskRunners.size(); i++) {
+				TaskRunner taskRunner;
+
+				taskRunner = taskRunners.get(i);
+
+				try {
+					taskRunner.join();
+				} catch (InterruptedException e) {
+					// We are already in an error condition so log and continue.
+					LOG.log(Level.WARNING, "The wait for task completion was interrupted.", e);
+				}
+
+				if (!taskRunner.isSuccessful()) {
+					LOG.log(Level.SEVERE, "Change merge source " + i + " failed", taskRunner.getException());
+
+					tasksSuccessful = false;
+				}
+			}
+		}
+
+		if (!tasksSuccessful) {
+			throw new OsmosisRuntimeException("One or more change merge sources failed.");
+		}
+	}
+
+
+	/**
+	 * The next change available from one of the sources.
+	 */
+	private static class MergeInput {
+		private int sourceIndex;
+		private ChangeContainer change;
+
+
+		MergeInput(int sourceIndex, ChangeContainer change) {
+			this.sourceIndex = sourceIndex;
+			this.change = change;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+
+/**
+ * Tests the {@link ReplicationFileCache} class.
+ */
+public class ReplicationFileCacheTest extends AbstractDataTest {
+
+	private static final String BASE_URL = "http://replication.example.com/minute/";
+
+
+	private File createFile(String content) throws IOException {
+		File file;
+
+		file = dataUtils.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+		return file;
+	}
+
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+
+	private static void ageEntries(File directory, long time) {
+		for (File subDirectory : directory.listFiles(File::isDirectory)) {
+			for (File file : subDirectory.listFiles()) {
+				Assert.assertTrue("Unable to age cache entry.", file.setLastModified(time));
+			}
+		}
+	}
+
+
+	private static void store(File directory, long maxSize, long maxAge, URL url, File file) {
+		ReplicationFileCache cache;
+
+		// Each instance checks for entries to evict when it first adds an entry.
+		cache = new ReplicationFileCache(directory, maxSize, maxAge);
+		try {
+			cache.store(url, file);
+		} finally {
+			cache.close();
+		}
+	}
+
+
+	/**
+	 * Verifies that a stored file is retrieved as an independent copy which the
+	 * caller may delete without affecting the cache.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be accessed.
+	 */
+	@Test
+	public void testStoreAndRetrieve() throws IOException {
+		ReplicationFileCache cache;
+		URL url;
+		File retrievedFile;
+
+		url = new URL(BASE_URL + "000/001/001.osc.gz");
+		cache = new ReplicationFileCache(dataUtils.newFolder(), 0, 0);
+		try {
+			Assert.assertNull("Nothing should be cached yet.", cache.retrieve(url));
+
+			cache.store(url, createFile("change one"));
+
+			for (int i = 0; i < 2; i++) {
+				retrievedFile = cache.retrieve(url);
+				Assert.assertNotNull("The file should be cached.", retrievedFile);
+				Assert.assertEquals("Incorrect cached content.", "change one", read(retrievedFile));
+				TempFileManager.getInstance().release(retrievedFile);
+			}
+
+			Assert.assertNull("Other sequence numbers should not be cached.",
+					cache.retrieve(new URL(BASE_URL + "000/001/002.osc.gz")));
+
+		} finally {
+			cache.close();
+		}
+	}
+
+
+	/**
+	 * Verifies that text files are cached.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be accessed.
+	 */
+	@Test
+	public void testStoreAndRetrieveText() throws IOException {
+		ReplicationFileCache cache;
+		URL url;
+
+		url = new URL(BASE_URL + "000/001/001.state.txt");
+		cache = new ReplicationFileCache(dataUtils.newFolder(), 0, 0);
+		try {
+			Assert.assertNull("Nothing should be cached yet.", cache.retrieveText(url));
+
+			cache.storeText(url, "sequenceNumber=1001\n");
+
+			Assert.assertEquals("Incorrect cached content.", "sequenceNumber=1001\n", cache.retrieveText(url));
+
+		} finally {
+			cache.close();
+		}
+	}
+
+
+	/**
+	 * Verifies that separate cache instances sharing a directory see each
+	 * other's entries.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be accessed.
+	 */
+	@Test
+	public void testSharedDirectory() throws IOException {
+		File directory;
+		ReplicationFileCache cache;
+		URL url;
+		File retrievedFile;
+
+		directory = dataUtils.newFolder();
+		url = new URL(BASE_URL + "000/001/001.osc.gz");
+
+		store(directory, 0, 0, url, createFile("shared change"));
+
+		cache = new ReplicationFileCache(directory, 0, 0);
+		try {
+			retrievedFile = cache.retrieve(url);
+			Assert.assertNotNull("The file should be cached.", retrievedFile);
+			Assert.assertEquals("Incorrect cached content.", "shared change", read(retrievedFile));
+			TempFileManager.getInstance().release(retrievedFile);
+
+		} finally {
+			cache.close();
+		}
+	}
+
+
+	/**
+	 * Verifies that the least recently used entries are evicted when the cache
+	 * exceeds its maximum size, and that retrieving an entry counts as using it.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be accessed.
+	 */
+	@Test
+	public void testSizeEviction() throws IOException {
+		File directory;
+		ReplicationFileCache cache;
+		URL[] urls;
+		long oldTime;
+
+		directory = dataUtils.newFolder();
+		urls = new URL[3];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = new URL(BASE_URL + "000/001/00" + i + ".osc.gz");
+		}
+		oldTime = System.currentTimeMillis() - 60000;
+
+		cache = new ReplicationFileCache(directory, 0, 0);
+		try {
+			cache.storeText(urls[0], "0123456789");
+			cache.storeText(urls[1], "0123456789");
+			ageEntries(directory, oldTime);
+
+			// Using the first entry makes the second the least recently used.
+			Assert.assertNotNull("The first entry should be cached.", cache.retrieveText(urls[0]));
+
+		} finally {
+			cache.close();
+		}
+
+		// The cache only has room for two of the entries.
+		store(directory, 25, 0, urls[2], createFile("0123456789"));
+
+		cache = new ReplicationFileCache(directory, 25, 0);
+		try {
+			Assert.assertNotNull("The recently used entry should remain.", cache.retrieveText(urls[0]));
+			Assert.assertNull("The least recently used entry should be evicted.", cache.retrieveText(urls[1]));
+			Assert.assertNotNull("The new entry should remain.", cache.retrieveText(urls[2]));
+
+		} finally {
+			cache.close();
+		}
+	}
+
+
+	/**
+	 * Verifies that entries unused for longer than the maximum age are evicted.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be accessed.
+	 */
+	@Test
+	public void testAgeEviction() throws IOException {
+		File directory;
+		ReplicationFileCache cache;
+		URL oldUrl;
+		URL newUrl;
+
+		directory = dataUtils.newFolder();
+		oldUrl = new URL(BASE_URL + "000/001/001.osc.gz");
+		newUrl = new URL(BASE_URL + "000/001/002.osc.gz");
+
+		store(directory, 0, 0, oldUrl, createFile("old change"));
+		ageEntries(directory, System.currentTimeMillis() - 120000);
+
+		store(directory, 0, 60000, newUrl, createFile("new change"));
+
+		cache = new ReplicationFileCache(directory, 0, 60000);
+		try {
+			Assert.assertNull("The expired entry should be evicted.", cache.retrieveText(oldUrl));
+			Assert.assertEquals("The new entry should remain.", "new change", cache.retrieveText(newUrl));
+
+		} finally {
+			cache.close();
+		}
+	}
+}
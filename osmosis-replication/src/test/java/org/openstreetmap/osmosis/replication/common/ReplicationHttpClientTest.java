@@ -0,0 +1,343 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.store.TempFileManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link ReplicationHttpClient} class against a local stub server.
+ */
+public class ReplicationHttpClientTest {
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private AtomicInteger requestCount;
+
+
+	/**
+	 * Starts the stub server.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be started.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread;
+
+			thread = new Thread(runnable, "stub-http-server");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.start();
+
+		requestCount = new AtomicInteger();
+	}
+
+
+	/**
+	 * Stops the stub server.
+	 */
+	@After
+	public void tearDown() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+
+	private URL register(String path, HttpHandler handler) throws IOException {
+		server.createContext(path, exchange -> {
+			requestCount.incrementAndGet();
+			try {
+				handler.handle(exchange);
+			} catch (IOException e) {
+				// The client closes the connection when it times out.
+			} finally {
+				exchange.close();
+			}
+		});
+
+		return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+	}
+
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] data;
+
+		data = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, data.length > 0 ? data.length : -1);
+		if (data.length > 0) {
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(data);
+			}
+		}
+	}
+
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Verifies that a conditional request reuses the previous content when the
+	 * server reports that it has not been modified.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testConditionalGetNotModified() throws IOException {
+		ReplicationHttpClient client;
+		AtomicInteger notModifiedCount;
+		URL url;
+
+		notModifiedCount = new AtomicInteger();
+		url = register("/state.txt", exchange -> {
+			if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModifiedCount.incrementAndGet();
+				respond(exchange, 304, "");
+			} else {
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				respond(exchange, 200, "sequenceNumber=1");
+			}
+		});
+
+		client = new ReplicationHttpClient(5, 5, 0);
+
+		Assert.assertEquals("Incorrect content.", "sequenceNumber=1", client.getText(url, true));
+		Assert.assertEquals("Incorrect content.", "sequenceNumber=1", client.getText(url, true));
+		Assert.assertEquals("Incorrect request count.", 2, requestCount.get());
+		Assert.assertEquals("The second request should not have been modified.", 1, notModifiedCount.get());
+	}
+
+
+	/**
+	 * Verifies that server errors are retried.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testRetryServerError() throws IOException {
+		URL url;
+
+		url = register("/state.txt", exchange -> {
+			if (requestCount.get() <= 2) {
+				respond(exchange, 503, "unavailable");
+			} else {
+				respond(exchange, 200, "ok");
+			}
+		});
+
+		Assert.assertEquals("Incorrect content.", "ok", new ReplicationHttpClient(5, 5, 3).getText(url, false));
+		Assert.assertEquals("Incorrect request count.", 3, requestCount.get());
+	}
+
+
+	/**
+	 * Verifies that rate limited requests are retried.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testRetryTooManyRequests() throws IOException {
+		URL url;
+
+		url = register("/state.txt", exchange -> {
+			if (requestCount.get() <= 1) {
+				respond(exchange, 429, "slow down");
+			} else {
+				respond(exchange, 200, "ok");
+			}
+		});
+
+		Assert.assertEquals("Incorrect content.", "ok", new ReplicationHttpClient(5, 5, 3).getText(url, false));
+		Assert.assertEquals("Incorrect request count.", 2, requestCount.get());
+	}
+
+
+	/**
+	 * Verifies that a request fails once all retries have been used.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testRetriesExhausted() throws IOException {
+		URL url;
+
+		url = register("/state.txt", exchange -> respond(exchange, 500, "failed"));
+
+		try {
+			new ReplicationHttpClient(5, 5, 1).getText(url, false);
+			Assert.fail("The request should have failed.");
+		} catch (OsmosisRuntimeException e) {
+			// Expected.
+			Assert.assertEquals("Incorrect request count.", 2, requestCount.get());
+		}
+	}
+
+
+	/**
+	 * Verifies that a request times out if the server doesn't respond.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testTimeoutBeforeResponse() throws IOException {
+		URL url;
+		long startTime;
+
+		url = register("/state.txt", exchange -> {
+			sleep(5000);
+			respond(exchange, 200, "late");
+		});
+
+		startTime = System.currentTimeMillis();
+		try {
+			new ReplicationHttpClient(5, 1, 0).getText(url, false);
+			Assert.fail("The request should have timed out.");
+		} catch (OsmosisRuntimeException e) {
+			// Expected.
+			Assert.assertTrue("The request should time out before the response arrives.",
+					System.currentTimeMillis() - startTime < 4000);
+		}
+	}
+
+
+	/**
+	 * Verifies that a download stalling part way through times out.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured.
+	 */
+	@Test
+	public void testTimeoutDuringBody() throws IOException {
+		URL url;
+
+		url = register("/000/000/001.osc.gz", exchange -> {
+			OutputStream os;
+
+			exchange.sendResponseHeaders(200, 0);
+			os = exchange.getResponseBody();
+			os.write(new byte[1024]);
+			os.flush();
+			sleep(5000);
+			os.close();
+		});
+
+		try {
+			new ReplicationHttpClient(5, 1, 0).download(url);
+			Assert.fail("The download should have timed out.");
+		} catch (OsmosisRuntimeException e) {
+			// Expected.
+			Assert.assertEquals("Incorrect request count.", 1, requestCount.get());
+		}
+	}
+
+
+	/**
+	 * Verifies that a slow download which keeps receiving data isn't
+	 * interrupted even though it takes longer than the request timeout.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured or the file read.
+	 */
+	@Test
+	public void testSlowDownload() throws IOException {
+		URL url;
+		File file;
+
+		url = register("/000/000/001.osc.gz", exchange -> {
+			OutputStream os;
+
+			exchange.sendResponseHeaders(200, 0);
+			os = exchange.getResponseBody();
+			for (int i = 0; i < 6; i++) {
+				os.write(new byte[1024]);
+				os.flush();
+				sleep(400);
+			}
+			os.close();
+		});
+
+		file = new ReplicationHttpClient(5, 1, 0).download(url);
+		try {
+			Assert.assertEquals("Incorrect file size.", 6 * 1024, Files.size(file.toPath()));
+			Assert.assertEquals("Incorrect request count.", 1, requestCount.get());
+		} finally {
+			TempFileManager.getInstance().release(file);
+		}
+	}
+
+
+	/**
+	 * Verifies that a retried download only contains the successful response,
+	 * not the body of a failed response or data from an abandoned attempt.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be configured or the file read.
+	 */
+	@Test
+	public void testRetryDownload() throws IOException {
+		URL url;
+		File file;
+
+		url = register("/000/000/001.osc.gz", exchange -> {
+			if (requestCount.get() == 1) {
+				respond(exchange, 503, "a long error page which must not end up in the downloaded file");
+			} else if (requestCount.get() == 2) {
+				OutputStream os;
+
+				exchange.sendResponseHeaders(200, 0);
+				os = exchange.getResponseBody();
+				os.write("stalled data which is never completed".getBytes(StandardCharsets.UTF_8));
+				os.flush();
+				sleep(3000);
+				os.close();
+			} else {
+				respond(exchange, 200, "ok");
+			}
+		});
+
+		file = new ReplicationHttpClient(5, 1, 3).download(url);
+		try {
+			Assert.assertEquals("Incorrect content.", "ok",
+					new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			Assert.assertEquals("Incorrect request count.", 3, requestCount.get());
+		} finally {
+			TempFileManager.getInstance().release(file);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link ReplicationDownloader} class.
+ */
+public class ReplicationDownloaderTest extends AbstractDataTest {
+
+	private static final String STATE_CONTENT = "sequenceNumber=1001\ntimestamp=2020-01-01T00\\:00\\:00Z\n";
+
+
+	/**
+	 * Verifies that interrupting a continuously running downloader while it
+	 * waits for the next invocation stops it cleanly.
+	 *
+	 * @throws Exception
+	 *             if the test cannot be set up.
+	 */
+	@Test
+	public void testInterruptBetweenIterations() throws Exception {
+		HttpServer server;
+		File workingDirectory;
+		ReplicationDownloader downloader;
+		AtomicInteger completeCount;
+		AtomicInteger closeCount;
+		AtomicReference<Throwable> failure;
+		Thread thread;
+		long deadline;
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/state.txt", exchange -> {
+			byte[] data;
+
+			data = STATE_CONTENT.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, data.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(data);
+			}
+		});
+		server.start();
+
+		try {
+			workingDirectory = dataUtils.newFolder();
+			write(new File(workingDirectory, "configuration.txt"), "baseUrl=http://"
+					+ server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/\n"
+					+ "maxInterval=3600\n");
+			write(new File(workingDirectory, "state.txt"), STATE_CONTENT);
+
+			completeCount = new AtomicInteger();
+			closeCount = new AtomicInteger();
+			downloader = new ReplicationDownloader(workingDirectory, false, 0, 0, 60000, 0);
+			downloader.setChangeSink(new ChangeSink() {
+				@Override
+				public void initialize(Map<String, Object> metaData) {
+					// Do nothing.
+				}
+
+				@Override
+				public void process(ChangeContainer change) {
+					Assert.fail("No changes should be received.");
+				}
+
+				@Override
+				public void complete() {
+					completeCount.incrementAndGet();
+				}
+
+				@Override
+				public void close() {
+					closeCount.incrementAndGet();
+				}
+			});
+
+			failure = new AtomicReference<Throwable>();
+			thread = new Thread(downloader, "replication-downloader");
+			thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+			thread.start();
+
+			// Wait for the first invocation to complete, then interrupt the wait for the next.
+			deadline = System.currentTimeMillis() + 10000;
+			while (completeCount.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			Assert.assertEquals("The first invocation should complete.", 1, completeCount.get());
+
+			thread.interrupt();
+			thread.join(10000);
+
+			Assert.assertFalse("The downloader did not stop when interrupted.", thread.isAlive());
+			Assert.assertNull("The interruption should not be a failure.", failure.get());
+			Assert.assertEquals("The sink should be released once.", 1, closeCount.get());
+			Assert.assertEquals("No further invocations should occur.", 1, completeCount.get());
+
+		} finally {
+			server.stop(0);
+		}
+	}
+
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
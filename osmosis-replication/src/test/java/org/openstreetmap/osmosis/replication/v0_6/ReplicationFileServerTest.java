@@ -0,0 +1,213 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+
+/**
+ * Tests the {@link ReplicationFileServer} class.
+ */
+public class ReplicationFileServerTest extends AbstractDataTest {
+
+	private static final String STATE_CONTENT = "sequenceNumber=1001\n";
+	private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+
+	private Thread serverThread;
+	private int port;
+
+
+	/**
+	 * Starts a server for a replication directory containing a state file, and
+	 * a secret file outside it.
+	 *
+	 * @throws Exception
+	 *             if the server cannot be started.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		File parentDirectory;
+		File rootDirectory;
+		ReplicationFileServer server;
+		long deadline;
+
+		parentDirectory = dataUtils.newFolder();
+		rootDirectory = new File(parentDirectory, "replication");
+		Assert.assertTrue("Unable to create the replication directory.", new File(rootDirectory, "000/001").mkdirs());
+		Files.write(new File(rootDirectory, "state.txt").toPath(), STATE_CONTENT.getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(rootDirectory, "000/001/001.osc.gz").toPath(), new byte[] {1, 2, 3});
+		Files.write(new File(parentDirectory, "secret.txt").toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+
+		// The server doesn't report the port it is listening on so find a free one up front.
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		server = new ReplicationFileServer(rootDirectory, HOST, port, 2);
+		serverThread = new Thread(server, "replication-file-server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		// Wait until the server accepts connections.
+		deadline = System.currentTimeMillis() + 10000;
+		while (true) {
+			try (Socket socket = new Socket(HOST, port)) {
+				break;
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				Thread.sleep(20);
+			}
+		}
+	}
+
+
+	/**
+	 * Stops the server.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the server to stop.
+	 */
+	@After
+	public void tearDown() throws InterruptedException {
+		serverThread.interrupt();
+		serverThread.join(10000);
+		Assert.assertFalse("The server did not stop when interrupted.", serverThread.isAlive());
+	}
+
+
+	private HttpURLConnection open(String path, String method) throws IOException {
+		HttpURLConnection connection;
+
+		connection = (HttpURLConnection) new URL("http", HOST, port, path).openConnection();
+		connection.setRequestMethod(method);
+
+		return connection;
+	}
+
+
+	private static byte[] readBody(HttpURLConnection connection) throws IOException {
+		try (InputStream inputStream = connection.getInputStream()) {
+			return inputStream.readAllBytes();
+		}
+	}
+
+
+	/**
+	 * Verifies that files within the directory are served with their content
+	 * type.
+	 *
+	 * @throws IOException
+	 *             if the request fails.
+	 */
+	@Test
+	public void testGet() throws IOException {
+		HttpURLConnection connection;
+
+		connection = open("/state.txt", "GET");
+		Assert.assertEquals("Incorrect status.", 200, connection.getResponseCode());
+		Assert.assertEquals("Incorrect content type.", "text/plain; charset=UTF-8", connection.getContentType());
+		Assert.assertEquals("Incorrect content.", STATE_CONTENT,
+				new String(readBody(connection), StandardCharsets.UTF_8));
+		Assert.assertNotNull("The last modified time should be sent.", connection.getHeaderField("Last-Modified"));
+
+		connection = open("/000/001/001.osc.gz", "GET");
+		Assert.assertEquals("Incorrect status.", 200, connection.getResponseCode());
+		Assert.assertEquals("Incorrect content type.", "application/gzip", connection.getContentType());
+		Assert.assertArrayEquals("Incorrect content.", new byte[] {1, 2, 3}, readBody(connection));
+	}
+
+
+	/**
+	 * Verifies that HEAD requests report the size without sending the content.
+	 *
+	 * @throws IOException
+	 *             if the request fails.
+	 */
+	@Test
+	public void testHead() throws IOException {
+		HttpURLConnection connection;
+
+		connection = open("/state.txt", "HEAD");
+		Assert.assertEquals("Incorrect status.", 200, connection.getResponseCode());
+		Assert.assertEquals("Incorrect content length.",
+				Integer.toString(STATE_CONTENT.length()), connection.getHeaderField("Content-Length"));
+		Assert.assertEquals("No content should be sent.", 0, readBody(connection).length);
+	}
+
+
+	/**
+	 * Verifies that a file is not sent again if the client already has it.
+	 *
+	 * @throws IOException
+	 *             if the request fails.
+	 */
+	@Test
+	public void testNotModified() throws IOException {
+		HttpURLConnection connection;
+		String lastModified;
+
+		connection = open("/state.txt", "GET");
+		Assert.assertEquals("Incorrect status.", 200, connection.getResponseCode());
+		lastModified = connection.getHeaderField("Last-Modified");
+		readBody(connection);
+
+		connection = open("/state.txt", "GET");
+		connection.setRequestProperty("If-Modified-Since", lastModified);
+		Assert.assertEquals("Incorrect status.", 304, connection.getResponseCode());
+
+		connection = open("/state.txt", "GET");
+		connection.setRequestProperty("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT");
+		Assert.assertEquals("Incorrect status.", 200, connection.getResponseCode());
+		readBody(connection);
+	}
+
+
+	/**
+	 * Verifies that missing files, directories and files outside the
+	 * replication directory are not served.
+	 *
+	 * @throws IOException
+	 *             if the request fails.
+	 */
+	@Test
+	public void testNotFound() throws IOException {
+		Assert.assertEquals("Missing files should not be found.", 404,
+				open("/missing.txt", "GET").getResponseCode());
+		Assert.assertEquals("Directories should not be served.", 404,
+				open("/000/001", "GET").getResponseCode());
+		Assert.assertEquals("Files outside the directory should not be served.", 404,
+				open("/000/../../secret.txt", "GET").getResponseCode());
+	}
+
+
+	/**
+	 * Verifies that the directory is served read-only.
+	 *
+	 * @throws IOException
+	 *             if the request fails.
+	 */
+	@Test
+	public void testMethodNotAllowed() throws IOException {
+		HttpURLConnection connection;
+
+		connection = open("/state.txt", "DELETE");
+		Assert.assertEquals("Incorrect status.", 405, connection.getResponseCode());
+		Assert.assertEquals("Incorrect allowed methods.", "GET, HEAD", connection.getHeaderField("Allow"));
+	}
+}
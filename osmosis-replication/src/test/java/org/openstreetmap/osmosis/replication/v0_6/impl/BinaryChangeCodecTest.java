@@ -0,0 +1,299 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+
+
+/**
+ * Tests the {@link BinaryChangeEncoder} and {@link BinaryChangeDecoder} classes.
+ */
+public class BinaryChangeCodecTest {
+
+	private static final OsmUser[] USERS = {
+		new OsmUser(11, "alice"), new OsmUser(12, "bob"), OsmUser.NONE
+	};
+
+
+	private static CommonEntityData entityData(long id, int version) {
+		CommonEntityData entityData;
+
+		entityData = new CommonEntityData(id, version, new Date(1300000000000L + id * 1000L),
+				USERS[(int) (id % USERS.length)], 5000 + id / 10);
+		entityData.getTags().add(new Tag("highway", id % 2 == 0 ? "residential" : "service"));
+		entityData.getTags().add(new Tag("note", "entity " + id));
+
+		return entityData;
+	}
+
+
+	private static ChangeContainer node(long id, ChangeAction action) {
+		Node node;
+
+		// Multiples of 1/128 survive the fixed precision coordinate encoding exactly.
+		node = new Node(entityData(id, 2), (id % 1000) / 128.0, -2.25);
+
+		return new ChangeContainer(new NodeContainer(node), action);
+	}
+
+
+	private static ChangeContainer way(long id, ChangeAction action) {
+		Way way;
+
+		way = new Way(entityData(id, 3));
+		way.getWayNodes().add(new WayNode(id));
+		way.getWayNodes().add(new WayNode(id + 1));
+		way.getWayNodes().add(new WayNode(id - 5));
+
+		return new ChangeContainer(new WayContainer(way), action);
+	}
+
+
+	private static ChangeContainer relation(long id, ChangeAction action) {
+		Relation relation;
+
+		relation = new Relation(entityData(id, 4));
+		relation.getMembers().add(new RelationMember(id, EntityType.Node, "stop"));
+		relation.getMembers().add(new RelationMember(id + 1, EntityType.Way, "platform"));
+		relation.getMembers().add(new RelationMember(id + 2, EntityType.Relation, ""));
+
+		return new ChangeContainer(new RelationContainer(relation), action);
+	}
+
+
+	private static byte[] encode(List<ChangeContainer> changes, boolean compress) throws IOException {
+		ByteArrayOutputStream output;
+		BinaryChangeEncoder encoder;
+
+		output = new ByteArrayOutputStream();
+		encoder = new BinaryChangeEncoder(output, compress);
+		for (ChangeContainer change : changes) {
+			encoder.process(change);
+		}
+		encoder.complete();
+
+		return output.toByteArray();
+	}
+
+
+	private static List<List<ChangeContainer>> decode(byte[] data) throws IOException {
+		BinaryChangeDecoder decoder;
+		List<List<ChangeContainer>> blocks;
+		List<ChangeContainer> block;
+
+		decoder = new BinaryChangeDecoder(new ByteArrayInputStream(data));
+		blocks = new ArrayList<List<ChangeContainer>>();
+		while ((block = decoder.readBlock()) != null) {
+			blocks.add(block);
+		}
+
+		return blocks;
+	}
+
+
+	private static void assertChangesEqual(List<ChangeContainer> expected, List<ChangeContainer> actual) {
+		Assert.assertEquals("Incorrect number of changes.", expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++) {
+			Entity expectedEntity;
+			Entity actualEntity;
+
+			expectedEntity = expected.get(i).getEntityContainer().getEntity();
+			actualEntity = actual.get(i).getEntityContainer().getEntity();
+
+			Assert.assertEquals("Incorrect action for change " + i + ".",
+					expected.get(i).getAction(), actual.get(i).getAction());
+			Assert.assertEquals("Incorrect entity for change " + i + ".", expectedEntity, actualEntity);
+			Assert.assertEquals("Incorrect changeset for change " + i + ".",
+					expectedEntity.getChangesetId(), actualEntity.getChangesetId());
+			Assert.assertEquals("Incorrect user for change " + i + ".",
+					expectedEntity.getUser(), actualEntity.getUser());
+		}
+	}
+
+
+	private static void assertDecodeFails(byte[] data, String message) throws IOException {
+		try {
+			decode(data);
+		} catch (OsmosisRuntimeException e) {
+			Assert.assertEquals("Incorrect failure reason.", message, e.getMessage());
+			return;
+		}
+
+		Assert.fail("Expected the corrupt data to be rejected.");
+	}
+
+
+	/**
+	 * Verifies that enough changes to fill several blocks are split across
+	 * blocks and decoded in their original order.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be encoded or decoded.
+	 */
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		List<ChangeContainer> changes;
+		List<ChangeContainer> decoded;
+		List<List<ChangeContainer>> blocks;
+		ChangeAction[] actions;
+
+		actions = new ChangeAction[] {ChangeAction.Create, ChangeAction.Modify, ChangeAction.Delete};
+		changes = new ArrayList<ChangeContainer>();
+		for (int i = 0; i < 2 * BinaryChangeFormat.MAX_BLOCK_CHANGES + 100; i++) {
+			ChangeAction action = actions[i % actions.length];
+
+			if (i % 3 == 0) {
+				changes.add(node(i + 1, action));
+			} else if (i % 3 == 1) {
+				changes.add(way(i + 1, action));
+			} else {
+				changes.add(relation(i + 1, action));
+			}
+		}
+
+		for (boolean compress : new boolean[] {false, true}) {
+			blocks = decode(encode(changes, compress));
+
+			Assert.assertEquals("Incorrect number of blocks.", 3, blocks.size());
+			Assert.assertEquals("Incorrect first block size.",
+					BinaryChangeFormat.MAX_BLOCK_CHANGES, blocks.get(0).size());
+			Assert.assertEquals("Incorrect last block size.", 100, blocks.get(2).size());
+
+			decoded = new ArrayList<ChangeContainer>();
+			for (List<ChangeContainer> block : blocks) {
+				decoded.addAll(block);
+			}
+			assertChangesEqual(changes, decoded);
+		}
+	}
+
+
+	/**
+	 * Verifies that strings repeated within a block are stored once in the
+	 * string table and still decode to the correct values.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be encoded or decoded.
+	 */
+	@Test
+	public void testStringTable() throws IOException {
+		List<ChangeContainer> changes;
+		List<List<ChangeContainer>> blocks;
+		byte[] small;
+		byte[] large;
+
+		changes = new ArrayList<ChangeContainer>();
+		for (int i = 0; i < 10; i++) {
+			changes.add(relation(100 + i * 10, ChangeAction.Modify));
+		}
+
+		blocks = decode(encode(changes, false));
+		Assert.assertEquals("Incorrect number of blocks.", 1, blocks.size());
+		assertChangesEqual(changes, blocks.get(0));
+		Assert.assertEquals("Incorrect member role.", "platform",
+				((Relation) blocks.get(0).get(9).getEntityContainer().getEntity()).getMembers().get(1).getMemberRole());
+
+		// Doubling the number of changes must not double the size of the
+		// repeated users, tag keys and member roles.
+		small = encode(changes.subList(0, 5), false);
+		large = encode(changes, false);
+		Assert.assertTrue("Repeated strings were not shared.", large.length - small.length < small.length);
+	}
+
+
+	/**
+	 * Verifies that deleted nodes supplied without coordinates are decoded
+	 * without coordinates, and don't disturb the coordinates of later nodes.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be encoded or decoded.
+	 */
+	@Test
+	public void testDeletedNodeWithoutCoordinates() throws IOException {
+		List<ChangeContainer> changes;
+		List<ChangeContainer> decoded;
+		Node deletedNode;
+
+		changes = Arrays.asList(
+				node(1, ChangeAction.Modify),
+				new ChangeContainer(
+						new NodeContainer(new Node(entityData(2, 3), Double.NaN, Double.NaN)), ChangeAction.Delete),
+				node(3, ChangeAction.Create));
+
+		decoded = decode(encode(changes, false)).get(0);
+
+		deletedNode = (Node) decoded.get(1).getEntityContainer().getEntity();
+		Assert.assertEquals("Incorrect action.", ChangeAction.Delete, decoded.get(1).getAction());
+		Assert.assertEquals("Incorrect node id.", 2, deletedNode.getId());
+		Assert.assertTrue("Latitude should be missing.", Double.isNaN(deletedNode.getLatitude()));
+		Assert.assertTrue("Longitude should be missing.", Double.isNaN(deletedNode.getLongitude()));
+
+		Assert.assertEquals("Incorrect first node.",
+				changes.get(0).getEntityContainer().getEntity(), decoded.get(0).getEntityContainer().getEntity());
+		Assert.assertEquals("Incorrect last node.",
+				changes.get(2).getEntityContainer().getEntity(), decoded.get(2).getEntityContainer().getEntity());
+	}
+
+
+	/**
+	 * Verifies that data missing its end marker is rejected rather than
+	 * treated as a complete change.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be encoded or decoded.
+	 */
+	@Test
+	public void testTruncatedData() throws IOException {
+		byte[] data;
+
+		data = encode(Arrays.asList(node(1, ChangeAction.Create), way(2, ChangeAction.Modify)), true);
+
+		assertDecodeFails(Arrays.copyOf(data, data.length - 1),
+				"The binary change data is truncated, no end marker was found.");
+	}
+
+
+	/**
+	 * Verifies that a block whose content doesn't match its checksum is
+	 * rejected.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be encoded or decoded.
+	 */
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		byte[] data;
+
+		data = encode(Arrays.asList(node(1, ChangeAction.Create), way(2, ChangeAction.Modify)), false);
+
+		// The last byte before the end marker belongs to the raw block body.
+		data[data.length - 2] ^= 0x01;
+
+		assertDecodeFails(data, "Binary change block checksum mismatch, the data is corrupt.");
+	}
+}
@@ -0,0 +1,123 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.replication.common.ReplicationState;
+import org.openstreetmap.osmosis.replication.v0_6.impl.ReplicationFilePrefetcher.DownloadedInterval;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+
+/**
+ * Tests the {@link ReplicationFilePrefetcher} class.
+ */
+public class ReplicationFilePrefetcherTest extends AbstractDataTest {
+
+	private Set<Long> downloadedFiles = new ConcurrentSkipListSet<Long>();
+
+
+	private ReplicationState loadState(long sequenceNumber) {
+		// Each interval covers one minute.
+		return new ReplicationState(new Date(sequenceNumber * 60000), sequenceNumber);
+	}
+
+
+	private File loadFile(long sequenceNumber) {
+		downloadedFiles.add(sequenceNumber);
+		try {
+			return dataUtils.newFile();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+
+	private ReplicationFilePrefetcher createPrefetcher(long first, long last, Date maximumTimestamp, int window) {
+		return new ReplicationFilePrefetcher(
+				this::loadState, this::loadFile, first, last, maximumTimestamp, window);
+	}
+
+
+	/**
+	 * Verifies that intervals are returned in sequence order when downloaded
+	 * concurrently.
+	 */
+	@Test
+	public void testSequenceOrder() {
+		try (ReplicationFilePrefetcher prefetcher = createPrefetcher(1, 10, null, 4)) {
+			for (long sequenceNumber = 1; sequenceNumber <= 10; sequenceNumber++) {
+				DownloadedInterval interval;
+
+				Assert.assertTrue("More intervals should be available.", prefetcher.hasNext());
+				interval = prefetcher.next();
+				Assert.assertEquals("Incorrect sequence number.",
+						sequenceNumber, interval.getState().getSequenceNumber());
+				Assert.assertNotNull("The file should have been downloaded.", interval.getFile());
+				interval.deleteFile();
+			}
+
+			Assert.assertFalse("No more intervals should be available.", prefetcher.hasNext());
+		}
+	}
+
+
+	/**
+	 * Verifies that no files beyond the maximum timestamp are downloaded when
+	 * downloading ahead.
+	 */
+	@Test
+	public void testMaximumTimestamp() {
+		try (ReplicationFilePrefetcher prefetcher = createPrefetcher(1, 100, new Date(3 * 60000), 8)) {
+			DownloadedInterval interval;
+
+			for (long sequenceNumber = 1; sequenceNumber <= 3; sequenceNumber++) {
+				interval = prefetcher.next();
+				Assert.assertEquals("Incorrect sequence number.",
+						sequenceNumber, interval.getState().getSequenceNumber());
+				Assert.assertNotNull("The file should have been downloaded.", interval.getFile());
+				interval.deleteFile();
+			}
+
+			// The first interval beyond the limit is returned so the caller can
+			// detect the limit, but its file is not downloaded.
+			interval = prefetcher.next();
+			Assert.assertEquals("Incorrect sequence number.", 4, interval.getState().getSequenceNumber());
+			Assert.assertNull("The file should not have been downloaded.", interval.getFile());
+
+			Assert.assertFalse("No more intervals should be available.", prefetcher.hasNext());
+		}
+
+		Assert.assertEquals("Only files within the limit should be downloaded.",
+				Set.of(1L, 2L, 3L), downloadedFiles);
+	}
+
+
+	/**
+	 * Verifies that the first interval is downloaded even if it exceeds the
+	 * maximum timestamp.
+	 */
+	@Test
+	public void testFirstIntervalBeyondMaximumTimestamp() {
+		try (ReplicationFilePrefetcher prefetcher = createPrefetcher(5, 100, new Date(60000), 4)) {
+			DownloadedInterval interval;
+
+			interval = prefetcher.next();
+			Assert.assertEquals("Incorrect sequence number.", 5, interval.getState().getSequenceNumber());
+			Assert.assertNotNull("The file should have been downloaded.", interval.getFile());
+			interval.deleteFile();
+
+			interval = prefetcher.next();
+			Assert.assertNull("The file should not have been downloaded.", interval.getFile());
+			Assert.assertFalse("No more intervals should be available.", prefetcher.hasNext());
+		}
+
+		Assert.assertEquals("Only the first file should be downloaded.", Set.of(5L), downloadedFiles);
+	}
+}
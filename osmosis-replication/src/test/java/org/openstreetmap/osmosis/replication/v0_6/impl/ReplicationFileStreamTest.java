@@ -0,0 +1,195 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.replication.common.ReplicationHttpClient;
+import org.openstreetmap.osmosis.testutil.AbstractDataTest;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link ReplicationFileStream} class.
+ */
+public class ReplicationFileStreamTest extends AbstractDataTest {
+
+	private static final String CONTENT = "<osmChange version=\"0.6\"></osmChange>\n";
+
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream output;
+
+		output = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(output)) {
+			gzipStream.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+
+		return output.toByteArray();
+	}
+
+
+	private static void assertNotIntact(ReplicationFileStream fileStream) {
+		try {
+			fileStream.verify();
+		} catch (OsmosisRuntimeException e) {
+			Assert.assertEquals("Incorrect failure reason.", "The replication file was not received intact.",
+					e.getMessage());
+			return;
+		}
+
+		Assert.fail("Expected the incomplete file to be rejected.");
+	}
+
+
+	/**
+	 * Verifies that a complete file is decompressed and archived once verified.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read.
+	 */
+	@Test
+	public void testComplete() throws IOException {
+		byte[] data;
+		File archiveFile;
+		ReplicationFileStream fileStream;
+
+		data = gzip(CONTENT);
+		archiveFile = new File(dataUtils.newFolder(), "000/001/001.osc.gz");
+
+		fileStream = new ReplicationFileStream(new ByteArrayInputStream(data), archiveFile, true);
+		try {
+			Assert.assertEquals("Incorrect content.", CONTENT,
+					new String(fileStream.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+			Assert.assertFalse("The archive file should not exist until verified.", archiveFile.exists());
+
+			fileStream.verify();
+		} finally {
+			fileStream.close();
+		}
+
+		Assert.assertArrayEquals("Incorrect archive content.", data, Files.readAllBytes(archiveFile.toPath()));
+	}
+
+
+	/**
+	 * Verifies that a body which ends early is rejected even if the parser
+	 * already consumed all of the content it needed, and that no archive file
+	 * is left behind.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read.
+	 */
+	@Test
+	public void testTruncatedBody() throws IOException {
+		byte[] data;
+		File archiveFile;
+		ReplicationFileStream fileStream;
+
+		// Removing the gzip trailer leaves the decompressed content intact.
+		data = gzip(CONTENT);
+		data = Arrays.copyOf(data, data.length - 4);
+		archiveFile = new File(dataUtils.newFolder(), "001.osc.gz");
+
+		fileStream = new ReplicationFileStream(new ByteArrayInputStream(data), archiveFile, true);
+		try {
+			fileStream.getInputStream().read(new byte[CONTENT.length()]);
+
+			assertNotIntact(fileStream);
+		} finally {
+			fileStream.close();
+		}
+
+		Assert.assertFalse("The archive file should not be created.", archiveFile.exists());
+		Assert.assertFalse("The temporary archive file should be deleted.",
+				new File(archiveFile.getPath() + ".tmp").exists());
+	}
+
+
+	/**
+	 * Verifies that a body which stops arriving part way through fails once the
+	 * request timeout expires rather than blocking indefinitely.
+	 *
+	 * @throws IOException
+	 *             if the server cannot be started.
+	 */
+	@Test
+	public void testStalledBody() throws IOException {
+		HttpServer server;
+		ExecutorService executor;
+		byte[] data;
+		URL url;
+		File archiveFile;
+		InputStream source;
+		ReplicationFileStream fileStream;
+		long start;
+
+		data = gzip(CONTENT);
+		archiveFile = new File(dataUtils.newFolder(), "001.osc.gz");
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/001.osc.gz", exchange -> {
+			try {
+				OutputStream os;
+
+				exchange.sendResponseHeaders(200, data.length);
+				os = exchange.getResponseBody();
+				os.write(data, 0, data.length / 2);
+				os.flush();
+				Thread.sleep(10000);
+			} catch (IOException | InterruptedException e) {
+				// The client abandons the transfer when it times out.
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+
+		try {
+			url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/001.osc.gz");
+			source = new ReplicationHttpClient(5, 1, 0).openStream(url);
+
+			start = System.currentTimeMillis();
+			fileStream = new ReplicationFileStream(source, archiveFile, true);
+			try {
+				try {
+					fileStream.getInputStream().readAllBytes();
+					Assert.fail("Expected the stalled transfer to time out.");
+				} catch (IOException e) {
+					// Expected.
+				}
+
+				assertNotIntact(fileStream);
+			} finally {
+				fileStream.close();
+			}
+
+			Assert.assertTrue("The stalled transfer should time out after the request timeout.",
+					System.currentTimeMillis() - start < 5000);
+			Assert.assertFalse("The archive file should not be created.", archiveFile.exists());
+
+		} finally {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.replication.v0_6.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.testutil.v0_6.SinkChangeInspector;
+
+
+/**
+ * Tests the {@link SimplifyingChangeMerger} class.
+ */
+public class SimplifyingChangeMergerTest {
+
+	private static ChangeContainer node(long id, int version, String note, ChangeAction action) {
+		Node node;
+
+		node = new Node(new CommonEntityData(id, version, new Date(version * 1000L), OsmUser.NONE, version,
+				Collections.singletonList(new Tag("note", note))), id, -id);
+
+		return new ChangeContainer(new NodeContainer(node), action);
+	}
+
+
+	private static ChangeContainer way(long id, int version, ChangeAction action) {
+		Way way;
+
+		way = new Way(new CommonEntityData(id, version, new Date(version * 1000L), OsmUser.NONE, version));
+		way.getWayNodes().add(new WayNode(1));
+		way.getWayNodes().add(new WayNode(version + 1));
+
+		return new ChangeContainer(new WayContainer(way), action);
+	}
+
+
+	private static List<ChangeContainer> merge(List<List<ChangeContainer>> sources) {
+		SimplifyingChangeMerger merger;
+		SinkChangeInspector inspector;
+		ListChangeSource[] changeSources;
+
+		changeSources = new ListChangeSource[sources.size()];
+		for (int i = 0; i < changeSources.length; i++) {
+			changeSources[i] = new ListChangeSource(sources.get(i));
+		}
+
+		inspector = new SinkChangeInspector();
+		merger = new SimplifyingChangeMerger(Arrays.asList(changeSources));
+		merger.setChangeSink(inspector);
+		merger.run();
+
+		return inspector.getProcessedChanges();
+	}
+
+
+	private static void assertChange(ChangeContainer change, EntityType type, long id, int version,
+			ChangeAction action) {
+		Entity entity;
+
+		entity = change.getEntityContainer().getEntity();
+		Assert.assertEquals("Incorrect entity type.", type, entity.getType());
+		Assert.assertEquals("Incorrect entity id.", id, entity.getId());
+		Assert.assertEquals("Incorrect entity version.", version, entity.getVersion());
+		Assert.assertEquals("Incorrect action.", action, change.getAction());
+	}
+
+
+	private static String getNote(ChangeContainer change) {
+		return change.getEntityContainer().getEntity().getTags().iterator().next().getValue();
+	}
+
+
+	/**
+	 * Verifies that changes to the same entity in several sources are reduced
+	 * to a single change with its final state while other entities pass
+	 * through.
+	 */
+	@Test
+	public void testSameEntityAcrossSources() {
+		List<ChangeContainer> changes;
+
+		changes = merge(Arrays.asList(
+				Arrays.asList(node(1, 1, "a", ChangeAction.Create)),
+				Arrays.asList(node(1, 2, "b", ChangeAction.Modify), node(2, 4, "x", ChangeAction.Modify)),
+				Arrays.asList(node(1, 3, "c", ChangeAction.Modify), way(1, 2, ChangeAction.Modify))));
+
+		Assert.assertEquals("Incorrect number of changes.", 3, changes.size());
+		assertChange(changes.get(0), EntityType.Node, 1, 3, ChangeAction.Create);
+		Assert.assertEquals("Incorrect final state.", "c", getNote(changes.get(0)));
+		assertChange(changes.get(1), EntityType.Node, 2, 4, ChangeAction.Modify);
+		assertChange(changes.get(2), EntityType.Way, 1, 2, ChangeAction.Modify);
+	}
+
+
+	/**
+	 * Verifies that an entity created in one source and deleted in a later one
+	 * results in a single delete.
+	 */
+	@Test
+	public void testCreateThenDelete() {
+		List<ChangeContainer> changes;
+
+		changes = merge(Arrays.asList(
+				Arrays.asList(way(5, 1, ChangeAction.Create)),
+				Collections.<ChangeContainer>emptyList(),
+				Arrays.asList(way(5, 2, ChangeAction.Delete))));
+
+		Assert.assertEquals("Incorrect number of changes.", 1, changes.size());
+		assertChange(changes.get(0), EntityType.Way, 5, 2, ChangeAction.Delete);
+	}
+
+
+	/**
+	 * Verifies that successive modifications are ordered by version, and that
+	 * a later source wins when it repeats a version already seen.
+	 */
+	@Test
+	public void testModifyThenModify() {
+		List<ChangeContainer> changes;
+
+		changes = merge(Arrays.asList(
+				Arrays.asList(node(7, 2, "first", ChangeAction.Modify), node(8, 5, "old", ChangeAction.Modify)),
+				Arrays.asList(node(7, 3, "second", ChangeAction.Modify), node(8, 4, "older", ChangeAction.Modify)),
+				Arrays.asList(node(7, 3, "replayed", ChangeAction.Modify))));
+
+		Assert.assertEquals("Incorrect number of changes.", 2, changes.size());
+		assertChange(changes.get(0), EntityType.Node, 7, 3, ChangeAction.Modify);
+		Assert.assertEquals("The later source should win for the same version.",
+				"replayed", getNote(changes.get(0)));
+		assertChange(changes.get(1), EntityType.Node, 8, 5, ChangeAction.Modify);
+		Assert.assertEquals("The highest version should win.", "old", getNote(changes.get(1)));
+	}
+
+
+	/**
+	 * Verifies that an unsorted source causes the merge to fail.
+	 */
+	@Test(expected = OsmosisRuntimeException.class)
+	public void testUnsortedSource() {
+		merge(Arrays.asList(
+				Arrays.asList(node(2, 1, "a", ChangeAction.Create), node(1, 1, "b", ChangeAction.Create))));
+	}
+
+
+	/**
+	 * Sends a fixed list of changes to a change sink.
+	 */
+	private static class ListChangeSource implements RunnableChangeSource {
+		private List<ChangeContainer> changes;
+		private ChangeSink changeSink;
+
+
+		ListChangeSource(List<ChangeContainer> changes) {
+			this.changes = changes;
+		}
+
+
+		@Override
+		public void setChangeSink(ChangeSink changeSink) {
+			this.changeSink = changeSink;
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				changeSink.initialize(Collections.<String, Object>emptyMap());
+				for (ChangeContainer change : changes) {
+					changeSink.process(change);
+				}
+				changeSink.complete();
+			} finally {
+				changeSink.close();
+			}
+		}
+	}
+}
@@ -1,34 +1,67 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.set.v0_6;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.change.v0_6.impl.TimestampSetter;
 import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
 import org.openstreetmap.osmosis.core.sort.v0_6.EntityByTypeThenIdComparator;
 import org.openstreetmap.osmosis.core.sort.v0_6.EntityContainerComparator;
 import org.openstreetmap.osmosis.core.store.DataPostbox;
-import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.store.MemoryGrant;
+import org.openstreetmap.osmosis.core.store.MemoryManager;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.core.task.v0_6.MultiSinkRunnableChangeSource;
 import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.openstreetmap.osmosis.set.v0_6.impl.ChangeDeriverPartition;
 import org.openstreetmap.osmosis.set.v0_6.impl.DataPostboxSink;
 
 
 /**
  * Compares two different data sources and produces a set of differences.
+ * <p>
+ * The inputs are matched by type and id on a single thread, but the
+ * comparison of matching entities may be spread across worker threads. The
+ * matched entities are split into partitions of contiguous ids of a single
+ * type which are compared in parallel, and the results of each partition are
+ * sent downstream in order.
  * 
  * @author Brett Henderson
  */
 public class ChangeDeriver implements MultiSinkRunnableChangeSource {
-
+	
+	private static final int PARTITION_SIZE = 1000;
+	
+	/**
+	 * The estimated heap size of a partition, each entry of which holds an
+	 * entity from both sources.
+	 */
+	private static final long PARTITION_BYTES = (long) PARTITION_SIZE * 2 * MemoryManager.ESTIMATED_ENTITY_SIZE;
+	
+	
 	private ChangeSink changeSink;
 	private DataPostbox<EntityContainer> fromPostbox;
 	private DataPostboxSink fromSink;
 	private DataPostbox<EntityContainer> toPostbox;
 	private DataPostboxSink toSink;
+	private int workerCount;
+	private MemoryGrant partitionGrant;
+	private int maxPendingPartitions;
+	private TimestampSetter timestampSetter;
+	private ExecutorService executor;
+	private Deque<Future<List<ChangeContainer>>> pendingPartitions;
+	private ChangeDeriverPartition partition;
 	
 	
 	/**
@@ -38,10 +71,36 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 	 *            The size of the buffers to use for input sources.
 	 */
 	public ChangeDeriver(int inputBufferCapacity) {
+		this(inputBufferCapacity, 1);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param inputBufferCapacity
+	 *            The size of the buffers to use for input sources.
+	 * @param workerCount
+	 *            The number of threads to compare entities on. If 1, entities
+	 *            are compared on the calling thread.
+	 */
+	public ChangeDeriver(int inputBufferCapacity, int workerCount) {
+		if (workerCount < 1) {
+			throw new OsmosisRuntimeException(
+					"The worker count must be at least 1, " + workerCount + " was specified.");
+		}
+		
 		fromPostbox = new DataPostbox<EntityContainer>(inputBufferCapacity);
 		fromSink = new DataPostboxSink(fromPostbox);
 		toPostbox = new DataPostbox<EntityContainer>(inputBufferCapacity);
 		toSink = new DataPostboxSink(toPostbox);
+		this.workerCount = workerCount;
+		
+		// Each worker may have one partition in progress and one queued.
+		if (workerCount > 1) {
+			partitionGrant = MemoryManager.getInstance().request(
+					"change partitions", workerCount * 2 * PARTITION_BYTES, PARTITION_BYTES);
+		}
 	}
 
 
@@ -79,6 +138,115 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 	}
 	
 	
+	private void sendChanges(List<ChangeContainer> changes) {
+		for (ChangeContainer change : changes) {
+			changeSink.process(change);
+		}
+	}
+	
+	
+	/**
+	 * Sends the results of pending partitions downstream until no more than
+	 * the specified number remain in progress.
+	 */
+	private void sendPendingPartitions(int targetPendingCount) {
+		while (pendingPartitions.size() > targetPendingCount) {
+			try {
+				sendChanges(pendingPartitions.removeFirst().get());
+				
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new OsmosisRuntimeException("Unable to compare entities.", e.getCause());
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OsmosisRuntimeException("Interrupted while waiting for entities to be compared.", e);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Processes the current partition, either immediately or on a worker
+	 * thread.
+	 */
+	private void flushPartition() {
+		if (partition == null) {
+			return;
+		}
+		
+		if (executor == null) {
+			sendChanges(partition.call());
+		} else {
+			pendingPartitions.add(executor.submit(partition));
+			
+			// Allow each worker to have one partition queued behind the one in
+			// progress, memory permitting, before waiting for results.
+			sendPendingPartitions(maxPendingPartitions);
+		}
+		
+		partition = null;
+	}
+	
+	
+	/**
+	 * Adds a pair of matched entities to the current partition. One of the
+	 * entities may be null if the entity only exists in one source.
+	 */
+	private void addToPartition(EntityContainer fromEntityContainer, EntityContainer toEntityContainer) {
+		EntityType entityType;
+		
+		if (fromEntityContainer != null) {
+			entityType = fromEntityContainer.getEntity().getType();
+		} else {
+			entityType = toEntityContainer.getEntity().getType();
+		}
+		
+		if (partition != null && (partition.getEntityType() != entityType || partition.size() >= PARTITION_SIZE)) {
+			flushPartition();
+		}
+		if (partition == null) {
+			partition = new ChangeDeriverPartition(timestampSetter, entityType, PARTITION_SIZE);
+		}
+		
+		partition.add(fromEntityContainer, toEntityContainer);
+	}
+	
+	
+	private void startWorkers() {
+		final AtomicInteger threadCount;
+		
+		pendingPartitions = new ArrayDeque<Future<List<ChangeContainer>>>();
+		
+		if (workerCount > 1) {
+			maxPendingPartitions = (int) Math.max(1, Math.min(workerCount * 2,
+					partitionGrant.getBytes() / PARTITION_BYTES));
+			
+			threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+				Thread thread;
+				
+				thread = new Thread(runnable, "change-deriver-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			});
+		}
+	}
+	
+	
+	private void stopWorkers() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		pendingPartitions = null;
+		partition = null;
+	}
+	
+	
 	/**
 	 * Processes the input sources and sends the changes to the change sink.
 	 */
@@ -87,7 +255,6 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 			EntityContainerComparator comparator;
 			EntityContainer fromEntityContainer = null;
 			EntityContainer toEntityContainer = null;
-			TimestampSetter timestampSetter;
 			
 			// Create a comparator for comparing two entities by type and identifier.
 			comparator = new EntityContainerComparator(new EntityByTypeThenIdComparator());
@@ -95,6 +262,8 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 			// Create an object for setting the current timestamp on entities being deleted.
 			timestampSetter = new TimestampSetter();
 			
+			startWorkers();
+			
 			// We can't get meaningful data from the initialize data on the
 			// input streams, so pass empty meta data to the sink and discard
 			// the input meta data.
@@ -121,26 +290,19 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 				
 				if (comparisonResult < 0) {
 					// The from entity doesn't exist on the to source therefore
-					// has been deleted. We don't know when the entity was
-					// deleted so set the delete time to the current time.
-					changeSink.process(
-							new ChangeContainer(
-									timestampSetter.updateTimestamp(fromEntityContainer),
-									ChangeAction.Delete));
+					// has been deleted.
+					addToPartition(fromEntityContainer, null);
 					fromEntityContainer = null;
 				} else if (comparisonResult > 0) {
 					// The to entity doesn't exist on the from source therefore has
 					// been created.
-					changeSink.process(new ChangeContainer(toEntityContainer, ChangeAction.Create));
+					addToPartition(null, toEntityContainer);
 					toEntityContainer = null;
 				} else {
 					// The entity exists on both sources, therefore we must
-					// compare
-					// the entities directly. If there is a difference, the
-					// entity has been modified.
-					if (!fromEntityContainer.getEntity().equals(toEntityContainer.getEntity())) {
-						changeSink.process(new ChangeContainer(toEntityContainer, ChangeAction.Modify));
-					}
+					// compare the entities directly. If there is a difference,
+					// the entity has been modified.
+					addToPartition(fromEntityContainer, toEntityContainer);
 					fromEntityContainer = null;
 					toEntityContainer = null;
 				}
@@ -151,14 +313,7 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 				if (fromEntityContainer == null) {
 					fromEntityContainer = fromPostbox.getNext();
 				}
-
-				// The from entity doesn't exist on the to source therefore
-				// has been deleted. We don't know when the entity was
-				// deleted so set the delete time to the current time.
-				changeSink.process(
-						new ChangeContainer(
-								timestampSetter.updateTimestamp(fromEntityContainer),
-								ChangeAction.Delete));
+				addToPartition(fromEntityContainer, null);
 				fromEntityContainer = null;
 			}
 			// Any remaining "to" entities are creates.
@@ -166,15 +321,20 @@ public class ChangeDeriver implements MultiSinkRunnableChangeSource {
 				if (toEntityContainer == null) {
 					toEntityContainer = toPostbox.getNext();
 				}
-				changeSink.process(new ChangeContainer(toEntityContainer, ChangeAction.Create));
+				addToPartition(null, toEntityContainer);
 				toEntityContainer = null;
 			}
 			
+			flushPartition();
+			sendPendingPartitions(0);
+			
 			changeSink.complete();
 			fromPostbox.outputComplete();
 			toPostbox.outputComplete();
 			
 		} finally {
+			stopWorkers();
+			
 			changeSink.close();
 			
 			fromPostbox.outputRelease();
@@ -16,6 +16,8 @@ public class ChangeDeriverFactory extends TaskManagerFactory {
 	
 	private static final String ARG_BUFFER_CAPACITY = "bufferCapacity";
 	private static final int DEFAULT_BUFFER_CAPACITY = 20;
+	private static final String ARG_WORKERS = "workers";
+	private static final int DEFAULT_WORKERS = 1;
 	
 	/**
 	 * {@inheritDoc}
@@ -28,11 +30,12 @@ public class ChangeDeriverFactory extends TaskManagerFactory {
 				ARG_BUFFER_CAPACITY,
 				getDefaultIntegerArgument(taskConfig, DEFAULT_BUFFER_CAPACITY)
 			);
+		int workers = getIntegerArgument(taskConfig, ARG_WORKERS, DEFAULT_WORKERS);
 
 		
 		return new MultiSinkRunnableChangeSourceManager(
 			taskConfig.getId(),
-			new ChangeDeriver(bufferCapacity),
+			new ChangeDeriver(bufferCapacity, workers),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -1,7 +1,9 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.set.v0_6;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
@@ -13,27 +15,28 @@ import org.openstreetmap.osmosis.core.store.DataPostbox;
 import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
 import org.openstreetmap.osmosis.core.task.v0_6.MultiChangeSinkRunnableChangeSource;
 import org.openstreetmap.osmosis.set.v0_6.impl.DataPostboxChangeSink;
+import org.openstreetmap.osmosis.set.v0_6.impl.SortedPostboxMerger;
 
 
 /**
- * Merges two change sources into a single data set. Conflicting elements are
- * resolved by using either the latest timestamp (default) or always selecting
- * the second source.
+ * Merges any number of change sources into a single data set. Conflicting
+ * elements are resolved by using either the latest timestamp, the highest
+ * version (default) or always selecting the later source. The result is
+ * identical to merging the sources pairwise in order, but all sources are
+ * merged in a single pass.
  * 
  * @author Brett Henderson
  */
 public class ChangeMerger implements MultiChangeSinkRunnableChangeSource {
 	
 	private ChangeSink changeSink;
-	private DataPostbox<ChangeContainer> postbox0;
-	private SortedHistoryChangePipeValidator sortedChangeValidator0;
-	private DataPostbox<ChangeContainer> postbox1;
-	private SortedHistoryChangePipeValidator sortedChangeValidator1;
+	private List<DataPostbox<ChangeContainer>> postboxes;
+	private List<SortedHistoryChangePipeValidator> sortedChangeValidators;
 	private ConflictResolutionMethod conflictResolutionMethod;
 	
 	
 	/**
-	 * Creates a new instance.
+	 * Creates a new instance merging two sources.
 	 * 
 	 * @param conflictResolutionMethod
 	 *            The method to used to resolve conflict when two sources
@@ -42,15 +45,43 @@ public class ChangeMerger implements MultiChangeSinkRunnableChangeSource {
 	 *            The size of the buffers to use for input sources.
 	 */
 	public ChangeMerger(ConflictResolutionMethod conflictResolutionMethod, int inputBufferCapacity) {
-		this.conflictResolutionMethod = conflictResolutionMethod;
+		this(conflictResolutionMethod, inputBufferCapacity, 2);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param conflictResolutionMethod
+	 *            The method to used to resolve conflict when multiple sources
+	 *            contain the same entity.
+	 * @param inputBufferCapacity
+	 *            The size of the buffers to use for input sources.
+	 * @param sourceCount
+	 *            The number of sources to be merged.
+	 */
+	public ChangeMerger(ConflictResolutionMethod conflictResolutionMethod, int inputBufferCapacity,
+			int sourceCount) {
+		if (sourceCount < 1) {
+			throw new OsmosisRuntimeException(
+					"The source count must be at least 1, " + sourceCount + " was specified.");
+		}
 		
-		postbox0 = new DataPostbox<ChangeContainer>(inputBufferCapacity);
-		sortedChangeValidator0 = new SortedHistoryChangePipeValidator();
-		sortedChangeValidator0.setChangeSink(new DataPostboxChangeSink(postbox0));
+		this.conflictResolutionMethod = conflictResolutionMethod;
 		
-		postbox1 = new DataPostbox<ChangeContainer>(inputBufferCapacity);
-		sortedChangeValidator1 = new SortedHistoryChangePipeValidator();
-		sortedChangeValidator1.setChangeSink(new DataPostboxChangeSink(postbox1));
+		postboxes = new ArrayList<DataPostbox<ChangeContainer>>(sourceCount);
+		sortedChangeValidators = new ArrayList<SortedHistoryChangePipeValidator>(sourceCount);
+		for (int i = 0; i < sourceCount; i++) {
+			DataPostbox<ChangeContainer> postbox;
+			SortedHistoryChangePipeValidator sortedChangeValidator;
+			
+			postbox = new DataPostbox<ChangeContainer>(inputBufferCapacity);
+			sortedChangeValidator = new SortedHistoryChangePipeValidator();
+			sortedChangeValidator.setChangeSink(new DataPostboxChangeSink(postbox));
+			
+			postboxes.add(postbox);
+			sortedChangeValidators.add(sortedChangeValidator);
+		}
 	}
 	
 	
@@ -59,24 +90,19 @@ public class ChangeMerger implements MultiChangeSinkRunnableChangeSource {
 	 */
 	public ChangeSink getChangeSink(int instance) {
 		// Determine which postbox should be written to.
-		switch (instance) {
-		case 0:
-			return sortedChangeValidator0;
-		case 1:
-			return sortedChangeValidator1;
-		default:
+		if (instance < 0 || instance >= sortedChangeValidators.size()) {
 			throw new OsmosisRuntimeException("Sink instance " + instance + " is not valid.");
 		}
+		
+		return sortedChangeValidators.get(instance);
 	}
 
 
 	/**
-	 * This implementation always returns 2.
-	 * 
-	 * @return 2
+	 * {@inheritDoc}
 	 */
 	public int getChangeSinkCount() {
-		return 2;
+		return sortedChangeValidators.size();
 	}
 
 
@@ -88,14 +114,51 @@ public class ChangeMerger implements MultiChangeSinkRunnableChangeSource {
 	}
 	
 	
+	/**
+	 * Selects the change to keep from two changes to the same entity. If they
+	 * can't be distinguished, the change from the later source wins.
+	 */
+	private ChangeContainer resolveConflict(ChangeContainer changeContainer0, ChangeContainer changeContainer1) {
+		if (conflictResolutionMethod.equals(ConflictResolutionMethod.Timestamp)) {
+			int timestampComparisonResult;
+			
+			timestampComparisonResult =
+				changeContainer0.getEntityContainer().getEntity().getTimestamp()
+				.compareTo(changeContainer1.getEntityContainer().getEntity().getTimestamp());
+			
+			if (timestampComparisonResult > 0) {
+				return changeContainer0;
+			} else {
+				// If both have identical timestamps, use the later source.
+				return changeContainer1;
+			}
+			
+		} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.LatestSource)) {
+			return changeContainer1;
+		} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.Version)) {
+			int version0 = changeContainer0.getEntityContainer().getEntity().getVersion();
+			int version1 = changeContainer1.getEntityContainer().getEntity().getVersion();
+			if (version0 > version1) {
+				return changeContainer0;
+			} else {
+				// If both have identical versions, use the later source.
+				return changeContainer1;
+			}
+			
+		} else {
+			throw new OsmosisRuntimeException(
+					"Conflict resolution method " + conflictResolutionMethod + " is not recognized.");
+		}
+	}
+	
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void run() {
 		try {
-			EntityContainerComparator comparator;
-			ChangeContainer changeContainer0 = null;
-			ChangeContainer changeContainer1 = null;
+			final EntityContainerComparator comparator;
+			SortedPostboxMerger<ChangeContainer> merger;
 			
 			// Create a comparator for comparing two entities by type and identifier.
 			comparator = new EntityContainerComparator(new EntityByTypeThenIdThenVersionComparator());
@@ -103,106 +166,44 @@ public class ChangeMerger implements MultiChangeSinkRunnableChangeSource {
 			// We can't get meaningful data from the initialize data on the
 			// input streams, so pass empty meta data to the sink and discard
 			// the input meta data.
-			postbox0.outputInitialize();
-			postbox1.outputInitialize();
+			for (DataPostbox<ChangeContainer> postbox : postboxes) {
+				postbox.outputInitialize();
+			}
 			changeSink.initialize(Collections.<String, Object>emptyMap());
 			
-			// We continue in the comparison loop while both sources still have data.
-			while (
-					(changeContainer0 != null || postbox0.hasNext())
-					&& (changeContainer1 != null || postbox1.hasNext())) {
-				long comparisonResult;
+			// The postboxes transfer data from each source in chunks to
+			// minimise thread contention.
+			merger = new SortedPostboxMerger<ChangeContainer>(postboxes,
+					(change0, change1) -> comparator.compare(
+							change0.getEntityContainer(), change1.getEntityContainer()));
+			
+			while (merger.hasNext()) {
+				List<ChangeContainer> group;
+				ChangeContainer changeContainer;
 				
-				// Get the next input data where required.
-				if (changeContainer0 == null) {
-					changeContainer0 = postbox0.getNext();
+				// Changes existing in multiple sources are resolved in source
+				// order which gives the same result as nested two way merges.
+				group = merger.next();
+				changeContainer = group.get(0);
+				for (int i = 1; i < group.size(); i++) {
+					changeContainer = resolveConflict(changeContainer, group.get(i));
 				}
-				if (changeContainer1 == null) {
-					changeContainer1 = postbox1.getNext();
-				}
-				
-				// Compare the two entities.
-				comparisonResult =
-					comparator.compare(changeContainer0.getEntityContainer(), changeContainer1.getEntityContainer());
 				
-				if (comparisonResult < 0) {
-					// Entity 0 doesn't exist on the other source and can be
-					// sent straight through.
-					changeSink.process(changeContainer0);
-					changeContainer0 = null;
-				} else if (comparisonResult > 0) {
-					// Entity 1 doesn't exist on the other source and can be
-					// sent straight through.
-					changeSink.process(changeContainer1);
-					changeContainer1 = null;
-				} else {
-					// The entity exists on both sources so we must resolve the conflict.
-					if (conflictResolutionMethod.equals(ConflictResolutionMethod.Timestamp)) {
-						int timestampComparisonResult;
-						
-						timestampComparisonResult =
-							changeContainer0.getEntityContainer().getEntity().getTimestamp()
-							.compareTo(changeContainer1.getEntityContainer().getEntity().getTimestamp());
-						
-						if (timestampComparisonResult < 0) {
-							changeSink.process(changeContainer1);
-						} else if (timestampComparisonResult > 0) {
-							changeSink.process(changeContainer0);
-						} else {
-							// If both have identical timestamps, use the second source.
-							changeSink.process(changeContainer1);
-						}
-						
-					} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.LatestSource)) {
-						changeSink.process(changeContainer1);
-					} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.Version)) {
-						int version0 = changeContainer0.getEntityContainer().getEntity().getVersion();
-						int version1 = changeContainer1.getEntityContainer().getEntity().getVersion();
-						if (version0 < version1) {
-							changeSink.process(changeContainer1);
-						} else if (version0 > version1) {
-							changeSink.process(changeContainer0);
-						} else {
-							// If both have identical versions, use the second source.
-							changeSink.process(changeContainer1);
-						}
-
-					} else {
-						throw new OsmosisRuntimeException(
-								"Conflict resolution method " + conflictResolutionMethod + " is not recognized.");
-					}
-					
-					changeContainer0 = null;
-					changeContainer1 = null;
-				}
-			}
-			
-			// Any remaining entities on either source can be sent straight through.
-			while (changeContainer0 != null || postbox0.hasNext()) {
-				if (changeContainer0 == null) {
-					changeContainer0 = postbox0.getNext();
-				}
-				changeSink.process(changeContainer0);
-				changeContainer0 = null;
-			}
-			while (changeContainer1 != null || postbox1.hasNext()) {
-				if (changeContainer1 == null) {
-					changeContainer1 = postbox1.getNext();
-				}
-				changeSink.process(changeContainer1);
-				changeContainer1 = null;
+				changeSink.process(changeContainer);
 			}
 			
 			changeSink.complete();
 			
-			postbox0.outputComplete();
-			postbox1.outputComplete();
+			for (DataPostbox<ChangeContainer> postbox : postboxes) {
+				postbox.outputComplete();
+			}
 			
 		} finally {
 			changeSink.close();
 			
-			postbox0.outputRelease();
-			postbox1.outputRelease();
+			for (DataPostbox<ChangeContainer> postbox : postboxes) {
+				postbox.outputRelease();
+			}
 		}
 	}
 }
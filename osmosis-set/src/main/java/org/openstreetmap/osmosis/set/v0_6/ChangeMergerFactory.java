@@ -28,6 +28,9 @@ public class ChangeMergerFactory extends TaskManagerFactory {
 	private static final String ARG_BUFFER_CAPACITY = "bufferCapacity";
 	private static final int DEFAULT_BUFFER_CAPACITY = 20;
 	
+	private static final String ARG_SOURCE_COUNT = "sourceCount";
+	private static final int DEFAULT_SOURCE_COUNT = 2;
+	
 	static {
 		CONFLICT_RESOLUTION_METHOD_MAP.put(
 				DEFAULT_CONFLICT_RESOLUTION_METHOD, ConflictResolutionMethod.Version);
@@ -60,9 +63,12 @@ public class ChangeMergerFactory extends TaskManagerFactory {
 				getDefaultIntegerArgument(taskConfig, DEFAULT_BUFFER_CAPACITY)
 			);
 		
+		int sourceCount = getIntegerArgument(taskConfig, ARG_SOURCE_COUNT, DEFAULT_SOURCE_COUNT);
+		
 		return new MultiChangeSinkRunnableChangeSourceManager(
 			taskConfig.getId(),
-			new ChangeMerger(CONFLICT_RESOLUTION_METHOD_MAP.get(conflictResolutionMethod), bufferCapacity),
+			new ChangeMerger(CONFLICT_RESOLUTION_METHOD_MAP.get(conflictResolutionMethod), bufferCapacity,
+					sourceCount),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -1,13 +1,16 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package org.openstreetmap.osmosis.set.v0_6;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
 import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
 import org.openstreetmap.osmosis.core.domain.v0_6.Bound;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
 import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
 import org.openstreetmap.osmosis.core.merge.common.ConflictResolutionMethod;
 import org.openstreetmap.osmosis.core.sort.v0_6.EntityByTypeThenIdComparator;
@@ -17,12 +20,15 @@ import org.openstreetmap.osmosis.core.store.DataPostbox;
 import org.openstreetmap.osmosis.core.task.v0_6.MultiSinkRunnableSource;
 import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 import org.openstreetmap.osmosis.set.v0_6.impl.DataPostboxSink;
+import org.openstreetmap.osmosis.set.v0_6.impl.SortedPostboxMerger;
 
 
 /**
- * Merges two sources into a single data set. Conflicting elements are resolved
- * by using either the latest timestamp (default) or always selecting the second
- * source.
+ * Merges any number of sources into a single data set. Conflicting elements
+ * are resolved by using either the latest timestamp, the highest version
+ * (default) or always selecting the later source. The result is identical to
+ * merging the sources pairwise in order, but all sources are merged in a
+ * single pass.
  * 
  * @author Brett Henderson
  */
@@ -31,15 +37,13 @@ public class EntityMerger implements MultiSinkRunnableSource {
 	private static final Logger LOG = Logger.getLogger(EntityMerger.class.getName());
 
 	private Sink sink;
-	private DataPostbox<EntityContainer> postbox0;
-	private SortedEntityPipeValidator sortedEntityValidator0;
-	private DataPostbox<EntityContainer> postbox1;
-	private SortedEntityPipeValidator sortedEntityValidator1;
+	private List<DataPostbox<EntityContainer>> postboxes;
+	private List<SortedEntityPipeValidator> sortedEntityValidators;
 	private ConflictResolutionMethod conflictResolutionMethod;
 	private BoundRemovedAction boundRemovedAction;
 
 	/**
-	 * Creates a new instance.
+	 * Creates a new instance merging two sources.
 	 * 
 	 * @param conflictResolutionMethod
 	 *            The method to used to resolve conflict when two sources
@@ -52,16 +56,47 @@ public class EntityMerger implements MultiSinkRunnableSource {
 	 */
 	public EntityMerger(ConflictResolutionMethod conflictResolutionMethod, int inputBufferCapacity, 
 			BoundRemovedAction boundRemovedAction) {
+		this(conflictResolutionMethod, inputBufferCapacity, boundRemovedAction, 2);
+	}
+	
+	
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param conflictResolutionMethod
+	 *            The method to used to resolve conflict when multiple sources
+	 *            contain the same entity.
+	 * @param inputBufferCapacity
+	 *            The size of the buffers to use for input sources.
+	 * @param boundRemovedAction
+	 *            The action to take if the merge operation removes 
+	 *            a bound entity.
+	 * @param sourceCount
+	 *            The number of sources to be merged.
+	 */
+	public EntityMerger(ConflictResolutionMethod conflictResolutionMethod, int inputBufferCapacity, 
+			BoundRemovedAction boundRemovedAction, int sourceCount) {
+		if (sourceCount < 1) {
+			throw new OsmosisRuntimeException(
+					"The source count must be at least 1, " + sourceCount + " was specified.");
+		}
 		
 		this.conflictResolutionMethod = conflictResolutionMethod;
+		this.boundRemovedAction = boundRemovedAction;
 		
-		postbox0 = new DataPostbox<EntityContainer>(inputBufferCapacity);
-		sortedEntityValidator0 = new SortedEntityPipeValidator();
-		sortedEntityValidator0.setSink(new DataPostboxSink(postbox0));
-		
-		postbox1 = new DataPostbox<EntityContainer>(inputBufferCapacity);
-		sortedEntityValidator1 = new SortedEntityPipeValidator();
-		sortedEntityValidator1.setSink(new DataPostboxSink(postbox1));
+		postboxes = new ArrayList<DataPostbox<EntityContainer>>(sourceCount);
+		sortedEntityValidators = new ArrayList<SortedEntityPipeValidator>(sourceCount);
+		for (int i = 0; i < sourceCount; i++) {
+			DataPostbox<EntityContainer> postbox;
+			SortedEntityPipeValidator sortedEntityValidator;
+			
+			postbox = new DataPostbox<EntityContainer>(inputBufferCapacity);
+			sortedEntityValidator = new SortedEntityPipeValidator();
+			sortedEntityValidator.setSink(new DataPostboxSink(postbox));
+			
+			postboxes.add(postbox);
+			sortedEntityValidators.add(sortedEntityValidator);
+		}
 	}
 	
 	
@@ -70,25 +105,20 @@ public class EntityMerger implements MultiSinkRunnableSource {
 	 */
 	public Sink getSink(int instance) {
 		// Determine which postbox should be written to.
-		switch (instance) {
-		case 0:
-			return sortedEntityValidator0;
-		case 1:
-			return sortedEntityValidator1;
-		default:
+		if (instance < 0 || instance >= sortedEntityValidators.size()) {
 			throw new OsmosisRuntimeException("Sink instance " + instance
 					+ " is not valid.");
 		}
+		
+		return sortedEntityValidators.get(instance);
 	}
 
 
 	/**
-	 * This implementation always returns 2.
-	 * 
-	 * @return 2
+	 * {@inheritDoc}
 	 */
 	public int getSinkCount() {
-		return 2;
+		return sortedEntityValidators.size();
 	}
 
 
@@ -100,160 +130,154 @@ public class EntityMerger implements MultiSinkRunnableSource {
 	}
 	
 	
+	/**
+	 * Removes any bounds from the start of each source, and sends their union
+	 * downstream if every source containing data had one.
+	 */
+	private void mergeBounds(SortedPostboxMerger<EntityContainer> merger) {
+		List<Integer> dataSources;
+		List<Integer> boundSources;
+		List<Integer> missingBoundSources;
+		Bound mergedBound;
+		
+		// If there is a bound, it's going to be the first object 
+		// in a properly sorted stream
+		dataSources = new ArrayList<Integer>();
+		for (int i = 0; i < postboxes.size(); i++) {
+			if (merger.getHead(i) != null) {
+				dataSources.add(i);
+			}
+		}
+		
+		// There's only need for special processing if there actually is some data
+		// on multiple streams - no data implies no bound
+		if (dataSources.size() < 2) {
+			return;
+		}
+		
+		boundSources = new ArrayList<Integer>();
+		missingBoundSources = new ArrayList<Integer>();
+		mergedBound = null;
+		
+		// If there are any bounds upstream, eat them up
+		for (int source : dataSources) {
+			Entity entity;
+			
+			entity = merger.getHead(source).getEntity();
+			
+			if (entity.getType() == EntityType.Bound) {
+				if (mergedBound == null) {
+					mergedBound = (Bound) entity;
+				} else {
+					mergedBound = mergedBound.union((Bound) entity);
+				}
+				boundSources.add(source);
+				merger.skipHead(source);
+			} else {
+				missingBoundSources.add(source);
+			}
+		}
+		
+		// Only post a bound downstream if all upstream sources had a bound.
+		// (Otherwise there's either nothing to post or the posted bound is going
+		// to be smaller than the actual data, which is bad)
+		if (missingBoundSources.isEmpty()) {
+			sink.process(new BoundContainer(mergedBound));
+		} else if (!boundSources.isEmpty()) {
+			handleBoundRemoved(boundSources, missingBoundSources);
+		}
+	}
+	
+	
+	/**
+	 * Selects the entity to keep from two versions of the same entity. If
+	 * they can't be distinguished, the entity from the later source wins.
+	 */
+	private EntityContainer resolveConflict(EntityContainer entityContainer0, EntityContainer entityContainer1) {
+		if (conflictResolutionMethod.equals(ConflictResolutionMethod.Timestamp)) {
+			int timestampComparisonResult;
+			
+			timestampComparisonResult =
+				entityContainer0.getEntity().getTimestamp()
+					.compareTo(entityContainer1.getEntity().getTimestamp());
+			
+			if (timestampComparisonResult > 0) {
+				return entityContainer0;
+			} else {
+				// If both have identical timestamps, use the later source.
+				return entityContainer1;
+			}
+			
+		} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.LatestSource)) {
+			return entityContainer1;
+		} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.Version)) {
+			if (entityContainer0.getEntity().getVersion() > entityContainer1.getEntity().getVersion()) {
+				return entityContainer0;
+			} else {
+				// If both have identical versions, use the later source.
+				return entityContainer1;
+			}
+			
+		} else {
+			throw new OsmosisRuntimeException(
+					"Conflict resolution method " + conflictResolutionMethod + " is not recognized.");
+		}
+	}
+	
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void run() {
 		try {
-			EntityContainerComparator comparator;
-			EntityContainer entityContainer0 = null;
-			EntityContainer entityContainer1 = null;
-			
-			// Create a comparator for comparing two entities by type and identifier.
-			comparator = new EntityContainerComparator(new EntityByTypeThenIdComparator());
+			SortedPostboxMerger<EntityContainer> merger;
 			
 			// We can't get meaningful data from the initialize data on the
 			// input streams, so pass empty meta data to the sink and discard
 			// the input meta data.
-			postbox0.outputInitialize();
-			postbox1.outputInitialize();
+			for (DataPostbox<EntityContainer> postbox : postboxes) {
+				postbox.outputInitialize();
+			}
 			sink.initialize(Collections.<String, Object>emptyMap());
 			
-			// BEGIN bound special handling
+			// Merge entities by type and identifier. The postboxes transfer
+			// data from each source in chunks to minimise thread contention.
+			merger = new SortedPostboxMerger<EntityContainer>(
+					postboxes, new EntityContainerComparator(new EntityByTypeThenIdComparator()));
 			
-			// If there is a bound, it's going to be the first object 
-			// in a properly sorted stream
-			entityContainer0 = nextOrNull(postbox0);
-			entityContainer1 = nextOrNull(postbox1);
-					
-			// There's only need for special processing if there actually is some data
-			// on both streams - no data implies no bound
-			if (entityContainer0 != null && entityContainer1 != null) {
-				Bound bound0 = null;
-				Bound bound1 = null;
-				
-				// If there are any bounds upstream, eat them up
-				if (entityContainer0.getEntity().getType() == EntityType.Bound) {
-					bound0 = (Bound) entityContainer0.getEntity();
-					entityContainer0 = nextOrNull(postbox0);
-				}
-				if (entityContainer1.getEntity().getType() == EntityType.Bound) {
-					bound1 = (Bound) entityContainer1.getEntity();
-					entityContainer1 = nextOrNull(postbox1);
-				}
-
-				// Only post a bound downstream if both upstream sources had a bound.
-				// (Otherwise there's either nothing to post or the posted bound is going
-				// to be smaller than the actual data, which is bad)
-				if (bound0 != null && bound1 != null) {
-					sink.process(new BoundContainer(bound0.union(bound1)));
-				} else if ((bound0 != null && bound1 == null)
-						|| (bound0 == null && bound1 != null)) {
-					handleBoundRemoved(bound0 == null);
-				}
-			}
-			
-			// END bound special handling
+			mergeBounds(merger);
 			
-			// We continue in the comparison loop while both sources still have data.
-			while (
-					(entityContainer0 != null || postbox0.hasNext())
-					&& (entityContainer1 != null || postbox1.hasNext())) {
-				long comparisonResult;
+			while (merger.hasNext()) {
+				List<EntityContainer> group;
+				EntityContainer entityContainer;
 				
-				// Get the next input data where required.
-				if (entityContainer0 == null) {
-					entityContainer0 = postbox0.getNext();
-				}
-				if (entityContainer1 == null) {
-					entityContainer1 = postbox1.getNext();
+				// Entities existing in multiple sources are resolved in source
+				// order which gives the same result as nested two way merges.
+				group = merger.next();
+				entityContainer = group.get(0);
+				for (int i = 1; i < group.size(); i++) {
+					entityContainer = resolveConflict(entityContainer, group.get(i));
 				}
 				
-				// Compare the two entities.
-				comparisonResult = comparator.compare(entityContainer0, entityContainer1);
-				
-				if (comparisonResult < 0) {
-					// Entity 0 doesn't exist on the other source and can be
-					// sent straight through.
-					sink.process(entityContainer0);
-					entityContainer0 = null;
-				} else if (comparisonResult > 0) {
-					// Entity 1 doesn't exist on the other source and can be
-					// sent straight through.
-					sink.process(entityContainer1);
-					entityContainer1 = null;
-				} else {
-					// The entity exists on both sources so we must resolve the conflict.
-					if (conflictResolutionMethod.equals(ConflictResolutionMethod.Timestamp)) {
-						int timestampComparisonResult;
-						
-						timestampComparisonResult =
-							entityContainer0.getEntity().getTimestamp()
-								.compareTo(entityContainer1.getEntity().getTimestamp());
-						
-						if (timestampComparisonResult < 0) {
-							sink.process(entityContainer1);
-						} else if (timestampComparisonResult > 0) {
-							sink.process(entityContainer0);
-						} else {
-							// If both have identical timestamps, use the second source.
-							sink.process(entityContainer1);
-						}
-						
-					} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.LatestSource)) {
-						sink.process(entityContainer1);
-					} else if (conflictResolutionMethod.equals(ConflictResolutionMethod.Version)) {
-						int version0 = entityContainer0.getEntity().getVersion();
-						int version1 = entityContainer1.getEntity().getVersion();
-						if (version0 < version1) {
-							sink.process(entityContainer1);
-						} else if (version0 > version1) {
-							sink.process(entityContainer0);
-						} else {
-							// If both have identical versions, use the second source.
-							sink.process(entityContainer1);
-						}
-
-					} else {
-						throw new OsmosisRuntimeException(
-								"Conflict resolution method " + conflictResolutionMethod + " is not recognized.");
-					}
-					
-					entityContainer0 = null;
-					entityContainer1 = null;
-				}
-			}
-			
-			// Any remaining entities on either source can be sent straight through.
-			while (entityContainer0 != null || postbox0.hasNext()) {
-				if (entityContainer0 == null) {
-					entityContainer0 = postbox0.getNext();
-				}
-				sink.process(entityContainer0);
-				entityContainer0 = null;
-			}
-			while (entityContainer1 != null || postbox1.hasNext()) {
-				if (entityContainer1 == null) {
-					entityContainer1 = postbox1.getNext();
-				}
-				sink.process(entityContainer1);
-				entityContainer1 = null;
+				sink.process(entityContainer);
 			}
 			
 			sink.complete();
 			
-			postbox0.outputComplete();
-			postbox1.outputComplete();
+			for (DataPostbox<EntityContainer> postbox : postboxes) {
+				postbox.outputComplete();
+			}
 			
 		} finally {
 			sink.close();
 			
-			postbox0.outputRelease();
-			postbox1.outputRelease();
+			for (DataPostbox<EntityContainer> postbox : postboxes) {
+				postbox.outputRelease();
+			}
 		}
 	}
 		
-	private void handleBoundRemoved(boolean source0BoundMissing) {
+	private void handleBoundRemoved(List<Integer> boundSources, List<Integer> missingBoundSources) {
 		
 		if (boundRemovedAction == BoundRemovedAction.Ignore) {
 			// Nothing to do
@@ -261,20 +285,10 @@ public class EntityMerger implements MultiSinkRunnableSource {
 		}
 		
 		// Message for log or exception
-		String missingSourceID, otherSourceID;
-		
-		if (source0BoundMissing) {
-			missingSourceID = "0";
-			otherSourceID = "1";
-		} else {
-			missingSourceID = "1";
-			otherSourceID = "0";
-		}
-		
 		String message = String.format(
 				"Source %s of the merge task has an explicit bound set, but source %s has not. "
 				+ "Therefore the explicit bound has been removed from the merged stream.", 
-				missingSourceID, otherSourceID);
+				formatSources(boundSources), formatSources(missingBoundSources));
 		
 		// Now actually log or fail.
 		if (boundRemovedAction == BoundRemovedAction.Warn) {
@@ -285,12 +299,17 @@ public class EntityMerger implements MultiSinkRunnableSource {
 	}
 
 
-	private static EntityContainer nextOrNull(DataPostbox<EntityContainer> postbox) {
-
-		if (postbox.hasNext()) {
-			return postbox.getNext();
+	private static String formatSources(List<Integer> sources) {
+		StringBuilder builder;
+		
+		builder = new StringBuilder();
+		for (int source : sources) {
+			if (builder.length() > 0) {
+				builder.append(", ");
+			}
+			builder.append(source);
 		}
 		
-		return null;
+		return builder.toString();
 	}
 }
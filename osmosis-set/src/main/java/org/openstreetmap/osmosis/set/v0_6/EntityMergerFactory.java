@@ -31,6 +31,9 @@ public class EntityMergerFactory extends TaskManagerFactory {
 	private static final String ARG_BUFFER_CAPACITY = "bufferCapacity";
 	private static final int DEFAULT_BUFFER_CAPACITY = 20;
 	
+	private static final String ARG_SOURCE_COUNT = "sourceCount";
+	private static final int DEFAULT_SOURCE_COUNT = 2;
+	
 	static {
 		CONFLICT_RESOLUTION_METHOD_MAP.put(
 				DEFAULT_CONFLICT_RESOLUTION_METHOD, ConflictResolutionMethod.Version);
@@ -68,10 +71,12 @@ public class EntityMergerFactory extends TaskManagerFactory {
 					+ " has value \"" + conflictResolutionMethod + "\" which is unrecognised.");
 		}
 		
+		int sourceCount = getIntegerArgument(taskConfig, ARG_SOURCE_COUNT, DEFAULT_SOURCE_COUNT);
+		
 		return new MultiSinkRunnableSourceManager(
 			taskConfig.getId(),
 			new EntityMerger(CONFLICT_RESOLUTION_METHOD_MAP.get(conflictResolutionMethod),  bufferCapacity,
-					boundRemovedAction),
+					boundRemovedAction, sourceCount),
 			taskConfig.getPipeArgs()
 		);
 	}
@@ -0,0 +1,161 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.set.v0_6.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+import org.openstreetmap.osmosis.core.change.v0_6.impl.TimestampSetter;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+
+
+/**
+ * A contiguous range of entities of a single type from the two inputs of a
+ * change deriver. The entities have already been matched by id, deriving the
+ * changes for them only requires the matching entities to be compared which
+ * allows partitions to be processed independently of each other.
+ *
+ * @author Brett Henderson
+ */
+public class ChangeDeriverPartition implements Callable<List<ChangeContainer>> {
+
+	private TimestampSetter timestampSetter;
+	private EntityType entityType;
+	private List<EntityContainer> fromEntities;
+	private List<EntityContainer> toEntities;
+
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param timestampSetter
+	 *            Used to set the current time on deleted entities.
+	 * @param entityType
+	 *            The type of all entities in the partition.
+	 * @param capacity
+	 *            The expected number of entities in the partition.
+	 */
+	public ChangeDeriverPartition(TimestampSetter timestampSetter, EntityType entityType, int capacity) {
+		this.timestampSetter = timestampSetter;
+		this.entityType = entityType;
+
+		fromEntities = new ArrayList<EntityContainer>(capacity);
+		toEntities = new ArrayList<EntityContainer>(capacity);
+	}
+
+
+	/**
+	 * Gets the type of all entities in the partition.
+	 *
+	 * @return The entity type.
+	 */
+	public EntityType getEntityType() {
+		return entityType;
+	}
+
+
+	/**
+	 * Gets the number of entities in the partition.
+	 *
+	 * @return The number of entities.
+	 */
+	public int size() {
+		return fromEntities.size();
+	}
+
+
+	/**
+	 * Adds the two versions of an entity to the partition.
+	 *
+	 * @param fromEntityContainer
+	 *            The entity from the first source, or null if it has been
+	 *            created.
+	 * @param toEntityContainer
+	 *            The entity from the second source, or null if it has been
+	 *            deleted.
+	 */
+	public void add(EntityContainer fromEntityContainer, EntityContainer toEntityContainer) {
+		fromEntities.add(fromEntityContainer);
+		toEntities.add(toEntityContainer);
+	}
+
+
+	/**
+	 * Determines if an entity differs between the two sources. Differences in
+	 * version or timestamp are checked first because they are far cheaper to
+	 * detect than differences in tags, way nodes or members. The result is the
+	 * same as comparing the entities for equality.
+	 *
+	 * @param fromEntity
+	 *            The entity from the first source.
+	 * @param toEntity
+	 *            The entity from the second source.
+	 * @return True if the entity has been modified.
+	 */
+	public static boolean isModified(Entity fromEntity, Entity toEntity) {
+		Date fromTimestamp;
+		Date toTimestamp;
+
+		// Bounds don't carry meaningful versions or timestamps.
+		if (fromEntity.getType() == EntityType.Bound) {
+			return !fromEntity.equals(toEntity);
+		}
+
+		if (fromEntity.getVersion() != toEntity.getVersion()) {
+			return true;
+		}
+
+		fromTimestamp = fromEntity.getTimestamp();
+		toTimestamp = toEntity.getTimestamp();
+		if (!Objects.equals(fromTimestamp, toTimestamp)) {
+			return true;
+		}
+
+		return !fromEntity.equals(toEntity);
+	}
+
+
+	/**
+	 * Derives the changes for all entities in the partition.
+	 *
+	 * @return The changes in entity order.
+	 */
+	@Override
+	public List<ChangeContainer> call() {
+		List<ChangeContainer> changes;
+
+		changes = new ArrayList<ChangeContainer>();
+
+		for (int i = 0; i < fromEntities.size(); i++) {
+			EntityContainer fromEntityContainer;
+			EntityContainer toEntityContainer;
+
+			fromEntityContainer = fromEntities.get(i);
+			toEntityContainer = toEntities.get(i);
+
+			if (toEntityContainer == null) {
+				// The from entity doesn't exist on the to source therefore
+				// has been deleted. We don't know when the entity was
+				// deleted so set the delete time to the current time.
+				changes.add(
+						new ChangeContainer(
+								timestampSetter.updateTimestamp(fromEntityContainer),
+								ChangeAction.Delete));
+			} else if (fromEntityContainer == null) {
+				// The to entity doesn't exist on the from source therefore has
+				// been created.
+				changes.add(new ChangeContainer(toEntityContainer, ChangeAction.Create));
+			} else if (isModified(fromEntityContainer.getEntity(), toEntityContainer.getEntity())) {
+				changes.add(new ChangeContainer(toEntityContainer, ChangeAction.Modify));
+			}
+		}
+
+		return changes;
+	}
+}
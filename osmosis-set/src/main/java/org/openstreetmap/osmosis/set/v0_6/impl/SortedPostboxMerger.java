@@ -0,0 +1,204 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package org.openstreetmap.osmosis.set.v0_6.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openstreetmap.osmosis.core.store.DataPostbox;
+
+
+/**
+ * Merges any number of sorted postboxes into a single sorted sequence. The
+ * current element of each source is held in a heap so that each element costs
+ * a logarithmic number of comparisons regardless of the number of sources.
+ * Elements which compare as equal are returned together, ordered by source,
+ * allowing the caller to resolve conflicts between them.
+ *
+ * @param <T>
+ *            The type of data being merged.
+ * @author Brett Henderson
+ */
+public class SortedPostboxMerger<T> {
+
+	private List<MergeSource<T>> sources;
+	private Comparator<T> comparator;
+	private PriorityQueue<MergeSource<T>> heap;
+	private List<T> group;
+
+
+	/**
+	 * Creates a new instance. The output side of each postbox must already
+	 * have been initialised.
+	 *
+	 * @param postboxes
+	 *            The sources of data, each of which must be sorted.
+	 * @param comparator
+	 *            The comparator defining the sort order of the sources.
+	 */
+	public SortedPostboxMerger(List<DataPostbox<T>> postboxes, Comparator<T> comparator) {
+		this.comparator = comparator;
+
+		sources = new ArrayList<MergeSource<T>>(postboxes.size());
+		for (int i = 0; i < postboxes.size(); i++) {
+			sources.add(new MergeSource<T>(i, postboxes.get(i)));
+		}
+
+		group = new ArrayList<T>(postboxes.size());
+	}
+
+
+	/**
+	 * Gets the first remaining element of a source without consuming it. This
+	 * may only be called before merging begins.
+	 *
+	 * @param source
+	 *            The index of the source.
+	 * @return The element, or null if the source has no remaining data.
+	 */
+	public T getHead(int source) {
+		return sources.get(source).getHead();
+	}
+
+
+	/**
+	 * Discards the first remaining element of a source. This may only be
+	 * called before merging begins.
+	 *
+	 * @param source
+	 *            The index of the source.
+	 */
+	public void skipHead(int source) {
+		sources.get(source).advance();
+	}
+
+
+	private int compare(MergeSource<T> source0, MergeSource<T> source1) {
+		int result;
+
+		result = comparator.compare(source0.getHead(), source1.getHead());
+
+		// Equal elements are returned in source order.
+		if (result == 0) {
+			result = Integer.compare(source0.getIndex(), source1.getIndex());
+		}
+
+		return result;
+	}
+
+
+	private void initializeHeap() {
+		if (heap == null) {
+			heap = new PriorityQueue<MergeSource<T>>(Math.max(1, sources.size()), this::compare);
+
+			for (MergeSource<T> source : sources) {
+				if (source.getHead() != null) {
+					heap.add(source);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Indicates if any data remains in any of the sources.
+	 *
+	 * @return True if data remains.
+	 */
+	public boolean hasNext() {
+		initializeHeap();
+
+		return !heap.isEmpty();
+	}
+
+
+	private T pollHead() {
+		MergeSource<T> source;
+		T head;
+
+		source = heap.poll();
+		head = source.getHead();
+
+		source.advance();
+		if (source.getHead() != null) {
+			heap.add(source);
+		}
+
+		return head;
+	}
+
+
+	/**
+	 * Returns the next element along with all elements from other sources
+	 * which compare as equal to it. The elements are ordered by source. The
+	 * returned list is reused by subsequent calls.
+	 *
+	 * @return The group of equal elements.
+	 */
+	public List<T> next() {
+		T head;
+
+		initializeHeap();
+
+		group.clear();
+
+		head = pollHead();
+		group.add(head);
+
+		// Sources are individually sorted without duplicates so each source
+		// contributes at most one element to the group.
+		while (!heap.isEmpty() && comparator.compare(heap.peek().getHead(), head) == 0) {
+			group.add(pollHead());
+		}
+
+		return group;
+	}
+
+
+	/**
+	 * Tracks the current position within a single source.
+	 *
+	 * @param <T>
+	 *            The type of data being merged.
+	 */
+	private static class MergeSource<T> {
+		private int index;
+		private DataPostbox<T> postbox;
+		private T head;
+		private boolean headLoaded;
+
+
+		MergeSource(int index, DataPostbox<T> postbox) {
+			this.index = index;
+			this.postbox = postbox;
+		}
+
+
+		int getIndex() {
+			return index;
+		}
+
+
+		T getHead() {
+			if (!headLoaded) {
+				if (postbox.hasNext()) {
+					head = postbox.getNext();
+				} else {
+					head = null;
+				}
+				headLoaded = true;
+			}
+
+			return head;
+		}
+
+
+		void advance() {
+			getHead();
+
+			headLoaded = false;
+			head = null;
+		}
+	}
+}
@@ -3,17 +3,28 @@ package org.openstreetmap.osmosis.set.v0_6;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.openstreetmap.osmosis.core.Osmosis;
 import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
 import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
 import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
 import org.openstreetmap.osmosis.core.misc.v0_6.EmptyReader;
 import org.openstreetmap.osmosis.core.task.common.ChangeAction;
 import org.openstreetmap.osmosis.core.task.v0_6.RunnableSource;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 import org.openstreetmap.osmosis.testutil.AbstractDataTest;
 import org.openstreetmap.osmosis.testutil.v0_6.RunTaskUtilities;
 import org.openstreetmap.osmosis.testutil.v0_6.SinkChangeInspector;
@@ -107,6 +118,60 @@ public class ChangeDeriverTest extends AbstractDataTest {
 		Assert.assertEquals(78, e.getVersion());
 	}
 
+
+	/**
+	 * Deriving change on multiple worker threads should produce the same
+	 * changes, in the same order, as deriving it on a single thread.
+	 * 
+	 * @throws Exception if something goes wrong.
+	 */
+	@Test
+	public void parallelWorkers() throws Exception {
+		List<ChangeContainer> serialChanges;
+		List<ChangeContainer> parallelChanges;
+		int deleteCount;
+		int createCount;
+		int modifyCount;
+		
+		serialChanges = RunTaskUtilities.run(
+				new ChangeDeriver(10, 1), new GeneratedSource(false), new GeneratedSource(true)).getProcessedChanges();
+		parallelChanges = RunTaskUtilities.run(
+				new ChangeDeriver(10, 4), new GeneratedSource(false), new GeneratedSource(true)).getProcessedChanges();
+		
+		Assert.assertEquals(serialChanges.size(), parallelChanges.size());
+		
+		deleteCount = 0;
+		createCount = 0;
+		modifyCount = 0;
+		for (int i = 0; i < parallelChanges.size(); i++) {
+			ChangeContainer serialChange = serialChanges.get(i);
+			ChangeContainer parallelChange = parallelChanges.get(i);
+			Entity entity = parallelChange.getEntityContainer().getEntity();
+			
+			Assert.assertEquals(serialChange.getAction(), parallelChange.getAction());
+			Assert.assertEquals(serialChange.getEntityContainer().getEntity().getType(), entity.getType());
+			Assert.assertEquals(serialChange.getEntityContainer().getEntity().getId(), entity.getId());
+			
+			// Ways are identical in both sources so only nodes change.
+			Assert.assertEquals(EntityType.Node, entity.getType());
+			
+			if (parallelChange.getAction() == ChangeAction.Delete) {
+				Assert.assertEquals(0, entity.getId() % 7);
+				deleteCount++;
+			} else if (parallelChange.getAction() == ChangeAction.Create) {
+				Assert.assertTrue(entity.getId() > GeneratedSource.NODE_COUNT);
+				createCount++;
+			} else {
+				Assert.assertTrue(entity.getId() % 3 == 0 || entity.getId() % 11 == 0);
+				modifyCount++;
+			}
+		}
+		
+		Assert.assertEquals(714, deleteCount);
+		Assert.assertEquals(86, createCount);
+		Assert.assertEquals(1688, modifyCount);
+	}
+
 	
 	private void deriveChange(String leftFileName, String rightFileName, 
 			String expectedOutputFileName) throws IOException {
@@ -132,4 +197,89 @@ public class ChangeDeriverTest extends AbstractDataTest {
 
 		dataUtils.compareFiles(expectedOutputFile, actualOutputFile);
 	}
+
+
+	/**
+	 * Generates a large sorted data set. The modified variant has deleted,
+	 * created and modified nodes but identical ways.
+	 */
+	private static class GeneratedSource implements RunnableSource {
+		
+		static final int NODE_COUNT = 5000;
+		private static final int CREATED_NODE_COUNT = 100;
+		private static final int WAY_COUNT = 1500;
+		
+		private Sink sink;
+		private boolean modified;
+		private Date timestamp;
+		
+		GeneratedSource(boolean modified) {
+			this.modified = modified;
+			timestamp = new Date(1200000000000L);
+		}
+		
+		@Override
+		public void setSink(Sink sink) {
+			this.sink = sink;
+		}
+		
+		private Node createNode(long id) {
+			int version;
+			String value;
+			Node node;
+			
+			version = 1;
+			value = "original";
+			if (modified && id % 3 == 0) {
+				version = 2;
+			}
+			if (modified && id % 11 == 0) {
+				// Only the tags differ which requires a full comparison to detect.
+				value = "modified";
+			}
+			
+			node = new Node(new CommonEntityData(id, version, timestamp, OsmUser.NONE, 1), id, -id);
+			node.getTags().add(new Tag("key", value));
+			
+			return node;
+		}
+		
+		private Way createWay(long id) {
+			Way way;
+			
+			way = new Way(new CommonEntityData(id, 1, timestamp, OsmUser.NONE, 1));
+			way.getWayNodes().add(new WayNode(id));
+			way.getWayNodes().add(new WayNode(id + 1));
+			
+			return way;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				long nodeCount;
+				
+				sink.initialize(Collections.<String, Object>emptyMap());
+				
+				if (modified) {
+					nodeCount = NODE_COUNT + CREATED_NODE_COUNT;
+				} else {
+					nodeCount = NODE_COUNT;
+				}
+				for (long id = 1; id <= nodeCount; id++) {
+					if (modified && id % 7 == 0) {
+						continue;
+					}
+					sink.process(new NodeContainer(createNode(id)));
+				}
+				for (long id = 1; id <= WAY_COUNT; id++) {
+					sink.process(new WayContainer(createWay(id)));
+				}
+				
+				sink.complete();
+			} finally {
+				sink.close();
+			}
+		}
+	}
 }
@@ -330,7 +330,66 @@ public class EntityMergerTest extends AbstractDataTest {
 		dataUtils.compareFiles(expectedOutputFile, actualOutputFile);
 
 	}
-	
+
+	/**
+	 * Tests merging more than two sources in a single merge task.
+	 *
+	 * @throws Exception if something fails
+	 */
+	@Test
+	public void multipleSources() throws Exception {
+		File sourceFile1;
+		File sourceFile2;
+		File sourceFile3;
+		File expectedOutputFile;
+		File actualOutputFile;
+
+		// Generate files.
+		sourceFile1 = dataUtils.createDataFile("v0_6/merge/merge-in-1.osm");
+		sourceFile2 = dataUtils.createDataFile("v0_6/merge/merge-in-2-disjunct.osm");
+		sourceFile3 = dataUtils.createDataFile("v0_6/empty-entity.osm");
+		expectedOutputFile = dataUtils.createDataFile("v0_6/merge/merge-out-disjunct.osm");
+		actualOutputFile = dataUtils.newFile();
+
+		// Run the merge with an empty source in the middle.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-0.6", sourceFile2.getPath(),
+				"--read-xml-0.6", sourceFile3.getPath(),
+				"--read-xml-0.6", sourceFile1.getPath(),
+				"--merge",
+				"sourceCount=3",
+				"--write-xml-0.6", actualOutputFile.getPath()
+			}
+		);
+
+		// Validate that the output file matches the expected result.
+		dataUtils.compareFiles(expectedOutputFile, actualOutputFile);
+
+		// Conflicts between more than two sources should be resolved as if the
+		// sources were merged pairwise.
+		sourceFile2 = dataUtils.createDataFile("v0_6/merge/merge-in-2-version.osm");
+		expectedOutputFile = dataUtils.createDataFile("v0_6/merge/merge-out-version.osm");
+
+		// Run the merge.
+		Osmosis.run(
+			new String[] {
+				"-q",
+				"--read-xml-0.6", sourceFile1.getPath(),
+				"--read-xml-0.6", sourceFile2.getPath(),
+				"--read-xml-0.6", sourceFile1.getPath(),
+				"--merge",
+				"conflictResolutionMethod=version",
+				"sourceCount=3",
+				"--write-xml-0.6", actualOutputFile.getPath()
+			}
+		);
+
+		// Validate that the output file matches the expected result.
+		dataUtils.compareFiles(expectedOutputFile, actualOutputFile);
+	}
+
 	/**
 	 * Tests bad sort order in an input stream (node, way, relations not in
 	 * order).
@@ -53,6 +53,8 @@ public class UsedNodeFilter implements SinkSource, EntityProcessor {
 				new SingleClassObjectSerializationFactory(WayContainer.class), "afwy", true);
 		allRelations = new SimpleObjectStore<RelationContainer>(
 				new SingleClassObjectSerializationFactory(RelationContainer.class), "afrl", true);
+		
+		SimpleObjectStore.enablePrefetch(allNodes, allWays, allRelations);
 
 		requiredNodes = IdTrackerFactory.createInstance(idTrackerType);
 	}
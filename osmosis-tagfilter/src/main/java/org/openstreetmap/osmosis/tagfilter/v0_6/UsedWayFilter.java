@@ -51,6 +51,8 @@ public class UsedWayFilter implements SinkSource, EntityProcessor {
 				new SingleClassObjectSerializationFactory(WayContainer.class), "afwy", true);
 		allRelations = new SimpleObjectStore<RelationContainer>(
 				new SingleClassObjectSerializationFactory(RelationContainer.class), "afrl", true);
+		
+		SimpleObjectStore.enablePrefetch(allNodes, allWays, allRelations);
 
 		requiredWays = IdTrackerFactory.createInstance(idTrackerType);
 	}
@@ -9,6 +9,7 @@ import org.openstreetmap.osmosis.xml.v0_6.impl.BaseXMLReader;
 import org.openstreetmap.osmosis.xml.v0_6.impl.OsmChangeHandler;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Collections;
 
 /**
@@ -35,6 +36,22 @@ public class XmlChangeReader extends BaseXMLReader implements RunnableChangeSour
         super(file, enableDateParsing, compressionMethod);
 	}
 
+	/**
+	 * Creates a new instance reading from a stream. The stream can only be read
+	 * once and is closed after reading.
+	 *
+	 * @param stream
+	 *            The stream to read.
+	 * @param enableDateParsing
+	 *            If true, dates will be parsed from xml data, else the current
+	 *            date will be used thus saving parsing time.
+	 * @param compressionMethod
+	 *            Specifies the compression method to employ.
+	 */
+	public XmlChangeReader(InputStream stream, boolean enableDateParsing, CompressionMethod compressionMethod) {
+        super(stream, enableDateParsing, compressionMethod);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
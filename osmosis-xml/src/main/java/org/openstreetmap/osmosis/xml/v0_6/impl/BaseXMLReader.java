@@ -26,6 +26,7 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public abstract class BaseXMLReader {
     private final File file;
+    private final InputStream stream;
     private final boolean enableDateParsing;
     private final CompressionMethod method;
 
@@ -38,6 +39,22 @@ public abstract class BaseXMLReader {
      */
     public BaseXMLReader(final File file, final boolean enableDateParsing, final CompressionMethod method) {
         this.file = file;
+        this.stream = null;
+        this.enableDateParsing = enableDateParsing;
+        this.method = method;
+    }
+
+     /**
+     * Creates a reader for data that can only be read once, such as a network stream. The stream is closed
+     * once parsing completes.
+     *
+     * @param stream The stream to parse
+     * @param enableDateParsing whether to enable date parsing or not
+     * @param method The compression method if any
+     */
+    public BaseXMLReader(final InputStream stream, final boolean enableDateParsing, final CompressionMethod method) {
+        this.file = null;
+        this.stream = stream;
         this.enableDateParsing = enableDateParsing;
         this.method = method;
     }
@@ -77,6 +94,10 @@ public abstract class BaseXMLReader {
                 this.parseXML(compressionStream, handler);
             }
         } catch (final SAXParseException e) {
+            // A stream has already been consumed so there is no way to retry the parse.
+            if (this.stream != null) {
+                throw this.createParseException(e);
+            }
             // if we get a sax parse failure, there is a good chance it may be this one:
             // Caused by: org.xml.sax.SAXParseException;
             // lineNumber: ?; columnNumber: ?; Invalid byte 2 of 4-byte UTF-8 sequence.
@@ -85,10 +106,20 @@ public abstract class BaseXMLReader {
         } catch (SAXException e) {
             throw new OsmosisRuntimeException("Unable to parse XML.", e);
         } catch (IOException e) {
-            throw new OsmosisRuntimeException("Unable to read XML file " + this.file + ".", e);
+            throw new OsmosisRuntimeException("Unable to read XML " + this.getSourceName() + ".", e);
         }
     }
 
+     private OsmosisRuntimeException createParseException(final SAXParseException e) {
+        return new OsmosisRuntimeException(
+            "Unable to parse xml " + this.getSourceName()
+                    + ".  publicId=(" + e.getPublicId()
+                    + "), systemId=(" + e.getSystemId()
+                    + "), lineNumber=" + e.getLineNumber()
+                    + ", columnNumber=" + e.getColumnNumber() + ".",
+            e);
+    }
+
      private void unzipParse(final DefaultHandler handler) {
         File tempFile;
         try {
@@ -112,22 +143,26 @@ public abstract class BaseXMLReader {
          try (InputStream unzippedStream = new FileInputStream(tempFile)) {
             this.parseXML(unzippedStream, handler);
         } catch (final SAXParseException e) {
-            throw new OsmosisRuntimeException(
-                "Unable to parse xml file " + this.file
-                        + ".  publicId=(" + e.getPublicId()
-                        + "), systemId=(" + e.getSystemId()
-                        + "), lineNumber=" + e.getLineNumber()
-                        + ", columnNumber=" + e.getColumnNumber() + ".",
-                e);
+            throw this.createParseException(e);
         } catch (SAXException e) {
             throw new OsmosisRuntimeException("Unable to parse XML.", e);
         } catch (IOException e) {
-            throw new OsmosisRuntimeException("Unable to read XML file " + this.file + ".", e);
+            throw new OsmosisRuntimeException("Unable to read XML " + this.getSourceName() + ".", e);
+        }
+    }
+
+     private String getSourceName() {
+        if (this.stream != null) {
+            return "stream";
+        } else {
+            return "file " + this.file;
         }
     }
 
      private InputStream getInputStream() throws FileNotFoundException {
-        if (this.file.getName().equals("-")) {
+        if (this.stream != null) {
+            return this.stream;
+        } else if (this.file.getName().equals("-")) {
             return System.in;
         } else {
             return new FileInputStream(this.file);
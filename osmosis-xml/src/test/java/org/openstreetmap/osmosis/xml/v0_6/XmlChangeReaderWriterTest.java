@@ -2,6 +2,7 @@
 package org.openstreetmap.osmosis.xml.v0_6;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 import org.junit.Test;
@@ -48,6 +49,34 @@ public class XmlChangeReaderWriterTest extends AbstractDataTest {
 		dataUtils.compareFiles(inputFile, outputFile);
 	}
 	
+	/**
+	 * Tests reading from a stream rather than a file.
+	 * 
+	 * @throws IOException
+	 *             if any file operations fail.
+	 */
+	@Test
+	public void testStream() throws IOException {
+		XmlChangeReader xmlReader;
+		XmlChangeWriter xmlWriter;
+		File inputFile;
+		File outputFile;
+		
+		inputFile = dataUtils.createDataFile("v0_6/xml-task-tests-v0_6.osc");
+		outputFile = dataUtils.newFile();
+		
+		// Create and connect the xml tasks.
+		xmlReader = new XmlChangeReader(new FileInputStream(inputFile), true, CompressionMethod.None);
+		xmlWriter = new XmlChangeWriter(outputFile, CompressionMethod.None);
+		xmlReader.setChangeSink(xmlWriter);
+		
+		// Process the xml.
+		xmlReader.run();
+		
+		// Validate that the output file matches the input file.
+		dataUtils.compareFiles(inputFile, outputFile);
+	}
+	
 	/**
 	 * Tests acceptance of nodes in a delete change with lat/lon attribute not set.
 	 * 